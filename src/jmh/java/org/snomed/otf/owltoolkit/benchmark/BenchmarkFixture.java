@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.benchmark;
+
+import com.google.common.collect.Sets;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.snomed.otf.owltoolkit.classification.ReasonerTaxonomy;
+import org.snomed.otf.owltoolkit.classification.ReasonerTaxonomyWalker;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+import org.snomed.otf.owltoolkit.conversion.AxiomRelationshipConversionService;
+import org.snomed.otf.owltoolkit.domain.AxiomRepresentation;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.normalform.RelationshipChangeProcessor;
+import org.snomed.otf.owltoolkit.normalform.RelationshipNormalFormGenerator;
+import org.snomed.otf.owltoolkit.ontology.OntologyService;
+import org.snomed.otf.owltoolkit.ontology.PropertyChain;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
+import org.snomed.otf.owltoolkit.testutil.SyntheticReleaseGenerator;
+import org.snomed.otf.owltoolkit.util.InputStreamSet;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Classified taxonomy shared by the benchmarks.
+ *
+ * The fixture name "mini" loads the base MiniRF2 snapshot with the property chain delta from the test resources.
+ * A name of the form "generated-N" loads a synthetic release of N concepts, written by SyntheticReleaseGenerator using a fixed seed.
+ * Fixtures are classified once per JVM and then reused.
+ */
+public class BenchmarkFixture {
+
+	public static final String MINI = "mini";
+	public static final String GENERATED_PREFIX = "generated-";
+
+	private static final Map<String, BenchmarkFixture> FIXTURES = new HashMap<>();
+
+	private final SnomedTaxonomy snomedTaxonomy;
+	private final OntologyService ontologyService;
+	private final ReasonerTaxonomy reasonerTaxonomy;
+	private final RelationshipNormalFormGenerator normalFormGenerator;
+	private final RelationshipChangeProcessor changeProcessor;
+	private final List<String> axiomExpressions;
+	private final Map<Long, Set<AxiomRepresentation>> conceptAxiomStatementMap;
+
+	public static synchronized BenchmarkFixture get(String name) throws Exception {
+		BenchmarkFixture fixture = FIXTURES.get(name);
+		if (fixture == null) {
+			if (name.equals(MINI)) {
+				fixture = new BenchmarkFixture(loadMini(), readMiniAxiomExpressions());
+			} else if (name.startsWith(GENERATED_PREFIX)) {
+				fixture = generate(Integer.parseInt(name.substring(GENERATED_PREFIX.length())));
+			} else {
+				throw new IllegalArgumentException("Unknown benchmark fixture " + name);
+			}
+			FIXTURES.put(name, fixture);
+		}
+		return fixture;
+	}
+
+	private BenchmarkFixture(SnomedTaxonomy snomedTaxonomy, List<String> axiomExpressions) throws Exception {
+		this.snomedTaxonomy = snomedTaxonomy;
+		this.axiomExpressions = axiomExpressions;
+		ontologyService = new OntologyService(SnomedTaxonomy.DEFAULT_NEVER_GROUPED_ROLE_IDS);
+		OWLOntology ontology = ontologyService.createOntology(snomedTaxonomy);
+		Set<PropertyChain> propertyChains = ontologyService.getPropertyChains(ontology);
+
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(ontology);
+		reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+		reasonerTaxonomy = new ReasonerTaxonomyWalker(reasoner, new ReasonerTaxonomy()).walk();
+		reasoner.dispose();
+
+		conceptAxiomStatementMap = new AxiomRelationshipConversionService(SnomedTaxonomy.DEFAULT_NEVER_GROUPED_ROLE_IDS)
+				.convertAxiomsToRelationships(snomedTaxonomy.getConceptAxiomMap());
+		normalFormGenerator = new RelationshipNormalFormGenerator(reasonerTaxonomy, snomedTaxonomy, conceptAxiomStatementMap, propertyChains);
+		changeProcessor = new RelationshipChangeProcessor();
+		normalFormGenerator.collectNormalFormChanges(changeProcessor);
+	}
+
+	private static SnomedTaxonomy loadMini() throws Exception {
+		File snapshot = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File delta = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Active_Ingredient_Property_Chain_delta");
+		try (InputStreamSet snapshotStreams = new InputStreamSet(Sets.newHashSet(snapshot));
+			 FileInputStream deltaStream = new FileInputStream(delta)) {
+			return new SnomedTaxonomyBuilder().build(snapshotStreams, deltaStream, false);
+		}
+	}
+
+	private static List<String> readMiniAxiomExpressions() throws IOException {
+		List<Path> axiomFiles;
+		try (Stream<Path> paths = Files.walk(Paths.get("src/test/resources"))) {
+			axiomFiles = paths.filter(path -> path.getFileName().toString().contains("_sRefset_OWLAxiom")).collect(Collectors.toList());
+		}
+		List<String> expressions = new ArrayList<>();
+		for (Path axiomFile : axiomFiles) {
+			try (BufferedReader reader = Files.newBufferedReader(axiomFile)) {
+				readAxiomExpressions(reader, expressions);
+			}
+		}
+		return expressions;
+	}
+
+	private static BenchmarkFixture generate(int conceptCount) throws Exception {
+		Path directory = Files.createTempDirectory("benchmark-release");
+		File snapshot = directory.resolve("snapshot.zip").toFile();
+		File delta = directory.resolve("delta.zip").toFile();
+		snapshot.deleteOnExit();
+		delta.deleteOnExit();
+		directory.toFile().deleteOnExit();
+		new SyntheticReleaseGenerator().setSeed(42).setConceptCount(conceptCount).generate(snapshot, delta);
+
+		SnomedTaxonomy snomedTaxonomy;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(Sets.newHashSet(snapshot));
+			 FileInputStream deltaStream = new FileInputStream(delta)) {
+			snomedTaxonomy = new SnomedTaxonomyBuilder().build(snapshotStreams, deltaStream, false);
+		}
+
+		List<String> expressions = new ArrayList<>();
+		try (ZipFile zipFile = new ZipFile(snapshot)) {
+			for (ZipEntry entry : Collections.list(zipFile.entries())) {
+				if (entry.getName().contains("_sRefset_OWLAxiom")) {
+					try (BufferedReader reader = new BufferedReader(new InputStreamReader(zipFile.getInputStream(entry), StandardCharsets.UTF_8))) {
+						readAxiomExpressions(reader, expressions);
+					}
+				}
+			}
+		}
+		return new BenchmarkFixture(snomedTaxonomy, expressions);
+	}
+
+	private static void readAxiomExpressions(BufferedReader reader, List<String> expressions) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] columns = line.split("\t");
+			if (!line.startsWith("#") && !line.startsWith("id\t") && columns.length >= 7) {
+				expressions.add(columns[6]);
+			}
+		}
+	}
+
+	public SnomedTaxonomy getSnomedTaxonomy() {
+		return snomedTaxonomy;
+	}
+
+	public OntologyService getOntologyService() {
+		return ontologyService;
+	}
+
+	public ReasonerTaxonomy getReasonerTaxonomy() {
+		return reasonerTaxonomy;
+	}
+
+	public RelationshipNormalFormGenerator getNormalFormGenerator() {
+		return normalFormGenerator;
+	}
+
+	/**
+	 * @return the changes collected when the fixture was classified
+	 */
+	public RelationshipChangeProcessor getChangeProcessor() {
+		return changeProcessor;
+	}
+
+	/**
+	 * @return the stated relationships of the concept followed by the relationships of its class axioms.
+	 * The generated releases define concepts using axioms only.
+	 */
+	public List<Relationship> getStatedForm(long conceptId, boolean includeIsA) {
+		List<Relationship> relationships = new ArrayList<>();
+		for (Relationship relationship : snomedTaxonomy.getStatedRelationships(conceptId)) {
+			if (includeIsA || relationship.getTypeId() != Concepts.IS_A_LONG) {
+				relationships.add(relationship);
+			}
+		}
+		for (AxiomRepresentation axiom : conceptAxiomStatementMap.getOrDefault(conceptId, Collections.emptySet())) {
+			if (axiom.getRightHandSideRelationships() != null && Long.valueOf(conceptId).equals(axiom.getLeftHandSideNamedConcept())) {
+				for (List<Relationship> group : axiom.getRightHandSideRelationships().values()) {
+					for (Relationship relationship : group) {
+						if (includeIsA || relationship.getTypeId() != Concepts.IS_A_LONG) {
+							relationships.add(relationship);
+						}
+					}
+				}
+			}
+		}
+		return relationships;
+	}
+
+	public List<String> getAxiomExpressions() {
+		return axiomExpressions;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.normalform;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.otf.owltoolkit.benchmark.BenchmarkFixture;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the existing inferred relationships of every concept with its stated relationships.
+ * The processor modifies the relationships it is given so each invocation works on copies,
+ * the cost of which is included in the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RelationshipChangeProcessorBenchmark {
+
+	@Param({BenchmarkFixture.MINI, "generated-20000"})
+	public String fixture;
+
+	private long[] conceptIds;
+	private List<Collection<Relationship>> existingRelationships;
+	private List<Collection<Relationship>> newRelationships;
+
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkFixture benchmarkFixture = BenchmarkFixture.get(fixture);
+		SnomedTaxonomy snomedTaxonomy = benchmarkFixture.getSnomedTaxonomy();
+		List<Long> ids = benchmarkFixture.getReasonerTaxonomy().getConceptIds();
+		conceptIds = new long[ids.size()];
+		existingRelationships = new ArrayList<>();
+		newRelationships = new ArrayList<>();
+		for (int i = 0; i < ids.size(); i++) {
+			conceptIds[i] = ids.get(i);
+			existingRelationships.add(snomedTaxonomy.getInferredRelationships(conceptIds[i]));
+			newRelationships.add(benchmarkFixture.getStatedForm(conceptIds[i], true));
+		}
+	}
+
+	@Benchmark
+	public RelationshipChangeProcessor apply() {
+		RelationshipChangeProcessor processor = new RelationshipChangeProcessor();
+		for (int i = 0; i < conceptIds.length; i++) {
+			processor.apply(conceptIds[i], copy(existingRelationships.get(i)), copy(newRelationships.get(i)));
+		}
+		return processor;
+	}
+
+	private List<Relationship> copy(Collection<Relationship> relationships) {
+		List<Relationship> copies = new ArrayList<>(relationships.size());
+		for (Relationship r : relationships) {
+			copies.add(new Relationship(r.getRelationshipId(), r.getEffectiveTime(), r.getModuleId(), r.getTypeId(), r.getDestinationId(),
+					r.isDestinationNegated(), r.getGroup(), r.getUnionGroup(), r.isUniversal(), r.getCharacteristicTypeId()));
+		}
+		return copies;
+	}
+}
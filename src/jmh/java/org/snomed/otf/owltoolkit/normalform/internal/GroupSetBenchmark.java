@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.normalform.internal;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.*;
+import org.snomed.otf.owltoolkit.benchmark.BenchmarkFixture;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.normalform.RelationshipNormalFormGenerator;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups are mutated by numbering so each invocation builds new groups from the concept's relationships,
+ * the cost of which is included in the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GroupSetBenchmark {
+
+	@Param({BenchmarkFixture.MINI, "generated-20000"})
+	public String fixture;
+
+	private RelationshipNormalFormGenerator generator;
+	// Stated relationships of each concept and its parents
+	private List<List<Relationship>> statedRelationships;
+	// Existing inferred relationships of each concept
+	private List<List<Relationship>> inferredRelationships;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkFixture benchmarkFixture = BenchmarkFixture.get(fixture);
+		generator = benchmarkFixture.getNormalFormGenerator();
+		SnomedTaxonomy snomedTaxonomy = benchmarkFixture.getSnomedTaxonomy();
+		statedRelationships = new ArrayList<>();
+		inferredRelationships = new ArrayList<>();
+		for (Long conceptId : benchmarkFixture.getReasonerTaxonomy().getConceptIds()) {
+			List<Relationship> stated = benchmarkFixture.getStatedForm(conceptId, false);
+			for (Long parentId : benchmarkFixture.getReasonerTaxonomy().getParents(conceptId)) {
+				stated.addAll(benchmarkFixture.getStatedForm(parentId, false));
+			}
+			List<Relationship> inferred = new ArrayList<>();
+			for (Relationship relationship : snomedTaxonomy.getInferredRelationships(conceptId)) {
+				if (relationship.getTypeId() != Concepts.IS_A_LONG) {
+					inferred.add(relationship);
+				}
+			}
+			if (!stated.isEmpty()) {
+				statedRelationships.add(stated);
+				inferredRelationships.add(inferred);
+			}
+		}
+		if (statedRelationships.isEmpty()) {
+			throw new IllegalStateException("Fixture has no concepts with attributes.");
+		}
+	}
+
+	@Benchmark
+	public GroupSet add() {
+		int concept = nextConcept();
+		GroupSet groupSet = new GroupSet();
+		for (Group group : toGroups(statedRelationships.get(concept), false)) {
+			groupSet.add(group);
+		}
+		return groupSet;
+	}
+
+	@Benchmark
+	public GroupSet addAndAdjustOrder() {
+		int concept = nextConcept();
+		GroupSet groupSet = new GroupSet();
+		for (Group group : toGroups(statedRelationships.get(concept), false)) {
+			groupSet.add(group);
+		}
+		groupSet.fillNumbers();
+
+		GroupSet previousInferredSet = new GroupSet();
+		for (Group group : toGroups(inferredRelationships.get(concept), true)) {
+			previousInferredSet.addUnique(group);
+		}
+		groupSet.adjustOrder(previousInferredSet);
+		return groupSet;
+	}
+
+	private List<Group> toGroups(List<Relationship> relationships, boolean preserveNumbers) {
+		Map<Integer, List<UnionGroup>> unionGroupsByGroup = new HashMap<>();
+		List<Group> groups = new ArrayList<>();
+		for (Relationship relationship : relationships) {
+			UnionGroup unionGroup = new UnionGroup(ImmutableList.of(new RelationshipFragment(generator, relationship)));
+			unionGroup.setUnionGroupNumber(0);
+			int groupNumber = relationship.getGroup();
+			if (groupNumber == 0) {
+				Group group = new Group(ImmutableList.of(unionGroup));
+				group.setGroupNumber(0);
+				groups.add(group);
+			} else {
+				unionGroupsByGroup.computeIfAbsent(groupNumber, g -> new ArrayList<>()).add(unionGroup);
+			}
+		}
+		for (Map.Entry<Integer, List<UnionGroup>> entry : unionGroupsByGroup.entrySet()) {
+			Group group = new Group(entry.getValue());
+			if (preserveNumbers) {
+				group.setGroupNumber(entry.getKey());
+			}
+			groups.add(group);
+		}
+		return groups;
+	}
+
+	private int nextConcept() {
+		int concept = next;
+		if (++next == statedRelationships.size()) {
+			next = 0;
+		}
+		return concept;
+	}
+}
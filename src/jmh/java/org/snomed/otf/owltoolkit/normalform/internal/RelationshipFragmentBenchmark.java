@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.normalform.internal;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.otf.owltoolkit.benchmark.BenchmarkFixture;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.normalform.RelationshipNormalFormGenerator;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RelationshipFragmentBenchmark {
+
+	@Param({BenchmarkFixture.MINI, "generated-20000"})
+	public String fixture;
+
+	private RelationshipFragment[] left;
+	private RelationshipFragment[] right;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkFixture benchmarkFixture = BenchmarkFixture.get(fixture);
+		RelationshipNormalFormGenerator generator = benchmarkFixture.getNormalFormGenerator();
+		SnomedTaxonomy snomedTaxonomy = benchmarkFixture.getSnomedTaxonomy();
+
+		// Pair each non IS-A relationship of a concept with those of the concept and its parents
+		List<RelationshipFragment> lefts = new ArrayList<>();
+		List<RelationshipFragment> rights = new ArrayList<>();
+		for (Long conceptId : benchmarkFixture.getReasonerTaxonomy().getConceptIds()) {
+			List<Relationship> ownRelationships = benchmarkFixture.getStatedForm(conceptId, false);
+			List<Relationship> candidates = new ArrayList<>(ownRelationships);
+			for (Long parentId : benchmarkFixture.getReasonerTaxonomy().getParents(conceptId)) {
+				candidates.addAll(benchmarkFixture.getStatedForm(parentId, false));
+			}
+			for (Relationship own : ownRelationships) {
+				for (Relationship candidate : candidates) {
+					if (own != candidate && own.getTypeId() != Concepts.IS_A_LONG) {
+						lefts.add(new RelationshipFragment(generator, own));
+						rights.add(new RelationshipFragment(generator, candidate));
+					}
+				}
+			}
+		}
+		if (lefts.isEmpty()) {
+			throw new IllegalStateException("Fixture has no relationship pairs to compare.");
+		}
+		left = lefts.toArray(new RelationshipFragment[0]);
+		right = rights.toArray(new RelationshipFragment[0]);
+	}
+
+	@Benchmark
+	public boolean isSameOrStrongerThan() {
+		int pair = next;
+		if (++next == left.length) {
+			next = 0;
+		}
+		return left[pair].isSameOrStrongerThan(right[pair]);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.service;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
+import org.openjdk.jmh.annotations.*;
+import org.snomed.otf.owltoolkit.benchmark.BenchmarkFixture;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.normalform.RelationshipChangeProcessor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the relationship changes of the fixture, as collected by the normal form generator, through a results archive
+ * which writes to a stream that discards the output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassificationResultsWriterBenchmark {
+
+	@Param({BenchmarkFixture.MINI, "generated-20000"})
+	public String fixture;
+
+	private final ClassificationResultsWriter classificationResultsWriter = new ClassificationResultsWriter();
+	private BenchmarkFixture benchmarkFixture;
+	private LongArrayList changedConceptIds;
+	private final Date startDate = new Date();
+
+	@Setup
+	public void setup() throws Exception {
+		benchmarkFixture = BenchmarkFixture.get(fixture);
+		RelationshipChangeProcessor changeProcessor = benchmarkFixture.getChangeProcessor();
+		LongRBTreeSet conceptIds = new LongRBTreeSet();
+		conceptIds.addAll(changeProcessor.getAddedStatements().keySet());
+		conceptIds.addAll(changeProcessor.getRemovedStatements().keySet());
+		changedConceptIds = new LongArrayList(conceptIds);
+	}
+
+	@Benchmark
+	public long streamResultsRf2Archive() throws ReasonerServiceException, IOException {
+		RelationshipChangeProcessor changeProcessor = benchmarkFixture.getChangeProcessor();
+		Map<Long, Set<Relationship>> addedStatements = changeProcessor.getAddedStatements();
+		Map<Long, Set<Relationship>> removedStatements = changeProcessor.getRemovedStatements();
+		CountingOutputStream outputStream = new CountingOutputStream();
+		try (ClassificationResultsWriter.StreamingResultsArchive archive = classificationResultsWriter.startResultsRf2Archive(outputStream, startDate)) {
+			for (int i = 0; i < changedConceptIds.size(); i++) {
+				long conceptId = changedConceptIds.getLong(i);
+				archive.relationshipsChanged(conceptId,
+						addedStatements.getOrDefault(conceptId, Collections.emptySet()),
+						removedStatements.getOrDefault(conceptId, Collections.emptySet()));
+			}
+			archive.finish(benchmarkFixture.getReasonerTaxonomy().getEquivalentConceptIds());
+		}
+		return outputStream.count;
+	}
+	private static final class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
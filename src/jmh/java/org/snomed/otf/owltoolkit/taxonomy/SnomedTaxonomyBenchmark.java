@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.otf.owltoolkit.benchmark.BenchmarkFixture;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnomedTaxonomyBenchmark {
+
+	@Param({BenchmarkFixture.MINI, "generated-20000"})
+	public String fixture;
+
+	private SnomedTaxonomy snomedTaxonomy;
+	private Long[] conceptIds;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		snomedTaxonomy = BenchmarkFixture.get(fixture).getSnomedTaxonomy();
+		conceptIds = snomedTaxonomy.getAllConceptIds().toArray(new Long[0]);
+	}
+
+	@Benchmark
+	public Set<Long> getDescendants() {
+		Long conceptId = conceptIds[next];
+		if (++next == conceptIds.length) {
+			next = 0;
+		}
+		return snomedTaxonomy.getDescendants(conceptId);
+	}
+}
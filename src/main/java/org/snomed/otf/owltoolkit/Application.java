@@ -6,8 +6,10 @@ import org.snomed.otf.owltoolkit.conversion.ConversionException;
 import org.snomed.otf.owltoolkit.conversion.RF2ToOWLService;
 import org.snomed.otf.owltoolkit.conversion.StatedRelationshipToOwlRefsetService;
 import org.snomed.otf.owltoolkit.ontology.OntologyService;
+import org.snomed.otf.owltoolkit.server.ClassificationServer;
 import org.snomed.otf.owltoolkit.service.ReasonerServiceException;
 import org.snomed.otf.owltoolkit.service.SnomedReasonerService;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyCache;
 import org.snomed.otf.owltoolkit.util.InputStreamSet;
 import org.snomed.otf.owltoolkit.util.OptionalFileInputStream;
 
@@ -15,6 +17,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashSet;
@@ -36,6 +39,11 @@ public class Application {
 	private static final String ARG_URI = "-uri";
 	private static final String ARG_VERSION = "-version";
 	private static final String ARG_WITHOUT_ANNOTATIONS = "-without-annotations";
+	private static final String ARG_SNAPSHOT_CACHE = "-snapshot-cache";
+	private static final String ARG_SERVER = "-server";
+	private static final String ARG_PORT = "-port";
+	private static final String ARG_WORKERS = "-workers";
+	private static final String ARG_HEAP_BUDGET = "-heap-budget";
 	private static final SimpleDateFormat DATETIME_FORMAT = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
 	private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMMdd");
 
@@ -69,7 +77,10 @@ public class Application {
 				assertTrue("When specifying multiple archives please include no whitespace before or after the comma.",
 						!arg.startsWith(",") && !arg.endsWith(","));
 			}
-			if (args.contains(ARG_CLASSIFY)) {
+			if (args.contains(ARG_SERVER)) {
+				modeFound = true;
+				server(args);
+			} else if (args.contains(ARG_CLASSIFY)) {
 				modeFound = true;
 				classify(args);
 			} else if (args.contains(ARG_RF2_STATED_TO_COMPLETE_OWL)) {
@@ -87,7 +98,9 @@ public class Application {
 		File deltaFile = getDeltaFiles(args);
 
 		File resultsFile = new File("classification-results-" + DATETIME_FORMAT.format(new Date()) + ".zip");
-		new SnomedReasonerService().classify(
+		SnomedReasonerService snomedReasonerService = new SnomedReasonerService();
+		snomedReasonerService.setSnapshotCache(getSnapshotCache(args));
+		snomedReasonerService.classify(
 				"command-line",
 				snapshotFiles,
 				deltaFile,
@@ -99,6 +112,54 @@ public class Application {
 		System.out.println("Classification results written to " + resultsFile.getAbsolutePath());
 	}
 
+	private void server(List<String> args) throws IOException, ReasonerServiceException {
+		Set<File> snapshotFiles = getSnapshotFiles(args);
+		String port = getParameterValue(ARG_PORT, args);
+		String workers = getParameterValue(ARG_WORKERS, args);
+		String heapBudget = getParameterValue(ARG_HEAP_BUDGET, args);
+		String cacheDirectory = getParameterValue(ARG_SNAPSHOT_CACHE, args);
+
+		// A cache in the temporary work directory could never be read again, so the snapshot is only cached when a directory is given
+		File workDirectory = Files.createTempDirectory("classification-server").toFile();
+		ClassificationServer server = new ClassificationServer(
+				workDirectory,
+				cacheDirectory != null ? new File(cacheDirectory) : null,
+				workers != null ? Integer.parseInt(workers) : 1);
+		if (heapBudget != null) {
+			server.setHeapBudget(Long.parseLong(heapBudget) * 1024 * 1024);
+		}
+		server.addBase(ClassificationServer.DEFAULT_BASE, snapshotFiles);
+		int boundPort = server.start(port != null ? Integer.parseInt(port) : 8080);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop();
+			deleteDirectory(workDirectory);
+		}));
+
+		System.out.println("Classification server listening on http://localhost:" + boundPort + "/classifications");
+		System.out.println("Work directory " + workDirectory.getAbsolutePath());
+		try {
+			Thread.currentThread().join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void deleteDirectory(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					deleteDirectory(file);
+				} else if (!file.delete()) {
+					System.err.println("Failed to delete " + file.getAbsolutePath());
+				}
+			}
+		}
+		if (!directory.delete()) {
+			System.err.println("Failed to delete " + directory.getAbsolutePath());
+		}
+	}
+
 	// RF2 to OWL
 	private void rf2ToOwl(List<String> args) throws ConversionException, IOException {
 		// Parameter validation
@@ -113,6 +174,7 @@ public class Application {
 		String versionDate = getEffectiveDate(args);
 
 		boolean includeFSNs = !args.contains(ARG_WITHOUT_ANNOTATIONS);
+		SnomedTaxonomyCache snapshotCache = getSnapshotCache(args);
 
 		System.out.println();
 		System.out.println("Creating Ontology using the following options:");
@@ -121,6 +183,9 @@ public class Application {
 		System.out.println("  Ontology URI: " + ontologyUri);
 		System.out.println("  Ontology Version: " + versionDate);
 		System.out.println("  Include FSN Annotations: " + includeFSNs);
+		if (snapshotCache != null) {
+			System.out.println("  Snapshot cache: " + getParameterValue(ARG_SNAPSHOT_CACHE, args));
+		}
 		System.out.println();
 
 		// Conversion
@@ -129,11 +194,17 @@ public class Application {
 		if (deleteOntologyFileOnExit) {
 			ontologyOutputFile.deleteOnExit();
 		}
-		try (InputStreamSet snapshotStreams = new InputStreamSet(snapshotFiles);
-			 OptionalFileInputStream deltaStream = new OptionalFileInputStream(deltaFile);
+		try (OptionalFileInputStream deltaStream = new OptionalFileInputStream(deltaFile);
 			 FileOutputStream outputStream = new FileOutputStream(ontologyOutputFile)) {
 
-			new RF2ToOWLService().convertRF2ArchiveToOWL(ontologyUri, versionDate, includeFSNs, snapshotStreams, deltaStream, outputStream);
+			RF2ToOWLService rf2ToOWLService = new RF2ToOWLService();
+			if (snapshotCache != null) {
+				rf2ToOWLService.convertRF2ArchiveToOWL(ontologyUri, versionDate, includeFSNs, snapshotFiles, deltaStream, snapshotCache, outputStream);
+			} else {
+				try (InputStreamSet snapshotStreams = new InputStreamSet(snapshotFiles)) {
+					rf2ToOWLService.convertRF2ArchiveToOWL(ontologyUri, versionDate, includeFSNs, snapshotStreams, deltaStream, outputStream);
+				}
+			}
 		} catch (IOException e) {
 			System.err.println("Failed to close input or output stream.");
 			e.printStackTrace();
@@ -188,6 +259,11 @@ public class Application {
 						pad("") + "Results are written to an RF2 delta archive.\n" +
 						"\n" +
 
+						pad(ARG_SERVER) +
+						"Run a local classification server with the Snapshot archives loaded.\n" +
+						pad("") + "Delta archives are posted to /classifications and classified in a job queue.\n" +
+						"\n" +
+
 						pad(ARG_RF2_TO_OWL) +
 						"(Default mode) Convert RF2 to OWL Functional Syntax.\n" +
 						pad("") + "Results are written to an .owl file.\n" +
@@ -211,6 +287,20 @@ public class Application {
 						"(Optional) Path to a zip file containing RF2 Delta files to be applied on top \n" +
 						pad("") + "of the Snapshots. This is helpful during an authoring cycle.\n" +
 						"\n" +
+						pad(ARG_SNAPSHOT_CACHE + " <path>") +
+						"(Optional) Directory used to cache the loaded Snapshot archives. \n" +
+						pad("") + "Later runs with the same Snapshot archives load from the cache. \n" +
+						"\n" +
+						pad(ARG_PORT + " <port>") +
+						"(Optional) Server mode port, default 8080.\n" +
+						"\n" +
+						pad(ARG_WORKERS + " <count>") +
+						"(Optional) Server mode number of classifications to run at the same time, default 1.\n" +
+						"\n" +
+						pad(ARG_HEAP_BUDGET + " <megabytes>") +
+						"(Optional) Server mode heap available to running classifications. \n" +
+						pad("") + "Defaults to the heap free after loading the Snapshot archives.\n" +
+						"\n" +
 						pad(ARG_DEBUG) +
 						"Additional output for debugging.\n" +
 						"\n" +
@@ -267,6 +357,11 @@ public class Application {
 		return deltaFiles.iterator().next();
 	}
 
+	private SnomedTaxonomyCache getSnapshotCache(List<String> args) {
+		String cacheDirectory = getParameterValue(ARG_SNAPSHOT_CACHE, args);
+		return cacheDirectory != null ? new SnomedTaxonomyCache(new File(cacheDirectory)) : null;
+	}
+
 	private Set<File> getSnapshotFiles(List<String> args) {
 		return gatherFiles(getRequiredParameterValue(ARG_RF2_SNAPSHOT_ARCHIVES, args));
 	}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.classification;
+
+import org.semanticweb.elk.loading.AbstractAxiomLoader;
+import org.semanticweb.elk.owl.visitors.ElkAxiomProcessor;
+import org.semanticweb.elk.owlapi.wrapper.OwlConverter;
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Loads OWL API axioms straight into an ELK reasoner without adding them to an OWL ontology first.
+ * Axioms are converted in the same way as the ELK OWL API binding converts the axioms of an ontology.
+ * Loading resumes where it stopped if the reasoner is interrupted. The axioms are released once loaded, the loader can only be used once.
+ */
+public class ElkAxiomLoader extends AbstractAxiomLoader {
+
+	private static final OwlConverter OWL_CONVERTER = OwlConverter.getInstance();
+
+	private Iterator<OWLAxiom> axioms;
+	private boolean finished;
+
+	public ElkAxiomLoader(Collection<OWLAxiom> axioms) {
+		this.axioms = axioms.iterator();
+	}
+
+	@Override
+	public void load(ElkAxiomProcessor axiomInserter, ElkAxiomProcessor axiomDeleter) {
+		if (finished) {
+			return;
+		}
+		while (axioms.hasNext()) {
+			if (isInterrupted()) {
+				return;
+			}
+			OWLAxiom axiom = axioms.next();
+			if (OWL_CONVERTER.isRelevantAxiom(axiom)) {
+				axiomInserter.visit(OWL_CONVERTER.convert(axiom));
+			}
+		}
+		axioms = null;
+		finished = true;
+	}
+
+	@Override
+	public boolean isLoadingFinished() {
+		return finished;
+	}
+}
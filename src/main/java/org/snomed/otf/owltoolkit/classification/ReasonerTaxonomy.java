@@ -16,10 +16,11 @@
  */
 package org.snomed.otf.owltoolkit.classification;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.*;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.taxonomy.ConceptDictionary;
 
 import java.io.Serializable;
 import java.util.*;
@@ -30,12 +31,25 @@ public class ReasonerTaxonomy implements Serializable {
 	
 	private final List<Set<Long>> equivalentConceptIds = new ArrayList<>();
 	private final Set<Long> unsatisfiableConceptIds = new LongOpenHashSet();
-	private final Map<Long, Set<Long>> parentIds = new Long2ObjectOpenHashMap<>();
-	private final Map<Long, Set<Long>> ancestorIds = new Long2ObjectOpenHashMap<>();
+	private final ConceptDictionary dictionary;
+	// Parent ids and sorted ancestor ordinals for each concept ordinal
+	private final List<Set<Long>> parentIds = new ObjectArrayList<>();
+	private final List<int[]> ancestorOrdinals = new ObjectArrayList<>();
 	private final List<Long> insertionOrderedIds = new LongArrayList();
 	private final List<Long> insertionOrderedAttributeIds = new LongArrayList();
 
+	private static final int[] NO_ANCESTORS = new int[0];
+
 	public ReasonerTaxonomy() {
+		this(null);
+	}
+
+	/**
+	 * @param baseDictionary dictionary of known concepts whose ordinals this taxonomy should share, for example
+	 * {@link org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy#getConceptDictionary()}, may be null.
+	 */
+	public ReasonerTaxonomy(final ConceptDictionary baseDictionary) {
+		dictionary = new ConceptDictionary(baseDictionary);
 	}
 	
 	public void addEquivalentConceptIds(final Set<Long> conceptIds) {
@@ -56,37 +70,98 @@ public class ReasonerTaxonomy implements Serializable {
 
 	public void addEntry(final ReasonerTaxonomyEntry entry) {
 		insertionOrderedIds.add(entry.getSourceId());
-		getOrCreateSet(parentIds, entry.getSourceId()).addAll(entry.getParentIds());
-		getOrCreateSet(ancestorIds, entry.getSourceId()).addAll(entry.getParentIds());
+		final int ordinal = getOrCreateOrdinal(entry.getSourceId());
+		Set<Long> parents = parentIds.get(ordinal);
+		if (parents == null) {
+			parents = new LongOpenHashSet();
+			parentIds.set(ordinal, parents);
+		}
+		parents.addAll(entry.getParentIds());
+
+		// Ancestors are the union of the parents and their ancestors, copied at the time the entry is added
+		final IntArrayList ancestors = new IntArrayList(ancestorOrdinals.get(ordinal));
 		for (Long parentId : entry.getParentIds()) {
-			getOrCreateSet(ancestorIds, entry.getSourceId()).addAll(getOrCreateSet(ancestorIds, parentId));
+			final int parentOrdinal = getOrCreateOrdinal(parentId);
+			ancestors.add(parentOrdinal);
+			ancestors.addElements(ancestors.size(), ancestorOrdinals.get(parentOrdinal));
 		}
+		ancestorOrdinals.set(ordinal, sortedUnique(ancestors));
 	}
 
-	private Set<Long> getOrCreateSet(final Map<Long, Set<Long>> map, final long key) {
-		if (map.containsKey(key)) {
-			return map.get(key);
-		} else {
-			final Set<Long> newSet = new LongOpenHashSet();
-			map.put(key, newSet);
-			return newSet;
+	private int getOrCreateOrdinal(final long conceptId) {
+		final int ordinal = dictionary.getOrCreateOrdinal(conceptId);
+		while (ancestorOrdinals.size() <= ordinal) {
+			parentIds.add(null);
+			ancestorOrdinals.add(NO_ANCESTORS);
 		}
+		return ordinal;
 	}
 
-	private Set<Long> getOrReturnEmptySet(final Map<Long, Set<Long>> map, final long key) {
-		if (map.containsKey(key)) {
-			return map.get(key);
-		} else {
-			return Collections.emptySet();
+	private static int[] sortedUnique(final IntArrayList values) {
+		if (values.isEmpty()) {
+			return NO_ANCESTORS;
+		}
+		final int[] sorted = values.toIntArray();
+		Arrays.sort(sorted);
+		int size = 1;
+		for (int i = 1; i < sorted.length; i++) {
+			if (sorted[i] != sorted[size - 1]) {
+				sorted[size++] = sorted[i];
+			}
 		}
+		return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
 	}
-	
+
 	public Set<Long> getParents(final long sourceId) {
-		return getOrReturnEmptySet(parentIds, sourceId);
+		final int ordinal = getOrdinal(sourceId);
+		final Set<Long> parents = ordinal != ConceptDictionary.NOT_FOUND ? parentIds.get(ordinal) : null;
+		return parents != null ? parents : Collections.emptySet();
+	}
+
+	/**
+	 * @return the dictionary holding the ordinals of the concepts in this taxonomy. The dictionary must not be modified.
+	 */
+	public ConceptDictionary getConceptDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @return the ordinal of the concept in {@link #getConceptDictionary()} or {@link ConceptDictionary#NOT_FOUND}
+	 * if the concept has not been added to this taxonomy.
+	 */
+	public int getOrdinal(final long conceptId) {
+		final int ordinal = dictionary.getOrdinal(conceptId);
+		return ordinal < ancestorOrdinals.size() ? ordinal : ConceptDictionary.NOT_FOUND;
 	}
 	
+	/**
+	 * @return unmodifiable view of the ancestors of the concept.
+	 */
 	public Set<Long> getAncestors(final long sourceId) {
-		return getOrReturnEmptySet(ancestorIds, sourceId);
+		final int ordinal = getOrdinal(sourceId);
+		if (ordinal == ConceptDictionary.NOT_FOUND) {
+			return Collections.emptySet();
+		}
+		return new AncestorSet(ordinal);
+	}
+
+	/**
+	 * @return true if conceptId is the same as or a descendant of ancestorId. Does not allocate.
+	 */
+	public boolean isSameOrDescendant(final long conceptId, final long ancestorId) {
+		return conceptId == ancestorId || hasAncestor(conceptId, ancestorId);
+	}
+
+	/**
+	 * @return true if ancestorId is a proper ancestor of sourceId. Does not allocate.
+	 */
+	public boolean hasAncestor(final long sourceId, final long ancestorId) {
+		final int ordinal = getOrdinal(sourceId);
+		if (ordinal == ConceptDictionary.NOT_FOUND) {
+			return false;
+		}
+		final int ancestorOrdinal = getOrdinal(ancestorId);
+		return ancestorOrdinal != ConceptDictionary.NOT_FOUND && Arrays.binarySearch(ancestorOrdinals.get(ordinal), ancestorOrdinal) >= 0;
 	}
 	
 	public List<Long> getConceptIds() {
@@ -100,4 +175,45 @@ public class ReasonerTaxonomy implements Serializable {
 	public Collection<Relationship> getNonIsAFragments(long conceptId) {
 		return null;
 	}
+
+	private final class AncestorSet extends AbstractLongSet {
+
+		private final int ordinal;
+
+		private AncestorSet(int ordinal) {
+			this.ordinal = ordinal;
+		}
+
+		@Override
+		public boolean contains(long conceptId) {
+			final int ancestorOrdinal = getOrdinal(conceptId);
+			return ancestorOrdinal != ConceptDictionary.NOT_FOUND && Arrays.binarySearch(ancestorOrdinals.get(ordinal), ancestorOrdinal) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return ancestorOrdinals.get(ordinal).length;
+		}
+
+		@Override
+		public LongIterator iterator() {
+			final int[] ancestors = ancestorOrdinals.get(ordinal);
+			return new LongIterator() {
+				private int next;
+
+				@Override
+				public boolean hasNext() {
+					return next < ancestors.length;
+				}
+
+				@Override
+				public long nextLong() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return dictionary.getConceptId(ancestors[next++]);
+				}
+			};
+		}
+	}
 }
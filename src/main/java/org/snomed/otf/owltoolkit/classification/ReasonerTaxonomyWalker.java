@@ -16,7 +16,11 @@
  */
 package org.snomed.otf.owltoolkit.classification;
 
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.semanticweb.elk.owl.interfaces.ElkClass;
+import org.semanticweb.elk.reasoner.taxonomy.model.Taxonomy;
+import org.semanticweb.elk.reasoner.taxonomy.model.TaxonomyNode;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.reasoner.Node;
 import org.semanticweb.owlapi.reasoner.NodeSet;
@@ -28,6 +32,7 @@ import org.snomed.otf.owltoolkit.constants.Concepts;
 import org.snomed.otf.owltoolkit.ontology.OntologyHelper;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 public class ReasonerTaxonomyWalker {
@@ -35,21 +40,50 @@ public class ReasonerTaxonomyWalker {
 	private static final NodeSet<OWLClass> EMPTY_NODE_SET = new OWLClassNodeSet();
 
 	private final OWLReasoner reasoner;
+	private final Taxonomy<ElkClass> elkTaxonomy;
 
 	private final ReasonerTaxonomy taxonomy;
 	private final OWLOntology owlOntology;
 
+	private final int threads;
+
 	private Set<Long> processedConceptIds;
 
 	private boolean nothingProcessed;
 
+	private static final int NODES_PER_TASK = 256;
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(ReasonerTaxonomyWalker.class);
 
 	public ReasonerTaxonomyWalker(final OWLReasoner reasoner, final ReasonerTaxonomy changeSet) {
+		this(reasoner, changeSet, 1);
+	}
+
+	/**
+	 * @param threads the number of threads used to read the class hierarchy from the reasoner.
+	 *                With more than one thread the reasoner must support concurrent queries.
+	 *                Concepts are still added to the taxonomy in a parent before child order but siblings may be in a different order
+	 *                to the single threaded walk.
+	 */
+	public ReasonerTaxonomyWalker(final OWLReasoner reasoner, final ReasonerTaxonomy changeSet, final int threads) {
 		this.reasoner = reasoner;
+		this.elkTaxonomy = null;
 		this.owlOntology = reasoner.getRootOntology();
 		this.taxonomy = changeSet;
-		this.processedConceptIds = new LongOpenHashSet(600000);
+		this.threads = threads;
+	}
+
+	/**
+	 * Walks a class taxonomy computed by an ELK reasoner which was loaded without an OWL API ontology.
+	 * Concepts are added to the taxonomy in a parent before child order, the order of siblings is not defined.
+	 * @param propertyOntology ontology holding the property axioms, used to extract the property hierarchy.
+	 */
+	public ReasonerTaxonomyWalker(final Taxonomy<ElkClass> elkTaxonomy, final OWLOntology propertyOntology, final ReasonerTaxonomy changeSet) {
+		this.reasoner = null;
+		this.elkTaxonomy = elkTaxonomy;
+		this.owlOntology = propertyOntology;
+		this.taxonomy = changeSet;
+		this.threads = 1;
 	}
 
 	public ReasonerTaxonomy walk() {
@@ -58,24 +92,31 @@ public class ReasonerTaxonomyWalker {
 		extractProperties();
 
 		// Now process the concepts
-		final Deque<Node<OWLClass>> nodesToProcess = new LinkedList<>();
-		nodesToProcess.add(reasoner.getTopClassNode());
+		if (elkTaxonomy != null) {
+			walkElkTaxonomy();
+		} else if (threads > 1) {
+			walkClassesConcurrently();
+		} else {
+			processedConceptIds = new LongOpenHashSet(600000);
+			final Deque<Node<OWLClass>> nodesToProcess = new LinkedList<>();
+			nodesToProcess.add(reasoner.getTopClassNode());
+
+			// Breadth-first walk through the class hierarchy
+			while (!nodesToProcess.isEmpty()) {
 
-		// Breadth-first walk through the class hierarchy
-		while (!nodesToProcess.isEmpty()) {
+				final Node<OWLClass> currentNode = nodesToProcess.removeFirst();
+				final NodeSet<OWLClass> nextNodeSet = walkClasses(currentNode);
 
-			final Node<OWLClass> currentNode = nodesToProcess.removeFirst();
-			final NodeSet<OWLClass> nextNodeSet = walkClasses(currentNode);
+				if (!nextNodeSet.isEmpty()) {
+					nodesToProcess.addAll(nextNodeSet.getNodes());
+				}
 
-			if (!nextNodeSet.isEmpty()) {
-				nodesToProcess.addAll(nextNodeSet.getNodes());
 			}
 
+			processedConceptIds.clear();
+			processedConceptIds = null;
 		}
 
-		processedConceptIds.clear();
-		processedConceptIds = null;
-
 		// Move attribute ids to after 'Concept model attribute' concept so they are processed in the correct order.
 		List<Long> attributeIds = taxonomy.getAttributeIds();
 		attributeIds.remove(Concepts.CONCEPT_MODEL_ATTRIBUTE_LONG);
@@ -160,6 +201,219 @@ public class ReasonerTaxonomyWalker {
 
 	}
 
+	/**
+	 * Reads the direct super and sub classes of every node using a pool of workers, one breadth-first level at a time,
+	 * into an adjacency table. Entries are then added to the taxonomy in topological order using Kahn's algorithm.
+	 */
+	private void walkClassesConcurrently() {
+		// Discover and read all nodes
+		final List<ClassNode<Node<OWLClass>>> classNodes = new ArrayList<>();
+		final ExecutorService executorService = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "taxonomy-walker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final Set<Node<OWLClass>> seen = new HashSet<>();
+			List<Node<OWLClass>> level = Collections.singletonList(reasoner.getTopClassNode());
+			seen.addAll(level);
+			while (!level.isEmpty()) {
+				final List<Node<OWLClass>> nextLevel = new ArrayList<>();
+				for (ClassNode<Node<OWLClass>> classNode : readNodes(level, executorService)) {
+					classNodes.add(classNode);
+					for (Node<OWLClass> child : classNode.children) {
+						if (seen.add(child)) {
+							nextLevel.add(child);
+						}
+					}
+				}
+				level = nextLevel;
+			}
+		} finally {
+			executorService.shutdown();
+		}
+		registerClassNodes(classNodes);
+	}
+
+	/**
+	 * Reads the nodes of the ELK taxonomy, which is already held in memory, and adds them to the taxonomy in topological order.
+	 */
+	private void walkElkTaxonomy() {
+		final TaxonomyNode<ElkClass> topNode = elkTaxonomy.getTopNode();
+		final TaxonomyNode<ElkClass> bottomNode = elkTaxonomy.getBottomNode();
+		final List<ClassNode<TaxonomyNode<ElkClass>>> classNodes = new ArrayList<>();
+		for (TaxonomyNode<ElkClass> node : elkTaxonomy.getNodes()) {
+			if (node == topNode || node == bottomNode) {
+				continue;
+			}
+			final ClassNode<TaxonomyNode<ElkClass>> classNode = new ClassNode<>(node, false, false);
+			getConceptIds(node, classNode.conceptIds);
+			if (classNode.conceptIds.isEmpty()) {
+				continue;
+			}
+			classNode.representativeConceptId = classNode.conceptIds.iterator().next();
+			for (TaxonomyNode<ElkClass> parentNode : node.getDirectSuperNodes()) {
+				// No parents if we found the Top node, nodes without concepts are skipped so they can not be parents
+				final long parentConceptId = parentNode != topNode ? getConceptIds(parentNode, new LongOpenHashSet()) : -1;
+				if (parentConceptId != -1) {
+					classNode.parents.add(parentNode);
+					classNode.parentConceptIds.add(parentConceptId);
+				}
+			}
+			classNodes.add(classNode);
+		}
+		final ClassNode<TaxonomyNode<ElkClass>> unsatisfiableNode = new ClassNode<>(bottomNode, false, true);
+		getConceptIds(bottomNode, unsatisfiableNode.conceptIds);
+		classNodes.add(unsatisfiableNode);
+		registerClassNodes(classNodes);
+	}
+
+	private long getConceptIds(final TaxonomyNode<ElkClass> node, final Set<Long> conceptIds) {
+		for (final ElkClass elkClass : node.getMembers()) {
+			if (OntologyHelper.isConceptClass(elkClass)) {
+				conceptIds.add(OntologyHelper.getConceptId(elkClass));
+			}
+		}
+		return conceptIds.isEmpty() ? -1 : conceptIds.iterator().next();
+	}
+
+	/**
+	 * Builds an adjacency table of the class nodes and adds them to the taxonomy using Kahn's algorithm.
+	 */
+	private <N> void registerClassNodes(final List<ClassNode<N>> classNodes) {
+		final Map<N, Integer> ordinals = new HashMap<>();
+		final List<ClassNode<N>> conceptNodes = new ArrayList<>();
+		for (ClassNode<N> classNode : classNodes) {
+			if (classNode.bottomNode) {
+				if (!classNode.conceptIds.isEmpty()) {
+					registerEquivalentConceptIds(classNode.conceptIds, true);
+				}
+			} else if (!classNode.topNode) {
+				ordinals.put(classNode.node, conceptNodes.size());
+				conceptNodes.add(classNode);
+			}
+		}
+		final int nodeCount = conceptNodes.size();
+		final int[] inDegree = new int[nodeCount];
+		final int[] childOffsets = new int[nodeCount + 1];
+		for (int i = 0; i < nodeCount; i++) {
+			for (N parent : conceptNodes.get(i).parents) {
+				childOffsets[getOrdinal(ordinals, parent) + 1]++;
+				inDegree[i]++;
+			}
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			childOffsets[i + 1] += childOffsets[i];
+		}
+		final int[] children = new int[childOffsets[nodeCount]];
+		final int[] childFill = Arrays.copyOf(childOffsets, nodeCount);
+		for (int i = 0; i < nodeCount; i++) {
+			for (N parent : conceptNodes.get(i).parents) {
+				children[childFill[getOrdinal(ordinals, parent)]++] = i;
+			}
+		}
+
+		// Kahn's algorithm, a node is added once all of its parents have been added
+		final IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+		for (int i = 0; i < nodeCount; i++) {
+			if (inDegree[i] == 0) {
+				queue.enqueue(i);
+			}
+		}
+		int added = 0;
+		while (!queue.isEmpty()) {
+			final int current = queue.dequeueInt();
+			registerClassNode(conceptNodes.get(current));
+			added++;
+			for (int i = childOffsets[current]; i < childOffsets[current + 1]; i++) {
+				if (--inDegree[children[i]] == 0) {
+					queue.enqueue(children[i]);
+				}
+			}
+		}
+		if (added != nodeCount) {
+			LOGGER.warn("{} class nodes could not be added to the taxonomy because of a cycle in the class hierarchy.", nodeCount - added);
+		}
+	}
+
+	private static <N> int getOrdinal(final Map<N, Integer> ordinals, final N node) {
+		final Integer ordinal = ordinals.get(node);
+		if (ordinal == null) {
+			throw new IllegalStateException("Class hierarchy node " + node + " is a parent but it does not hold any concepts.");
+		}
+		return ordinal;
+	}
+
+	private List<ClassNode<Node<OWLClass>>> readNodes(final List<Node<OWLClass>> nodes, final ExecutorService executorService) {
+		// Each task sets a distinct range of elements
+		final List<ClassNode<Node<OWLClass>>> classNodes = new ArrayList<>(Collections.nCopies(nodes.size(), null));
+		final List<Callable<Void>> tasks = new ArrayList<>();
+		for (int start = 0; start < nodes.size(); start += NODES_PER_TASK) {
+			final int taskStart = start;
+			final int taskEnd = Math.min(start + NODES_PER_TASK, nodes.size());
+			tasks.add(() -> {
+				for (int i = taskStart; i < taskEnd; i++) {
+					classNodes.set(i, readNode(nodes.get(i)));
+				}
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> future : executorService.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while reading class hierarchy from reasoner.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to read class hierarchy from reasoner.", e.getCause());
+		}
+		return classNodes;
+	}
+
+	private ClassNode<Node<OWLClass>> readNode(final Node<OWLClass> node) {
+		final ClassNode<Node<OWLClass>> classNode = new ClassNode<>(node, node.isTopNode(), node.isBottomNode());
+		if (node.isTopNode()) {
+			classNode.children = reasoner.getSubClasses(node.getRepresentativeElement(), true).getNodes();
+			return classNode;
+		}
+		for (final OWLClass owlClass : node) {
+			if (OntologyHelper.isConceptClass(owlClass)) {
+				classNode.conceptIds.add(OntologyHelper.getConceptId(owlClass));
+			}
+		}
+		if (node.isBottomNode()) {
+			return classNode;
+		}
+		classNode.representativeConceptId = classNode.conceptIds.iterator().next();
+
+		for (final Node<OWLClass> parentNode : reasoner.getSuperClasses(node.getRepresentativeElement(), true)) {
+			// No parents if we found the Top node
+			if (parentNode.isTopNode()) {
+				break;
+			}
+			classNode.parents.add(parentNode);
+			classNode.parentConceptIds.add(getConceptIds(parentNode, new LongOpenHashSet()));
+		}
+		classNode.children = reasoner.getSubClasses(node.getRepresentativeElement(), true).getNodes();
+		return classNode;
+	}
+
+	private void registerClassNode(final ClassNode<?> classNode) {
+		if (classNode.conceptIds.size() > 1) {
+			registerEquivalentConceptIds(classNode.conceptIds, false);
+		}
+
+		registerParentConceptIds(classNode.representativeConceptId, classNode.parentConceptIds);
+
+		final Set<Long> representativeParent = Collections.singleton(classNode.representativeConceptId);
+		for (Long conceptId : classNode.conceptIds) {
+			if (conceptId != classNode.representativeConceptId) {
+				registerParentConceptIds(conceptId, representativeParent);
+			}
+		}
+	}
+
 	private NodeSet<OWLClass> walkClasses(final Node<OWLClass> node) {
 
 		if (isNodeProcessed(node)) {
@@ -274,4 +528,21 @@ public class ReasonerTaxonomyWalker {
 		}
 	}
 
+	private static final class ClassNode<N> {
+
+		private final N node;
+		private final boolean topNode;
+		private final boolean bottomNode;
+		private final Set<Long> conceptIds = new LongOpenHashSet();
+		private long representativeConceptId;
+		private final List<N> parents = new ArrayList<>();
+		private final Set<Long> parentConceptIds = new LongOpenHashSet();
+		private Set<N> children = Collections.emptySet();
+
+		private ClassNode(N node, boolean topNode, boolean bottomNode) {
+			this.node = node;
+			this.topNode = topNode;
+			this.bottomNode = bottomNode;
+		}
+	}
 }
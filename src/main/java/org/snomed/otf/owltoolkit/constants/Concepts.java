@@ -28,25 +28,34 @@ public class Concepts {
 	public static final Long IS_A_LONG = parseLong(IS_A);
 
 	public static final String FULLY_DEFINED = "900000000000073002";
+	public static final Long FULLY_DEFINED_LONG = parseLong(FULLY_DEFINED);
 	public static final String PRIMITIVE = "900000000000074008";
 	public static final String EXISTENTIAL_RESTRICTION_MODIFIER = "900000000000451002";
 	public static final String UNIVERSAL_RESTRICTION_MODIFIER = "900000000000452009";
+	public static final Long UNIVERSAL_RESTRICTION_MODIFIER_LONG = parseLong(UNIVERSAL_RESTRICTION_MODIFIER);
 
 	public static final String INFERRED_RELATIONSHIP = "900000000000011006";
 	public static final String STATED_RELATIONSHIP = "900000000000010007";
+	public static final Long STATED_RELATIONSHIP_LONG = parseLong(STATED_RELATIONSHIP);
 	public static final String ADDITIONAL_RELATIONSHIP = "900000000000227009";
 	public static final Long ADDITIONAL_RELATIONSHIP_LONG = parseLong(ADDITIONAL_RELATIONSHIP);
 	public static final String DEFINING_RELATIONSHIP = "900000000000006009";
 
 	public static final String FSN = "900000000000003001";
+	public static final Long FSN_LONG = parseLong(FSN);
 
 	public static final String ALL_PRECOORDINATED_CONTENT = "723594008";
 
 	public static final String OWL_ONTOLOGY_REFERENCE_SET = "762103008";
+	public static final Long OWL_ONTOLOGY_REFERENCE_SET_LONG = parseLong(OWL_ONTOLOGY_REFERENCE_SET);
 	public static final String OWL_ONTOLOGY_NAMESPACE = "734146004";
+	public static final Long OWL_ONTOLOGY_NAMESPACE_LONG = parseLong(OWL_ONTOLOGY_NAMESPACE);
 	public static final String OWL_ONTOLOGY_HEADER = "734147008";
+	public static final Long OWL_ONTOLOGY_HEADER_LONG = parseLong(OWL_ONTOLOGY_HEADER);
 	public static final String OWL_AXIOM_REFERENCE_SET = "733073007";
+	public static final Long OWL_AXIOM_REFERENCE_SET_LONG = parseLong(OWL_AXIOM_REFERENCE_SET);
 	public static final String MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL_REFERENCE_SET = "723561005";
+	public static final Long MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL_REFERENCE_SET_LONG = parseLong(MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL_REFERENCE_SET);
 
 	// Concepts that require special care when classifying
 	public static final String CONCEPT_MODEL_ATTRIBUTE = "410662002";
@@ -11,10 +11,12 @@ import org.snomed.otf.owltoolkit.constants.Concepts;
 import org.snomed.otf.owltoolkit.ontology.OntologyService;
 import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
 import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyCache;
 import org.snomed.otf.owltoolkit.util.InputStreamSet;
 import org.snomed.otf.owltoolkit.util.OptionalFileInputStream;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -48,6 +50,26 @@ public class RF2ToOWLService {
 		} catch (ReleaseImportException e) {
 			throw new ConversionException("Failed to load RF2 archive.", e);
 		}
+		convertTaxonomyToOWL(ontologyUriOverride, versionDate, snomedTaxonomy, owlFileOutputStream);
+	}
+
+	/**
+	 * Converts RF2 to OWL using a cached copy of the snapshot if one exists for the content of these archives.
+	 */
+	public void convertRF2ArchiveToOWL(String ontologyUriOverride, String versionDate, boolean includeFSNs, Set<File> snomedRf2SnapshotArchiveFiles,
+			OptionalFileInputStream deltaStream, SnomedTaxonomyCache snapshotCache, OutputStream owlFileOutputStream) throws ConversionException {
+
+		logger.info("Loading RF2 files");
+		SnomedTaxonomy snomedTaxonomy;
+		try {
+			snomedTaxonomy = new SnomedTaxonomyBuilder().build(snomedRf2SnapshotArchiveFiles, deltaStream.getInputStream().orElse(null), snapshotCache, includeFSNs);
+		} catch (ReleaseImportException e) {
+			throw new ConversionException("Failed to load RF2 archive.", e);
+		}
+		convertTaxonomyToOWL(ontologyUriOverride, versionDate, snomedTaxonomy, owlFileOutputStream);
+	}
+
+	private void convertTaxonomyToOWL(String ontologyUriOverride, String versionDate, SnomedTaxonomy snomedTaxonomy, OutputStream owlFileOutputStream) throws ConversionException {
 
 		String ontologyUri;
 		if (ontologyUriOverride != null && !ontologyUriOverride.isEmpty()) {
@@ -16,13 +16,14 @@ import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
 import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
 import org.snomed.otf.owltoolkit.util.InputStreamSet;
 import org.snomed.otf.owltoolkit.util.OptionalFileInputStream;
+import org.snomed.otf.owltoolkit.util.ParallelZipOutputStream;
+import org.snomed.otf.owltoolkit.util.RandomUuidGenerator;
+import org.snomed.otf.owltoolkit.util.Rf2RowWriter;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.function.Supplier;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import static java.lang.Long.parseLong;
 
@@ -31,21 +32,26 @@ import static java.lang.Long.parseLong;
  */
 public class StatedRelationshipToOwlRefsetService {
 
-	private Supplier<String> identifierSupplier = () -> UUID.randomUUID().toString();
-	private static final String TAB = "\t";
+	private static final long SNOMED_CT_MODEL_COMPONENT_MODULE = parseLong(Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE);
+	private static final long SNOMED_CT_CORE_MODULE = parseLong(Concepts.SNOMED_CT_CORE_MODULE);
+	private static final long OWL_AXIOM_REFERENCE_SET = parseLong(Concepts.OWL_AXIOM_REFERENCE_SET);
+
+	private final RandomUuidGenerator uuidGenerator = new RandomUuidGenerator();
+	private Supplier<String> identifierSupplier;
+	private int threads = Runtime.getRuntime().availableProcessors();
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public void convertStatedRelationshipsToOwlRefsetAndInactiveRelationshipsArchive(InputStream snomedRf2SnapshotArchive, OptionalFileInputStream deltaStream,
 			OutputStream rf2DeltaZipResults, String effectiveDate) throws ConversionException, OWLOntologyCreationException, IOException {
 
 		// Create zip stream
-		try (ZipOutputStream zipOutputStream = new ZipOutputStream(rf2DeltaZipResults)) {
+		try (ParallelZipOutputStream zipOutputStream = new ParallelZipOutputStream(rf2DeltaZipResults, threads)) {
 
 			// Load required parts of RF2 into memory, copying existing owl axioms to output file
 			logger.info("Loading RF2 files");
 
 			// Write inactive stated relationships to output zip during snapshot loading
-			zipOutputStream.putNextEntry(new ZipEntry("sct2_StatedRelationship_Delta_INT_" + effectiveDate + ".txt"));
+			zipOutputStream.putNextEntry("sct2_StatedRelationship_Delta_INT_" + effectiveDate + ".txt");
 			PublishedStatedRelationshipInactivator publishedStatedRelationshipInactivator = new PublishedStatedRelationshipInactivator(zipOutputStream);
 
 			// Write existing axioms to output zip during delta loading
@@ -53,8 +59,8 @@ public class StatedRelationshipToOwlRefsetService {
 				try {
 					publishedStatedRelationshipInactivator.complete();
 					zipOutputStream.closeEntry();
-					zipOutputStream.putNextEntry(new ZipEntry("sct2_sRefset_OWLAxiomDelta_INT_" + effectiveDate + ".txt"));
-					return new BufferedWriter(new OutputStreamWriter(zipOutputStream));
+					zipOutputStream.putNextEntry("sct2_sRefset_OWLAxiomDelta_INT_" + effectiveDate + ".txt");
+					return new Rf2RowWriter(zipOutputStream);
 				} catch (IOException e) {
 					logger.error("Failed to start OWL Axiom zip entry", e);
 				}
@@ -91,7 +97,7 @@ public class StatedRelationshipToOwlRefsetService {
 
 		try {
 			// Leave stream open so other entries can be written when used as a zip stream
-			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream));
+			Rf2RowWriter writer = new Rf2RowWriter(outputStream);
 
 			ByteArrayOutputStream functionalSyntaxOutputStream = new ByteArrayOutputStream();
 			OutputStreamWriter functionalSyntaxWriter = new OutputStreamWriter(functionalSyntaxOutputStream, Charset.forName("UTF-8"));
@@ -107,36 +113,31 @@ public class StatedRelationshipToOwlRefsetService {
 					// id	effectiveTime	active	moduleId	refsetId	referencedComponentId	owlExpression
 
 					// Random ID
-					writer.write(generateIdentifier());
-					writer.write(TAB);
-
-					// Blank effectiveTime
-					writer.write(TAB);
-
-					// Active
-					writer.write("1");
-					writer.write(TAB);
-
-					// Module
-					writer.write(modelComponentIds.contains(conceptId) ? Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE : Concepts.SNOMED_CT_CORE_MODULE);
-					writer.write(TAB);
-
-					// RefsetId
-					writer.write(Concepts.OWL_AXIOM_REFERENCE_SET);
-					writer.write(TAB);
+					if (identifierSupplier != null) {
+						writer.field(identifierSupplier.get());
+					} else {
+						writer.field(uuidGenerator.next());
+					}
 
-					// referencedComponentId
-					writer.write(conceptId + "");
-					writer.write(TAB);
-
-					// OWL Expression
 					// Render Axiom
 					owlAxiom.accept(functionalSyntaxObjectRenderer);
 					functionalSyntaxWriter.flush();
-					// Write axiom string to file
-					writer.write(functionalSyntaxOutputStream.toString());
+
+					writer
+							// Blank effectiveTime
+							.emptyField()
+							// Active
+							.field(1)
+							// Module
+							.field(modelComponentIds.contains(conceptId) ? SNOMED_CT_MODEL_COMPONENT_MODULE : SNOMED_CT_CORE_MODULE)
+							// RefsetId
+							.field(OWL_AXIOM_REFERENCE_SET)
+							// referencedComponentId
+							.field(conceptId)
+							// OWL Expression
+							.field(functionalSyntaxOutputStream.toByteArray())
+							.endRow();
 					functionalSyntaxOutputStream.reset();
-					writer.newLine();
 				}
 			}
 			writer.flush();
@@ -147,13 +148,12 @@ public class StatedRelationshipToOwlRefsetService {
 
 	private static class PublishedStatedRelationshipInactivator extends ImpotentComponentFactory {
 
-		private final BufferedWriter writer;
+		private final Rf2RowWriter writer;
 		private final List<IOException> exceptionsThrown;
 
-		PublishedStatedRelationshipInactivator(ZipOutputStream zipOutputStream) throws IOException {
-			writer = new BufferedWriter(new OutputStreamWriter(zipOutputStream));
-			writer.write(RF2Headers.RELATIONSHIP_HEADER);
-			writer.newLine();
+		PublishedStatedRelationshipInactivator(OutputStream outputStream) throws IOException {
+			writer = new Rf2RowWriter(outputStream);
+			writer.line(RF2Headers.RELATIONSHIP_HEADER);
 			exceptionsThrown = new ArrayList<>();
 		}
 
@@ -162,44 +162,21 @@ public class StatedRelationshipToOwlRefsetService {
 			if (active.equals("1") && characteristicTypeId.equals(Concepts.STATED_RELATIONSHIP)) {
 				// Make active stated relationship inactive
 				try {
-					// id
-					writer.write(id);
-					writer.write(TAB);
-
-					// effectiveTime
-					writer.write(TAB);
-
-					// active
-					writer.write("0");
-					writer.write(TAB);
-
-					// moduleId
-					writer.write(moduleId);
-					writer.write(TAB);
-
-					// sourceId
-					writer.write(sourceId);
-					writer.write(TAB);
-
-					// destinationId
-					writer.write(destinationId);
-					writer.write(TAB);
-
-					// relationshipGroup
-					writer.write(relationshipGroup);
-					writer.write(TAB);
-
-					// typeId
-					writer.write(typeId);
-					writer.write(TAB);
-
-					// characteristicTypeId
-					writer.write(Concepts.STATED_RELATIONSHIP);
-					writer.write(TAB);
-
-					// modifierId
-					writer.write("900000000000451002");
-					writer.newLine();
+					writer
+							.field(id)
+							// effectiveTime
+							.emptyField()
+							// active
+							.field(0)
+							.field(moduleId)
+							.field(sourceId)
+							.field(destinationId)
+							.field(relationshipGroup)
+							.field(typeId)
+							.field(Concepts.STATED_RELATIONSHIP)
+							// modifierId
+							.field("900000000000451002")
+							.endRow();
 				} catch (IOException e) {
 					exceptionsThrown.add(e);
 				}
@@ -216,12 +193,12 @@ public class StatedRelationshipToOwlRefsetService {
 
 	private static class AxiomCopier extends ImpotentComponentFactory {
 
-		private final Supplier<BufferedWriter> startFunction;
+		private final Supplier<Rf2RowWriter> startFunction;
 		private boolean entryStarted;
-		private BufferedWriter writer;
+		private Rf2RowWriter writer;
 		private final List<IOException> exceptionsThrown;
 
-		AxiomCopier(Supplier<BufferedWriter> startFunction) {
+		AxiomCopier(Supplier<Rf2RowWriter> startFunction) {
 			exceptionsThrown = new ArrayList<>();
 			this.startFunction = startFunction;
 		}
@@ -232,20 +209,15 @@ public class StatedRelationshipToOwlRefsetService {
 			if (refsetId.equals(Concepts.OWL_AXIOM_REFERENCE_SET)) {
 				try {
 					startEntry();
-					writer.write(id);
-					writer.write(TAB);
-					writer.write(effectiveTime);
-					writer.write(TAB);
-					writer.write(active);
-					writer.write(TAB);
-					writer.write(moduleId);
-					writer.write(TAB);
-					writer.write(refsetId);
-					writer.write(TAB);
-					writer.write(referencedComponentId);
-					writer.write(TAB);
-					writer.write(otherValues[0]);
-					writer.newLine();
+					writer
+							.field(id)
+							.field(effectiveTime)
+							.field(active)
+							.field(moduleId)
+							.field(refsetId)
+							.field(referencedComponentId)
+							.field(otherValues[0])
+							.endRow();
 				} catch (IOException e) {
 					exceptionsThrown.add(e);
 				}
@@ -255,8 +227,7 @@ public class StatedRelationshipToOwlRefsetService {
 		private void startEntry() throws IOException {
 			if (!entryStarted) {
 				writer = startFunction.get();
-				writer.write(RF2Headers.OWL_EXPRESSION_REFERENCE_SET_HEADER);
-				writer.newLine();
+				writer.line(RF2Headers.OWL_EXPRESSION_REFERENCE_SET_HEADER);
 				entryStarted = true;
 			}
 		}
@@ -271,11 +242,17 @@ public class StatedRelationshipToOwlRefsetService {
 		}
 	}
 
-	private String generateIdentifier() {
-		return identifierSupplier.get();
-	}
-
+	/**
+	 * @param identifierSupplier supplier of reference set member ids, random UUIDs are used by default.
+	 */
 	public void setIdentifierSupplier(Supplier<String> identifierSupplier) {
 		this.identifierSupplier = identifierSupplier;
 	}
+
+	/**
+	 * @param threads number of threads used to compress the output archive, defaults to the number of available processors.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.normalform;
+
+import it.unimi.dsi.fastutil.longs.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * State recorded by a normal form generation run which allows the next run to only normalise concepts whose inputs have changed.
+ *
+ * For each concept the state holds the parents from the reasoner taxonomy, the non IS-A relationships in normal form
+ * from the first pass and hashes of the stated definition and existing inferred relationships used as input.
+ * Concepts which had inferred relationship changes are also recorded because those changes will be reported again
+ * until the results are imported.
+ * A state is only used if the property chains match those of the run which recorded it.
+ */
+public class NormalFormState {
+
+	private static final int MAGIC_NUMBER = 0x534E4E46;
+	private static final int FORMAT_VERSION = 2;
+
+	private final long configurationHash;
+	private final Long2ObjectMap<long[]> parents = new Long2ObjectOpenHashMap<>();
+	private final Long2ObjectMap<Collection<Relationship>> nonIsAFragments = new Long2ObjectOpenHashMap<>();
+	private final Long2LongMap statedHashes = new Long2LongOpenHashMap();
+	private final Long2LongMap inferredHashes = new Long2LongOpenHashMap();
+	private final LongSet changedConceptIds = new LongOpenHashSet();
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NormalFormState.class);
+
+	NormalFormState(long configurationHash) {
+		this.configurationHash = configurationHash;
+	}
+
+	/**
+	 * Writes the state to a file, replacing any existing file.
+	 */
+	public void write(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create normal form state directory " + directory.getAbsolutePath());
+		}
+		File tempFile = File.createTempFile("normal-form-state", ".tmp", directory);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+			out.writeInt(MAGIC_NUMBER);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(configurationHash);
+
+			out.writeInt(parents.size());
+			for (Long2ObjectMap.Entry<long[]> entry : parents.long2ObjectEntrySet()) {
+				long conceptId = entry.getLongKey();
+				out.writeLong(conceptId);
+				out.writeLong(statedHashes.get(conceptId));
+				out.writeLong(inferredHashes.get(conceptId));
+				out.writeBoolean(changedConceptIds.contains(conceptId));
+				long[] parentIds = entry.getValue();
+				out.writeInt(parentIds.length);
+				for (long parentId : parentIds) {
+					out.writeLong(parentId);
+				}
+				Collection<Relationship> fragments = nonIsAFragments.getOrDefault(conceptId, Collections.emptyList());
+				out.writeInt(fragments.size());
+				for (Relationship fragment : fragments) {
+					out.writeLong(fragment.getRelationshipId());
+					out.writeLong(fragment.getModuleId());
+					out.writeLong(fragment.getTypeId());
+					out.writeLong(fragment.getDestinationId());
+					out.writeBoolean(fragment.isDestinationNegated());
+					out.writeInt(fragment.getGroup());
+					out.writeInt(fragment.getUnionGroup());
+					out.writeBoolean(fragment.isUniversal());
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tempFile.toPath());
+			throw e;
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.info("Normal form state of {} concepts written to {}", parents.size(), file.getAbsolutePath());
+	}
+
+	/**
+	 * Reads a state written by a previous run.
+	 */
+	public static NormalFormState read(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+			if (in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION) {
+				throw new IOException("Unrecognised normal form state file format " + file.getAbsolutePath());
+			}
+			NormalFormState state = new NormalFormState(in.readLong());
+			for (int count = in.readInt(); count > 0; count--) {
+				long conceptId = in.readLong();
+				long statedHash = in.readLong();
+				long inferredHash = in.readLong();
+				boolean changed = in.readBoolean();
+				long[] parentIds = new long[in.readInt()];
+				for (int i = 0; i < parentIds.length; i++) {
+					parentIds[i] = in.readLong();
+				}
+				int fragmentCount = in.readInt();
+				List<Relationship> fragments = new ArrayList<>(fragmentCount);
+				for (int i = 0; i < fragmentCount; i++) {
+					long relationshipId = in.readLong();
+					long moduleId = in.readLong();
+					long typeId = in.readLong();
+					long destinationId = in.readLong();
+					boolean destinationNegated = in.readBoolean();
+					int group = in.readInt();
+					int unionGroup = in.readInt();
+					boolean universal = in.readBoolean();
+					fragments.add(new Relationship(relationshipId, -1, moduleId, typeId, destinationId, destinationNegated, group, unionGroup, universal, -1));
+				}
+				state.addConcept(conceptId, parentIds, statedHash, inferredHash);
+				state.nonIsAFragments.put(conceptId, Collections.unmodifiableList(fragments));
+				if (changed) {
+					state.changedConceptIds.add(conceptId);
+				}
+			}
+			LOGGER.info("Normal form state of {} concepts read from {}", state.parents.size(), file.getAbsolutePath());
+			return state;
+		}
+	}
+
+	void addConcept(long conceptId, long[] parentIds, long statedHash, long inferredHash) {
+		parents.put(conceptId, parentIds);
+		statedHashes.put(conceptId, statedHash);
+		inferredHashes.put(conceptId, inferredHash);
+	}
+
+	long getConfigurationHash() {
+		return configurationHash;
+	}
+
+	LongSet getConceptIds() {
+		return parents.keySet();
+	}
+
+	/**
+	 * @return the parents of the concept or null if the concept was not part of the run.
+	 */
+	long[] getParents(long conceptId) {
+		return parents.get(conceptId);
+	}
+
+	long getStatedHash(long conceptId) {
+		return statedHashes.get(conceptId);
+	}
+
+	long getInferredHash(long conceptId) {
+		return inferredHashes.get(conceptId);
+	}
+
+	Long2ObjectMap<Collection<Relationship>> getNonIsAFragments() {
+		return nonIsAFragments;
+	}
+
+	LongSet getChangedConceptIds() {
+		return changedConceptIds;
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.normalform;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The relationships of one concept with the fields compared by {@link RelationshipChangeProcessor} packed into primitive keys:
+ * type, destination and an attributes key holding group, union group, universal and destination negated.
+ * Positions are ordered by all keys, equal relationships keep the order they were given in.
+ *
+ * Instances are reused between concepts to avoid allocation, they are not thread safe.
+ */
+final class PackedRelationships {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final long WITHOUT_GROUP_MASK = 0xFFFFFFFFL;
+
+	private Relationship[] relationships = new Relationship[INITIAL_CAPACITY];
+	private long[] typeIds = new long[INITIAL_CAPACITY];
+	private long[] destinationIds = new long[INITIAL_CAPACITY];
+	private long[] attributes = new long[INITIAL_CAPACITY];
+	private long[] moduleIds = new long[INITIAL_CAPACITY];
+	private int[] order = new int[INITIAL_CAPACITY];
+	private int[] moduleOrder = new int[INITIAL_CAPACITY];
+	private boolean[] matched = new boolean[INITIAL_CAPACITY];
+	private int[] updatedFrom = new int[INITIAL_CAPACITY];
+	private final Int2IntOpenHashMap groupSizes = new Int2IntOpenHashMap();
+	private boolean groupSizesCounted;
+	private int size;
+
+	PackedRelationships load(Collection<Relationship> source) {
+		size = source.size();
+		if (size > relationships.length) {
+			int capacity = Math.max(size, relationships.length * 2);
+			relationships = new Relationship[capacity];
+			typeIds = new long[capacity];
+			destinationIds = new long[capacity];
+			attributes = new long[capacity];
+			moduleIds = new long[capacity];
+			order = new int[capacity];
+			moduleOrder = new int[capacity];
+			matched = new boolean[capacity];
+			updatedFrom = new int[capacity];
+		}
+		int index = 0;
+		for (Relationship relationship : source) {
+			relationships[index] = relationship;
+			typeIds[index] = relationship.getTypeId();
+			destinationIds[index] = relationship.getDestinationId();
+			attributes[index] = attributes(relationship);
+			moduleIds[index] = relationship.getModuleId();
+			order[index] = index;
+			index++;
+		}
+		Arrays.fill(matched, 0, size, false);
+		Arrays.fill(updatedFrom, 0, size, -1);
+		groupSizesCounted = false;
+		// Merge sort is stable
+		IntArrays.mergeSort(order, 0, size, this::compare);
+		return this;
+	}
+
+	/**
+	 * Orders indexes by all keys then by module id descending.
+	 */
+	int[] getModuleOrder() {
+		for (int i = 0; i < size; i++) {
+			moduleOrder[i] = i;
+		}
+		IntArrays.mergeSort(moduleOrder, 0, size, (a, b) -> {
+			int compare = compare(a, b);
+			return compare != 0 ? compare : Long.compare(moduleIds[b], moduleIds[a]);
+		});
+		return moduleOrder;
+	}
+
+	/**
+	 * Finds a position with the same keys using the same algorithm as {@link java.util.Collections#binarySearch(java.util.List, Object, java.util.Comparator)}
+	 * so that the position found among equal keys is the same.
+	 * @return the position or (-(insertion point) - 1) if not found.
+	 */
+	int binarySearch(long typeId, long destinationId, long attributes, boolean ignoreGroup) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int index = order[mid];
+			int compare = Long.compare(typeIds[index], typeId);
+			if (compare == 0) {
+				compare = Long.compare(destinationIds[index], destinationId);
+			}
+			if (compare == 0) {
+				compare = ignoreGroup ? Long.compare(this.attributes[index] & WITHOUT_GROUP_MASK, attributes & WITHOUT_GROUP_MASK)
+						: Long.compare(this.attributes[index], attributes);
+			}
+			if (compare < 0) {
+				low = mid + 1;
+			} else if (compare > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * @return the number of relationships in the group.
+	 */
+	int getGroupSize(int group) {
+		if (!groupSizesCounted) {
+			groupSizes.clear();
+			for (int index = 0; index < size; index++) {
+				groupSizes.addTo(group(attributes[index]), 1);
+			}
+			groupSizesCounted = true;
+		}
+		return groupSizes.get(group);
+	}
+
+	/**
+	 * Changes the group of the relationship at this index, the relationship object is also updated.
+	 * The position of the relationship is not changed.
+	 */
+	void setGroup(int index, int group) {
+		relationships[index].setGroup(group);
+		attributes[index] = (attributes[index] & WITHOUT_GROUP_MASK) | ((long) group << 32);
+	}
+
+	int size() {
+		return size;
+	}
+
+	int getIndex(int position) {
+		return order[position];
+	}
+
+	Relationship getRelationship(int index) {
+		return relationships[index];
+	}
+
+	long getTypeId(int index) {
+		return typeIds[index];
+	}
+
+	long getDestinationId(int index) {
+		return destinationIds[index];
+	}
+
+	long getAttributes(int index) {
+		return attributes[index];
+	}
+
+	/**
+	 * Marks the relationship at this position as matched.
+	 * @return false if it was already matched.
+	 */
+	boolean match(int position) {
+		if (matched[position]) {
+			return false;
+		}
+		matched[position] = true;
+		return true;
+	}
+
+	int getUpdatedFrom(int position) {
+		return updatedFrom[position];
+	}
+
+	void setUpdatedFrom(int position, int otherIndex) {
+		updatedFrom[position] = otherIndex;
+	}
+
+	/**
+	 * Releases the relationship objects.
+	 */
+	void clear() {
+		Arrays.fill(relationships, 0, size, null);
+		size = 0;
+	}
+
+	private int compare(int a, int b) {
+		int compare = Long.compare(typeIds[a], typeIds[b]);
+		if (compare == 0) {
+			compare = Long.compare(destinationIds[a], destinationIds[b]);
+		}
+		if (compare == 0) {
+			compare = Long.compare(attributes[a], attributes[b]);
+		}
+		return compare;
+	}
+
+	static int group(long attributes) {
+		return (int) (attributes >> 32);
+	}
+
+	/**
+	 * Packs group, union group, universal and destination negated so that comparing the keys compares the fields in that order.
+	 * The union group must be less than 2^29.
+	 */
+	static long attributes(Relationship relationship) {
+		return ((long) relationship.getGroup() << 32)
+				| ((long) relationship.getUnionGroup() << 2)
+				| (relationship.isUniversal() ? 2 : 0)
+				| (relationship.isDestinationNegated() ? 1 : 0);
+	}
+}
@@ -16,6 +16,8 @@
 package org.snomed.otf.owltoolkit.normalform;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.snomed.otf.owltoolkit.constants.Concepts;
 import org.snomed.otf.owltoolkit.domain.Relationship;
 
@@ -24,128 +26,145 @@ import java.util.*;
 /**
  * Compares two collections of change subjects and calls template methods whenever a removed, added or unmodified
  * element is encountered.
+ * {@link #apply(long, Collection, Collection)} may be called concurrently for different concepts.
+ *
+ * Changes are collected in memory unless a {@link Listener} is given, in which case they are passed on as each concept is processed
+ * and only the counts and the ids of the changed concepts are kept.
  */
 public class RelationshipChangeProcessor {
 
-	private static final Comparator<Relationship> RELATIONSHIP_COMPARATOR_ALL_FIELDS = Comparator
-			.comparing(Relationship::getTypeId)
-			.thenComparing(Relationship::getDestinationId)
-			.thenComparing(Relationship::getGroup)
-			.thenComparing(Relationship::getUnionGroup)
-			.thenComparing(Relationship::isUniversal)
-			.thenComparing(Relationship::isDestinationNegated);
-
-	private static final Comparator<Relationship> RELATIONSHIP_COMPARATOR_WITH_MODULE_ID = Comparator
-			.comparing(Relationship::getTypeId)
-			.thenComparing(Relationship::getDestinationId)
-			.thenComparing(Relationship::getGroup)
-			.thenComparing(Relationship::getUnionGroup)
-			.thenComparing(Relationship::isUniversal)
-			.thenComparing(Relationship::isDestinationNegated)
-			.thenComparing(Relationship::getModuleId, Comparator.reverseOrder());
-
-	private static final Comparator<Relationship> RELATIONSHIP_COMPARATOR_WITHOUT_GROUP = Comparator
-			.comparing(Relationship::getTypeId)
-			.thenComparing(Relationship::getDestinationId)
-			.thenComparing(Relationship::getUnionGroup)
-			.thenComparing(Relationship::isUniversal)
-			.thenComparing(Relationship::isDestinationNegated);
-
-	private final Map<Long, Set<Relationship>> addedStatements;
-	private final Map<Long, Set<Relationship>> removedStatements;
-	private Long addedCount;
-	private Long updatedCount;
-	private Long removedDueToConceptInactivationCount;
+	// Buffers reused between concepts processed by the same thread
+	private static final ThreadLocal<PackedRelationships> EXISTING_BUFFER = ThreadLocal.withInitial(PackedRelationships::new);
+	private static final ThreadLocal<PackedRelationships> NEW_BUFFER = ThreadLocal.withInitial(PackedRelationships::new);
+
+	private final Map<Long, Set<Relationship>> addedStatements = new Long2ObjectOpenHashMap<>();
+	private final Map<Long, Set<Relationship>> removedStatements = new Long2ObjectOpenHashMap<>();
+	private final LongSet changedConceptIds = new LongOpenHashSet();
+	private final Listener listener;
+	private long addedCount;
+	private long updatedCount;
+	private long redundantCount;
+	private long removedDueToConceptInactivationCount;
 
 	public RelationshipChangeProcessor() {
-		addedCount = 0L;
-		updatedCount = 0L;
-		removedDueToConceptInactivationCount = 0L;
-		addedStatements = new Long2ObjectOpenHashMap<>();
-		removedStatements = new Long2ObjectOpenHashMap<>();
+		this(null);
 	}
 
-	public void apply(final long conceptId, final Collection<Relationship> existingRelationships, final Collection<Relationship> newRelationships) {
+	/**
+	 * @param listener receives the changes of each concept instead of them being collected, may be null.
+	 */
+	public RelationshipChangeProcessor(Listener listener) {
+		this.listener = listener;
+	}
 
-		final List<Relationship> sortedOld = newSortedList(existingRelationships, RELATIONSHIP_COMPARATOR_ALL_FIELDS);
-		final List<Relationship> sortedNew = newSortedList(newRelationships, RELATIONSHIP_COMPARATOR_ALL_FIELDS);
+	/**
+	 * Relationships are compared using type, destination, group, union group, universal and destination negated,
+	 * packed into primitive keys, see {@link PackedRelationships}.
+	 */
+	public void apply(final long conceptId, final Collection<Relationship> existingRelationships, final Collection<Relationship> newRelationships) {
+		final PackedRelationships sortedOld = EXISTING_BUFFER.get().load(existingRelationships);
+		final PackedRelationships sortedNew = NEW_BUFFER.get().load(newRelationships);
+		try {
+			apply(conceptId, sortedOld, sortedNew);
+		} finally {
+			sortedOld.clear();
+			sortedNew.clear();
+		}
+	}
 
-		final Map<Relationship, Relationship> updatedRelationshipNewOldMap = new HashMap<>();
-		final Set<Integer> uniqueIndex = new HashSet<>();
+	private void apply(final long conceptId, final PackedRelationships sortedOld, final PackedRelationships sortedNew) {
+		final List<Relationship> redundantRelationships = new ArrayList<>();
+		final List<Relationship> addedOrChangedRelationships = new ArrayList<>();
+		int added = 0;
+		int updated = 0;
 
 		// For each existing relationship if it can not be found in the new set mark it as removed
-		for (final Relationship oldSubject : newSortedList(existingRelationships, RELATIONSHIP_COMPARATOR_WITH_MODULE_ID)) {
-			final int i = Collections.binarySearch(sortedNew, oldSubject, RELATIONSHIP_COMPARATOR_ALL_FIELDS);
+		final int[] oldModuleOrder = sortedOld.getModuleOrder();
+		for (int oldPosition = 0; oldPosition < sortedOld.size(); oldPosition++) {
+			final int oldIndex = oldModuleOrder[oldPosition];
+			final long typeId = sortedOld.getTypeId(oldIndex);
+			final long destinationId = sortedOld.getDestinationId(oldIndex);
+			final long attributes = sortedOld.getAttributes(oldIndex);
+			final int i = sortedNew.binarySearch(typeId, destinationId, attributes, false);
 			if (i < 0) {
 				// Handle the case where existing self grouped relationships are being moved out of group 0.
 				// This will happen as editions move from stated relationships to OWL axioms.
-				if (oldSubject.getGroup() == 0 && oldSubject.getTypeId() != Concepts.IS_A_LONG) {
-					final int y = Collections.binarySearch(sortedNew, oldSubject, RELATIONSHIP_COMPARATOR_WITHOUT_GROUP);
+				if (PackedRelationships.group(attributes) == 0 && typeId != Concepts.IS_A_LONG) {
+					final int y = sortedNew.binarySearch(typeId, destinationId, attributes, true);
 					if (y >= 0) {
 						// If this is the only relationship in the group we will update the group number.
-
-						int newGroup = sortedNew.get(y).getGroup();
-						int relationshipsInGroupCount = 0;
-						for (Relationship relationship : sortedNew) {
-							if (relationship.getGroup() == newGroup) {
-								relationshipsInGroupCount++;
-							}
-						}
-						if (relationshipsInGroupCount == 1) {
+						int newGroup = PackedRelationships.group(sortedNew.getAttributes(sortedNew.getIndex(y)));
+						if (sortedNew.getGroupSize(newGroup) == 1) {
 							// Update existing relationship rather than creating new
-							updatedRelationshipNewOldMap.put(sortedNew.get(y), oldSubject);
+							sortedNew.setUpdatedFrom(y, oldIndex);
 							continue;
 						}
 						// We keep the relationship ID when just the relationship group number changes
 						// but if the triple joins another group of relationships we need to make this one inactive and recreate.
 					}
 				}
-				handleRedundantRelationship(conceptId, oldSubject);
-			} else if (!uniqueIndex.add(i)) {
+				redundantRelationships.add(sortedOld.getRelationship(oldIndex));
+			} else if (!sortedNew.match(i)) {
 				// Existing relationship is a duplicate
-				handleRedundantRelationship(conceptId, oldSubject);
+				redundantRelationships.add(sortedOld.getRelationship(oldIndex));
 			}
 		}
 
 		// For each relationship in the new set if it does not match one in the old set mark is as added
-		for (final Relationship newMini : sortedNew) {
-			if (updatedRelationshipNewOldMap.containsKey(newMini)) {
+		for (int newPosition = 0; newPosition < sortedNew.size(); newPosition++) {
+			final int newIndex = sortedNew.getIndex(newPosition);
+			final Relationship newMini = sortedNew.getRelationship(newIndex);
+			final int updatedOldIndex = sortedNew.getUpdatedFrom(newPosition);
+			if (updatedOldIndex != -1) {
 				// Update existing relationship
-				Relationship existingRelationship = updatedRelationshipNewOldMap.get(newMini);
-				existingRelationship.setGroup(newMini.getGroup());
-				handleAddedOrChangedRelationship(conceptId, existingRelationship);
-				updatedCount++;
-			} else if (Collections.binarySearch(sortedOld, newMini, RELATIONSHIP_COMPARATOR_ALL_FIELDS) < 0) {
+				sortedOld.setGroup(updatedOldIndex, newMini.getGroup());
+				addedOrChangedRelationships.add(sortedOld.getRelationship(updatedOldIndex));
+				updated++;
+			} else if (sortedOld.binarySearch(sortedNew.getTypeId(newIndex), sortedNew.getDestinationId(newIndex), sortedNew.getAttributes(newIndex), false) < 0) {
 				newMini.clearId();// Make sure stated relationship ids don't get through into new inferred relationship results
-				handleAddedOrChangedRelationship(conceptId, newMini);
-				addedCount++;
+				addedOrChangedRelationships.add(newMini);
+				added++;
 			}
 		}
-	}
 
-	private List<Relationship> newSortedList(Collection<Relationship> relationships, Comparator<Relationship> comparator) {
-		final List<Relationship> sortedOld = new ArrayList<>(relationships);
-		sortedOld.sort(comparator);
-		return sortedOld;
-	}
+		//We will preserve any "Additional" characteristic types eg PartOf relationships
+		redundantRelationships.removeIf(relationship -> relationship.getCharacteristicTypeId() == Concepts.ADDITIONAL_RELATIONSHIP_LONG);
 
-	private void handleAddedOrChangedRelationship(long conceptId, Relationship addedSubject) {
-		addedStatements.computeIfAbsent(conceptId, k -> new HashSet<>()).add(addedSubject);
+		// Only the shared state is updated under lock so concepts can be processed concurrently
+		synchronized (this) {
+			if (!redundantRelationships.isEmpty() || !addedOrChangedRelationships.isEmpty()) {
+				changedConceptIds.add(conceptId);
+				handleChanges(conceptId, addedOrChangedRelationships, redundantRelationships);
+			}
+			addedCount += added;
+			updatedCount += updated;
+			redundantCount += redundantRelationships.size();
+		}
 	}
 
-	void handleRedundantRelationship(long conceptId, Relationship removedSubject) {
-		//We will preserve any "Additional" characteristic types eg PartOf relationships
-		if (removedSubject.getCharacteristicTypeId() == -1 || removedSubject.getCharacteristicTypeId() != Concepts.ADDITIONAL_RELATIONSHIP_LONG) {
-			removedStatements.computeIfAbsent(conceptId, k -> new HashSet<>()).add(removedSubject);
+	private void handleChanges(long conceptId, Collection<Relationship> addedOrChangedRelationships, Collection<Relationship> removedRelationships) {
+		if (listener != null) {
+			listener.relationshipsChanged(conceptId, addedOrChangedRelationships, removedRelationships);
+			return;
+		}
+		if (!addedOrChangedRelationships.isEmpty()) {
+			addedStatements.computeIfAbsent(conceptId, k -> new HashSet<>()).addAll(addedOrChangedRelationships);
+		}
+		if (!removedRelationships.isEmpty()) {
+			removedStatements.computeIfAbsent(conceptId, k -> new HashSet<>()).addAll(removedRelationships);
 		}
 	}
 
-	void processRemovalsDueToInactivation(Long inactiveConceptId, Set<Relationship> inferredRelationships) {
+	synchronized void processRemovalsDueToInactivation(Long inactiveConceptId, Set<Relationship> inferredRelationships) {
 		if (inferredRelationships.isEmpty()) {
 			return;
 		}
 		removedDueToConceptInactivationCount += inferredRelationships.size();
-		removedStatements.put(inactiveConceptId, inferredRelationships);
+		if (listener != null) {
+			listener.relationshipsChanged(inactiveConceptId, Collections.emptySet(), inferredRelationships);
+		} else {
+			removedStatements.put(inactiveConceptId, inferredRelationships);
+		}
 	}
 
 	public Long getAddedCount() {
@@ -157,11 +176,6 @@ public class RelationshipChangeProcessor {
 	}
 
 	public Long getRedundantCount() {
-		long redundantCount = 0L;
-		for (Set<Relationship> value : removedStatements.values()) {
-			redundantCount += value.size();
-		}
-		redundantCount -= removedDueToConceptInactivationCount;
 		return redundantCount;
 	}
 
@@ -169,11 +183,33 @@ public class RelationshipChangeProcessor {
 		return removedDueToConceptInactivationCount;
 	}
 
+	/**
+	 * @return the concepts with added, changed or redundant relationships, not including removals due to concept inactivation.
+	 */
+	public LongSet getChangedConceptIds() {
+		return changedConceptIds;
+	}
+
+	/**
+	 * @return the collected additions, always empty when a listener is used.
+	 */
 	public Map<Long, Set<Relationship>> getAddedStatements() {
 		return addedStatements;
 	}
 
+	/**
+	 * @return the collected removals, always empty when a listener is used.
+	 */
 	public Map<Long, Set<Relationship>> getRemovedStatements() {
 		return removedStatements;
 	}
+
+	/**
+	 * Receives the relationship changes of each concept as it is processed. Calls are made one at a time.
+	 */
+	public interface Listener {
+
+		void relationshipsChanged(long conceptId, Collection<Relationship> addedOrChangedRelationships, Collection<Relationship> removedRelationships);
+
+	}
 }
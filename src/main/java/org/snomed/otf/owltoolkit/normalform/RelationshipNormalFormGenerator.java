@@ -23,7 +23,15 @@ package org.snomed.otf.owltoolkit.normalform;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.*;
 import com.google.common.collect.Maps.EntryTransformer;
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectOpenCustomHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.owltoolkit.classification.ReasonerTaxonomy;
@@ -33,10 +41,16 @@ import org.snomed.otf.owltoolkit.domain.Relationship;
 import org.snomed.otf.owltoolkit.normalform.internal.*;
 import org.snomed.otf.owltoolkit.normalform.transitive.NodeGraph;
 import org.snomed.otf.owltoolkit.ontology.PropertyChain;
+import org.snomed.otf.owltoolkit.taxonomy.ConceptDictionary;
 import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
 
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.snomed.otf.owltoolkit.constants.Concepts.IS_A_LONG;
@@ -66,17 +80,59 @@ public final class RelationshipNormalFormGenerator {
 		}
 		return 0;
 	};
+	private static final Hash.Strategy<Relationship> FRAGMENT_STRATEGY = new Hash.Strategy<Relationship>() {
+		@Override
+		public int hashCode(final Relationship relationship) {
+			if (relationship == null) {
+				return 0;
+			}
+			long hash = relationship.getTypeId();
+			hash = hash * 31 + relationship.getDestinationId();
+			hash = hash * 31 + relationship.getGroup();
+			hash = hash * 31 + relationship.getUnionGroup();
+			hash = hash * 31 + (relationship.isUniversal() ? 1 : 0);
+			hash = hash * 31 + (relationship.isDestinationNegated() ? 1 : 0);
+			hash = hash * 31 + relationship.getModuleId();
+			return Long.hashCode(mix(hash));
+		}
+
+		@Override
+		public boolean equals(final Relationship a, final Relationship b) {
+			if (a == null || b == null) {
+				return a == b;
+			}
+			return a.getTypeId() == b.getTypeId()
+					&& a.getDestinationId() == b.getDestinationId()
+					&& a.getGroup() == b.getGroup()
+					&& a.getUnionGroup() == b.getUnionGroup()
+					&& a.isUniversal() == b.isUniversal()
+					&& a.isDestinationNegated() == b.isDestinationNegated()
+					&& a.getModuleId() == b.getModuleId();
+		}
+	};
 	private static final Logger LOGGER = LoggerFactory.getLogger(RelationshipNormalFormGenerator.class);
 
 	private final ReasonerTaxonomy reasonerTaxonomy;
 	private final SnomedTaxonomy snomedTaxonomy;
 	private final Set<PropertyChain> propertyChains;
+	private final Map<Long, List<PropertyChain>> propertyChainsByInferredType = new Long2ObjectOpenHashMap<>();
+	private final Set<Long> propertyChainSourceTypes = new LongOpenHashSet();
 
-	private final Map<Long, Collection<Relationship>> generatedNonIsACache = new Long2ObjectOpenHashMap<>();
+	private final int threads;
+	// Inferred non IS-A fragments in normal form indexed by reasoner taxonomy ordinal
+	private AtomicReferenceArray<Collection<Relationship>> generatedNonIsACache;
 	private final Set<Long> traversableProperties;
 	private final Map<Long, NodeGraph> transitiveNodeGraphs = new HashMap<>();
+	private boolean transitiveNodeGraphsComplete;
 	private final Map<Long, Set<AxiomRepresentation>> conceptAxiomStatementMap;
 
+	// State recorded by this run and, for an incremental run, the state of the previous run
+	private NormalFormState state;
+	private NormalFormState previousState;
+	private Set<Long> dirtyConceptIds;
+	private Set<Long> recomputedConceptIds;
+	private Set<Long> changedFragmentConceptIds;
+
 	/**
 	 * Creates a new distribution normal form generator instance.
 	 * @param reasonerTaxonomy the reasoner to extract results from (may not be {@code null})
@@ -86,17 +142,36 @@ public final class RelationshipNormalFormGenerator {
 	 */
 	public RelationshipNormalFormGenerator(final ReasonerTaxonomy reasonerTaxonomy, final SnomedTaxonomy snomedTaxonomy,
 			final Map<Long, Set<AxiomRepresentation>> conceptAxiomStatementMap, final Set<PropertyChain> propertyChains) {
+		this(reasonerTaxonomy, snomedTaxonomy, conceptAxiomStatementMap, propertyChains, 1);
+	}
+
+	/**
+	 * Creates a new distribution normal form generator instance which normalises concepts using the given number of threads.
+	 * With more than one thread the first pass processes each concept as soon as all of its parents are complete
+	 * and the second pass processes concepts in any order.
+	 * The results are the same for any number of threads because the first pass only depends on the results of the parents,
+	 * property chain redundancy checks which traverse the transitive graphs are applied in the second pass once the graphs are complete.
+	 * @param reasonerTaxonomy the reasoner to extract results from (may not be {@code null})
+	 * @param snomedTaxonomy the taxonomy as it existed before this classification run (may not be {@code null})
+	 * @param conceptAxiomStatementMap map of concept id to axiom set
+	 * @param propertyChains collection of property chains
+	 * @param threads number of threads to use
+	 */
+	public RelationshipNormalFormGenerator(final ReasonerTaxonomy reasonerTaxonomy, final SnomedTaxonomy snomedTaxonomy,
+			final Map<Long, Set<AxiomRepresentation>> conceptAxiomStatementMap, final Set<PropertyChain> propertyChains, final int threads) {
 
+		this.threads = threads;
 		this.reasonerTaxonomy = reasonerTaxonomy;
 		this.snomedTaxonomy = snomedTaxonomy;
 		this.propertyChains = propertyChains;
 		this.conceptAxiomStatementMap = conceptAxiomStatementMap;
 
 		traversableProperties = propertyChains.stream().map(PropertyChain::getDestinationType).collect(Collectors.toSet());
+		for (PropertyChain propertyChain : propertyChains) {
+			propertyChainsByInferredType.computeIfAbsent(propertyChain.getInferredType(), type -> new ArrayList<>()).add(propertyChain);
+			propertyChainSourceTypes.add(propertyChain.getSourceType());
+		}
 
-		// Initialise node graphs for properties we need to traverse
-		LOGGER.info("Initialising node graphs for traversable properties {}", traversableProperties);
-		traversableProperties.forEach(id -> transitiveNodeGraphs.put(id, new NodeGraph()));
 	}
 
 	/**
@@ -109,32 +184,405 @@ public final class RelationshipNormalFormGenerator {
 		LOGGER.info(">>> Relationship normal form generation");
 		final Stopwatch stopwatch = Stopwatch.createStarted();
 		final List<Long> entries = reasonerTaxonomy.getConceptIds();
+		generatedNonIsACache = new AtomicReferenceArray<>(reasonerTaxonomy.getConceptDictionary().size());
+
+		// Initialise node graphs for properties we need to traverse, these are built during the first pass
+		LOGGER.info("Initialising node graphs for traversable properties {}", traversableProperties);
+		transitiveNodeGraphsComplete = false;
+		traversableProperties.forEach(id -> transitiveNodeGraphs.put(id, new NodeGraph()));
+
+		if (threads > 1) {
+			collectNormalFormChangesConcurrently(entries, processor);
+		} else {
+			for (Long conceptId : entries) {
+				firstNormalisationPass(conceptId);
+			}
+
+			completeTransitiveNodeGraphs();
+			for (Long conceptId : entries) {
+				if (isSecondPassRequired(conceptId)) {
+					secondNormalisationPass(conceptId, processor);
+				}
+			}
+		}
+
+		LOGGER.info(MessageFormat.format("<<< Relationship normal form generation [{0}]", stopwatch.toString()));
+	}
+
+	/**
+	 * Computes changes as a result of normal form computation, reusing the results of a previous run for concepts whose inputs are unchanged.
+	 * The state of this run is recorded and can be passed to the next run using {@link #getNormalFormState()}.
+	 *
+	 * Concepts are normalised again if they are new, their parents, stated definition or existing inferred relationships have changed
+	 * or they had inferred relationship changes in the previous run. Concepts with relationships whose type or destination
+	 * has different ancestors are also normalised again because redundancy between their relationships may have changed.
+	 * Descendants are normalised again when the non IS-A relationships of a parent change.
+	 * If any of these changes could affect property chains all concepts with property chain attributes are normalised again.
+	 * Only the concepts normalised again are passed to the change processor.
+	 *
+	 * @param processor the change processor to route changes to
+	 * @param previousState the state recorded by a previous run or null to normalise all concepts
+	 */
+	public void collectNormalFormChanges(final RelationshipChangeProcessor processor, final NormalFormState previousState) {
+		final List<Long> entries = reasonerTaxonomy.getConceptIds();
+		state = new NormalFormState(getConfigurationHash());
+		for (Long conceptId : entries) {
+			final long[] parentIds = reasonerTaxonomy.getParents(conceptId).stream().mapToLong(Long::longValue).sorted().toArray();
+			state.addConcept(conceptId, parentIds,
+					hashRelationships(getOwnStatedNonIsARelationships(conceptId), false),
+					hashRelationships(snomedTaxonomy.getInferredRelationships(conceptId), true));
+		}
+
+		if (previousState != null && previousState.getConfigurationHash() != state.getConfigurationHash()) {
+			LOGGER.info("Property chains have changed since the previous normal form state was recorded, all concepts will be normalised.");
+		} else if (previousState != null) {
+			this.previousState = previousState;
+			planIncrementalRun(entries);
+		}
 
+		collectNormalFormChanges(processor);
+
+		if (this.previousState != null) {
+			LOGGER.info("{} of {} concepts normalised, the previous normal form was reused for the others.", recomputedConceptIds.size(), entries.size());
+			this.previousState = null;
+		}
 		for (Long conceptId : entries) {
-			firstNormalisationPass(conceptId);
+			state.getNonIsAFragments().put((long) conceptId, getCachedNonIsAFragments(conceptId));
 		}
+		state.getChangedConceptIds().addAll(processor.getChangedConceptIds());
+	}
+
+	/**
+	 * @return the state recorded by {@link #collectNormalFormChanges(RelationshipChangeProcessor, NormalFormState)},
+	 * or null if changes have not been collected using that method.
+	 */
+	public NormalFormState getNormalFormState() {
+		return state;
+	}
 
+	private void planIncrementalRun(final List<Long> entries) {
+		dirtyConceptIds = new LongOpenHashSet();
+		recomputedConceptIds = threads > 1 ? ConcurrentHashMap.newKeySet() : new LongOpenHashSet();
+		changedFragmentConceptIds = threads > 1 ? ConcurrentHashMap.newKeySet() : new LongOpenHashSet();
+
+		// Concepts which no longer exist or have different ancestors may change redundancy between the relationships of other concepts
+		final LongSet changedAncestorConceptIds = new LongOpenHashSet();
+		for (LongIterator iterator = previousState.getConceptIds().iterator(); iterator.hasNext(); ) {
+			final long conceptId = iterator.nextLong();
+			if (state.getParents(conceptId) == null) {
+				changedAncestorConceptIds.add(conceptId);
+			}
+		}
+		// Parents come before their children in the reasoner taxonomy
 		for (Long conceptId : entries) {
-			final Collection<Relationship> existingComponents = snomedTaxonomy.getInferredRelationships((long) conceptId);
-			final Collection<Relationship> generatedComponents = secondNormalisationPass(conceptId);
-			processor.apply(conceptId, existingComponents, generatedComponents);
+			final long[] parentIds = state.getParents(conceptId);
+			final long[] previousParentIds = previousState.getParents(conceptId);
+			if (previousParentIds == null || !Arrays.equals(parentIds, previousParentIds)) {
+				changedAncestorConceptIds.add((long) conceptId);
+				dirtyConceptIds.add(conceptId);
+				continue;
+			}
+			for (long parentId : parentIds) {
+				if (changedAncestorConceptIds.contains(parentId)) {
+					changedAncestorConceptIds.add((long) conceptId);
+					break;
+				}
+			}
+			if (state.getStatedHash(conceptId) != previousState.getStatedHash(conceptId)
+					|| state.getInferredHash(conceptId) != previousState.getInferredHash(conceptId)
+					|| previousState.getChangedConceptIds().contains((long) conceptId)) {
+				dirtyConceptIds.add(conceptId);
+			}
 		}
 
-		LOGGER.info(MessageFormat.format("<<< Relationship normal form generation [{0}]", stopwatch.toString()));
+		final Set<Long> propertyChainTypes = new LongOpenHashSet();
+		for (PropertyChain propertyChain : propertyChains) {
+			propertyChainTypes.add(propertyChain.getSourceType());
+			propertyChainTypes.add(propertyChain.getDestinationType());
+			propertyChainTypes.add(propertyChain.getInferredType());
+		}
+		final Map<Long, Boolean> propertyChainTypeCache = new Long2ObjectOpenHashMap<>();
+		final Predicate<Relationship> hasPropertyChainType = relationship -> propertyChainTypeCache.computeIfAbsent(relationship.getTypeId(),
+				typeId -> propertyChainTypes.stream().anyMatch(propertyChainType -> reasonerTaxonomy.isSameOrDescendant(typeId, propertyChainType)));
+		final boolean propertyChainsAffected = !propertyChains.isEmpty() && (!changedAncestorConceptIds.isEmpty()
+				|| dirtyConceptIds.stream().anyMatch(conceptId -> anyPlanningRelationship(conceptId, hasPropertyChainType)));
+
+		final int changedConceptCount = dirtyConceptIds.size();
+		for (Long conceptId : entries) {
+			if (!dirtyConceptIds.contains(conceptId)
+					&& (!changedAncestorConceptIds.isEmpty() && anyPlanningRelationship(conceptId, relationship ->
+							changedAncestorConceptIds.contains(relationship.getTypeId()) || changedAncestorConceptIds.contains(relationship.getDestinationId()))
+					|| propertyChainsAffected && anyPlanningRelationship(conceptId, hasPropertyChainType))) {
+				dirtyConceptIds.add(conceptId);
+			}
+		}
+		LOGGER.info("{} concepts changed since the previous normal form state was recorded, {} concepts with related relationships will also be normalised.",
+				changedConceptCount, dirtyConceptIds.size() - changedConceptCount);
+	}
+
+	/**
+	 * Tests the relationships which are the input of the first pass for the concept: own stated relationships and the previous normal form
+	 * of the concept and its parents.
+	 */
+	private boolean anyPlanningRelationship(final long conceptId, final Predicate<Relationship> predicate) {
+		if (getOwnStatedNonIsARelationships(conceptId).stream().anyMatch(predicate)) {
+			return true;
+		}
+		final Collection<Relationship> previousFragments = previousState.getNonIsAFragments().get(conceptId);
+		if (previousFragments != null && previousFragments.stream().anyMatch(predicate)) {
+			return true;
+		}
+		for (final long parentId : reasonerTaxonomy.getParents(conceptId)) {
+			final Collection<Relationship> parentFragments = previousState.getNonIsAFragments().get(parentId);
+			if (parentFragments != null && parentFragments.stream().anyMatch(predicate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the normal form of the previous run if the concept is unchanged and the normal form of its parents is unchanged, otherwise null.
+	 */
+	private Collection<Relationship> getReusableNonIsAFragments(final long conceptId) {
+		if (previousState == null || dirtyConceptIds.contains(conceptId)) {
+			return null;
+		}
+		for (final long parentId : reasonerTaxonomy.getParents(conceptId)) {
+			if (changedFragmentConceptIds.contains(parentId)) {
+				return null;
+			}
+		}
+		return previousState.getNonIsAFragments().get(conceptId);
+	}
+
+	private boolean isSecondPassRequired(final long conceptId) {
+		return previousState == null || recomputedConceptIds.contains(conceptId);
+	}
+
+	/**
+	 * Fragments in normal form hold no duplicates, if the previous fragments do they are reported as different
+	 * which only causes the concept to be treated as changed.
+	 */
+	private static boolean isSameFragments(final Collection<Relationship> previousFragments, final Collection<Relationship> fragments) {
+		if (previousFragments.size() != fragments.size()) {
+			return false;
+		}
+		final Set<Relationship> previous = new ObjectOpenCustomHashSet<>(previousFragments, FRAGMENT_STRATEGY);
+		if (previous.size() != previousFragments.size()) {
+			return false;
+		}
+		for (Relationship fragment : fragments) {
+			if (!previous.contains(fragment)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long getConfigurationHash() {
+		long hash = propertyChains.size();
+		for (PropertyChain propertyChain : propertyChains) {
+			hash += mix((propertyChain.getSourceType() * 31 + propertyChain.getDestinationType()) * 31 + propertyChain.getInferredType());
+		}
+		return hash;
+	}
+
+	/**
+	 * @return a hash of the relationships which does not depend on their order
+	 */
+	private static long hashRelationships(final Collection<Relationship> relationships, final boolean includeIdentity) {
+		long hash = relationships.size();
+		for (Relationship relationship : relationships) {
+			long relationshipHash = relationship.getTypeId();
+			relationshipHash = relationshipHash * 31 + relationship.getDestinationId();
+			relationshipHash = relationshipHash * 31 + relationship.getGroup();
+			relationshipHash = relationshipHash * 31 + relationship.getUnionGroup();
+			relationshipHash = relationshipHash * 31 + (relationship.isUniversal() ? 1 : 0);
+			relationshipHash = relationshipHash * 31 + (relationship.isDestinationNegated() ? 1 : 0);
+			relationshipHash = relationshipHash * 31 + relationship.getModuleId();
+			if (includeIdentity) {
+				relationshipHash = relationshipHash * 31 + relationship.getRelationshipId();
+				relationshipHash = relationshipHash * 31 + relationship.getEffectiveTime();
+				relationshipHash = relationshipHash * 31 + relationship.getCharacteristicTypeId();
+			}
+			hash += mix(relationshipHash);
+		}
+		return hash;
+	}
+
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private void collectNormalFormChangesConcurrently(final List<Long> entries, final RelationshipChangeProcessor processor) {
+		// Index the reasoner DAG so each concept can count down the parents it is waiting for
+		final Long2IntOpenHashMap ordinals = new Long2IntOpenHashMap();
+		ordinals.defaultReturnValue(-1);
+		final LongArrayList conceptIds = new LongArrayList();
+		for (Long conceptId : entries) {
+			if (ordinals.get((long) conceptId) == -1) {
+				ordinals.put((long) conceptId, conceptIds.size());
+				conceptIds.add((long) conceptId);
+			}
+		}
+		final int conceptCount = conceptIds.size();
+		final AtomicIntegerArray pendingParents = new AtomicIntegerArray(conceptCount);
+		final int[] childOffsets = new int[conceptCount + 1];
+		for (int i = 0; i < conceptCount; i++) {
+			for (Long parentId : reasonerTaxonomy.getParents(conceptIds.getLong(i))) {
+				final int parent = ordinals.get((long) parentId);
+				if (parent != -1) {
+					childOffsets[parent + 1]++;
+					pendingParents.incrementAndGet(i);
+				}
+			}
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			childOffsets[i + 1] += childOffsets[i];
+		}
+		final int[] children = new int[childOffsets[conceptCount]];
+		final int[] childFill = Arrays.copyOf(childOffsets, conceptCount);
+		for (int i = 0; i < conceptCount; i++) {
+			for (Long parentId : reasonerTaxonomy.getParents(conceptIds.getLong(i))) {
+				final int parent = ordinals.get((long) parentId);
+				if (parent != -1) {
+					children[childFill[parent]++] = i;
+				}
+			}
+		}
+
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			// First pass, a concept is processed once all of its parents have been processed
+			final CompletableFuture<Void> firstPassComplete = new CompletableFuture<>();
+			final AtomicInteger remaining = new AtomicInteger(conceptCount);
+			if (conceptCount == 0) {
+				firstPassComplete.complete(null);
+			}
+			// Find roots before submitting any tasks because running tasks count down their children
+			final IntArrayList roots = new IntArrayList();
+			for (int i = 0; i < conceptCount; i++) {
+				if (pendingParents.get(i) == 0) {
+					roots.add(i);
+				}
+			}
+			for (int i = 0; i < roots.size(); i++) {
+				pool.execute(new FirstPassTask(roots.getInt(i), conceptIds, children, childOffsets, pendingParents, remaining, firstPassComplete));
+			}
+			firstPassComplete.get();
+			completeTransitiveNodeGraphs();
+
+			// Second pass, concepts are independent
+			final List<Callable<Void>> tasks = new ArrayList<>();
+			final int chunkSize = Math.max(1, Math.min(1000, conceptCount / (threads * 4)));
+			for (int start = 0; start < conceptCount; start += chunkSize) {
+				final int chunkStart = start;
+				final int chunkEnd = Math.min(start + chunkSize, conceptCount);
+				tasks.add(() -> {
+					for (int i = chunkStart; i < chunkEnd; i++) {
+						if (isSecondPassRequired(conceptIds.getLong(i))) {
+							secondNormalisationPass(conceptIds.getLong(i), processor);
+						}
+					}
+					return null;
+				});
+			}
+			for (Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during relationship normal form generation.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Relationship normal form generation failed.", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private void completeTransitiveNodeGraphs() {
+		transitiveNodeGraphs.values().forEach(NodeGraph::freeze);
+		transitiveNodeGraphsComplete = true;
+	}
+
+	private final class FirstPassTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int concept;
+		private final LongArrayList conceptIds;
+		private final int[] children;
+		private final int[] childOffsets;
+		private final AtomicIntegerArray pendingParents;
+		private final AtomicInteger remaining;
+		private final CompletableFuture<Void> complete;
+
+		private FirstPassTask(int concept, LongArrayList conceptIds, int[] children, int[] childOffsets,
+				AtomicIntegerArray pendingParents, AtomicInteger remaining, CompletableFuture<Void> complete) {
+			this.concept = concept;
+			this.conceptIds = conceptIds;
+			this.children = children;
+			this.childOffsets = childOffsets;
+			this.pendingParents = pendingParents;
+			this.remaining = remaining;
+			this.complete = complete;
+		}
+
+		@Override
+		protected void compute() {
+			if (complete.isDone()) {
+				return;
+			}
+			try {
+				firstNormalisationPass(conceptIds.getLong(concept));
+			} catch (RuntimeException | Error e) {
+				complete.completeExceptionally(e);
+				return;
+			}
+			for (int i = childOffsets[concept]; i < childOffsets[concept + 1]; i++) {
+				final int child = children[i];
+				if (pendingParents.decrementAndGet(child) == 0) {
+					new FirstPassTask(child, conceptIds, children, childOffsets, pendingParents, remaining, complete).fork();
+				}
+			}
+			if (remaining.decrementAndGet() == 0) {
+				complete.complete(null);
+			}
+		}
 	}
 
 	/**
 	 * Computes and caches a set of components in normal form for the specified concept.
 	 * The first pass uses the is-a hierarchy for normalisation.
 	 * This hierarchy is available during the first pass because of the breath first order of processing concepts.
+	 * Property chains are only applied without traversing the transitive graphs, which are still being built.
 	 *
 	 * @param conceptId the concept for which components should be generated
 	 */
 	private void firstNormalisationPass(long conceptId) {
-		final Set<Relationship> inferredNonIsAFragments = getInferredNonIsAFragmentsInNormalForm(conceptId);
+		Collection<Relationship> inferredNonIsAFragments = getReusableNonIsAFragments(conceptId);
+		if (inferredNonIsAFragments == null) {
+			inferredNonIsAFragments = ImmutableList.copyOf(getInferredNonIsAFragmentsInNormalForm(conceptId));
+			if (previousState != null) {
+				recomputedConceptIds.add(conceptId);
+				final Collection<Relationship> previousFragments = previousState.getNonIsAFragments().get(conceptId);
+				if (previousFragments == null || !isSameFragments(previousFragments, inferredNonIsAFragments)) {
+					changedFragmentConceptIds.add(conceptId);
+				}
+			}
+		}
 
 		// Place results in the cache, so children can re-use it
-		generatedNonIsACache.put(conceptId, ImmutableList.copyOf(inferredNonIsAFragments));
+		generatedNonIsACache.set(reasonerTaxonomy.getOrdinal(conceptId), inferredNonIsAFragments);
 
 		// Add to transitive graphs
 		inferredNonIsAFragments.stream().filter(r -> traversableProperties.contains(r.getTypeId())).forEach(r ->
@@ -150,17 +598,23 @@ public final class RelationshipNormalFormGenerator {
 	 * @param conceptId the concept for which components should be generated
 	 * @return the generated components of the specified concept in normal form
 	 */
+	private void secondNormalisationPass(final long conceptId, final RelationshipChangeProcessor processor) {
+		final Collection<Relationship> existingComponents = snomedTaxonomy.getInferredRelationships(conceptId);
+		final Collection<Relationship> generatedComponents = secondNormalisationPass(conceptId);
+		processor.apply(conceptId, existingComponents, generatedComponents);
+	}
+
 	private Collection<Relationship> secondNormalisationPass(final long conceptId) {
 		final Set<Long> directSuperTypes = reasonerTaxonomy.getParents(conceptId);
 
 		// Step 1: collect IS-A relationships
 		final Iterable<Relationship> inferredIsAFragments = getInferredIsAFragments(conceptId, directSuperTypes);
 
-		Iterable<Relationship> inferredNonIsAFragments = generatedNonIsACache.get(conceptId);
+		Iterable<Relationship> inferredNonIsAFragments = getCachedNonIsAFragments(conceptId);
 		if (!propertyChains.isEmpty()) {
 			for (Relationship inferredNonIsAFragment : inferredNonIsAFragments) {
 				// Is there a property chain for this relationship?
-				if (propertyChains.stream().anyMatch(propertyChain -> propertyChain.getSourceType().equals(inferredNonIsAFragment.getTypeId()))) {
+				if (isPropertyChainSourceType(inferredNonIsAFragment.getTypeId())) {
 					inferredNonIsAFragments = getInferredNonIsAFragmentsInNormalForm(conceptId);
 					break;
 				}
@@ -170,6 +624,18 @@ public final class RelationshipNormalFormGenerator {
 		return ImmutableList.copyOf(Iterables.concat(inferredIsAFragments, inferredNonIsAFragments));
 	}
 
+	private boolean isPropertyChainSourceType(final long typeId) {
+		if (propertyChainSourceTypes.contains(typeId)) {
+			return true;
+		}
+		for (Long sourceType : propertyChainSourceTypes) {
+			if (reasonerTaxonomy.isSameOrDescendant(typeId, sourceType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private Set<Relationship> getInferredNonIsAFragmentsInNormalForm(Long conceptId) {
 		final Set<Long> directSuperTypes = reasonerTaxonomy.getParents(conceptId);
 
@@ -184,21 +650,7 @@ public final class RelationshipNormalFormGenerator {
 			otherNonIsAFragments.put(directSuperTypeId, getCachedNonIsAFragments(directSuperTypeId));
 		}
 
-		Set<AxiomRepresentation> axiomRepresentations = conceptAxiomStatementMap.get(conceptId);
-		final Collection<Relationship> ownStatedNonIsaRelationships;
-		if (axiomRepresentations == null) {
-			ownStatedNonIsaRelationships = snomedTaxonomy.getNonIsAStatements(conceptId);
-		} else {
-			ownStatedNonIsaRelationships = new ArrayList<>(snomedTaxonomy.getNonIsAStatements(conceptId));
-			ownStatedNonIsaRelationships.addAll(axiomRepresentations.stream()
-					.filter(axiomRepresentation -> conceptId.equals(axiomRepresentation.getLeftHandSideNamedConcept()))
-					.map(AxiomRepresentation::getRightHandSideRelationships)
-					.map(Map::values)
-					.flatMap(Collection::stream)
-					.flatMap(Collection::stream)
-					.filter(relationship -> relationship.getTypeId() != Concepts.IS_A_LONG)
-					.collect(Collectors.toList()));
-		}
+		final Collection<Relationship> ownStatedNonIsaRelationships = getOwnStatedNonIsARelationships(conceptId);
 
 		final Collection<Relationship> ownInferredFragments = snomedTaxonomy.getInferredRelationships(conceptId);
 		final Collection<Relationship> ownInferredNonIsaFragments = Collections2.filter(ownInferredFragments, input -> input.getTypeId() != IS_A_LONG);
@@ -209,6 +661,23 @@ public final class RelationshipNormalFormGenerator {
 				otherNonIsAFragments);
 	}
 
+	private Collection<Relationship> getOwnStatedNonIsARelationships(Long conceptId) {
+		Set<AxiomRepresentation> axiomRepresentations = conceptAxiomStatementMap.get(conceptId);
+		if (axiomRepresentations == null) {
+			return snomedTaxonomy.getNonIsAStatements(conceptId);
+		}
+		final Collection<Relationship> ownStatedNonIsaRelationships = new ArrayList<>(snomedTaxonomy.getNonIsAStatements(conceptId));
+		ownStatedNonIsaRelationships.addAll(axiomRepresentations.stream()
+				.filter(axiomRepresentation -> conceptId.equals(axiomRepresentation.getLeftHandSideNamedConcept()))
+				.map(AxiomRepresentation::getRightHandSideRelationships)
+				.map(Map::values)
+				.flatMap(Collection::stream)
+				.flatMap(Collection::stream)
+				.filter(relationship -> relationship.getTypeId() != Concepts.IS_A_LONG)
+				.collect(Collectors.toList()));
+		return ownStatedNonIsaRelationships;
+	}
+
 	/**
 	 * Outbound relationships are calculated in the following fashion:
 	 *
@@ -272,8 +741,9 @@ public final class RelationshipNormalFormGenerator {
 		return fromGroupSet(groups);
 	}
 
-	private Collection<Relationship> getCachedNonIsAFragments(final long directSuperTypeId) {
-		return generatedNonIsACache.get(directSuperTypeId);
+	private Collection<Relationship> getCachedNonIsAFragments(final long conceptId) {
+		final int ordinal = reasonerTaxonomy.getOrdinal(conceptId);
+		return ordinal != ConceptDictionary.NOT_FOUND ? generatedNonIsACache.get(ordinal) : null;
 	}
 
 	private Iterable<Relationship> getInferredIsAFragments(final long conceptId, final Set<Long> parentIds) {
@@ -448,8 +918,22 @@ public final class RelationshipNormalFormGenerator {
 		return propertyChains;
 	}
 
+	/**
+	 * @return property chains which infer the given attribute type
+	 */
+	public List<PropertyChain> getPropertyChainsByInferredType(long inferredType) {
+		return propertyChainsByInferredType.getOrDefault(inferredType, Collections.emptyList());
+	}
+
 	public Map<Long, NodeGraph> getTransitiveNodeGraphs() {
 		return transitiveNodeGraphs;
 	}
 
+	/**
+	 * @return true once the first pass has finished and the transitive node graphs hold all inferred relationships.
+	 */
+	public boolean isTransitiveNodeGraphsComplete() {
+		return transitiveNodeGraphsComplete;
+	}
+
 }
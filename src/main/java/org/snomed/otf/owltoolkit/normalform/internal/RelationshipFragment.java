@@ -22,7 +22,6 @@ package org.snomed.otf.owltoolkit.normalform.internal;
 
 import com.google.common.base.Objects;
 import com.google.common.collect.Sets;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.snomed.otf.owltoolkit.classification.ReasonerTaxonomy;
 import org.snomed.otf.owltoolkit.domain.Relationship;
 import org.snomed.otf.owltoolkit.normalform.RelationshipNormalFormGenerator;
@@ -30,9 +29,7 @@ import org.snomed.otf.owltoolkit.normalform.transitive.NodeGraph;
 import org.snomed.otf.owltoolkit.ontology.PropertyChain;
 
 import java.text.MessageFormat;
-import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -98,9 +95,7 @@ public final class RelationshipFragment implements SemanticComparable<Relationsh
 			return false;
 		}
 
-		if (this.getTypeId() == 116680003L && other.getTypeId() == 116680003L) {
-			System.out.println("Two IS As compared");
-		}
+		final ReasonerTaxonomy reasonerTaxonomy = relationshipNormalFormGenerator.getReasonerTaxonomy();
 
 		if (!isDestinationNegated() && !other.isDestinationNegated()) {
 
@@ -128,23 +123,16 @@ public final class RelationshipFragment implements SemanticComparable<Relationsh
 			 *
 			 */
 
-			final Set<Long> BAttributeClosure = getTransitiveClosure(B.getTypeId());
-			final Set<Long> BValueClosure = getTransitiveClosure(B.getDestinationId());
-
 			// Rule 1
-			if (BAttributeClosure.contains(A.getTypeId()) && BValueClosure.contains(A.getDestinationId())) {
+			if (reasonerTaxonomy.isSameOrDescendant(B.getTypeId(), A.getTypeId()) && reasonerTaxonomy.isSameOrDescendant(B.getDestinationId(), A.getDestinationId())) {
 				return true;
 			}
 
 			// Rule 2
 			else {
-				Set<PropertyChain> relevantPropertyChains = relationshipNormalFormGenerator.getPropertyChains().stream()
-						.filter(propertyChain -> BAttributeClosure.contains(propertyChain.getSourceType()))
-						.filter(propertyChain -> propertyChain.getInferredType().equals(A.getTypeId()))
-						.collect(Collectors.toSet());
-				for (PropertyChain propertyChain : relevantPropertyChains) {
-					if (getPropertyChainTransitiveClosure(B.getDestinationId(), propertyChain.getDestinationType())
-							.contains(A.getDestinationId())) {
+				for (PropertyChain propertyChain : relationshipNormalFormGenerator.getPropertyChainsByInferredType(A.getTypeId())) {
+					if (reasonerTaxonomy.isSameOrDescendant(B.getTypeId(), propertyChain.getSourceType())
+							&& isReachableByPropertyChain(B.getDestinationId(), propertyChain.getDestinationType(), A.getDestinationId())) {
 						return true;
 					}
 				}
@@ -154,10 +142,6 @@ public final class RelationshipFragment implements SemanticComparable<Relationsh
 		// TODO: Remove all negation logic - Snomed International does not use it.
 		} else if (isDestinationNegated() && !other.isDestinationNegated()) {
 
-			final Set<Long> otherAttributeClosure = getTransitiveClosure(other.getTypeId());
-			final Set<Long> superTypes = getTransitiveClosure(getDestinationId());
-			superTypes.remove(getDestinationId());
-
 			/*
 			 * Note that "other" itself may be exhaustive in this case --
 			 * the negation will work entirely within the confines of
@@ -168,17 +152,16 @@ public final class RelationshipFragment implements SemanticComparable<Relationsh
 			 * "layers" of exhaustive concepts, because any other case
 			 * should be unsatisfiable.
 			 */
-			return otherAttributeClosure.contains(getTypeId()) && (hasCommonExhaustiveSuperType(other) || isDestinationExhaustive()) && superTypes.contains(other.getDestinationId());
+			return reasonerTaxonomy.isSameOrDescendant(other.getTypeId(), getTypeId()) && (hasCommonExhaustiveSuperType(other) || isDestinationExhaustive())
+					&& reasonerTaxonomy.hasAncestor(getDestinationId(), other.getDestinationId());
 
 		} else if (!isDestinationNegated() && other.isDestinationNegated()) {
 
-			final Set<Long> attributeClosure = getTransitiveClosure(getTypeId());
-
 			/*
 			 * Any contradictions should be filtered out by the reasoner beforehand, so we just check if the two concepts
 			 * have a common exhaustive ancestor.
 			 */
-			return attributeClosure.contains(other.getTypeId()) && hasCommonExhaustiveSuperType(other);
+			return reasonerTaxonomy.isSameOrDescendant(getTypeId(), other.getTypeId()) && hasCommonExhaustiveSuperType(other);
 
 		} else /* if (destinationNegated && other.destinationNegated) */ {
 
@@ -186,10 +169,7 @@ public final class RelationshipFragment implements SemanticComparable<Relationsh
 			 * Note that the comparison is the exact opposite of the first case - if both fragments are negated,
 			 * the one which negates a more loose definition is the one that is more strict in the end.
 			 */
-			final Set<Long> otherAttributeClosure = getTransitiveClosure(other.getTypeId());
-			final Set<Long> otherValueClosure = getTransitiveClosure(other.getDestinationId());
-
-			return otherAttributeClosure.contains(getTypeId()) && otherValueClosure.contains(getDestinationId());
+			return reasonerTaxonomy.isSameOrDescendant(other.getTypeId(), getTypeId()) && reasonerTaxonomy.isSameOrDescendant(other.getDestinationId(), getDestinationId());
 		}
 	}
 
@@ -217,38 +197,17 @@ public final class RelationshipFragment implements SemanticComparable<Relationsh
 	}
 
 	/**
-	 * Collects all parent concepts reachable from the specified concept. The
-	 * returned set also includes the starting concept.
-	 *
-	 * @param conceptId
-	 *            the concept to start from
-	 *
-	 * @return a set containing the starting concept and all reachable
-	 *         supertypes
+	 * Checks if the target is the concept, or a supertype of the concept, or a supertype of any concept reachable
+	 * from the concept through the transitive property used as the property chain destination type.
+	 * The transitive property is only traversed once its graph is complete so that the result does not depend on processing order.
 	 */
-	private Set<Long> getTransitiveClosure(final long conceptId) {
-		final Set<Long> ancestors = relationshipNormalFormGenerator.getReasonerTaxonomy().getAncestors(conceptId);
-		final Set<Long> conceptAndAncestors = new LongOpenHashSet(ancestors);
-		conceptAndAncestors.add(conceptId);
-		return conceptAndAncestors;
-	}
-
-	private Set<Long> getPropertyChainTransitiveClosure(final long conceptId, Long chainDestinationType) {
-		// Build closure containing all possible hops using chainDestinationType
-		// For every concept found also add its super types
-
-		NodeGraph nodeGraph = relationshipNormalFormGenerator.getTransitiveNodeGraphs().getOrDefault(chainDestinationType, new NodeGraph());
-		ReasonerTaxonomy reasonerTaxonomy = relationshipNormalFormGenerator.getReasonerTaxonomy();
-
-		Set<Long> chainPaths = new HashSet<>();
-		chainPaths.add(conceptId);
-		chainPaths.addAll(nodeGraph.getAncestors(conceptId));
-		Set<Long> chainStepAncestors = new HashSet<>();
-		for (Long chainNode : chainPaths) {
-			chainStepAncestors.addAll(reasonerTaxonomy.getAncestors(chainNode));
+	private boolean isReachableByPropertyChain(final long conceptId, final long chainDestinationType, final long targetId) {
+		final ReasonerTaxonomy reasonerTaxonomy = relationshipNormalFormGenerator.getReasonerTaxonomy();
+		final NodeGraph nodeGraph = relationshipNormalFormGenerator.getTransitiveNodeGraphs().get(chainDestinationType);
+		if (nodeGraph == null || !relationshipNormalFormGenerator.isTransitiveNodeGraphsComplete()) {
+			return reasonerTaxonomy.isSameOrDescendant(conceptId, targetId);
 		}
-		chainPaths.addAll(chainStepAncestors);
-		return chainPaths;
+		return nodeGraph.anySelfOrAncestorMatches(conceptId, chainNode -> reasonerTaxonomy.isSameOrDescendant(chainNode, targetId));
 	}
 
 	@Override
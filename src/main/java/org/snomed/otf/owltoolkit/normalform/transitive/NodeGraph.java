@@ -15,28 +15,171 @@
  */
 package org.snomed.otf.owltoolkit.normalform.transitive;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.snomed.otf.owltoolkit.taxonomy.ConceptDictionary;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
+import java.util.function.LongPredicate;
 
+/**
+ * Graph of concepts connected by a transitive property.
+ * Nodes are held as dense ordinals with primitive adjacency lists in both directions.
+ * The ancestor closure of a node is computed on first use and cached until a parent is added to the node or one of its ancestors.
+ * Cycles are tolerated, a node is never its own ancestor.
+ *
+ * Parents may be added from multiple threads. Once all parents have been added the graph is frozen, this computes the
+ * closure of every node so that the graph can then be read from multiple threads without locking.
+ * Before the graph is frozen reads must not run at the same time as other reads or writes.
+ */
 public class NodeGraph {
 
-	private Map<Long, Node> nodeMap = new Long2ObjectOpenHashMap<>();
+	private final ConceptDictionary dictionary = new ConceptDictionary();
+	private final List<IntArrayList> parents = new ObjectArrayList<>();
+	private final List<IntArrayList> children = new ObjectArrayList<>();
+	// Sorted ancestor ordinals, null if not yet computed
+	private final List<int[]> closures = new ObjectArrayList<>();
+	private int cachedClosureCount;
+	private boolean frozen;
 
-	public void addParent(long conceptId, long parentId) {
+	public synchronized void addParent(long conceptId, long parentId) {
+		if (frozen) {
+			throw new IllegalStateException("Parents can not be added to a frozen node graph.");
+		}
 		if (conceptId == parentId) return;
-		Node concept = nodeMap.computeIfAbsent(conceptId, Node::new);
-		Node parent = nodeMap.computeIfAbsent(parentId, Node::new);
-		concept.getParents().add(parent);
+		int concept = getOrCreateOrdinal(conceptId);
+		int parent = getOrCreateOrdinal(parentId);
+		IntArrayList conceptParents = parents.get(concept);
+		if (conceptParents.contains(parent)) {
+			return;
+		}
+		conceptParents.add(parent);
+		children.get(parent).add(concept);
+		invalidateClosures(concept);
+	}
+
+	/**
+	 * Computes the closure of every node and prevents further changes.
+	 */
+	public synchronized void freeze() {
+		if (frozen) {
+			return;
+		}
+		for (int node = 0; node < closures.size(); node++) {
+			getClosure(node);
+		}
+		frozen = true;
 	}
 
+	/**
+	 * @return a new set containing the ancestors of the concept.
+	 */
 	public Set<Long> getAncestors(long conceptId) {
-		Node node = nodeMap.get(conceptId);
-		if (node == null) {
+		int concept = dictionary.getOrdinal(conceptId);
+		if (concept == ConceptDictionary.NOT_FOUND) {
 			return Collections.emptySet();
 		}
-		return node.getAncestorIds();
+		int[] closure = getClosure(concept);
+		LongOpenHashSet ancestors = new LongOpenHashSet(closure.length);
+		for (int ancestor : closure) {
+			ancestors.add(dictionary.getConceptId(ancestor));
+		}
+		return ancestors;
+	}
+
+	/**
+	 * @return true if ancestorId is an ancestor of descendantId.
+	 */
+	public boolean contains(long ancestorId, long descendantId) {
+		int descendant = dictionary.getOrdinal(descendantId);
+		int ancestor = dictionary.getOrdinal(ancestorId);
+		return descendant != ConceptDictionary.NOT_FOUND && ancestor != ConceptDictionary.NOT_FOUND && Arrays.binarySearch(getClosure(descendant), ancestor) >= 0;
+	}
+
+	/**
+	 * @return true if the predicate matches the concept itself or any of its ancestors.
+	 */
+	public boolean anySelfOrAncestorMatches(long conceptId, LongPredicate predicate) {
+		if (predicate.test(conceptId)) {
+			return true;
+		}
+		int concept = dictionary.getOrdinal(conceptId);
+		if (concept == ConceptDictionary.NOT_FOUND) {
+			return false;
+		}
+		for (int ancestor : getClosure(concept)) {
+			if (predicate.test(dictionary.getConceptId(ancestor))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int getOrCreateOrdinal(long conceptId) {
+		int ordinal = dictionary.getOrdinal(conceptId);
+		if (ordinal == ConceptDictionary.NOT_FOUND) {
+			ordinal = dictionary.getOrCreateOrdinal(conceptId);
+			parents.add(new IntArrayList(2));
+			children.add(new IntArrayList(2));
+			closures.add(null);
+		}
+		return ordinal;
+	}
+
+	private int[] getClosure(int node) {
+		int[] closure = closures.get(node);
+		if (closure != null) {
+			return closure;
+		}
+
+		// Depth first walk with visited set so cycles terminate, reusing closures already cached
+		IntOpenHashSet visited = new IntOpenHashSet();
+		IntArrayList stack = new IntArrayList(parents.get(node));
+		while (!stack.isEmpty()) {
+			int current = stack.popInt();
+			if (!visited.add(current)) {
+				continue;
+			}
+			int[] cached = closures.get(current);
+			if (cached != null) {
+				for (int ancestor : cached) {
+					visited.add(ancestor);
+				}
+			} else {
+				stack.addAll(parents.get(current));
+			}
+		}
+		visited.remove(node);
+		closure = visited.toIntArray();
+		Arrays.sort(closure);
+		closures.set(node, closure);
+		cachedClosureCount++;
+		return closure;
+	}
+
+	private void invalidateClosures(int node) {
+		if (cachedClosureCount == 0) {
+			return;
+		}
+		// The closures of the node and all of its descendants may have changed
+		IntOpenHashSet visited = new IntOpenHashSet();
+		IntArrayList stack = new IntArrayList();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			int current = stack.popInt();
+			if (!visited.add(current)) {
+				continue;
+			}
+			if (closures.get(current) != null) {
+				closures.set(current, null);
+				cachedClosureCount--;
+			}
+			stack.addAll(children.get(current));
+		}
 	}
 }
@@ -1,5 +1,7 @@
 package org.snomed.otf.owltoolkit.ontology;
 
+import org.semanticweb.elk.owl.interfaces.ElkClass;
+import org.semanticweb.elk.owl.interfaces.ElkEntity;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLNamedObject;
 
@@ -11,4 +13,12 @@ public class OntologyHelper {
 	public static long getConceptId(final OWLNamedObject owlNamedObject) {
 		return Long.parseLong(owlNamedObject.getIRI().toString().substring(OntologyService.SNOMED_CORE_COMPONENTS_URI.length()));
 	}
+
+	public static boolean isConceptClass(final ElkClass elkClass) {
+		return elkClass.getIri().getFullIriAsString().startsWith(OntologyService.SNOMED_CORE_COMPONENTS_URI);
+	}
+
+	public static long getConceptId(final ElkEntity elkEntity) {
+		return Long.parseLong(elkEntity.getIri().getFullIriAsString().substring(OntologyService.SNOMED_CORE_COMPONENTS_URI.length()));
+	}
 }
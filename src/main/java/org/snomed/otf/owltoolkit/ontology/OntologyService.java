@@ -17,6 +17,7 @@ package org.snomed.otf.owltoolkit.ontology;
 
 import com.google.common.base.Strings;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
 import org.semanticweb.owlapi.model.*;
@@ -33,6 +34,7 @@ import uk.ac.manchester.cs.owl.owlapi.OWLDataFactoryImpl;
 
 import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static java.lang.Long.parseLong;
 
@@ -54,6 +56,10 @@ public class OntologyService {
 	private OWLDataFactory factory;
 	private DefaultPrefixManager prefixManager;
 	private final Set<Long> ungroupedAttributes;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// Smaller taxonomies are not worth splitting between threads
+	private static final int MIN_CHUNK_SIZE = 2000;
 
 	public OntologyService(Set<Long> ungroupedAttributes) {
 		this.ungroupedAttributes = ungroupedAttributes;
@@ -69,20 +75,7 @@ public class OntologyService {
 
 	public OWLOntology createOntology(SnomedTaxonomy snomedTaxonomy, String ontologyUri, String versionDate) throws OWLOntologyCreationException {
 
-		Map<Long, Set<OWLAxiom>> axiomsFromStatedRelationships = createAxiomsFromStatedRelationships(snomedTaxonomy);
-
-		Set<OWLAxiom> axioms = new HashSet<>();
-		for (Long conceptId : snomedTaxonomy.getAllConceptIds()) {
-
-			// Add raw axioms from the axiom reference set file
-			axioms.addAll(snomedTaxonomy.getConceptAxiomMap().getOrDefault(conceptId, Collections.emptySet()));
-
-			// Add axioms generated from stated relationships
-			axioms.addAll(axiomsFromStatedRelationships.getOrDefault(conceptId, Collections.emptySet()));
-
-			// Add FSN annotation
-			addFSNAnnotation(conceptId, snomedTaxonomy, axioms);
-		}
+		List<OWLAxiom> axioms = createAxiomList(snomedTaxonomy);
 
 		OWLOntology ontology;
 		if (Strings.isNullOrEmpty(ontologyUri)) {
@@ -96,12 +89,97 @@ public class OntologyService {
 					com.google.common.base.Optional.of(IRI.create(ontologyUri + ONTOLOGY_URI_VERSION_POSTFIX + versionDate))));
 		}
 
-		manager.addAxioms(ontology, axioms);
+		// Apply all axioms as one batch of changes. The ontology drops duplicates so there is no need to collect the axioms into a set first.
+		List<AddAxiom> changes = new ArrayList<>(axioms.size());
+		for (OWLAxiom axiom : axioms) {
+			changes.add(new AddAxiom(ontology, axiom));
+		}
+		manager.applyChanges(changes);
 		manager.setOntologyFormat(ontology, getFunctionalSyntaxDocumentFormat());
 		return ontology;
 	}
 
+	/**
+	 * @return the axioms of an ontology created from the taxonomy: raw OWL axioms, axioms generated from stated relationships and FSN annotations.
+	 */
+	public Set<OWLAxiom> createAxioms(SnomedTaxonomy snomedTaxonomy) {
+		return new HashSet<>(createAxiomList(snomedTaxonomy));
+	}
+
+	/**
+	 * Generates the axioms of each concept using the configured number of threads.
+	 * @return the same axioms as {@link #createAxioms(SnomedTaxonomy)} in concept order, an axiom may be listed more than once.
+	 */
+	public List<OWLAxiom> createAxiomList(SnomedTaxonomy snomedTaxonomy) {
+
+		Map<Long, Set<OWLAxiom>> attributeAxioms = createAttributeAxioms(snomedTaxonomy);
+		Set<Long> attributeIds = snomedTaxonomy.getDescendants(Concepts.CONCEPT_MODEL_ATTRIBUTE_LONG);
+
+		List<List<OWLAxiom>> chunks = processInChunks(getConceptIds(snomedTaxonomy), (conceptIds, start, end) -> {
+			List<OWLAxiom> axioms = new ArrayList<>();
+			for (int i = start; i < end; i++) {
+				long conceptId = conceptIds[i];
+
+				// Add raw axioms from the axiom reference set file
+				axioms.addAll(snomedTaxonomy.getConceptAxiomMap().getOrDefault(conceptId, Collections.emptySet()));
+
+				// Add axioms generated from stated relationships
+				axioms.addAll(attributeAxioms.getOrDefault(conceptId, Collections.emptySet()));
+				OWLClassAxiom conceptAxiom = createAxiomFromStatedRelationships(conceptId, snomedTaxonomy, attributeIds);
+				if (conceptAxiom != null) {
+					axioms.add(conceptAxiom);
+				}
+
+				// Add FSN annotation
+				addFSNAnnotation(conceptId, snomedTaxonomy, axioms);
+			}
+			return axioms;
+		});
+
+		List<OWLAxiom> axioms = new ArrayList<>(chunks.stream().mapToInt(List::size).sum());
+		chunks.forEach(axioms::addAll);
+		return axioms;
+	}
+
+	/**
+	 * Creates an anonymous ontology holding only the object and data property axioms of the taxonomy, including property chains.
+	 * This is enough to read the property hierarchy and property chains when the full ontology is not needed.
+	 */
+	public OWLOntology createPropertyOntology(SnomedTaxonomy snomedTaxonomy) throws OWLOntologyCreationException {
+		Set<OWLAxiom> axioms = new HashSet<>();
+		for (Set<OWLAxiom> conceptAxioms : snomedTaxonomy.getConceptAxiomMap().values()) {
+			for (OWLAxiom axiom : conceptAxioms) {
+				if (axiom instanceof OWLObjectPropertyAxiom || axiom instanceof OWLDataPropertyAxiom) {
+					axioms.add(axiom);
+				}
+			}
+		}
+		createAttributeAxioms(snomedTaxonomy).values().forEach(axioms::addAll);
+		return manager.createOntology(axioms);
+	}
+
 	public Map<Long, Set<OWLAxiom>> createAxiomsFromStatedRelationships(SnomedTaxonomy snomedTaxonomy) {
+		Map<Long, Set<OWLAxiom>> axiomsMap = createAttributeAxioms(snomedTaxonomy);
+
+		// Create axioms of all other Snomed concepts
+		Set<Long> attributeIds = snomedTaxonomy.getDescendants(Concepts.CONCEPT_MODEL_ATTRIBUTE_LONG);
+		List<Map<Long, OWLClassAxiom>> chunks = processInChunks(getConceptIds(snomedTaxonomy), (conceptIds, start, end) -> {
+			Map<Long, OWLClassAxiom> conceptAxioms = new Long2ObjectOpenHashMap<>();
+			for (int i = start; i < end; i++) {
+				OWLClassAxiom conceptAxiom = createAxiomFromStatedRelationships(conceptIds[i], snomedTaxonomy, attributeIds);
+				if (conceptAxiom != null) {
+					conceptAxioms.put(conceptIds[i], conceptAxiom);
+				}
+			}
+			return conceptAxioms;
+		});
+		for (Map<Long, OWLClassAxiom> chunk : chunks) {
+			chunk.forEach((conceptId, conceptAxiom) -> axiomsMap.computeIfAbsent(conceptId, (id) -> new HashSet<>()).add(conceptAxiom));
+		}
+		return axiomsMap;
+	}
+
+	private Map<Long, Set<OWLAxiom>> createAttributeAxioms(SnomedTaxonomy snomedTaxonomy) {
 		Map<Long, Set<OWLAxiom>> axiomsMap = new Long2ObjectOpenHashMap<>();
 
 		// Create axioms of concept model attributes
@@ -132,30 +210,72 @@ public class OntologyService {
 				}
 			}
 		}
+		return axiomsMap;
+	}
 
-		// Create axioms of all other Snomed concepts
-		Set<Long> attributeIds = snomedTaxonomy.getDescendants(Concepts.CONCEPT_MODEL_ATTRIBUTE_LONG);
-		for (Long conceptId : snomedTaxonomy.getAllConceptIds()) {
-
-			// Convert any stated relationships to axioms
-			boolean primitive = snomedTaxonomy.isPrimitive(conceptId);
-			Collection<Relationship> statedRelationships = snomedTaxonomy.getStatedRelationships(conceptId);
-
-			if (!statedRelationships.isEmpty() && !attributeIds.contains(conceptId)) {
-				AxiomRepresentation representation = new AxiomRepresentation();
-				representation.setPrimitive(primitive);
-				representation.setLeftHandSideNamedConcept(conceptId);
-				Map<Integer, List<Relationship>> relationshipMap = new HashMap<>();
-				for (Relationship statedRelationship : statedRelationships) {
-					relationshipMap.computeIfAbsent(statedRelationship.getGroup(), g -> new ArrayList<>()).add(statedRelationship);
-				}
-				representation.setRightHandSideRelationships(relationshipMap);
-				OWLClassAxiom conceptAxiom = createOwlClassAxiom(representation);
-				axiomsMap.computeIfAbsent(conceptId, (id) -> new HashSet<>())
-						.add(conceptAxiom);
+	private OWLClassAxiom createAxiomFromStatedRelationships(long conceptId, SnomedTaxonomy snomedTaxonomy, Set<Long> attributeIds) {
+		// Convert any stated relationships to axioms
+		Collection<Relationship> statedRelationships = snomedTaxonomy.getStatedRelationships(conceptId);
+		if (statedRelationships.isEmpty() || attributeIds.contains(conceptId)) {
+			return null;
+		}
+		AxiomRepresentation representation = new AxiomRepresentation();
+		representation.setPrimitive(snomedTaxonomy.isPrimitive(conceptId));
+		representation.setLeftHandSideNamedConcept(conceptId);
+		Map<Integer, List<Relationship>> relationshipMap = new HashMap<>();
+		for (Relationship statedRelationship : statedRelationships) {
+			relationshipMap.computeIfAbsent(statedRelationship.getGroup(), g -> new ArrayList<>()).add(statedRelationship);
+		}
+		representation.setRightHandSideRelationships(relationshipMap);
+		return createOwlClassAxiom(representation);
+	}
+
+	private static long[] getConceptIds(SnomedTaxonomy snomedTaxonomy) {
+		Set<Long> conceptIds = snomedTaxonomy.getAllConceptIds();
+		if (conceptIds instanceof LongCollection) {
+			return ((LongCollection) conceptIds).toLongArray();
+		}
+		return conceptIds.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * Splits the concept ids into chunks which are processed concurrently when more than one thread is configured.
+	 * @return the result of each chunk in concept order.
+	 */
+	private <T> List<T> processInChunks(long[] conceptIds, ChunkProcessor<T> chunkProcessor) {
+		int chunkCount = Math.min(threads * 4, conceptIds.length / MIN_CHUNK_SIZE);
+		if (threads <= 1 || chunkCount <= 1) {
+			return Collections.singletonList(chunkProcessor.process(conceptIds, 0, conceptIds.length));
+		}
+
+		List<Callable<T>> tasks = new ArrayList<>(chunkCount);
+		for (int chunk = 0; chunk < chunkCount; chunk++) {
+			int start = (int) ((long) conceptIds.length * chunk / chunkCount);
+			int end = (int) ((long) conceptIds.length * (chunk + 1) / chunkCount);
+			tasks.add(() -> chunkProcessor.process(conceptIds, start, end));
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<T> results = new ArrayList<>(chunkCount);
+			for (Future<T> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReasonerServiceRuntimeException("Interrupted while creating axioms.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
 			}
+			throw new ReasonerServiceRuntimeException("Failed to create axioms.", e.getCause());
+		} finally {
+			pool.shutdownNow();
 		}
-		return axiomsMap;
+	}
+
+	private interface ChunkProcessor<T> {
+		T process(long[] conceptIds, int start, int end);
 	}
 
 	public void saveOntology(OWLOntology ontology, OutputStream outputStream) throws OWLOntologyStorageException {
@@ -296,13 +416,20 @@ public class OntologyService {
 		return factory.getOWLClass(COLON + conceptId, prefixManager);
 	}
 
-	private void addFSNAnnotation(Long conceptId, SnomedTaxonomy snomedTaxonomy, Set<OWLAxiom> axioms) {
+	private void addFSNAnnotation(Long conceptId, SnomedTaxonomy snomedTaxonomy, Collection<OWLAxiom> axioms) {
 		String conceptFsnTerm = snomedTaxonomy.getConceptFsnTerm(conceptId);
 		if (conceptFsnTerm != null) {
 			axioms.add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), IRI.create(SNOMED_CORE_COMPONENTS_URI + conceptId), factory.getOWLLiteral(conceptFsnTerm)));
 		}
 	}
 
+	/**
+	 * @param threads number of threads used to generate the axioms of concepts, defaults to the number of available processors.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
 	public DefaultPrefixManager getPrefixManager() {
 		return prefixManager;
 	}
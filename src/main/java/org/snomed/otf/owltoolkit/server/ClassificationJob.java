@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.server;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * A classification of a delta archive against one of the bases held by a {@link ClassificationServer}.
+ */
+public class ClassificationJob {
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	private final String id;
+	private final String baseName;
+	private final File deltaFile;
+	private final File resultsFile;
+	private final Date created;
+	private volatile Status status;
+	private volatile String errorMessage;
+	private volatile Date started;
+	private volatile Date finished;
+
+	ClassificationJob(String id, String baseName, File deltaFile, File resultsFile) {
+		this.id = id;
+		this.baseName = baseName;
+		this.deltaFile = deltaFile;
+		this.resultsFile = resultsFile;
+		this.created = new Date();
+		this.status = Status.QUEUED;
+	}
+
+	void running() {
+		started = new Date();
+		status = Status.RUNNING;
+	}
+
+	void completed() {
+		finished = new Date();
+		status = Status.COMPLETED;
+	}
+
+	void failed(String errorMessage) {
+		this.errorMessage = errorMessage;
+		finished = new Date();
+		status = Status.FAILED;
+	}
+
+	public boolean isFinished() {
+		return status == Status.COMPLETED || status == Status.FAILED;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getBaseName() {
+		return baseName;
+	}
+
+	/**
+	 * @return the delta archive of the job or null if the base is classified without a delta.
+	 */
+	File getDeltaFile() {
+		return deltaFile;
+	}
+
+	/**
+	 * @return the RF2 delta archive of classification results, only complete once the job has status COMPLETED.
+	 */
+	public File getResultsFile() {
+		return resultsFile;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public Date getFinished() {
+		return finished;
+	}
+}
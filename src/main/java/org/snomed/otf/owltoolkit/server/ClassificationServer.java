@@ -0,0 +1,448 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.owltoolkit.service.ReasonerServiceException;
+import org.snomed.otf.owltoolkit.service.SnomedReasonerService;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyCache;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Local HTTP server which classifies delta archives against base releases loaded once when the server is set up.
+ *
+ * Each base is loaded once, using the snapshot cache, and kept in memory as a frozen taxonomy. Jobs load their delta into an overlay
+ * of the base so only the content the delta changes is copied and jobs against the same base share everything else.
+ * Each base is classified once without a delta to warm the JVM and measure the peak heap used by a classification of that base.
+ * Jobs are queued and run by a fixed pool of workers. Before it runs, each job also takes the heap estimate of its base from the heap budget,
+ * so large bases run with fewer jobs at the same time.
+ *
+ * Endpoints:
+ * <ul>
+ *     <li>GET /bases - names of the loaded bases</li>
+ *     <li>POST /classifications?base=name - queue a job, the request body is the delta zip archive, an empty body classifies the base alone.
+ *     The base parameter defaults to {@value #DEFAULT_BASE}</li>
+ *     <li>GET /classifications/{id} - job status</li>
+ *     <li>GET /classifications/{id}/results - RF2 delta archive of results once the job is complete</li>
+ *     <li>DELETE /classifications/{id} - remove a finished job and its results</li>
+ * </ul>
+ * Responses other than results archives are JSON.
+ */
+public class ClassificationServer {
+
+	public static final String DEFAULT_BASE = "default";
+
+	private static final int MEGABYTE = 1024 * 1024;
+
+	private final File workDirectory;
+	private final SnomedTaxonomyCache snapshotCache;
+	private final int workers;
+	private final Map<String, Base> bases = new ConcurrentHashMap<>();
+	private final Map<String, ClassificationJob> jobs = new ConcurrentHashMap<>();
+	private int jobThreads = 1;
+	private long heapBudget;
+
+	private ExecutorService jobExecutor;
+	private Semaphore heapBudgetMegabytes;
+	private int heapBudgetMegabytesTotal;
+	private HttpServer httpServer;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * @param workDirectory directory for uploaded delta archives and classification results
+	 * @param snapshotCacheDirectory directory of the snapshot cache used to load the bases, may be null to load without a cache
+	 * @param workers maximum number of classification jobs to run at the same time
+	 */
+	public ClassificationServer(File workDirectory, File snapshotCacheDirectory, int workers) {
+		this.workDirectory = workDirectory;
+		this.snapshotCache = snapshotCacheDirectory != null ? new SnomedTaxonomyCache(snapshotCacheDirectory) : null;
+		this.workers = workers;
+	}
+
+	/**
+	 * Loads a base release and classifies it once. Must be called before the server is started.
+	 */
+	public void addBase(String name, Set<File> snapshotArchiveFiles) throws ReasonerServiceException {
+		if (jobExecutor != null) {
+			throw new IllegalStateException("Bases must be added before the server is started.");
+		}
+		logger.info("Loading base {} from {}", name, snapshotArchiveFiles);
+		File warmUpResults = new File(workDirectory, "base-" + name + "-results.zip");
+		if (!workDirectory.isDirectory() && !workDirectory.mkdirs()) {
+			throw new ReasonerServiceException("Failed to create work directory " + workDirectory.getAbsolutePath());
+		}
+		SnomedTaxonomy baseTaxonomy;
+		try {
+			baseTaxonomy = new SnomedTaxonomyBuilder().buildBase(snapshotArchiveFiles, snapshotCache, false);
+		} catch (ReleaseImportException e) {
+			throw new ReasonerServiceException("Failed to build base taxonomy.", e);
+		}
+
+		List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getType() == MemoryType.HEAP)
+				.collect(Collectors.toList());
+		long heapUsedBefore = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+		newReasonerService().classify("base-" + name, baseTaxonomy, null, warmUpResults, SnomedReasonerService.ELK_REASONER_FACTORY, false);
+
+		// The pools peak at different times so their sum is an upper bound
+		long peakHeapUsed = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+		long estimatedJobHeap = Math.max(peakHeapUsed - heapUsedBefore, MEGABYTE);
+		if (!warmUpResults.delete()) {
+			logger.warn("Failed to delete {}", warmUpResults.getAbsolutePath());
+		}
+		bases.put(name, new Base(baseTaxonomy, estimatedJobHeap));
+		logger.info("Base {} loaded, estimated heap per classification {}MB", name, estimatedJobHeap / MEGABYTE);
+	}
+
+	/**
+	 * Starts the job workers and the HTTP server on the loopback address.
+	 * @param port port to listen on, 0 for any free port
+	 * @return the port the server is listening on
+	 */
+	public int start(int port) throws IOException {
+		startWorkers();
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/bases", this::handleBases);
+		httpServer.createContext("/classifications", this::handleClassifications);
+		httpServer.setExecutor(Executors.newFixedThreadPool(4, newThreadFactory("classification-server-http")));
+		httpServer.start();
+		int boundPort = httpServer.getAddress().getPort();
+		logger.info("Classification server listening on port {} with {} workers and a heap budget of {}MB", boundPort, workers, heapBudgetMegabytesTotal);
+		return boundPort;
+	}
+
+	/**
+	 * Starts the job workers without the HTTP server, jobs can be submitted using {@link #submit(String, InputStream)}.
+	 */
+	public synchronized void startWorkers() {
+		if (jobExecutor != null) {
+			return;
+		}
+		long budget = heapBudget;
+		if (budget <= 0) {
+			Runtime runtime = Runtime.getRuntime();
+			budget = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		}
+		heapBudgetMegabytesTotal = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / MEGABYTE));
+		heapBudgetMegabytes = new Semaphore(heapBudgetMegabytesTotal, true);
+		jobExecutor = Executors.newFixedThreadPool(workers, newThreadFactory("classification-worker"));
+	}
+
+	public void stop() {
+		if (httpServer != null) {
+			httpServer.stop(0);
+			((ExecutorService) httpServer.getExecutor()).shutdownNow();
+		}
+		if (jobExecutor != null) {
+			jobExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Queues classification of a delta archive against a base.
+	 * @param deltaArchive delta archive stream, if empty the base is classified without a delta
+	 */
+	public ClassificationJob submit(String baseName, InputStream deltaArchive) throws IOException {
+		Base base = bases.get(baseName);
+		if (base == null) {
+			throw new IllegalArgumentException("Base '" + baseName + "' not found.");
+		}
+		if (jobExecutor == null) {
+			throw new IllegalStateException("Classification server is not started.");
+		}
+		String id = UUID.randomUUID().toString();
+		File deltaFile = new File(workDirectory, id + "-delta.zip");
+		long deltaSize = Files.copy(deltaArchive, deltaFile.toPath());
+		if (deltaSize == 0) {
+			Files.delete(deltaFile.toPath());
+			deltaFile = null;
+		} else if (!isZipArchive(deltaFile)) {
+			Files.delete(deltaFile.toPath());
+			throw new IllegalArgumentException("Delta archive is not a zip file.");
+		}
+		ClassificationJob job = new ClassificationJob(id, baseName, deltaFile, new File(workDirectory, id + "-results.zip"));
+		jobs.put(id, job);
+		jobExecutor.execute(() -> run(job, base));
+		logger.info("Classification job {} queued against base {}", id, baseName);
+		return job;
+	}
+
+	private boolean isZipArchive(File file) throws IOException {
+		byte[] signature = new byte[4];
+		try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+			inputStream.readFully(signature);
+		} catch (EOFException e) {
+			return false;
+		}
+		// Local file header or, for an archive with no entries, end of central directory
+		return signature[0] == 'P' && signature[1] == 'K'
+				&& ((signature[2] == 3 && signature[3] == 4) || (signature[2] == 5 && signature[3] == 6));
+	}
+
+	public ClassificationJob getJob(String id) {
+		return jobs.get(id);
+	}
+
+	/**
+	 * Removes a finished job and its results.
+	 * @return false if the job is not found or has not finished.
+	 */
+	public boolean deleteJob(String id) {
+		ClassificationJob job = jobs.get(id);
+		if (job == null || !job.isFinished()) {
+			return false;
+		}
+		jobs.remove(id);
+		if (job.getResultsFile().exists() && !job.getResultsFile().delete()) {
+			logger.warn("Failed to delete {}", job.getResultsFile().getAbsolutePath());
+		}
+		return true;
+	}
+
+	public Set<String> getBaseNames() {
+		return new TreeSet<>(bases.keySet());
+	}
+
+	private void run(ClassificationJob job, Base base) {
+		int permits = (int) Math.min(heapBudgetMegabytesTotal, Math.max(1, base.getEstimatedJobHeap() / MEGABYTE));
+		try {
+			heapBudgetMegabytes.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			job.failed("Server stopped before the job started.");
+			return;
+		}
+		try {
+			job.running();
+			logger.info("Classification job {} started", job.getId());
+			newReasonerService().classify(job.getId(), base.getTaxonomy(), job.getDeltaFile(), job.getResultsFile(),
+					SnomedReasonerService.ELK_REASONER_FACTORY, false);
+			job.completed();
+			logger.info("Classification job {} completed", job.getId());
+		} catch (ReasonerServiceException | RuntimeException e) {
+			logger.error("Classification job {} failed", job.getId(), e);
+			job.failed(e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+		} finally {
+			heapBudgetMegabytes.release(permits);
+			File deltaFile = job.getDeltaFile();
+			if (deltaFile != null && !deltaFile.delete()) {
+				logger.warn("Failed to delete {}", deltaFile.getAbsolutePath());
+			}
+		}
+	}
+
+	private SnomedReasonerService newReasonerService() {
+		SnomedReasonerService reasonerService = new SnomedReasonerService();
+		reasonerService.setThreads(jobThreads);
+		return reasonerService;
+	}
+
+	private void handleBases(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				sendError(exchange, 405, "Method not allowed.");
+				return;
+			}
+			sendJson(exchange, 200, getBaseNames().stream().map(ClassificationServer::jsonString).collect(Collectors.joining(",", "[", "]")));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleClassifications(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			List<String> path = new ArrayList<>();
+			for (String part : exchange.getRequestURI().getPath().split("/")) {
+				if (!part.isEmpty()) {
+					path.add(part);
+				}
+			}
+			if (path.size() == 1 && "POST".equals(method)) {
+				String baseName = getQueryParameters(exchange).getOrDefault("base", DEFAULT_BASE);
+				if (!bases.containsKey(baseName)) {
+					sendError(exchange, 404, "Base '" + baseName + "' not found.");
+					return;
+				}
+				ClassificationJob job;
+				try {
+					job = submit(baseName, exchange.getRequestBody());
+				} catch (IllegalArgumentException e) {
+					sendError(exchange, 400, e.getMessage());
+					return;
+				}
+				exchange.getResponseHeaders().set("Location", "/classifications/" + job.getId());
+				sendJson(exchange, 202, toJson(job));
+				return;
+			}
+			ClassificationJob job = path.size() > 1 ? jobs.get(path.get(1)) : null;
+			if (path.size() < 2 || path.size() > 3 || (path.size() == 3 && !"results".equals(path.get(2)))) {
+				sendError(exchange, 404, "Not found.");
+			} else if (job == null) {
+				sendError(exchange, 404, "Classification job '" + path.get(1) + "' not found.");
+			} else if (path.size() == 2 && "GET".equals(method)) {
+				sendJson(exchange, 200, toJson(job));
+			} else if (path.size() == 2 && "DELETE".equals(method)) {
+				if (deleteJob(job.getId())) {
+					exchange.sendResponseHeaders(204, -1);
+				} else {
+					sendError(exchange, 409, "Classification job has not finished.");
+				}
+			} else if (path.size() == 3 && "GET".equals(method)) {
+				if (job.getStatus() != ClassificationJob.Status.COMPLETED) {
+					sendError(exchange, 409, "Classification job status is " + job.getStatus() + ".");
+					return;
+				}
+				File resultsFile = job.getResultsFile();
+				exchange.getResponseHeaders().set("Content-Type", "application/zip");
+				exchange.sendResponseHeaders(200, resultsFile.length());
+				try (OutputStream responseBody = exchange.getResponseBody()) {
+					Files.copy(resultsFile.toPath(), responseBody);
+				}
+			} else {
+				sendError(exchange, 405, "Method not allowed.");
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.error("Failed to handle request {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+			sendError(exchange, 500, "Internal error.");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private Map<String, String> getQueryParameters(HttpExchange exchange) throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				int equals = parameter.indexOf('=');
+				if (equals > 0) {
+					parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"), URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		sendJson(exchange, status, "{\"error\":" + jsonString(message) + "}");
+	}
+
+	private void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(bytes);
+		}
+	}
+
+	static String toJson(ClassificationJob job) {
+		StringBuilder json = new StringBuilder("{");
+		json.append("\"id\":").append(jsonString(job.getId()));
+		json.append(",\"base\":").append(jsonString(job.getBaseName()));
+		json.append(",\"status\":").append(jsonString(job.getStatus().name()));
+		json.append(",\"created\":").append(jsonString(job.getCreated()));
+		json.append(",\"started\":").append(jsonString(job.getStarted()));
+		json.append(",\"finished\":").append(jsonString(job.getFinished()));
+		if (job.getErrorMessage() != null) {
+			json.append(",\"errorMessage\":").append(jsonString(job.getErrorMessage()));
+		}
+		return json.append("}").toString();
+	}
+
+	private static String jsonString(Date date) {
+		return date != null ? jsonString(date.toInstant().toString()) : "null";
+	}
+
+	private static String jsonString(String value) {
+		StringBuilder json = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	private static ThreadFactory newThreadFactory(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * @param heapBudget bytes of heap available to running jobs. By default the heap free after loading the bases.
+	 */
+	public void setHeapBudget(long heapBudget) {
+		this.heapBudget = heapBudget;
+	}
+
+	/**
+	 * @param jobThreads number of threads used by each job to extract the reasoner taxonomy and generate the normal form, default 1.
+	 */
+	public void setJobThreads(int jobThreads) {
+		this.jobThreads = jobThreads;
+	}
+
+	private static final class Base {
+
+		private final SnomedTaxonomy taxonomy;
+		private final long estimatedJobHeap;
+
+		private Base(SnomedTaxonomy taxonomy, long estimatedJobHeap) {
+			this.taxonomy = taxonomy;
+			this.estimatedJobHeap = estimatedJobHeap;
+		}
+
+		private SnomedTaxonomy getTaxonomy() {
+			return taxonomy;
+		}
+
+		private long getEstimatedJobHeap() {
+			return estimatedJobHeap;
+		}
+	}
+}
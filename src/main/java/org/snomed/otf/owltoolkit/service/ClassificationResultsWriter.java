@@ -18,162 +18,242 @@ package org.snomed.otf.owltoolkit.service;
 import org.snomed.otf.owltoolkit.constants.Concepts;
 import org.snomed.otf.owltoolkit.domain.Relationship;
 import org.snomed.otf.owltoolkit.normalform.RelationshipChangeProcessor;
+import org.snomed.otf.owltoolkit.util.ParallelZipOutputStream;
+import org.snomed.otf.owltoolkit.util.RandomUuidGenerator;
+import org.snomed.otf.owltoolkit.util.Rf2RowWriter;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
-import java.text.SimpleDateFormat;
+import java.io.*;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 class ClassificationResultsWriter {
 
-	private static final Charset UTF_8_CHARSET = Charset.forName("UTF-8");
-	private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMMdd");
+	// Formatter is immutable so it may be shared by classifications running at the same time
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneId.systemDefault());
 	private static final String RELATIONSHIPS_HEADER = "id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId";
 	private static final String EQUIVALENT_REFSET_HEADER = "id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId\tmapTarget";
-	private static final String TAB = "\t";
-
-	void writeResultsRf2Archive(
-			RelationshipChangeProcessor changeCollector,
-			List<Set<Long>> equivalentConceptIdSets,
-			OutputStream resultsOutputStream,
-			Date startDate) throws ReasonerServiceException {
-
+	private static final long INFERRED_RELATIONSHIP = Long.parseLong(Concepts.INFERRED_RELATIONSHIP);
+	private static final long EXISTENTIAL_RESTRICTION_MODIFIER = Long.parseLong(Concepts.EXISTENTIAL_RESTRICTION_MODIFIER);
+	private static final int STREAMING_QUEUE_CAPACITY = 1024;
+
+	private final RandomUuidGenerator uuidGenerator = new RandomUuidGenerator();
+	private int compressionThreads = 1;
+
+	/**
+	 * Starts writing a results archive. Relationship changes passed to the returned archive are written by a background thread
+	 * while the normal form is generated, so they do not have to be held in memory until the end of the classification.
+	 */
+	StreamingResultsArchive startResultsRf2Archive(OutputStream resultsOutputStream, Date startDate) throws ReasonerServiceException {
 		try {
-			try (ZipOutputStream zipOutputStream = new ZipOutputStream(resultsOutputStream, UTF_8_CHARSET);
-				 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(zipOutputStream))) {
-
-				String formattedDate = DATE_FORMAT.format(startDate);
-				zipOutputStream.putNextEntry(new ZipEntry(String.format("RF2/sct2_Relationship_Delta_Classification_%s.txt", formattedDate)));
-				writeRelationshipChanges(writer, changeCollector.getAddedStatements(), changeCollector.getRemovedStatements());
-
-				zipOutputStream.putNextEntry(new ZipEntry(String.format("RF2/der2_sRefset_EquivalentConceptSimpleMapDelta_Classification_%s.txt", formattedDate)));
-				writeEquivalentConcepts(writer, equivalentConceptIdSets);
-			}
+			return new StreamingResultsArchive(resultsOutputStream, DATE_FORMAT.format(startDate.toInstant()));
 		} catch (IOException e) {
 			throw new ReasonerServiceException("Failed to write out results archive.", e);
 		}
 	}
 
-	private void writeRelationshipChanges(BufferedWriter writer, Map<Long, Set<Relationship>> addedStatements, Map<Long, Set<Relationship>> removedStatements) throws IOException {
-		// Write header
-		writer.write(RELATIONSHIPS_HEADER);
-		writer.newLine();
-
-		// Write newly inferred relationships
-		for (Long sourceId : addedStatements.keySet()) {
-			String active = "1";
-			for (Relationship relationship : addedStatements.get(sourceId)) {
-				writeRelationship(writer,
-						relationship.getRelationshipId() == -1 ? "" : relationship.getRelationshipId() + "",
-						active,
-						sourceId,
-						relationship.getDestinationId(),
-						relationship.getGroup(),
-						relationship.getTypeId(),
-						Concepts.EXISTENTIAL_RESTRICTION_MODIFIER);
-			}
-		}
+	/**
+	 * @param compressionThreads number of threads used to deflate the entries of results archives.
+	 */
+	void setCompressionThreads(int compressionThreads) {
+		this.compressionThreads = compressionThreads;
+	}
 
-		// Write redundant relationships
-		for (Long sourceId : removedStatements.keySet()) {
-			String active = "0";
-			for (Relationship relationship : removedStatements.get(sourceId)) {
-				writeRelationship(writer,
-						relationship.getRelationshipId() + "",
-						active,
-						sourceId,
-						relationship.getDestinationId(),
-						relationship.getGroup(),
-						relationship.getTypeId(),
-						Concepts.EXISTENTIAL_RESTRICTION_MODIFIER);
+	private void writeAddedRelationships(Rf2RowWriter writer, long sourceId, Collection<Relationship> relationships) throws IOException {
+		for (Relationship relationship : relationships) {
+			long relationshipId = relationship.getRelationshipId();
+			if (relationshipId == -1) {
+				writer.emptyField();
+			} else {
+				writer.field(relationshipId);
 			}
+			writeRelationship(writer, 1, sourceId, relationship);
 		}
+	}
 
-		writer.flush();
+	private void writeRemovedRelationships(Rf2RowWriter writer, long sourceId, Collection<Relationship> relationships) throws IOException {
+		for (Relationship relationship : relationships) {
+			writer.field(relationship.getRelationshipId());
+			writeRelationship(writer, 0, sourceId, relationship);
+		}
 	}
 
-	private void writeEquivalentConcepts(BufferedWriter writer, List<Set<Long>> equivalentConceptIdSets) throws IOException {
+	private void writeEquivalentConcepts(Rf2RowWriter writer, List<Set<Long>> equivalentConceptIdSets) throws IOException {
 		// Write header
-		writer.write(EQUIVALENT_REFSET_HEADER);
-		writer.newLine();
+		writer.line(EQUIVALENT_REFSET_HEADER);
 
 		// Write sets of equivalentConcepts
 		for (Set<Long> equivalentConceptIdSet : equivalentConceptIdSets) {
-			String setId = UUID.randomUUID().toString();
+			UUID setId = uuidGenerator.next();
 
 			for (Long conceptId : equivalentConceptIdSet) {
-				// random member id
-				writer.write(UUID.randomUUID().toString());
-				writer.write(TAB);
-
-				// no effectiveTime
-				writer.write(TAB);
-
-				// active
-				writer.write("1");
-				writer.write(TAB);
-
-				// no moduleId
-				writer.write(TAB);
-
-				// no refsetId
-				writer.write(TAB);
-
-				// referencedComponentId is one of the concepts in the set
-				writer.write(conceptId.toString());
-				writer.write(TAB);
-
-				// mapTarget is the unique id for the set
-				writer.write(setId);
-				writer.newLine();
+				writer
+						// random member id
+						.field(uuidGenerator.next())
+						// no effectiveTime
+						.emptyField()
+						// active
+						.field(1)
+						// no moduleId
+						.emptyField()
+						// no refsetId
+						.emptyField()
+						// referencedComponentId is one of the concepts in the set
+						.field(conceptId)
+						// mapTarget is the unique id for the set
+						.field(setId)
+						.endRow();
 			}
 		}
 
 		writer.flush();
 	}
 
-	private void writeRelationship(BufferedWriter writer, String relationshipId, String active, Long sourceId, Long destinationId, Integer group, Long typeId, String existentialRestrictionModifier) throws IOException {
-		writer.write(relationshipId);
-		writer.write(TAB);
+	private void writeRelationship(Rf2RowWriter writer, int active, long sourceId, Relationship relationship) throws IOException {
+		// The relationship id has already been written
+		writer
+				// No effectiveTime
+				.emptyField()
+				.field(active)
+				// No module
+				.emptyField()
+				.field(sourceId)
+				.field(relationship.getDestinationId())
+				.field(relationship.getGroup())
+				.field(relationship.getTypeId())
+				.field(INFERRED_RELATIONSHIP)
+				// modifierId always existential at this time
+				.field(EXISTENTIAL_RESTRICTION_MODIFIER)
+				.endRow();
+	}
 
-		// No effectiveTime
-		writer.write(TAB);
+	/**
+	 * Results archive which writes relationship changes as they are received. The changes of each concept are queued for a writer
+	 * thread, the queue is bounded so the normal form generation waits rather than building up rows when writing falls behind.
+	 */
+	final class StreamingResultsArchive implements RelationshipChangeProcessor.Listener, Closeable {
+
+		private final ConceptChanges endOfChanges = new ConceptChanges(-1, Collections.emptySet(), Collections.emptySet());
+
+		private final ParallelZipOutputStream zipOutputStream;
+		private final Rf2RowWriter writer;
+		private final String formattedDate;
+		private final BlockingQueue<ConceptChanges> queue = new ArrayBlockingQueue<>(STREAMING_QUEUE_CAPACITY);
+		private final Thread writerThread;
+		private volatile IOException writeException;
+		private boolean finished;
+		private boolean completed;
+
+		private StreamingResultsArchive(OutputStream resultsOutputStream, String formattedDate) throws IOException {
+			this.formattedDate = formattedDate;
+			zipOutputStream = new ParallelZipOutputStream(resultsOutputStream, compressionThreads);
+			writer = new Rf2RowWriter(zipOutputStream);
+			zipOutputStream.putNextEntry(String.format("RF2/sct2_Relationship_Delta_Classification_%s.txt", formattedDate));
+			writer.line(RELATIONSHIPS_HEADER);
+			writerThread = new Thread(this::writeQueuedChanges, "classification-results-writer");
+			writerThread.setDaemon(true);
+			writerThread.start();
+		}
 
-		// active
-		writer.write(active);
-		writer.write(TAB);
+		@Override
+		public void relationshipsChanged(long conceptId, Collection<Relationship> addedOrChangedRelationships, Collection<Relationship> removedRelationships) {
+			put(new ConceptChanges(conceptId, addedOrChangedRelationships, removedRelationships));
+		}
 
-		// No module
-		writer.write(TAB);
+		private void put(ConceptChanges conceptChanges) {
+			try {
+				queue.put(conceptChanges);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while writing classification results.", e);
+			}
+		}
 
-		// sourceId
-		writer.write(sourceId.toString());
-		writer.write(TAB);
+		private void writeQueuedChanges() {
+			try {
+				ConceptChanges conceptChanges;
+				while ((conceptChanges = queue.take()) != endOfChanges) {
+					if (writeException != null) {
+						// Keep taking so that the producer is not blocked
+						continue;
+					}
+					try {
+						writeAddedRelationships(writer, conceptChanges.conceptId, conceptChanges.addedOrChangedRelationships);
+						writeRemovedRelationships(writer, conceptChanges.conceptId, conceptChanges.removedRelationships);
+					} catch (IOException e) {
+						writeException = e;
+					} catch (RuntimeException e) {
+						writeException = new IOException("Failed to write relationship changes.", e);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 
-		// destinationId
-		writer.write(destinationId.toString());
-		writer.write(TAB);
+		/**
+		 * Waits for all relationship changes to be written then writes the equivalent concepts and completes the archive.
+		 */
+		void finish(List<Set<Long>> equivalentConceptIdSets) throws ReasonerServiceException {
+			try {
+				stopWriterThread();
+				if (writeException != null) {
+					throw writeException;
+				}
+				writer.flush();
+				zipOutputStream.putNextEntry(String.format("RF2/der2_sRefset_EquivalentConceptSimpleMapDelta_Classification_%s.txt", formattedDate));
+				writeEquivalentConcepts(writer, equivalentConceptIdSets);
+				zipOutputStream.close();
+				completed = true;
+			} catch (IOException e) {
+				throw new ReasonerServiceException("Failed to write out results archive.", e);
+			}
+		}
 
-		// relationshipGroup
-		writer.write(group.toString());
-		writer.write(TAB);
+		private void stopWriterThread() throws IOException {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			put(endOfChanges);
+			try {
+				writerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while writing classification results.");
+			}
+		}
 
-		// typeId
-		writer.write(typeId.toString());
-		writer.write(TAB);
+		/**
+		 * Closes the archive. If the archive was not completed by {@link #finish(List)}, for example because normal form generation
+		 * failed, the archive is aborted rather than finished so that a partial archive is never written as a valid result.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				stopWriterThread();
+			} finally {
+				if (completed) {
+					zipOutputStream.close();
+				} else {
+					zipOutputStream.abort();
+				}
+			}
+		}
+	}
 
-		// characteristicTypeId
-		writer.write(Concepts.INFERRED_RELATIONSHIP);
-		writer.write(TAB);
+	private static final class ConceptChanges {
 
-		// modifierId always existential at this time
-		writer.write(existentialRestrictionModifier);
-		writer.newLine();
-	}
+		private final long conceptId;
+		private final Collection<Relationship> addedOrChangedRelationships;
+		private final Collection<Relationship> removedRelationships;
 
+		private ConceptChanges(long conceptId, Collection<Relationship> addedOrChangedRelationships, Collection<Relationship> removedRelationships) {
+			this.conceptId = conceptId;
+			this.addedOrChangedRelationships = addedOrChangedRelationships;
+			this.removedRelationships = removedRelationships;
+		}
+	}
 }
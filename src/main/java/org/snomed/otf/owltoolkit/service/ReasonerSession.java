@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.service;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.owltoolkit.classification.ReasonerTaxonomy;
+import org.snomed.otf.owltoolkit.classification.ReasonerTaxonomyWalker;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+import org.snomed.otf.owltoolkit.normalform.NormalFormState;
+import org.snomed.otf.owltoolkit.ontology.OntologyService;
+import org.snomed.otf.owltoolkit.ontology.PropertyChain;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyCache;
+import org.snomed.otf.owltoolkit.util.OptionalFileInputStream;
+import org.snomed.otf.owltoolkit.util.TimerUtil;
+
+import java.io.*;
+import java.util.*;
+
+import static java.lang.Long.parseLong;
+
+/**
+ * Keeps the ontology and reasoner of a snapshot in memory to classify a series of deltas against that snapshot.
+ * Each delta is applied to the ontology as axiom additions and removals relative to the previous classification,
+ * so a reasoner supporting incremental reasoning, like ELK, only has to process the changes.
+ * The normal form state of each classification is kept to normalise only the concepts affected by the next delta.
+ *
+ * The snapshot taxonomy is kept frozen in memory and each delta is loaded into an overlay of it, see {@link SnomedTaxonomy#createOverlay()}.
+ * Sessions are opened using {@link SnomedReasonerService#openSession(Set, String)} and must be closed to release the reasoner.
+ */
+public class ReasonerSession implements Closeable {
+
+	private final SnomedReasonerService reasonerService;
+	private final SnomedTaxonomy baseTaxonomy;
+	private final OWLOntology owlOntology;
+	private final OWLReasoner reasoner;
+	private NormalFormState normalFormState;
+	private boolean closed;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	ReasonerSession(SnomedReasonerService reasonerService, Set<File> snapshotArchiveFiles, OWLReasonerFactory reasonerFactory,
+			SnomedTaxonomyCache snapshotCache) throws ReasonerServiceException {
+
+		this.reasonerService = reasonerService;
+		TimerUtil timer = new TimerUtil("Reasoner session");
+		try {
+			baseTaxonomy = new SnomedTaxonomyBuilder().buildBase(snapshotArchiveFiles, snapshotCache, false);
+			timer.checkpoint("Build snapshot taxonomy");
+
+			OntologyService ontologyService = new OntologyService(getUngroupedRoles(baseTaxonomy));
+			ontologyService.setThreads(reasonerService.getThreads());
+			owlOntology = ontologyService.createOntology(baseTaxonomy);
+			timer.checkpoint("Create OWL Ontology");
+		} catch (ReleaseImportException e) {
+			throw new ReasonerServiceException("Failed to build existing taxonomy.", e);
+		} catch (OWLOntologyCreationException e) {
+			throw new ReasonerServiceException("Failed to build OWL Ontology.", e);
+		}
+
+		reasoner = reasonerFactory.createReasoner(owlOntology, new SimpleConfiguration(new ConsoleProgressMonitor()));
+		reasoner.flush();
+		reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+		timer.checkpoint("Inference computation");
+		timer.finish();
+	}
+
+	public void classify(String classificationId, File currentReleaseRf2DeltaArchiveFile, File resultsRf2DeltaArchiveFile) throws ReasonerServiceException {
+		try (OptionalFileInputStream currentReleaseRf2DeltaArchive = new OptionalFileInputStream(currentReleaseRf2DeltaArchiveFile);
+			 OutputStream resultsRf2DeltaArchive = new FileOutputStream(resultsRf2DeltaArchiveFile)) {
+
+			classify(classificationId, currentReleaseRf2DeltaArchive.getInputStream().orElse(null), resultsRf2DeltaArchive);
+		} catch (IOException e) {
+			throw new ReasonerServiceException("IO error handling input/output files.", e);
+		}
+	}
+
+	/**
+	 * Classifies the session snapshot with a delta. Changes from the delta of a previous classification in the session which are
+	 * not in this delta are reverted, each classification is relative to the snapshot.
+	 *
+	 * @param currentReleaseRf2DeltaArchive delta archive or null to classify the snapshot alone
+	 */
+	public synchronized void classify(String classificationId, InputStream currentReleaseRf2DeltaArchive, OutputStream resultsRf2DeltaArchive) throws ReasonerServiceException {
+		if (closed) {
+			throw new IllegalStateException("Reasoner session is closed.");
+		}
+		Date startDate = new Date();
+		TimerUtil timer = new TimerUtil("Classification");
+
+		SnomedTaxonomy snomedTaxonomy = buildTaxonomy(currentReleaseRf2DeltaArchive);
+		timer.checkpoint("Build existing taxonomy");
+
+		Set<Long> ungroupedRoles = getUngroupedRoles(snomedTaxonomy);
+		OntologyService ontologyService = new OntologyService(ungroupedRoles);
+		ontologyService.setThreads(reasonerService.getThreads());
+		applyAxiomChanges(ontologyService.createAxioms(snomedTaxonomy));
+		timer.checkpoint("Apply OWL Ontology changes");
+
+		logger.info("OwlReasoner inferring class hierarchy");
+		reasoner.flush();
+		reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+		timer.checkpoint("Inference computation");
+
+		logger.info("Extract ReasonerTaxonomy");
+		ReasonerTaxonomy reasonerTaxonomy = new ReasonerTaxonomyWalker(reasoner, new ReasonerTaxonomy(snomedTaxonomy.getConceptDictionary()), reasonerService.getThreads()).walk();
+		timer.checkpoint("Extract ReasonerTaxonomy");
+
+		Set<PropertyChain> propertyChains = ontologyService.getPropertyChains(owlOntology);
+		normalFormState = reasonerService.generateResults(snomedTaxonomy, reasonerTaxonomy, ungroupedRoles, propertyChains,
+				normalFormState, true, resultsRf2DeltaArchive, startDate, timer);
+		timer.finish();
+	}
+
+	private void applyAxiomChanges(Set<OWLAxiom> axioms) {
+		Set<OWLAxiom> existingAxioms = owlOntology.getAxioms();
+		List<OWLOntologyChange> changes = new ArrayList<>();
+		for (OWLAxiom existingAxiom : existingAxioms) {
+			if (!axioms.contains(existingAxiom)) {
+				changes.add(new RemoveAxiom(owlOntology, existingAxiom));
+			}
+		}
+		int removed = changes.size();
+		for (OWLAxiom axiom : axioms) {
+			if (!existingAxioms.contains(axiom)) {
+				changes.add(new AddAxiom(owlOntology, axiom));
+			}
+		}
+		logger.info("Applying {} axiom additions and {} axiom removals to the session ontology.", changes.size() - removed, removed);
+		if (!changes.isEmpty()) {
+			owlOntology.getOWLOntologyManager().applyChanges(changes);
+		}
+	}
+
+	private SnomedTaxonomy buildTaxonomy(InputStream currentReleaseRf2DeltaArchive) throws ReasonerServiceException {
+		try {
+			return new SnomedTaxonomyBuilder().buildOverlay(baseTaxonomy, currentReleaseRf2DeltaArchive, false);
+		} catch (ReleaseImportException e) {
+			throw new ReasonerServiceException("Failed to build existing taxonomy.", e);
+		}
+	}
+
+	private Set<Long> getUngroupedRoles(SnomedTaxonomy snomedTaxonomy) {
+		return snomedTaxonomy.getUngroupedRolesForContentTypeOrDefault(parseLong(Concepts.ALL_PRECOORDINATED_CONTENT));
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!closed) {
+			closed = true;
+			reasoner.dispose();
+		}
+	}
+}
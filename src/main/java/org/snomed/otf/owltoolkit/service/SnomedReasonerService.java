@@ -16,11 +16,17 @@
 package org.snomed.otf.owltoolkit.service;
 
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.semanticweb.elk.owl.exceptions.ElkException;
+import org.semanticweb.elk.owl.interfaces.ElkClass;
+import org.semanticweb.elk.reasoner.Reasoner;
+import org.semanticweb.elk.reasoner.ReasonerFactory;
+import org.semanticweb.elk.reasoner.taxonomy.model.Taxonomy;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.reasoner.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.otf.owltoolkit.classification.ElkAxiomLoader;
 import org.snomed.otf.owltoolkit.classification.ReasonerTaxonomy;
 import org.snomed.otf.owltoolkit.classification.ReasonerTaxonomyWalker;
 import org.snomed.otf.owltoolkit.constants.Concepts;
@@ -28,6 +34,7 @@ import org.snomed.otf.owltoolkit.conversion.AxiomRelationshipConversionService;
 import org.snomed.otf.owltoolkit.conversion.ConversionException;
 import org.snomed.otf.owltoolkit.domain.AxiomRepresentation;
 import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.normalform.NormalFormState;
 import org.snomed.otf.owltoolkit.normalform.RelationshipChangeProcessor;
 import org.snomed.otf.owltoolkit.normalform.RelationshipInactivationProcessor;
 import org.snomed.otf.owltoolkit.normalform.RelationshipNormalFormGenerator;
@@ -36,6 +43,7 @@ import org.snomed.otf.owltoolkit.ontology.OntologyService;
 import org.snomed.otf.owltoolkit.ontology.PropertyChain;
 import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
 import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyCache;
 import org.snomed.otf.owltoolkit.util.InputStreamSet;
 import org.snomed.otf.owltoolkit.util.OptionalFileInputStream;
 import org.snomed.otf.owltoolkit.util.TimerUtil;
@@ -51,6 +59,11 @@ public class SnomedReasonerService {
 
 	private final ClassificationResultsWriter classificationResultsWriter;
 
+	private SnomedTaxonomyCache snapshotCache;
+	private File normalFormStateFile;
+
+	private int threads = 1;
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	public SnomedReasonerService() {
@@ -80,6 +93,26 @@ public class SnomedReasonerService {
 			String reasonerFactoryClassName,
 			boolean outputOntologyFileForDebug) throws ReasonerServiceException {
 
+		if (snapshotCache != null) {
+			try (OptionalFileInputStream currentReleaseRf2DeltaArchive = new OptionalFileInputStream(currentReleaseRf2DeltaArchiveFile);
+				 OutputStream resultsRf2DeltaArchive = new FileOutputStream(resultsRf2DeltaArchiveFile)) {
+
+				classify(classificationId,
+						snomedTaxonomyBuilder -> snomedTaxonomyBuilder.build(previousReleaseRf2SnapshotArchiveFile,
+								currentReleaseRf2DeltaArchive.getInputStream().orElse(null), snapshotCache, false),
+						resultsRf2DeltaArchive,
+						reasonerFactoryClassName,
+						outputOntologyFileForDebug);
+			} catch (IOException e) {
+				deletePartialResults(resultsRf2DeltaArchiveFile);
+				throw new ReasonerServiceException("IO error handling input/output files.", e);
+			} catch (ReasonerServiceException | RuntimeException e) {
+				deletePartialResults(resultsRf2DeltaArchiveFile);
+				throw e;
+			}
+			return;
+		}
+
 		try (InputStreamSet previousReleaseRf2SnapshotArchives = new InputStreamSet(previousReleaseRf2SnapshotArchiveFile);
 			 OptionalFileInputStream currentReleaseRf2DeltaArchive = new OptionalFileInputStream(currentReleaseRf2DeltaArchiveFile);
 			 OutputStream resultsRf2DeltaArchive = new FileOutputStream(resultsRf2DeltaArchiveFile)) {
@@ -91,7 +124,11 @@ public class SnomedReasonerService {
 					reasonerFactoryClassName,
 					outputOntologyFileForDebug);
 		} catch (IOException e) {
+			deletePartialResults(resultsRf2DeltaArchiveFile);
 			throw new ReasonerServiceException("IO error handling input/output files.", e);
+		} catch (ReasonerServiceException | RuntimeException e) {
+			deletePartialResults(resultsRf2DeltaArchiveFile);
+			throw e;
 		}
 	}
 
@@ -102,6 +139,57 @@ public class SnomedReasonerService {
 			String reasonerFactoryClassName,
 			boolean outputOntologyFileForDebug) throws ReasonerServiceException {
 
+		classify(classificationId,
+				snomedTaxonomyBuilder -> snomedTaxonomyBuilder.build(previousReleaseRf2SnapshotArchives, currentReleaseRf2DeltaArchive, false),
+				resultsRf2DeltaArchive,
+				reasonerFactoryClassName,
+				outputOntologyFileForDebug);
+	}
+
+	/**
+	 * Classifies a delta against a snapshot which is already loaded. The delta is loaded into an overlay of the base taxonomy
+	 * so the base is not modified and may be used by several classifications at the same time.
+	 * @param baseTaxonomy a frozen taxonomy, see {@link SnomedTaxonomyBuilder#buildBase(Set, SnomedTaxonomyCache, boolean)}.
+	 */
+	public void classify(String classificationId,
+			SnomedTaxonomy baseTaxonomy,
+			File currentReleaseRf2DeltaArchiveFile,
+			File resultsRf2DeltaArchiveFile,
+			String reasonerFactoryClassName,
+			boolean outputOntologyFileForDebug) throws ReasonerServiceException {
+
+		try (OptionalFileInputStream currentReleaseRf2DeltaArchive = new OptionalFileInputStream(currentReleaseRf2DeltaArchiveFile);
+			 OutputStream resultsRf2DeltaArchive = new FileOutputStream(resultsRf2DeltaArchiveFile)) {
+
+			classify(classificationId,
+					snomedTaxonomyBuilder -> snomedTaxonomyBuilder.buildOverlay(baseTaxonomy, currentReleaseRf2DeltaArchive.getInputStream().orElse(null), false),
+					resultsRf2DeltaArchive,
+					reasonerFactoryClassName,
+					outputOntologyFileForDebug);
+		} catch (IOException e) {
+			deletePartialResults(resultsRf2DeltaArchiveFile);
+			throw new ReasonerServiceException("IO error handling input/output files.", e);
+		} catch (ReasonerServiceException | RuntimeException e) {
+			deletePartialResults(resultsRf2DeltaArchiveFile);
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes the results of a failed classification so that an incomplete archive is not used.
+	 */
+	private void deletePartialResults(File resultsRf2DeltaArchiveFile) {
+		if (resultsRf2DeltaArchiveFile.isFile() && !resultsRf2DeltaArchiveFile.delete()) {
+			logger.warn("Failed to delete incomplete results archive {}", resultsRf2DeltaArchiveFile.getAbsolutePath());
+		}
+	}
+
+	private void classify(String classificationId,
+			TaxonomyLoader taxonomyLoader,
+			OutputStream resultsRf2DeltaArchive,
+			String reasonerFactoryClassName,
+			boolean outputOntologyFileForDebug) throws ReasonerServiceException {
+
 		Date startDate = new Date();
 		TimerUtil timer = new TimerUtil("Classification");
 		logger.info("Checking requested reasoner is available");
@@ -114,45 +202,123 @@ public class SnomedReasonerService {
 		try {
 
 			// Also load inactive inferred relationships into another MAP in snomedTaxonomyBuilder
-			snomedTaxonomy = snomedTaxonomyBuilder.build(previousReleaseRf2SnapshotArchives, currentReleaseRf2DeltaArchive, false);
+			snomedTaxonomy = taxonomyLoader.load(snomedTaxonomyBuilder);
 		} catch (ReleaseImportException e) {
 			throw new ReasonerServiceException("Failed to build existing taxonomy.", e);
 		}
 		timer.checkpoint("Build existing taxonomy");
 
-		logger.info("Creating OwlOntology");
 		Set<Long> ungroupedRoles = snomedTaxonomy.getUngroupedRolesForContentTypeOrDefault(parseLong(Concepts.ALL_PRECOORDINATED_CONTENT));
 		OntologyService ontologyService = new OntologyService(ungroupedRoles);
-		OWLOntology owlOntology;
-		try {
-			owlOntology = ontologyService.createOntology(snomedTaxonomy);
-		} catch (OWLOntologyCreationException e) {
-			throw new ReasonerServiceException("Failed to build OWL Ontology.", e);
-		}
-		timer.checkpoint("Create OWL Ontology");
+		ontologyService.setThreads(threads);
+		Set<PropertyChain> propertyChains;
+		ReasonerTaxonomy reasonerTaxonomy;
+		if (ELK_REASONER_FACTORY.equals(reasonerFactoryClassName) && !outputOntologyFileForDebug) {
+			// ELK is loaded directly, an OWL Ontology is only needed for the property hierarchy
+			logger.info("Creating OWL property ontology");
+			OWLOntology propertyOntology;
+			try {
+				propertyOntology = ontologyService.createPropertyOntology(snomedTaxonomy);
+			} catch (OWLOntologyCreationException e) {
+				throw new ReasonerServiceException("Failed to build OWL property ontology.", e);
+			}
+			propertyChains = ontologyService.getPropertyChains(propertyOntology);
+			timer.checkpoint("Create OWL property ontology");
+
+			reasonerTaxonomy = classifyWithElk(ontologyService, snomedTaxonomy, propertyOntology, timer);
+		} else {
+			logger.info("Creating OwlOntology");
+			OWLOntology owlOntology;
+			try {
+				owlOntology = ontologyService.createOntology(snomedTaxonomy);
+			} catch (OWLOntologyCreationException e) {
+				throw new ReasonerServiceException("Failed to build OWL Ontology.", e);
+			}
+			timer.checkpoint("Create OWL Ontology");
 
-		Set<PropertyChain> propertyChains = ontologyService.getPropertyChains(owlOntology);
+			propertyChains = ontologyService.getPropertyChains(owlOntology);
 
-		if (outputOntologyFileForDebug) {
-			OntologyDebugUtil.serialiseOntologyForDebug(classificationId, owlOntology);
-			timer.checkpoint("Serialising OWL Ontology to disk for debug");
+			if (outputOntologyFileForDebug) {
+				OntologyDebugUtil.serialiseOntologyForDebug(classificationId, owlOntology);
+				timer.checkpoint("Serialising OWL Ontology to disk for debug");
+			}
+
+			logger.info("Creating OwlReasoner");
+			final OWLReasonerConfiguration configuration = new SimpleConfiguration(new ConsoleProgressMonitor());
+			OWLReasoner reasoner = reasonerFactory.createReasoner(owlOntology, configuration);
+			timer.checkpoint("Create reasoner");
+
+			logger.info("OwlReasoner inferring class hierarchy");
+			reasoner.flush();
+			reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+			timer.checkpoint("Inference computation");
+
+			logger.info("Extract ReasonerTaxonomy");
+			ReasonerTaxonomyWalker walker = new ReasonerTaxonomyWalker(reasoner, new ReasonerTaxonomy(snomedTaxonomy.getConceptDictionary()), threads);
+			reasonerTaxonomy = walker.walk();
+			reasoner.dispose();
+			timer.checkpoint("Extract ReasonerTaxonomy");
 		}
 
-		logger.info("Creating OwlReasoner");
-		final OWLReasonerConfiguration configuration = new SimpleConfiguration(new ConsoleProgressMonitor());
-		OWLReasoner reasoner = reasonerFactory.createReasoner(owlOntology, configuration);
-		timer.checkpoint("Create reasoner");
+		NormalFormState normalFormState = generateResults(snomedTaxonomy, reasonerTaxonomy, ungroupedRoles, propertyChains,
+				normalFormStateFile != null ? readNormalFormState() : null, normalFormStateFile != null, resultsRf2DeltaArchive, startDate, timer);
+		if (normalFormState != null) {
+			try {
+				normalFormState.write(normalFormStateFile);
+			} catch (IOException e) {
+				throw new ReasonerServiceException("Failed to write normal form state.", e);
+			}
+		}
+		timer.finish();
+	}
 
-		logger.info("OwlReasoner inferring class hierarchy");
-		reasoner.flush();
-		reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
-		timer.checkpoint("Inference computation");
+	/**
+	 * Classifies the taxonomy by streaming the generated axioms into an ELK reasoner through an axiom loader,
+	 * avoiding a second copy of the ontology in OWL API data structures.
+	 */
+	private ReasonerTaxonomy classifyWithElk(OntologyService ontologyService, SnomedTaxonomy snomedTaxonomy, OWLOntology propertyOntology,
+			TimerUtil timer) throws ReasonerServiceException {
 
-		logger.info("Extract ReasonerTaxonomy");
-		ReasonerTaxonomyWalker walker = new ReasonerTaxonomyWalker(reasoner, new ReasonerTaxonomy());
-		ReasonerTaxonomy reasonerTaxonomy = walker.walk();
-		reasoner.dispose();
-		timer.checkpoint("Extract ReasonerTaxonomy");
+		logger.info("Creating ELK reasoner");
+		Reasoner reasoner = new ReasonerFactory().createReasoner(new ElkAxiomLoader(ontologyService.createAxiomList(snomedTaxonomy)));
+		timer.checkpoint("Create axioms and reasoner");
+		try {
+			logger.info("ELK reasoner inferring class hierarchy");
+			Taxonomy<ElkClass> elkTaxonomy = reasoner.getTaxonomy();
+			timer.checkpoint("Inference computation");
+
+			logger.info("Extract ReasonerTaxonomy");
+			ReasonerTaxonomy reasonerTaxonomy = new ReasonerTaxonomyWalker(elkTaxonomy, propertyOntology,
+					new ReasonerTaxonomy(snomedTaxonomy.getConceptDictionary())).walk();
+			timer.checkpoint("Extract ReasonerTaxonomy");
+			return reasonerTaxonomy;
+		} catch (ElkException e) {
+			throw new ReasonerServiceException("ELK reasoner failed to classify the ontology.", e);
+		} finally {
+			try {
+				reasoner.shutdown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Generates the relationship normal form from the reasoner taxonomy and writes the changes to the results archive.
+	 *
+	 * @param previousNormalFormState state of a previous classification used to normalise only the affected concepts, or null
+	 * @param recordNormalFormState whether to record and return the state of this classification
+	 * @return the normal form state of this classification if recorded, otherwise null
+	 */
+	NormalFormState generateResults(SnomedTaxonomy snomedTaxonomy,
+			ReasonerTaxonomy reasonerTaxonomy,
+			Set<Long> ungroupedRoles,
+			Set<PropertyChain> propertyChains,
+			NormalFormState previousNormalFormState,
+			boolean recordNormalFormState,
+			OutputStream resultsRf2DeltaArchive,
+			Date startDate,
+			TimerUtil timer) throws ReasonerServiceException {
 
 		logger.info("Generate normal form");
 		AxiomRelationshipConversionService axiomRelationshipConversionService = new AxiomRelationshipConversionService(ungroupedRoles);
@@ -162,44 +328,105 @@ public class SnomedReasonerService {
 		} catch (ConversionException e) {
 			throw new ReasonerServiceException("Failed to convert OWL Axiom Expressions into relationships for normal form generation.", e);
 		}
-		RelationshipNormalFormGenerator normalFormGenerator = new RelationshipNormalFormGenerator(reasonerTaxonomy, snomedTaxonomy, conceptAxiomStatementMap, propertyChains);
-
-		RelationshipChangeProcessor changeCollector = new RelationshipChangeProcessor();
-		normalFormGenerator.collectNormalFormChanges(changeCollector);
-		timer.checkpoint("Generate normal form");
-
-		logger.info("Inactivating inferred relationships for new inactive concepts");
-		new RelationshipInactivationProcessor(snomedTaxonomy).processInactivationChanges(changeCollector);
-
-		// Iterate through new inferred relationships to find inactive ones (from your Map) which match with the same relationshipGroup, sourceId, typeId and destinationId
-		// For each matching inactive relationship found, set the relationship id on the new inferred relationship.
-		for (Long conceptId : changeCollector.getAddedStatements().keySet()) {
-			Set<Relationship> conceptInactiveInferredRelationship = snomedTaxonomy.getInactiveInferredRelationships(conceptId);
-			Set<Relationship> newInferredRelationship = changeCollector.getAddedStatements().get(conceptId);
-
-			if(!conceptInactiveInferredRelationship.isEmpty() && !newInferredRelationship.isEmpty()) {
-				for (Relationship newRel : newInferredRelationship) {
-					for (Relationship inactiveRel : conceptInactiveInferredRelationship) {
-						if(newRel.getGroup() == inactiveRel.getGroup()
-								&& newRel.getTypeId() == inactiveRel.getTypeId()
-								&& newRel.getDestinationId() == inactiveRel.getDestinationId()) {
-							newRel.setRelationshipId(inactiveRel.getRelationshipId());
-						}
-					}
-				}
+		RelationshipNormalFormGenerator normalFormGenerator = new RelationshipNormalFormGenerator(reasonerTaxonomy, snomedTaxonomy, conceptAxiomStatementMap, propertyChains, threads);
+
+		try (ClassificationResultsWriter.StreamingResultsArchive resultsArchive =
+					 classificationResultsWriter.startResultsRf2Archive(resultsRf2DeltaArchive, startDate)) {
+
+			// Changes are written to the results archive as each concept is normalised
+			RelationshipChangeProcessor changeCollector = new RelationshipChangeProcessor((conceptId, addedOrChangedRelationships, removedRelationships) -> {
+				reuseInactiveInferredRelationshipIds(snomedTaxonomy, conceptId, addedOrChangedRelationships);
+				resultsArchive.relationshipsChanged(conceptId, addedOrChangedRelationships, removedRelationships);
+			});
+			if (recordNormalFormState) {
+				normalFormGenerator.collectNormalFormChanges(changeCollector, previousNormalFormState);
+			} else {
+				normalFormGenerator.collectNormalFormChanges(changeCollector);
 			}
-		}
+			timer.checkpoint("Generate normal form");
+
+			logger.info("Inactivating inferred relationships for new inactive concepts");
+			new RelationshipInactivationProcessor(snomedTaxonomy).processInactivationChanges(changeCollector);
 
-		long redundantCount = changeCollector.getRedundantCount();
-		long totalChanges = changeCollector.getAddedCount() + changeCollector.getUpdatedCount() + redundantCount + changeCollector.getRemovedDueToConceptInactivationCount();
-		logger.info("{} relationship rows changed: {} added, {} updated, {} redundant, {} removed due to concept inactivation.",
-				formatDecimal(totalChanges), formatDecimal(changeCollector.getAddedCount()), formatDecimal(changeCollector.getUpdatedCount()),
-				formatDecimal(redundantCount), formatDecimal(changeCollector.getRemovedDueToConceptInactivationCount()));
+			long redundantCount = changeCollector.getRedundantCount();
+			long totalChanges = changeCollector.getAddedCount() + changeCollector.getUpdatedCount() + redundantCount + changeCollector.getRemovedDueToConceptInactivationCount();
+			logger.info("{} relationship rows changed: {} added, {} updated, {} redundant, {} removed due to concept inactivation.",
+					formatDecimal(totalChanges), formatDecimal(changeCollector.getAddedCount()), formatDecimal(changeCollector.getUpdatedCount()),
+					formatDecimal(redundantCount), formatDecimal(changeCollector.getRemovedDueToConceptInactivationCount()));
 
-		logger.info("Writing results archive");
-		classificationResultsWriter.writeResultsRf2Archive(changeCollector, reasonerTaxonomy.getEquivalentConceptIds(), resultsRf2DeltaArchive, startDate);
+			logger.info("Writing results archive");
+			resultsArchive.finish(reasonerTaxonomy.getEquivalentConceptIds());
+		} catch (IOException e) {
+			throw new ReasonerServiceException("Failed to write out results archive.", e);
+		}
 		timer.checkpoint("Write results to disk");
-		timer.finish();
+		return recordNormalFormState ? normalFormGenerator.getNormalFormState() : null;
+	}
+
+	/**
+	 * Gives new inferred relationships the id of the latest inactive inferred relationship with the same source, group, type and destination,
+	 * so the inactive relationship is reactivated rather than a new relationship created.
+	 */
+	private void reuseInactiveInferredRelationshipIds(SnomedTaxonomy snomedTaxonomy, long conceptId, Collection<Relationship> newInferredRelationships) {
+		for (Relationship newRel : newInferredRelationships) {
+			long inactiveRelationshipId = snomedTaxonomy.getInactiveInferredRelationshipId(conceptId, newRel.getTypeId(), newRel.getDestinationId(), newRel.getGroup());
+			if (inactiveRelationshipId != -1) {
+				newRel.setRelationshipId(inactiveRelationshipId);
+			}
+		}
+	}
+
+	/**
+	 * Opens a session which loads the snapshot and classifies it once, then keeps the ontology and reasoner in memory
+	 * so that deltas against the same snapshot can be classified incrementally. The session must be closed to release the reasoner.
+	 *
+	 * @param previousReleaseRf2SnapshotArchiveFiles snapshot archives used as the base of every classification in the session
+	 * @param reasonerFactoryClassName class name of the reasoner factory, the reasoner should support incremental reasoning
+	 */
+	public ReasonerSession openSession(Set<File> previousReleaseRf2SnapshotArchiveFiles, String reasonerFactoryClassName) throws ReasonerServiceException {
+		return new ReasonerSession(this, previousReleaseRf2SnapshotArchiveFiles, getOWLReasonerFactory(reasonerFactoryClassName), snapshotCache);
+	}
+
+	/**
+	 * @param snapshotCache cache used to skip loading RF2 snapshot archives when classifying using snapshot files.
+	 */
+	public void setSnapshotCache(SnomedTaxonomyCache snapshotCache) {
+		this.snapshotCache = snapshotCache;
+	}
+
+	/**
+	 * @param threads number of threads used to extract the reasoner taxonomy, generate the relationship normal form
+	 *                and compress the results archive, default 1.
+	 *                With more than one thread the reasoner must support concurrent queries.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+		classificationResultsWriter.setCompressionThreads(threads);
+	}
+
+	/**
+	 * @param normalFormStateFile file used to keep the normal form state between classifications.
+	 *                            When the file exists only concepts affected by changes since the previous classification are normalised.
+	 *                            The file is replaced with the state of each classification.
+	 */
+	public void setNormalFormStateFile(File normalFormStateFile) {
+		this.normalFormStateFile = normalFormStateFile;
+	}
+
+	int getThreads() {
+		return threads;
+	}
+
+	private NormalFormState readNormalFormState() {
+		if (!normalFormStateFile.isFile()) {
+			return null;
+		}
+		try {
+			return NormalFormState.read(normalFormStateFile);
+		} catch (IOException e) {
+			logger.warn("Failed to read normal form state from {}, all concepts will be normalised.", normalFormStateFile.getAbsolutePath(), e);
+			return null;
+		}
 	}
 
 	private String formatDecimal(long number) {
@@ -218,4 +445,7 @@ public class SnomedReasonerService {
 		}
 	}
 
+	private interface TaxonomyLoader {
+		SnomedTaxonomy load(SnomedTaxonomyBuilder snomedTaxonomyBuilder) throws ReleaseImportException;
+	}
 }
@@ -20,6 +20,9 @@ public class AxiomDeserialiser {
 	private static final String ontologyDocStart = "Prefix(:=<http://snomed.info/id/>) Ontology(";
 	private static final String ontologyDocEnd = ")";
 
+	// Handles the SNOMED subset of the syntax without creating an ontology document, shared by all deserialisers.
+	private static final SnomedOwlAxiomParser snomedOwlAxiomParser = new SnomedOwlAxiomParser();
+
 	private OWLOntology owlOntology;
 	private OWLOntologyLoaderConfiguration owlOntologyLoaderConfiguration;
 	private OWLFunctionalSyntaxOWLParser owlFunctionalSyntaxOWLParser;
@@ -53,8 +56,16 @@ public class AxiomDeserialiser {
 
 	public OWLAxiom deserialiseAxiom(String owlExpression, @Nullable String axiomIdentifier) throws OWLOntologyCreationException {
 		synchronized (this) {
+			long start = new Date().getTime();
+			OWLAxiom owlAxiom = snomedOwlAxiomParser.parse(owlExpression);
+			if (owlAxiom != null) {
+				timeTakenDeserialisingAxioms += new Date().getTime() - start;
+				countAxiomLoaded();
+				return owlAxiom;
+			}
+
+			// Fall back to the full functional syntax parser
 			try {
-				long start = new Date().getTime();
 				owlFunctionalSyntaxOWLParser.parse(new StringDocumentSource(ontologyDocStart + owlExpression + ontologyDocEnd), owlOntology, owlOntologyLoaderConfiguration);
 
 				if (owlAxiomsLoaded.size() != 1) {
@@ -67,16 +78,20 @@ public class AxiomDeserialiser {
 			} catch (IOException e) {
 				throw new OWLOntologyCreationException("Failed to parse axiom " + axiomIdentifier + ", '" + owlExpression + "'", e);
 			} finally {
-				axiomsLoaded++;
-				if (axiomsLoaded > 0 && axiomsLoaded % 10_000 == 0) {
-					logger.info("Deserialised {} axioms...", String.format("%,8d", axiomsLoaded));
-				}
+				countAxiomLoaded();
 				owlOntologyManager.removeAxioms(owlOntology, new HashSet<>(owlAxiomsLoaded));
 				owlAxiomsLoaded.clear();
 			}
 		}
 	}
 
+	private void countAxiomLoaded() {
+		axiomsLoaded++;
+		if (axiomsLoaded % 10_000 == 0) {
+			logger.info("Deserialised {} axioms...", String.format("%,8d", axiomsLoaded));
+		}
+	}
+
 	public long getTimeTakenDeserialisingAxioms() {
 		return timeTakenDeserialisingAxioms;
 	}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Assigns each concept id a dense int ordinal, starting at zero in the order the ids are added,
+ * so that per concept data can be held in arrays and bit sets indexed by ordinal rather than in maps keyed by id.
+ *
+ * A dictionary can be layered over a base dictionary. Ids known to the base keep their base ordinals and new ids
+ * are given ordinals after those of the base, so structures sharing a base agree on the ordinals of its concepts.
+ * Only the ids the base held when the layer was created are used and the base is never modified through the layer.
+ *
+ * Lookups are safe from multiple threads as long as no ids are being added at the same time.
+ */
+public class ConceptDictionary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int NOT_FOUND = -1;
+
+	private final ConceptDictionary base;
+	private final int baseSize;
+	private final Long2IntOpenHashMap ordinals = new Long2IntOpenHashMap();
+	private final LongArrayList conceptIds = new LongArrayList();
+
+	public ConceptDictionary() {
+		this(null);
+	}
+
+	/**
+	 * @param base dictionary whose ordinals are kept, may be null.
+	 */
+	public ConceptDictionary(ConceptDictionary base) {
+		this.base = base;
+		this.baseSize = base != null ? base.size() : 0;
+		ordinals.defaultReturnValue(NOT_FOUND);
+	}
+
+	/**
+	 * @return a dictionary of the given concept ids, with ordinals assigned in ascending id order.
+	 */
+	public static ConceptDictionary of(long[] conceptIds) {
+		long[] sorted = conceptIds.clone();
+		Arrays.sort(sorted);
+		ConceptDictionary dictionary = new ConceptDictionary();
+		for (long conceptId : sorted) {
+			dictionary.getOrCreateOrdinal(conceptId);
+		}
+		return dictionary;
+	}
+
+	/**
+	 * @return the ordinal of the concept or {@link #NOT_FOUND} if the concept is not in this dictionary.
+	 */
+	public int getOrdinal(long conceptId) {
+		if (base != null) {
+			int ordinal = base.getOrdinal(conceptId);
+			if (ordinal != NOT_FOUND && ordinal < baseSize) {
+				return ordinal;
+			}
+		}
+		return ordinals.get(conceptId);
+	}
+
+	/**
+	 * @return the ordinal of the concept, which is assigned the next free ordinal if not already in this dictionary.
+	 */
+	public int getOrCreateOrdinal(long conceptId) {
+		int ordinal = getOrdinal(conceptId);
+		if (ordinal == NOT_FOUND) {
+			ordinal = baseSize + conceptIds.size();
+			ordinals.put(conceptId, ordinal);
+			conceptIds.add(conceptId);
+		}
+		return ordinal;
+	}
+
+	/**
+	 * @throws IndexOutOfBoundsException if the ordinal has not been assigned.
+	 */
+	public long getConceptId(int ordinal) {
+		if (ordinal < baseSize) {
+			return base.getConceptId(ordinal);
+		}
+		return conceptIds.getLong(ordinal - baseSize);
+	}
+
+	public boolean contains(long conceptId) {
+		return getOrdinal(conceptId) != NOT_FOUND;
+	}
+
+	/**
+	 * @return the number of ordinals assigned, all ordinals are less than this number.
+	 */
+	public int size() {
+		return baseSize + conceptIds.size();
+	}
+}
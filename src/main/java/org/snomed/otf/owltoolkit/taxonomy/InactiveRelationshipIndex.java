@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+/**
+ * Index of inactive relationships by source, type, destination and group holding only the id of the latest relationship
+ * for each combination, used to reuse relationship ids when the same relationship is inferred again.
+ * The latest relationship is the one with the greatest effective time, or the one added last when effective times are equal.
+ *
+ * Entries are held in parallel arrays using open addressing. Writes are not thread safe, reads are safe once loading has completed.
+ */
+class InactiveRelationshipIndex {
+
+	static final int NOT_FOUND = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private long[] sourceIds = new long[INITIAL_CAPACITY];
+	private long[] typeIds = new long[INITIAL_CAPACITY];
+	private long[] destinationIds = new long[INITIAL_CAPACITY];
+	private int[] groups = new int[INITIAL_CAPACITY];
+	private long[] relationshipIds = new long[INITIAL_CAPACITY];
+	private int[] effectiveTimes = new int[INITIAL_CAPACITY];
+	private boolean[] used = new boolean[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * Records the relationship unless a relationship with a later effective time is already held for the same key.
+	 */
+	void put(long sourceId, long typeId, long destinationId, int group, long relationshipId, int effectiveTime) {
+		if ((size + 1) * 4L > used.length * 3L) {
+			grow();
+		}
+		int slot = findSlot(sourceId, typeId, destinationId, group);
+		if (!used[slot]) {
+			used[slot] = true;
+			sourceIds[slot] = sourceId;
+			typeIds[slot] = typeId;
+			destinationIds[slot] = destinationId;
+			groups[slot] = group;
+			size++;
+		} else if (effectiveTimes[slot] > effectiveTime) {
+			return;
+		}
+		relationshipIds[slot] = relationshipId;
+		effectiveTimes[slot] = effectiveTime;
+	}
+
+	/**
+	 * @return the slot holding this key or -1 if not found.
+	 */
+	int find(long sourceId, long typeId, long destinationId, int group) {
+		int slot = findSlot(sourceId, typeId, destinationId, group);
+		return used[slot] ? slot : NOT_FOUND;
+	}
+
+	long getRelationshipId(int slot) {
+		return relationshipIds[slot];
+	}
+
+	int getEffectiveTime(int slot) {
+		return effectiveTimes[slot];
+	}
+
+	int size() {
+		return size;
+	}
+
+	void forEach(EntryConsumer consumer) {
+		for (int slot = 0; slot < used.length; slot++) {
+			if (used[slot]) {
+				consumer.accept(sourceIds[slot], typeIds[slot], destinationIds[slot], groups[slot], relationshipIds[slot], effectiveTimes[slot]);
+			}
+		}
+	}
+
+	private int findSlot(long sourceId, long typeId, long destinationId, int group) {
+		int mask = used.length - 1;
+		int slot = hash(sourceId, typeId, destinationId, group) & mask;
+		while (used[slot] && (sourceIds[slot] != sourceId || typeIds[slot] != typeId || destinationIds[slot] != destinationId || groups[slot] != group)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int hash(long sourceId, long typeId, long destinationId, int group) {
+		long hash = sourceId * 0x9E3779B97F4A7C15L;
+		hash = (hash ^ typeId) * 0xC2B2AE3D27D4EB4FL;
+		hash = (hash ^ destinationId) * 0x165667B19E3779F9L;
+		hash = (hash ^ group) * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	private void grow() {
+		long[] oldSourceIds = sourceIds;
+		long[] oldTypeIds = typeIds;
+		long[] oldDestinationIds = destinationIds;
+		int[] oldGroups = groups;
+		long[] oldRelationshipIds = relationshipIds;
+		int[] oldEffectiveTimes = effectiveTimes;
+		boolean[] oldUsed = used;
+
+		int capacity = oldUsed.length * 2;
+		sourceIds = new long[capacity];
+		typeIds = new long[capacity];
+		destinationIds = new long[capacity];
+		groups = new int[capacity];
+		relationshipIds = new long[capacity];
+		effectiveTimes = new int[capacity];
+		used = new boolean[capacity];
+		for (int oldSlot = 0; oldSlot < oldUsed.length; oldSlot++) {
+			if (oldUsed[oldSlot]) {
+				int slot = findSlot(oldSourceIds[oldSlot], oldTypeIds[oldSlot], oldDestinationIds[oldSlot], oldGroups[oldSlot]);
+				used[slot] = true;
+				sourceIds[slot] = oldSourceIds[oldSlot];
+				typeIds[slot] = oldTypeIds[oldSlot];
+				destinationIds[slot] = oldDestinationIds[oldSlot];
+				groups[slot] = oldGroups[oldSlot];
+				relationshipIds[slot] = oldRelationshipIds[oldSlot];
+				effectiveTimes[slot] = oldEffectiveTimes[oldSlot];
+			}
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		InactiveRelationshipIndex that = (InactiveRelationshipIndex) o;
+		if (size != that.size) {
+			return false;
+		}
+		for (int slot = 0; slot < used.length; slot++) {
+			if (used[slot]) {
+				int otherSlot = that.find(sourceIds[slot], typeIds[slot], destinationIds[slot], groups[slot]);
+				if (otherSlot == NOT_FOUND || that.relationshipIds[otherSlot] != relationshipIds[slot] || that.effectiveTimes[otherSlot] != effectiveTimes[slot]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hashCode = size;
+		for (int slot = 0; slot < used.length; slot++) {
+			if (used[slot]) {
+				hashCode += Long.hashCode(relationshipIds[slot]);
+			}
+		}
+		return hashCode;
+	}
+
+	interface EntryConsumer {
+		void accept(long sourceId, long typeId, long destinationId, int group, long relationshipId, int effectiveTime);
+	}
+}
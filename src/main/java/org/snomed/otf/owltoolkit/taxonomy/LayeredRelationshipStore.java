@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+import java.util.*;
+
+/**
+ * Relationship store which may be layered over the store of a frozen base taxonomy.
+ * The relationships of a source concept are read from the base until they are first written,
+ * at that point all rows of the source are copied into this layer and the base rows of the source are no longer used.
+ * Without a base all rows are held in this layer.
+ */
+class LayeredRelationshipStore {
+
+	private static final int NOT_FOUND = -1;
+
+	private final RelationshipStore base;
+	private final RelationshipStore layer = new RelationshipStore();
+	private final LongOpenHashSet copiedSources = new LongOpenHashSet();
+	private int shadowedBaseRows;
+
+	LayeredRelationshipStore() {
+		this(null);
+	}
+
+	LayeredRelationshipStore(RelationshipStore base) {
+		this.base = base;
+	}
+
+	/**
+	 * @return the store holding the relationships of the source concept.
+	 */
+	RelationshipStore getStore(long sourceId) {
+		return base == null || copiedSources.contains(sourceId) ? layer : base;
+	}
+
+	/**
+	 * @return the store of this layer after copying in the relationships of the source concept from the base, if not already copied.
+	 */
+	RelationshipStore getWritableStore(long sourceId) {
+		if (base != null && copiedSources.add(sourceId)) {
+			for (IntIterator rows = base.getRows(sourceId); rows.hasNext(); ) {
+				layer.add(sourceId, base.getRelationship(rows.nextInt()));
+				shadowedBaseRows++;
+			}
+		}
+		return layer;
+	}
+
+	/**
+	 * @return the source concept of the active relationship with this id or -1 if not found.
+	 */
+	long getSourceId(long relationshipId) {
+		int row = layer.getRow(relationshipId);
+		if (row != NOT_FOUND) {
+			return layer.getSourceId(row);
+		}
+		if (base != null) {
+			row = base.getRow(relationshipId);
+			if (row != NOT_FOUND && !copiedSources.contains(base.getSourceId(row))) {
+				return base.getSourceId(row);
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	Set<Relationship> getRelationships(long sourceId) {
+		return getStore(sourceId).getRelationships(sourceId);
+	}
+
+	int size() {
+		return base == null ? layer.size() : layer.size() + base.size() - shadowedBaseRows;
+	}
+
+	/**
+	 * @return the store of this layer, which holds all relationships when there is no base.
+	 */
+	RelationshipStore getLayer() {
+		return layer;
+	}
+
+	boolean isLayered() {
+		return base != null;
+	}
+
+	/**
+	 * @return a live view of the active relationships keyed by relationship id.
+	 */
+	Map<Long, Relationship> getRelationshipsById() {
+		if (base == null) {
+			return layer.getRelationshipsById();
+		}
+		return new AbstractMap<Long, Relationship>() {
+			@Override
+			public Relationship get(Object key) {
+				if (!(key instanceof Long)) {
+					return null;
+				}
+				long sourceId = getSourceId((Long) key);
+				if (sourceId == NOT_FOUND) {
+					return null;
+				}
+				RelationshipStore store = getStore(sourceId);
+				return store.getRelationship(store.getRow((Long) key));
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof Long && getSourceId((Long) key) != NOT_FOUND;
+			}
+
+			@Override
+			public int size() {
+				return LayeredRelationshipStore.this.size();
+			}
+
+			@Override
+			public Set<Entry<Long, Relationship>> entrySet() {
+				return new AbstractSet<Entry<Long, Relationship>>() {
+					@Override
+					public Iterator<Entry<Long, Relationship>> iterator() {
+						return new Iterator<Entry<Long, Relationship>>() {
+							private final IntIterator layerRows = layer.getAllRows();
+							private final IntIterator baseRows = base.getAllRows();
+							private int nextBaseRow = advanceBase();
+
+							private int advanceBase() {
+								while (baseRows.hasNext()) {
+									int row = baseRows.nextInt();
+									if (!copiedSources.contains(base.getSourceId(row))) {
+										return row;
+									}
+								}
+								return NOT_FOUND;
+							}
+
+							@Override
+							public boolean hasNext() {
+								return layerRows.hasNext() || nextBaseRow != NOT_FOUND;
+							}
+
+							@Override
+							public Entry<Long, Relationship> next() {
+								Relationship relationship;
+								if (layerRows.hasNext()) {
+									relationship = layer.getRelationship(layerRows.nextInt());
+								} else if (nextBaseRow != NOT_FOUND) {
+									relationship = base.getRelationship(nextBaseRow);
+									nextBaseRow = advanceBase();
+								} else {
+									throw new NoSuchElementException();
+								}
+								return new SimpleImmutableEntry<>(relationship.getRelationshipId(), relationship);
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return LayeredRelationshipStore.this.size();
+					}
+				};
+			}
+		};
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import it.unimi.dsi.fastutil.longs.AbstractLongSet;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Mutable set of ids over a base set which is not modified. Additions and removals are held separately,
+ * an id is only in the added set if it is not in the base and only in the removed set if it is in the base.
+ */
+class OverlayLongSet extends AbstractLongSet {
+
+	private final LongSet base;
+	private final LongOpenHashSet added = new LongOpenHashSet();
+	private final LongOpenHashSet removed = new LongOpenHashSet();
+
+	OverlayLongSet(LongSet base) {
+		this.base = base;
+	}
+
+	@Override
+	public boolean contains(long id) {
+		return added.contains(id) || (base.contains(id) && !removed.contains(id));
+	}
+
+	@Override
+	public boolean add(long id) {
+		if (base.contains(id)) {
+			return removed.remove(id);
+		}
+		return added.add(id);
+	}
+
+	@Override
+	public boolean remove(long id) {
+		if (added.remove(id)) {
+			return true;
+		}
+		return base.contains(id) && removed.add(id);
+	}
+
+	@Override
+	public int size() {
+		return base.size() - removed.size() + added.size();
+	}
+
+	@Override
+	public LongIterator iterator() {
+		return new LongIterator() {
+			private final LongIterator baseIterator = base.iterator();
+			private final LongIterator addedIterator = added.iterator();
+			private boolean hasNextBase;
+			private long nextBase;
+			private boolean lastFromBase;
+			private long last;
+
+			{
+				advanceBase();
+			}
+
+			private void advanceBase() {
+				hasNextBase = false;
+				while (baseIterator.hasNext()) {
+					long id = baseIterator.nextLong();
+					if (!removed.contains(id)) {
+						nextBase = id;
+						hasNextBase = true;
+						return;
+					}
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return hasNextBase || addedIterator.hasNext();
+			}
+
+			@Override
+			public long nextLong() {
+				if (hasNextBase) {
+					last = nextBase;
+					lastFromBase = true;
+					advanceBase();
+				} else if (addedIterator.hasNext()) {
+					last = addedIterator.nextLong();
+					lastFromBase = false;
+				} else {
+					throw new NoSuchElementException();
+				}
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (lastFromBase) {
+					removed.add(last);
+				} else {
+					addedIterator.remove();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import java.util.*;
+
+/**
+ * Read only view of a base map with the values of some keys replaced, or added, by an overriding map.
+ */
+class OverlayMap<V> extends AbstractMap<Long, V> {
+
+	private final Map<Long, V> base;
+	private final Map<Long, V> overrides;
+
+	OverlayMap(Map<Long, V> base, Map<Long, V> overrides) {
+		this.base = base;
+		this.overrides = overrides;
+	}
+
+	@Override
+	public V get(Object key) {
+		V value = overrides.get(key);
+		return value != null ? value : base.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return overrides.containsKey(key) || base.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		int size = base.size();
+		for (Long key : overrides.keySet()) {
+			if (!base.containsKey(key)) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public Set<Entry<Long, V>> entrySet() {
+		return new AbstractSet<Entry<Long, V>>() {
+			@Override
+			public Iterator<Entry<Long, V>> iterator() {
+				return new Iterator<Entry<Long, V>>() {
+					private final Iterator<Entry<Long, V>> baseEntries = base.entrySet().iterator();
+					private final Iterator<Entry<Long, V>> overrideEntries = overrides.entrySet().iterator();
+					private Entry<Long, V> next = advance();
+
+					private Entry<Long, V> advance() {
+						if (baseEntries.hasNext()) {
+							Entry<Long, V> entry = baseEntries.next();
+							V override = overrides.get(entry.getKey());
+							return override != null ? new SimpleImmutableEntry<>(entry.getKey(), override) : entry;
+						}
+						while (overrideEntries.hasNext()) {
+							Entry<Long, V> entry = overrideEntries.next();
+							if (!base.containsKey(entry.getKey())) {
+								return entry;
+							}
+						}
+						return null;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next != null;
+					}
+
+					@Override
+					public Entry<Long, V> next() {
+						if (next == null) {
+							throw new NoSuchElementException();
+						}
+						Entry<Long, V> entry = next;
+						next = advance();
+						return entry;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return OverlayMap.this.size();
+			}
+		};
+	}
+}
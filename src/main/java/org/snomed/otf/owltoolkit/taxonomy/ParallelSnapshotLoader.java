@@ -0,0 +1,340 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import it.unimi.dsi.fastutil.booleans.BooleanArrays;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrays;
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Loads several RF2 snapshot archives, for example the International Edition and an extension, on separate threads.
+ * Each archive is read into compact per component type stores. The states are then merged, the state with the latest
+ * effective time wins and ties keep the state read first, and the winning states are passed to the component factory.
+ * The same applies to components with several rows within one archive, so this is also used to load a single archive.
+ * Only the merge and the component factory callbacks run on the calling thread.
+ */
+class ParallelSnapshotLoader {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelSnapshotLoader.class);
+
+	private final Rf2ArchiveReader archiveReader;
+	private final int threads;
+
+	ParallelSnapshotLoader(Rf2ArchiveReader archiveReader, int threads) {
+		this.archiveReader = archiveReader;
+		this.threads = threads;
+	}
+
+	void load(Collection<InputStream> snapshotArchives, PrimitiveComponentFactory componentFactory) throws ReleaseImportException {
+		List<ArchiveComponents> archives = readArchives(new ArrayList<>(snapshotArchives));
+		replay(archives, archive -> archive.concepts, componentFactory);
+		replay(archives, archive -> archive.relationships, componentFactory);
+		replay(archives, archive -> archive.descriptions, componentFactory);
+		replayMembers(archives, componentFactory);
+	}
+
+	private List<ArchiveComponents> readArchives(List<InputStream> snapshotArchives) throws ReleaseImportException {
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, snapshotArchives.size())), runnable -> {
+			Thread thread = new Thread(runnable, "snapshot-archive-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<ArchiveComponents>> futures = new ArrayList<>();
+			for (InputStream snapshotArchive : snapshotArchives) {
+				futures.add(executorService.submit(() -> {
+					ArchiveComponents archiveComponents = new ArchiveComponents();
+					archiveReader.readSnapshot(snapshotArchive, archiveComponents);
+					return archiveComponents;
+				}));
+			}
+			List<ArchiveComponents> archives = new ArrayList<>();
+			for (Future<ArchiveComponents> future : futures) {
+				ArchiveComponents archiveComponents = future.get();
+				LOGGER.info("Read snapshot archive with {} concepts, {} relationships, {} descriptions and {} reference set members",
+						archiveComponents.concepts.size, archiveComponents.relationships.size, archiveComponents.descriptions.size, archiveComponents.members.size);
+				archives.add(archiveComponents);
+			}
+			return archives;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ReleaseImportException) {
+				throw (ReleaseImportException) e.getCause();
+			}
+			throw new ReleaseImportException("Failed to read RF2 snapshot archive.", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReleaseImportException("Interrupted while reading RF2 snapshot archives.", e);
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private void replay(List<ArchiveComponents> archives, Function<ArchiveComponents, LongKeyedStates> statesFunction,
+			PrimitiveComponentFactory componentFactory) {
+
+		// Key of the winning state is the archive index and the row within that archive
+		Long2LongOpenHashMap winners = new Long2LongOpenHashMap();
+		winners.defaultReturnValue(-1);
+		for (int archive = 0; archive < archives.size(); archive++) {
+			LongKeyedStates states = statesFunction.apply(archives.get(archive));
+			for (int row = 0; row < states.size; row++) {
+				long id = states.ids[row];
+				long winner = winners.get(id);
+				if (winner == -1 || states.effectiveTimes[row] > statesFunction.apply(archives.get(archive(winner))).effectiveTimes[row(winner)]) {
+					winners.put(id, key(archive, row));
+				}
+			}
+		}
+		for (int archive = 0; archive < archives.size(); archive++) {
+			LongKeyedStates states = statesFunction.apply(archives.get(archive));
+			for (int row = 0; row < states.size; row++) {
+				if (winners.get(states.ids[row]) == key(archive, row)) {
+					states.replay(row, componentFactory);
+				}
+			}
+		}
+	}
+
+	private void replayMembers(List<ArchiveComponents> archives, PrimitiveComponentFactory componentFactory) {
+		Object2LongOpenHashMap<String> winners = new Object2LongOpenHashMap<>();
+		winners.defaultReturnValue(-1);
+		for (int archive = 0; archive < archives.size(); archive++) {
+			MemberStates states = archives.get(archive).members;
+			for (int row = 0; row < states.size; row++) {
+				String id = states.ids[row];
+				long winner = winners.getLong(id);
+				if (winner == -1 || states.effectiveTimes[row] > archives.get(archive(winner)).members.effectiveTimes[row(winner)]) {
+					winners.put(id, key(archive, row));
+				}
+			}
+		}
+		for (int archive = 0; archive < archives.size(); archive++) {
+			MemberStates states = archives.get(archive).members;
+			for (int row = 0; row < states.size; row++) {
+				if (winners.getLong(states.ids[row]) == key(archive, row)) {
+					states.replay(row, componentFactory);
+				}
+			}
+		}
+	}
+
+	private static long key(int archive, int row) {
+		return ((long) archive << 32) | row;
+	}
+
+	private static int archive(long key) {
+		return (int) (key >>> 32);
+	}
+
+	private static int row(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * Collects the states of one archive.
+	 */
+	private static final class ArchiveComponents implements PrimitiveComponentFactory {
+
+		private final ConceptStates concepts = new ConceptStates();
+		private final RelationshipStates relationships = new RelationshipStates();
+		private final DescriptionStates descriptions = new DescriptionStates();
+		private final MemberStates members = new MemberStates();
+
+		@Override
+		public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+			int row = concepts.addRow(conceptId, effectiveTime, active, moduleId);
+			concepts.definitionStatusIds[row] = definitionStatusId;
+		}
+
+		@Override
+		public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId,
+				int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+
+			int row = relationships.addRow(id, effectiveTime, active, moduleId);
+			relationships.sourceIds[row] = sourceId;
+			relationships.destinationIds[row] = destinationId;
+			relationships.groups[row] = relationshipGroup;
+			relationships.typeIds[row] = typeId;
+			relationships.characteristicTypeIds[row] = characteristicTypeId;
+			relationships.modifierIds[row] = modifierId;
+		}
+
+		@Override
+		public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, long typeId, String term) {
+			int row = descriptions.addRow(id, effectiveTime, active, moduleId);
+			descriptions.conceptIds[row] = conceptId;
+			descriptions.typeIds[row] = typeId;
+			descriptions.terms[row] = term;
+		}
+
+		@Override
+		public void newReferenceSetMemberState(String id, int effectiveTime, boolean active, long moduleId, long refsetId, long referencedComponentId,
+				String[] otherValues) {
+
+			members.add(id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues);
+		}
+	}
+
+	private abstract static class LongKeyedStates {
+
+		int size;
+		long[] ids = new long[INITIAL_CAPACITY];
+		int[] effectiveTimes = new int[INITIAL_CAPACITY];
+		boolean[] active = new boolean[INITIAL_CAPACITY];
+		long[] moduleIds = new long[INITIAL_CAPACITY];
+
+		/**
+		 * Adds the common fields and returns the row of the new state.
+		 */
+		int addRow(long id, int effectiveTime, boolean active, long moduleId) {
+			if (size == ids.length) {
+				grow(size + 1);
+			}
+			int row = size++;
+			ids[row] = id;
+			effectiveTimes[row] = effectiveTime;
+			this.active[row] = active;
+			moduleIds[row] = moduleId;
+			return row;
+		}
+
+		void grow(int capacity) {
+			ids = LongArrays.grow(ids, capacity);
+			effectiveTimes = IntArrays.grow(effectiveTimes, capacity);
+			active = BooleanArrays.grow(active, capacity);
+			moduleIds = LongArrays.grow(moduleIds, capacity);
+		}
+
+		abstract void replay(int row, PrimitiveComponentFactory componentFactory);
+	}
+
+	private static final class ConceptStates extends LongKeyedStates {
+
+		private long[] definitionStatusIds = new long[INITIAL_CAPACITY];
+
+		@Override
+		void grow(int capacity) {
+			super.grow(capacity);
+			definitionStatusIds = LongArrays.grow(definitionStatusIds, capacity);
+		}
+
+		@Override
+		void replay(int row, PrimitiveComponentFactory componentFactory) {
+			componentFactory.newConceptState(ids[row], effectiveTimes[row], active[row], moduleIds[row], definitionStatusIds[row]);
+		}
+	}
+
+	private static final class RelationshipStates extends LongKeyedStates {
+
+		private long[] sourceIds = new long[INITIAL_CAPACITY];
+		private long[] destinationIds = new long[INITIAL_CAPACITY];
+		private int[] groups = new int[INITIAL_CAPACITY];
+		private long[] typeIds = new long[INITIAL_CAPACITY];
+		private long[] characteristicTypeIds = new long[INITIAL_CAPACITY];
+		private long[] modifierIds = new long[INITIAL_CAPACITY];
+
+		@Override
+		void grow(int capacity) {
+			super.grow(capacity);
+			sourceIds = LongArrays.grow(sourceIds, capacity);
+			destinationIds = LongArrays.grow(destinationIds, capacity);
+			groups = IntArrays.grow(groups, capacity);
+			typeIds = LongArrays.grow(typeIds, capacity);
+			characteristicTypeIds = LongArrays.grow(characteristicTypeIds, capacity);
+			modifierIds = LongArrays.grow(modifierIds, capacity);
+		}
+
+		@Override
+		void replay(int row, PrimitiveComponentFactory componentFactory) {
+			componentFactory.newRelationshipState(ids[row], effectiveTimes[row], active[row], moduleIds[row], sourceIds[row], destinationIds[row],
+					groups[row], typeIds[row], characteristicTypeIds[row], modifierIds[row]);
+		}
+	}
+
+	private static final class DescriptionStates extends LongKeyedStates {
+
+		private long[] conceptIds = new long[INITIAL_CAPACITY];
+		private long[] typeIds = new long[INITIAL_CAPACITY];
+		private String[] terms = new String[INITIAL_CAPACITY];
+
+		@Override
+		void grow(int capacity) {
+			super.grow(capacity);
+			conceptIds = LongArrays.grow(conceptIds, capacity);
+			typeIds = LongArrays.grow(typeIds, capacity);
+			terms = ObjectArrays.grow(terms, capacity);
+		}
+
+		@Override
+		void replay(int row, PrimitiveComponentFactory componentFactory) {
+			componentFactory.newDescriptionState(ids[row], effectiveTimes[row], active[row], moduleIds[row], conceptIds[row], typeIds[row], terms[row]);
+		}
+	}
+
+	private static final class MemberStates {
+
+		private int size;
+		private String[] ids = new String[INITIAL_CAPACITY];
+		private int[] effectiveTimes = new int[INITIAL_CAPACITY];
+		private boolean[] active = new boolean[INITIAL_CAPACITY];
+		private long[] moduleIds = new long[INITIAL_CAPACITY];
+		private long[] refsetIds = new long[INITIAL_CAPACITY];
+		private long[] referencedComponentIds = new long[INITIAL_CAPACITY];
+		private String[][] otherValues = new String[INITIAL_CAPACITY][];
+
+		void add(String id, int effectiveTime, boolean active, long moduleId, long refsetId, long referencedComponentId, String[] otherValues) {
+			if (size == ids.length) {
+				ids = ObjectArrays.grow(ids, size + 1);
+				effectiveTimes = IntArrays.grow(effectiveTimes, size + 1);
+				this.active = BooleanArrays.grow(this.active, size + 1);
+				moduleIds = LongArrays.grow(moduleIds, size + 1);
+				refsetIds = LongArrays.grow(refsetIds, size + 1);
+				referencedComponentIds = LongArrays.grow(referencedComponentIds, size + 1);
+				this.otherValues = ObjectArrays.grow(this.otherValues, size + 1);
+			}
+			int row = size++;
+			ids[row] = id;
+			effectiveTimes[row] = effectiveTime;
+			this.active[row] = active;
+			moduleIds[row] = moduleId;
+			refsetIds[row] = refsetId;
+			referencedComponentIds[row] = referencedComponentId;
+			this.otherValues[row] = otherValues;
+		}
+
+		void replay(int row, PrimitiveComponentFactory componentFactory) {
+			componentFactory.newReferenceSetMemberState(ids[row], effectiveTimes[row], active[row], moduleIds[row], refsetIds[row],
+					referencedComponentIds[row], otherValues[row]);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+/**
+ * Receives RF2 component states with identifiers already parsed to primitives, see {@link Rf2ArchiveReader}.
+ */
+public interface PrimitiveComponentFactory {
+
+	/**
+	 * Effective time given to component states which have not been published yet.
+	 */
+	int UNPUBLISHED = Integer.MAX_VALUE;
+
+	void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId);
+
+	void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup,
+			long typeId, long characteristicTypeId, long modifierId);
+
+	void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, long typeId, String term);
+
+	/**
+	 * @param otherValues the values of the columns which follow referencedComponentId.
+	 */
+	void newReferenceSetMemberState(String id, int effectiveTime, boolean active, long moduleId, long refsetId, long referencedComponentId,
+			String[] otherValues);
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+import java.util.*;
+
+/**
+ * Columnar store of relationships held in parallel primitive arrays, one row per relationship.
+ * Low cardinality columns (type, module and characteristic type) are dictionary encoded.
+ *
+ * Rows are indexed by relationship id and by source concept. The source index uses compressed sparse row offsets which
+ * are built lazily; rows added after the last build are chained per source until enough accumulate to rebuild.
+ *
+ * Relationship objects are only created when rows are read, each read returns a new copy so changes made to it
+ * by the caller are not seen by the store or by other readers.
+ * Writes are not thread safe, reads are safe once loading has completed.
+ */
+class RelationshipStore {
+
+	private static final int NOT_FOUND = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private static final byte UNIVERSAL = 1;
+	private static final byte DESTINATION_NEGATED = 2;
+	private static final byte REMOVED = 4;
+
+	private long[] ids = new long[INITIAL_CAPACITY];
+	private long[] sourceIds = new long[INITIAL_CAPACITY];
+	private int[] typeCodes = new int[INITIAL_CAPACITY];
+	private long[] destinationIds = new long[INITIAL_CAPACITY];
+	private int[] effectiveTimes = new int[INITIAL_CAPACITY];
+	private int[] groups = new int[INITIAL_CAPACITY];
+	private int[] unionGroups = new int[INITIAL_CAPACITY];
+	private int[] moduleCodes = new int[INITIAL_CAPACITY];
+	private int[] characteristicTypeCodes = new int[INITIAL_CAPACITY];
+	private byte[] flags = new byte[INITIAL_CAPACITY];
+	private int rowCount;
+
+	private final Long2IntOpenHashMap rowsById = newIntMap();
+	private final Long2IntOpenHashMap activeRowCountsBySource = new Long2IntOpenHashMap();
+	private final LongDictionary types = new LongDictionary();
+	private final LongDictionary modules = new LongDictionary();
+	private final LongDictionary characteristicTypes = new LongDictionary();
+
+	// Source index
+	private volatile SourceIndex sourceIndex;
+	private int[] previousOverflowRows = new int[INITIAL_CAPACITY];
+	private final Long2IntOpenHashMap lastOverflowRowBySource = newIntMap();
+	private int overflowCount;
+
+	/**
+	 * @return the row of the relationship with this id or -1.
+	 */
+	int getRow(long relationshipId) {
+		return rowsById.get(relationshipId);
+	}
+
+	int size() {
+		return rowsById.size();
+	}
+
+	void add(long sourceId, Relationship relationship) {
+		if (rowCount == ids.length) {
+			grow();
+		}
+		int row = rowCount++;
+		write(row, sourceId, relationship);
+		rowsById.put(relationship.getRelationshipId(), row);
+		activeRowCountsBySource.addTo(sourceId, 1);
+
+		if (sourceIndex != null) {
+			previousOverflowRows[row] = lastOverflowRowBySource.put(sourceId, row);
+			overflowCount++;
+			// Rebuild once the overflow chains become a significant part of the store
+			if (overflowCount > INITIAL_CAPACITY && overflowCount > rowCount / 8) {
+				sourceIndex = null;
+			}
+		}
+	}
+
+	private void write(int row, long sourceId, Relationship relationship) {
+		ids[row] = relationship.getRelationshipId();
+		sourceIds[row] = sourceId;
+		typeCodes[row] = types.encode(relationship.getTypeId());
+		destinationIds[row] = relationship.getDestinationId();
+		effectiveTimes[row] = relationship.getEffectiveTime();
+		groups[row] = relationship.getGroup();
+		unionGroups[row] = relationship.getUnionGroup();
+		moduleCodes[row] = modules.encode(relationship.getModuleId());
+		characteristicTypeCodes[row] = characteristicTypes.encode(relationship.getCharacteristicTypeId());
+		flags[row] = (byte) ((relationship.isUniversal() ? UNIVERSAL : 0) | (relationship.isDestinationNegated() ? DESTINATION_NEGATED : 0));
+	}
+
+	void setEffectiveTimeAndGroup(int row, int effectiveTime, int group) {
+		effectiveTimes[row] = effectiveTime;
+		groups[row] = group;
+	}
+
+	/**
+	 * @return the row the relationship was held in or -1 if not found.
+	 */
+	int remove(long relationshipId) {
+		int row = rowsById.remove(relationshipId);
+		if (row != NOT_FOUND) {
+			flags[row] |= REMOVED;
+			long sourceId = sourceIds[row];
+			if (activeRowCountsBySource.addTo(sourceId, -1) == 1) {
+				activeRowCountsBySource.remove(sourceId);
+			}
+		}
+		return row;
+	}
+
+	private void grow() {
+		resize(ids.length * 2);
+	}
+
+	/**
+	 * Releases the capacity of the columns which is not used by any row, for when no more rows are expected.
+	 */
+	void trimToSize() {
+		resize(Math.max(rowCount, 1));
+		rowsById.trim();
+		activeRowCountsBySource.trim();
+	}
+
+	private void resize(int capacity) {
+		ids = Arrays.copyOf(ids, capacity);
+		sourceIds = Arrays.copyOf(sourceIds, capacity);
+		typeCodes = Arrays.copyOf(typeCodes, capacity);
+		destinationIds = Arrays.copyOf(destinationIds, capacity);
+		effectiveTimes = Arrays.copyOf(effectiveTimes, capacity);
+		groups = Arrays.copyOf(groups, capacity);
+		unionGroups = Arrays.copyOf(unionGroups, capacity);
+		moduleCodes = Arrays.copyOf(moduleCodes, capacity);
+		characteristicTypeCodes = Arrays.copyOf(characteristicTypeCodes, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		previousOverflowRows = Arrays.copyOf(previousOverflowRows, capacity);
+	}
+
+	/**
+	 * @return an iterator over the rows of all active relationships, in the order they were added.
+	 * Row order rather than hash order avoids clustering when the ids are inserted into another hash map.
+	 */
+	IntIterator getAllRows() {
+		return new IntIterator() {
+			private int next = advance(0);
+
+			private int advance(int row) {
+				while (row < rowCount && (flags[row] & REMOVED) != 0) {
+					row++;
+				}
+				return row;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next < rowCount;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int row = next;
+				next = advance(row + 1);
+				return row;
+			}
+		};
+	}
+
+	long getSourceId(int row) {
+		return sourceIds[row];
+	}
+
+	long getTypeId(int row) {
+		return types.decode(typeCodes[row]);
+	}
+
+	long getDestinationId(int row) {
+		return destinationIds[row];
+	}
+
+	Relationship getRelationship(int row) {
+		return new Relationship(
+				ids[row],
+				effectiveTimes[row],
+				modules.decode(moduleCodes[row]),
+				types.decode(typeCodes[row]),
+				destinationIds[row],
+				(flags[row] & DESTINATION_NEGATED) != 0,
+				groups[row],
+				unionGroups[row],
+				(flags[row] & UNIVERSAL) != 0,
+				characteristicTypes.decode(characteristicTypeCodes[row]));
+	}
+
+	/**
+	 * @return true if the row holds the same values as the relationship, by the same fields as {@link Relationship#equals(Object)}.
+	 */
+	private boolean isSameRelationship(int row, Relationship relationship) {
+		return ids[row] == relationship.getRelationshipId()
+				&& effectiveTimes[row] == relationship.getEffectiveTime()
+				&& modules.decode(moduleCodes[row]) == relationship.getModuleId()
+				&& types.decode(typeCodes[row]) == relationship.getTypeId()
+				&& destinationIds[row] == relationship.getDestinationId()
+				&& groups[row] == relationship.getGroup()
+				&& unionGroups[row] == relationship.getUnionGroup()
+				&& ((flags[row] & UNIVERSAL) != 0) == relationship.isUniversal()
+				&& ((flags[row] & DESTINATION_NEGATED) != 0) == relationship.isDestinationNegated()
+				&& characteristicTypes.decode(characteristicTypeCodes[row]) == relationship.getCharacteristicTypeId();
+	}
+
+	/**
+	 * @return an iterator over the rows of the active relationships of the source concept.
+	 */
+	IntIterator getRows(long sourceId) {
+		SourceIndex index = getSourceIndex();
+		int slot = index.slots.get(sourceId);
+		int start = slot == NOT_FOUND ? 0 : index.offsets[slot];
+		int end = slot == NOT_FOUND ? 0 : index.offsets[slot + 1];
+		int firstOverflowRow = overflowCount == 0 ? NOT_FOUND : lastOverflowRowBySource.get(sourceId);
+		return new IntIterator() {
+
+			private int position = start;
+			private int overflowRow = firstOverflowRow;
+			private int next = advance();
+
+			private int advance() {
+				while (position < end) {
+					int row = index.rows[position++];
+					if ((flags[row] & REMOVED) == 0) {
+						return row;
+					}
+				}
+				while (overflowRow != NOT_FOUND) {
+					int row = overflowRow;
+					overflowRow = previousOverflowRows[row];
+					if ((flags[row] & REMOVED) == 0) {
+						return row;
+					}
+				}
+				return NOT_FOUND;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != NOT_FOUND;
+			}
+
+			@Override
+			public int nextInt() {
+				if (next == NOT_FOUND) {
+					throw new NoSuchElementException();
+				}
+				int row = next;
+				next = advance();
+				return row;
+			}
+		};
+	}
+
+	/**
+	 * @return a live view of the active relationships of the source concept.
+	 */
+	Set<Relationship> getRelationships(long sourceId) {
+		return new AbstractSet<Relationship>() {
+			@Override
+			public Iterator<Relationship> iterator() {
+				IntIterator rows = getRows(sourceId);
+				return new Iterator<Relationship>() {
+					@Override
+					public boolean hasNext() {
+						return rows.hasNext();
+					}
+
+					@Override
+					public Relationship next() {
+						return getRelationship(rows.nextInt());
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Relationship)) {
+					return false;
+				}
+				int row = rowsById.get(((Relationship) o).getRelationshipId());
+				return row != NOT_FOUND && sourceIds[row] == sourceId && isSameRelationship(row, (Relationship) o);
+			}
+
+			@Override
+			public int size() {
+				return activeRowCountsBySource.get(sourceId);
+			}
+		};
+	}
+
+	/**
+	 * @return a live view of the active relationships keyed by relationship id.
+	 */
+	Map<Long, Relationship> getRelationshipsById() {
+		return new AbstractMap<Long, Relationship>() {
+			@Override
+			public Relationship get(Object key) {
+				int row = key instanceof Long ? rowsById.get((long) (Long) key) : NOT_FOUND;
+				return row != NOT_FOUND ? getRelationship(row) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof Long && rowsById.containsKey((long) (Long) key);
+			}
+
+			@Override
+			public int size() {
+				return rowsById.size();
+			}
+
+			@Override
+			public Set<Entry<Long, Relationship>> entrySet() {
+				return new AbstractSet<Entry<Long, Relationship>>() {
+					@Override
+					public Iterator<Entry<Long, Relationship>> iterator() {
+						IntIterator rows = rowsById.values().iterator();
+						return new Iterator<Entry<Long, Relationship>>() {
+							@Override
+							public boolean hasNext() {
+								return rows.hasNext();
+							}
+
+							@Override
+							public Entry<Long, Relationship> next() {
+								int row = rows.nextInt();
+								return new SimpleImmutableEntry<>(ids[row], getRelationship(row));
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return rowsById.size();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Builds the source index now rather than on the first read by source.
+	 */
+	void buildSourceIndex() {
+		getSourceIndex();
+	}
+
+	private SourceIndex getSourceIndex() {
+		SourceIndex index = sourceIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = sourceIndex;
+				if (index == null) {
+					index = new SourceIndex();
+					lastOverflowRowBySource.clear();
+					overflowCount = 0;
+					sourceIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	private static Long2IntOpenHashMap newIntMap() {
+		Long2IntOpenHashMap map = new Long2IntOpenHashMap();
+		map.defaultReturnValue(NOT_FOUND);
+		return map;
+	}
+
+	/**
+	 * Compressed sparse row index of the active rows by source concept.
+	 */
+	private final class SourceIndex {
+
+		private final Long2IntOpenHashMap slots = newIntMap();
+		private final int[] offsets;
+		private final int[] rows;
+
+		private SourceIndex() {
+			int[] rowSlots = new int[rowCount];
+			int activeRows = 0;
+			for (int row = 0; row < rowCount; row++) {
+				if ((flags[row] & REMOVED) == 0) {
+					long sourceId = sourceIds[row];
+					int slot = slots.get(sourceId);
+					if (slot == NOT_FOUND) {
+						slot = slots.size();
+						slots.put(sourceId, slot);
+					}
+					rowSlots[row] = slot;
+					activeRows++;
+				}
+			}
+			offsets = new int[slots.size() + 1];
+			for (int row = 0; row < rowCount; row++) {
+				if ((flags[row] & REMOVED) == 0) {
+					offsets[rowSlots[row] + 1]++;
+				}
+			}
+			for (int slot = 0; slot < slots.size(); slot++) {
+				offsets[slot + 1] += offsets[slot];
+			}
+			rows = new int[activeRows];
+			int[] fill = Arrays.copyOf(offsets, slots.size());
+			for (int row = 0; row < rowCount; row++) {
+				if ((flags[row] & REMOVED) == 0) {
+					rows[fill[rowSlots[row]]++] = row;
+				}
+			}
+		}
+	}
+
+	private static final class LongDictionary {
+
+		private final LongArrayList values = new LongArrayList();
+		private final Long2IntOpenHashMap codes = newIntMap();
+
+		private int encode(long value) {
+			int code = codes.get(value);
+			if (code == NOT_FOUND) {
+				code = values.size();
+				values.add(value);
+				codes.put(value, code);
+			}
+			return code;
+		}
+
+		private long decode(int code) {
+			return values.getLong(code);
+		}
+	}
+}
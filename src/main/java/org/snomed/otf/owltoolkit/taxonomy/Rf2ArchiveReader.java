@@ -0,0 +1,275 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.snomed.otf.owltoolkit.constants.Concepts.*;
+
+/**
+ * Reads the RF2 files used to build a taxonomy straight from the bytes of a release archive.
+ * Concepts, stated and inferred relationships, FSN descriptions and the OWL and MRCM attribute domain reference sets are read,
+ * other files are skipped. Identifiers are parsed to primitives without creating strings, only terms, OWL expressions and
+ * reference set member ids are decoded.
+ * Rows are passed to the component factory in file order. A snapshot archive may hold several rows for a component,
+ * {@link ParallelSnapshotLoader} is used to pass on only the latest state.
+ */
+class Rf2ArchiveReader {
+
+	private static final String SNAPSHOT = "Snapshot";
+	private static final String DELTA = "Delta";
+
+	private static final int CONCEPT_COLUMNS = 5;
+	private static final int RELATIONSHIP_COLUMNS = 10;
+	private static final int DESCRIPTION_COLUMNS = 9;
+	private static final int REFSET_COLUMNS = 6;
+
+	private final boolean includeFSNs;
+
+	/**
+	 * @param includeFSNs read FSN descriptions.
+	 */
+	Rf2ArchiveReader(boolean includeFSNs) {
+		this.includeFSNs = includeFSNs;
+	}
+
+	void readSnapshot(InputStream archive, PrimitiveComponentFactory componentFactory) throws ReleaseImportException {
+		read(archive, SNAPSHOT, componentFactory);
+	}
+
+	void readDelta(InputStream archive, PrimitiveComponentFactory componentFactory) throws ReleaseImportException {
+		read(archive, DELTA, componentFactory);
+	}
+
+	private void read(InputStream archive, String releaseType, PrimitiveComponentFactory componentFactory) throws ReleaseImportException {
+		// The archive stream is owned by the caller
+		ZipInputStream zipInputStream = new ZipInputStream(archive);
+		String fileName = null;
+		Rf2FileScanner scanner = null;
+		try {
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				if (entry.isDirectory()) {
+					continue;
+				}
+				fileName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+				FileType fileType = getFileType(fileName, releaseType);
+				if (fileType != null) {
+					scanner = new Rf2FileScanner(zipInputStream);
+					readFile(fileType, scanner, componentFactory);
+					scanner = null;
+				}
+			}
+		} catch (IOException e) {
+			throw new ReleaseImportException("Failed to read RF2 archive" + (fileName != null ? " file " + fileName : "") + ".", e);
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			throw new ReleaseImportException("Failed to read line " + (scanner != null ? scanner.lineNumber : 0) + " of RF2 file " + fileName + ".", e);
+		}
+	}
+
+	private FileType getFileType(String fileName, String releaseType) {
+		FileType fileType = null;
+		if (fileName.startsWith("sct2_Concept_")) {
+			fileType = FileType.CONCEPT;
+		} else if (fileName.startsWith("sct2_Relationship_") || fileName.startsWith("sct2_StatedRelationship_")) {
+			fileType = FileType.RELATIONSHIP;
+		} else if (fileName.startsWith("sct2_Description_")) {
+			fileType = includeFSNs ? FileType.DESCRIPTION : null;
+		} else if (fileName.contains("Refset_OWL") || fileName.contains("Refset_MRCMAttributeDomain")) {
+			fileType = FileType.REFSET;
+		}
+		return fileType != null && fileName.endsWith(".txt") && fileName.contains(releaseType) ? fileType : null;
+	}
+
+	private void readFile(FileType fileType, Rf2FileScanner scanner, PrimitiveComponentFactory componentFactory) throws IOException {
+		// Skip header
+		if (!scanner.nextLine()) {
+			return;
+		}
+		int columns = scanner.fieldCount;
+		while (scanner.nextLine()) {
+			if (scanner.isBlank()) {
+				continue;
+			}
+			switch (fileType) {
+				case CONCEPT:
+					scanner.checkFieldCount(CONCEPT_COLUMNS);
+					componentFactory.newConceptState(scanner.getLong(0), scanner.getEffectiveTime(1), scanner.isActive(2), scanner.getLong(3),
+							scanner.getLong(4));
+					break;
+				case RELATIONSHIP:
+					scanner.checkFieldCount(RELATIONSHIP_COLUMNS);
+					componentFactory.newRelationshipState(scanner.getLong(0), scanner.getEffectiveTime(1), scanner.isActive(2), scanner.getLong(3),
+							scanner.getLong(4), scanner.getLong(5), (int) scanner.getLong(6), scanner.getLong(7), scanner.getLong(8), scanner.getLong(9));
+					break;
+				case DESCRIPTION:
+					scanner.checkFieldCount(DESCRIPTION_COLUMNS);
+					long typeId = scanner.getLong(6);
+					// Only FSNs are used, other terms are not decoded
+					if (typeId == FSN_LONG) {
+						componentFactory.newDescriptionState(scanner.getLong(0), scanner.getEffectiveTime(1), scanner.isActive(2), scanner.getLong(3),
+								scanner.getLong(4), typeId, scanner.getString(7));
+					}
+					break;
+				case REFSET:
+					scanner.checkFieldCount(Math.max(columns, REFSET_COLUMNS));
+					long refsetId = scanner.getLong(4);
+					if (refsetId == OWL_AXIOM_REFERENCE_SET_LONG || refsetId == OWL_ONTOLOGY_REFERENCE_SET_LONG
+							|| refsetId == MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL_REFERENCE_SET_LONG) {
+						String[] otherValues = new String[columns - REFSET_COLUMNS];
+						for (int i = 0; i < otherValues.length; i++) {
+							otherValues[i] = scanner.getString(REFSET_COLUMNS + i);
+						}
+						componentFactory.newReferenceSetMemberState(scanner.getString(0), scanner.getEffectiveTime(1), scanner.isActive(2), scanner.getLong(3),
+								refsetId, scanner.getLong(5), otherValues);
+					}
+					break;
+			}
+		}
+	}
+
+	private enum FileType {
+		CONCEPT, RELATIONSHIP, DESCRIPTION, REFSET
+	}
+
+	/**
+	 * Splits the lines of one file into tab separated fields within a reusable byte buffer.
+	 */
+	private static final class Rf2FileScanner {
+
+		private static final int BUFFER_SIZE = 64 * 1024;
+
+		private final InputStream inputStream;
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int position;
+		private int limit;
+		private boolean endOfStream;
+		private int[] fieldStarts = new int[16];
+		private int[] fieldEnds = new int[16];
+		private int fieldCount;
+		private long lineNumber;
+
+		private Rf2FileScanner(InputStream inputStream) {
+			this.inputStream = inputStream;
+		}
+
+		private boolean nextLine() throws IOException {
+			while (true) {
+				for (int i = position; i < limit; i++) {
+					if (buffer[i] == '\n') {
+						splitFields(position, i);
+						position = i + 1;
+						return true;
+					}
+				}
+				if (endOfStream) {
+					if (position < limit) {
+						splitFields(position, limit);
+						position = limit;
+						return true;
+					}
+					return false;
+				}
+				fill();
+			}
+		}
+
+		private void fill() throws IOException {
+			// Move the incomplete line to the start of the buffer, growing it for very long lines
+			int remaining = limit - position;
+			if (remaining == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			} else if (position > 0) {
+				System.arraycopy(buffer, position, buffer, 0, remaining);
+			}
+			position = 0;
+			limit = remaining;
+			int read = inputStream.read(buffer, limit, buffer.length - limit);
+			if (read == -1) {
+				endOfStream = true;
+			} else {
+				limit += read;
+			}
+		}
+
+		private void splitFields(int start, int end) {
+			lineNumber++;
+			if (end > start && buffer[end - 1] == '\r') {
+				end--;
+			}
+			fieldCount = 0;
+			int fieldStart = start;
+			for (int i = start; i <= end; i++) {
+				if (i == end || buffer[i] == '\t') {
+					if (fieldCount == fieldStarts.length) {
+						fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+						fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+					}
+					fieldStarts[fieldCount] = fieldStart;
+					fieldEnds[fieldCount] = i;
+					fieldCount++;
+					fieldStart = i + 1;
+				}
+			}
+		}
+
+		private boolean isBlank() {
+			return fieldCount == 1 && fieldStarts[0] == fieldEnds[0];
+		}
+
+		private void checkFieldCount(int expected) {
+			if (fieldCount < expected) {
+				throw new IndexOutOfBoundsException("Expected " + expected + " columns but found " + fieldCount + ".");
+			}
+		}
+
+		private long getLong(int field) {
+			int start = fieldStarts[field];
+			int end = fieldEnds[field];
+			if (start == end || end - start > 18) {
+				throw new NumberFormatException("Invalid identifier '" + getString(field) + "'.");
+			}
+			long value = 0;
+			for (int i = start; i < end; i++) {
+				int digit = buffer[i] - '0';
+				if (digit < 0 || digit > 9) {
+					throw new NumberFormatException("Invalid identifier '" + getString(field) + "'.");
+				}
+				value = value * 10 + digit;
+			}
+			return value;
+		}
+
+		private int getEffectiveTime(int field) {
+			return fieldStarts[field] == fieldEnds[field] ? PrimitiveComponentFactory.UNPUBLISHED : (int) getLong(field);
+		}
+
+		private boolean isActive(int field) {
+			return fieldEnds[field] - fieldStarts[field] == 1 && buffer[fieldStarts[field]] == '1';
+		}
+
+		private String getString(int field) {
+			return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+		}
+	}
+}
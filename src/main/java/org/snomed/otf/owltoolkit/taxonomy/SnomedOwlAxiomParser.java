@@ -0,0 +1,274 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.snomed.otf.owltoolkit.ontology.OntologyService;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parser for the subset of OWL functional syntax used in the SNOMED CT OWL axiom reference set.
+ * Axioms are built directly through a shared OWLDataFactory without creating an ontology document.
+ *
+ * Supported axioms are SubClassOf, EquivalentClasses, SubObjectPropertyOf (including property chains), SubDataPropertyOf,
+ * TransitiveObjectProperty and ReflexiveObjectProperty. Class expressions may be named classes, ObjectIntersectionOf,
+ * ObjectSomeValuesFrom or DataHasValue with a typed xsd literal. Entities must use the default SNOMED CT prefix.
+ *
+ * Anything outside of this subset is not parsed; the caller should fall back to the full OWL API parser.
+ * Instances are thread safe.
+ */
+public class SnomedOwlAxiomParser {
+
+	private static final String XSD_PREFIX = "xsd:";
+	private static final String XSD_NAMESPACE = "http://www.w3.org/2001/XMLSchema#";
+
+	private final OWLDataFactory factory;
+
+	public SnomedOwlAxiomParser() {
+		this(OWLManager.getOWLDataFactory());
+	}
+
+	public SnomedOwlAxiomParser(OWLDataFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * @param owlExpression a single axiom in OWL functional syntax.
+	 * @return the axiom or null if the expression is not within the supported subset.
+	 */
+	public OWLAxiom parse(String owlExpression) {
+		try {
+			Cursor cursor = new Cursor(owlExpression);
+			OWLAxiom axiom = axiom(cursor);
+			cursor.skipWhitespace();
+			return cursor.atEnd() ? axiom : null;
+		} catch (UnsupportedSyntaxException e) {
+			return null;
+		}
+	}
+
+	private OWLAxiom axiom(Cursor cursor) {
+		String keyword = cursor.keyword();
+		cursor.expect('(');
+		OWLAxiom axiom;
+		switch (keyword) {
+			case "SubClassOf":
+				OWLClassExpression subClass = classExpression(cursor);
+				axiom = factory.getOWLSubClassOfAxiom(subClass, classExpression(cursor));
+				break;
+			case "EquivalentClasses":
+				// Closing bracket consumed with the operands
+				return factory.getOWLEquivalentClassesAxiom(classExpressions(cursor));
+			case "SubObjectPropertyOf":
+				if (cursor.peekKeyword()) {
+					if (!"ObjectPropertyChain".equals(cursor.keyword())) {
+						throw UnsupportedSyntaxException.INSTANCE;
+					}
+					cursor.expect('(');
+					List<OWLObjectPropertyExpression> chain = new ArrayList<>();
+					chain.add(objectProperty(cursor));
+					do {
+						chain.add(objectProperty(cursor));
+					} while (!cursor.consume(')'));
+					axiom = factory.getOWLSubPropertyChainOfAxiom(chain, objectProperty(cursor));
+				} else {
+					OWLObjectProperty subProperty = objectProperty(cursor);
+					axiom = factory.getOWLSubObjectPropertyOfAxiom(subProperty, objectProperty(cursor));
+				}
+				break;
+			case "SubDataPropertyOf":
+				OWLDataProperty subProperty = dataProperty(cursor);
+				axiom = factory.getOWLSubDataPropertyOfAxiom(subProperty, dataProperty(cursor));
+				break;
+			case "TransitiveObjectProperty":
+				axiom = factory.getOWLTransitiveObjectPropertyAxiom(objectProperty(cursor));
+				break;
+			case "ReflexiveObjectProperty":
+				axiom = factory.getOWLReflexiveObjectPropertyAxiom(objectProperty(cursor));
+				break;
+			default:
+				throw UnsupportedSyntaxException.INSTANCE;
+		}
+		cursor.expect(')');
+		return axiom;
+	}
+
+	private OWLClassExpression classExpression(Cursor cursor) {
+		if (!cursor.peekKeyword()) {
+			return factory.getOWLClass(cursor.snomedIri());
+		}
+		String keyword = cursor.keyword();
+		cursor.expect('(');
+		OWLClassExpression expression;
+		switch (keyword) {
+			case "ObjectIntersectionOf":
+				// Closing bracket consumed with the operands
+				return factory.getOWLObjectIntersectionOf(classExpressions(cursor));
+			case "ObjectSomeValuesFrom":
+				OWLObjectProperty property = objectProperty(cursor);
+				expression = factory.getOWLObjectSomeValuesFrom(property, classExpression(cursor));
+				break;
+			case "DataHasValue":
+				OWLDataProperty dataProperty = dataProperty(cursor);
+				expression = factory.getOWLDataHasValue(dataProperty, literal(cursor));
+				break;
+			default:
+				throw UnsupportedSyntaxException.INSTANCE;
+		}
+		cursor.expect(')');
+		return expression;
+	}
+
+	/**
+	 * Reads two or more class expressions and the closing bracket.
+	 */
+	private Set<OWLClassExpression> classExpressions(Cursor cursor) {
+		Set<OWLClassExpression> expressions = new HashSet<>();
+		expressions.add(classExpression(cursor));
+		do {
+			expressions.add(classExpression(cursor));
+		} while (!cursor.consume(')'));
+		return expressions;
+	}
+
+	private OWLObjectProperty objectProperty(Cursor cursor) {
+		return factory.getOWLObjectProperty(cursor.snomedIri());
+	}
+
+	private OWLDataProperty dataProperty(Cursor cursor) {
+		return factory.getOWLDataProperty(cursor.snomedIri());
+	}
+
+	private OWLLiteral literal(Cursor cursor) {
+		String lexicalValue = cursor.quotedString();
+		cursor.expect('^');
+		cursor.expect('^');
+		String datatypeName = cursor.prefixedName(XSD_PREFIX);
+		return factory.getOWLLiteral(lexicalValue, factory.getOWLDatatype(IRI.create(XSD_NAMESPACE + datatypeName)));
+	}
+
+	private static final class Cursor {
+
+		private final String input;
+		private int position;
+
+		private Cursor(String input) {
+			this.input = input;
+		}
+
+		private void skipWhitespace() {
+			while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+				position++;
+			}
+		}
+
+		private boolean atEnd() {
+			return position == input.length();
+		}
+
+		private boolean peekKeyword() {
+			skipWhitespace();
+			return position < input.length() && isLetter(input.charAt(position));
+		}
+
+		private String keyword() {
+			skipWhitespace();
+			int start = position;
+			while (position < input.length() && isLetter(input.charAt(position))) {
+				position++;
+			}
+			if (start == position) {
+				throw UnsupportedSyntaxException.INSTANCE;
+			}
+			return input.substring(start, position);
+		}
+
+		private void expect(char c) {
+			if (!consume(c)) {
+				throw UnsupportedSyntaxException.INSTANCE;
+			}
+		}
+
+		private boolean consume(char c) {
+			skipWhitespace();
+			if (position < input.length() && input.charAt(position) == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private IRI snomedIri() {
+			return IRI.create(OntologyService.SNOMED_CORE_COMPONENTS_URI + prefixedName(OntologyService.COLON));
+		}
+
+		private String prefixedName(String prefix) {
+			skipWhitespace();
+			if (!input.startsWith(prefix, position)) {
+				throw UnsupportedSyntaxException.INSTANCE;
+			}
+			position += prefix.length();
+			int start = position;
+			while (position < input.length() && isNameCharacter(input.charAt(position))) {
+				position++;
+			}
+			if (start == position) {
+				throw UnsupportedSyntaxException.INSTANCE;
+			}
+			return input.substring(start, position);
+		}
+
+		private String quotedString() {
+			expect('"');
+			int start = position;
+			while (position < input.length() && input.charAt(position) != '"') {
+				// Escaped characters are left to the full parser
+				if (input.charAt(position) == '\\') {
+					throw UnsupportedSyntaxException.INSTANCE;
+				}
+				position++;
+			}
+			if (atEnd()) {
+				throw UnsupportedSyntaxException.INSTANCE;
+			}
+			return input.substring(start, position++);
+		}
+
+		private static boolean isLetter(char c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+		}
+
+		private static boolean isNameCharacter(char c) {
+			return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+		}
+	}
+
+	private static final class UnsupportedSyntaxException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final UnsupportedSyntaxException INSTANCE = new UnsupportedSyntaxException();
+
+		private UnsupportedSyntaxException() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -16,8 +16,12 @@
 package org.snomed.otf.owltoolkit.taxonomy;
 
 import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,27 +30,39 @@ import org.snomed.otf.owltoolkit.domain.Relationship;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
 
+/**
+ * In memory form of a release used for classification.
+ *
+ * A taxonomy can be frozen once loaded and then used as the base of any number of overlays, see {@link #createOverlay()}.
+ * An overlay holds only what a delta changes: the relationships, subtypes and axioms of a concept are copied from the base
+ * the first time the delta touches that concept, everything else is read from the base.
+ * A frozen base is never modified so overlays of the same base can be loaded and classified concurrently.
+ */
 public class SnomedTaxonomy {
 
-	private Map<String, String> ontologyNamespaces = new HashMap<>();
-	private Map<String, String> ontologyHeader = new HashMap<>();
-	private Set<Long> allConceptIds = new LongOpenHashSet();
-	private Set<Long> fullyDefinedConceptIds = new LongOpenHashSet();
-	private Map<Long, Relationship> statedRelationshipsById = new HashMap<>();
-	private Map<Long, Relationship> inferredRelationshipsById = new HashMap<>();
-	private Map<String, OWLAxiom> axiomsById = new HashMap<>();
-	private Map<Long, Set<Relationship>> conceptStatedRelationshipMap = new Long2ObjectOpenHashMap<>();
-	private Map<Long, Set<Relationship>> conceptInferredRelationshipMap = new Long2ObjectOpenHashMap<>();
-	private Map<Long, Set<Relationship>> conceptInactiveInferredRelationshipMap = new Long2ObjectOpenHashMap<>();
+	// Null unless this is an overlay, in which case the maps below only hold the entries which differ from the base.
+	private final SnomedTaxonomy base;
+
+	private Map<String, String> ontologyNamespaces;
+	private Map<String, String> ontologyHeader;
+	private LongSet allConceptIds;
+	private LongSet fullyDefinedConceptIds;
+	private final LayeredRelationshipStore statedRelationships;
+	private final LayeredRelationshipStore inferredRelationships;
+	private final InactiveRelationshipIndex inactiveInferredRelationshipIds = new InactiveRelationshipIndex();
+	private final Map<String, OWLAxiom> axiomsById = new HashMap<>();
+	private final Set<String> removedBaseAxiomIds = new HashSet<>();
 	private Map<Long, Set<OWLAxiom>> conceptAxiomMap = new Long2ObjectOpenHashMap<>();
-	private Map<Long, Set<Long>> statedSubTypesMap = new Long2ObjectOpenHashMap<>();
-	private Map<Long, Set<Long>> ungroupedRolesByContentType = new HashMap<>();
-	private Set<Long> inactivatedConcepts = new LongOpenHashSet();
-	private Map<Long, String> conceptFsnTermMap = new Long2ObjectOpenHashMap<>();
+	private final Map<Long, Set<Long>> statedSubTypesMap = new Long2ObjectOpenHashMap<>();
+	private Map<Long, Set<Long>> ungroupedRolesByContentType;
+	private LongSet inactivatedConcepts;
+	private final Map<Long, String> conceptFsnTermMap = new Long2ObjectOpenHashMap<>();
+	private volatile StatedHierarchyIndex statedHierarchyIndex;
+	private volatile ConceptDictionary conceptDictionary;
+	private volatile boolean frozen;
 
 	public static final Set<Long> DEFAULT_NEVER_GROUPED_ROLE_IDS = Collections.unmodifiableSet(Sets.newHashSet(
 			parseLong(Concepts.PART_OF),
@@ -57,8 +73,87 @@ public class SnomedTaxonomy {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(SnomedTaxonomy.class);
 
+	public SnomedTaxonomy() {
+		base = null;
+		ontologyNamespaces = new HashMap<>();
+		ontologyHeader = new HashMap<>();
+		allConceptIds = new LongOpenHashSet();
+		fullyDefinedConceptIds = new LongOpenHashSet();
+		inactivatedConcepts = new LongOpenHashSet();
+		statedRelationships = new LayeredRelationshipStore();
+		inferredRelationships = new LayeredRelationshipStore();
+		ungroupedRolesByContentType = new HashMap<>();
+	}
+
+	private SnomedTaxonomy(SnomedTaxonomy base) {
+		this.base = base;
+		ontologyNamespaces = new HashMap<>(base.ontologyNamespaces);
+		ontologyHeader = new HashMap<>(base.ontologyHeader);
+		allConceptIds = new OverlayLongSet(base.allConceptIds);
+		fullyDefinedConceptIds = new OverlayLongSet(base.fullyDefinedConceptIds);
+		inactivatedConcepts = new OverlayLongSet(base.inactivatedConcepts);
+		statedRelationships = new LayeredRelationshipStore(base.statedRelationships.getLayer());
+		inferredRelationships = new LayeredRelationshipStore(base.inferredRelationships.getLayer());
+		ungroupedRolesByContentType = new HashMap<>();
+		base.ungroupedRolesByContentType.forEach((contentType, roles) -> ungroupedRolesByContentType.put(contentType, new HashSet<>(roles)));
+	}
+
+	/**
+	 * Makes this taxonomy read only so that it can be shared as the base of overlays.
+	 * Indexes which are otherwise built on first use are built now so that later reads do not write.
+	 */
+	public synchronized void freeze() {
+		if (frozen) {
+			return;
+		}
+		if (base != null) {
+			throw new IllegalStateException("An overlay taxonomy can not be frozen.");
+		}
+		statedRelationships.getLayer().trimToSize();
+		statedRelationships.getLayer().buildSourceIndex();
+		inferredRelationships.getLayer().trimToSize();
+		inferredRelationships.getLayer().buildSourceIndex();
+		getStatedHierarchyIndex();
+		getConceptDictionary();
+		allConceptIds = LongSets.unmodifiable(allConceptIds);
+		fullyDefinedConceptIds = LongSets.unmodifiable(fullyDefinedConceptIds);
+		inactivatedConcepts = LongSets.unmodifiable(inactivatedConcepts);
+		conceptAxiomMap = Collections.unmodifiableMap(conceptAxiomMap);
+		ontologyNamespaces = Collections.unmodifiableMap(ontologyNamespaces);
+		ontologyHeader = Collections.unmodifiableMap(ontologyHeader);
+		ungroupedRolesByContentType = Collections.unmodifiableMap(ungroupedRolesByContentType);
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Creates an empty overlay of this taxonomy. Changes made to the overlay, for example by loading a delta into it, are not
+	 * visible in this taxonomy.
+	 * @return a new mutable taxonomy which starts with the same content as this one.
+	 * @throws IllegalStateException if this taxonomy is not frozen.
+	 */
+	public SnomedTaxonomy createOverlay() {
+		if (!frozen) {
+			throw new IllegalStateException("A taxonomy must be frozen before an overlay can be created.");
+		}
+		return new SnomedTaxonomy(this);
+	}
+
+	public boolean isOverlay() {
+		return base != null;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("This taxonomy is frozen, create an overlay to make changes.");
+		}
+	}
+
 	public boolean isPrimitive(Long conceptId) {
-		return !fullyDefinedConceptIds.contains(conceptId);
+		return !fullyDefinedConceptIds.contains((long) conceptId);
 	}
 
 	/**
@@ -67,76 +162,127 @@ public class SnomedTaxonomy {
 	 * @return the active source relationships.
 	 */
 	public Collection<Relationship> getStatedRelationships(Long conceptId) {
-		return conceptStatedRelationshipMap.getOrDefault(conceptId, Collections.emptySet());
+		return statedRelationships.getRelationships(conceptId);
 	}
 	
 	public Set<Relationship> getInferredRelationships(Long conceptId) {
-		return conceptInferredRelationshipMap.getOrDefault(conceptId, Collections.emptySet());
+		return inferredRelationships.getRelationships(conceptId);
 	}
 
-	public Set<Relationship> getInactiveInferredRelationships(Long conceptId) {
-		return conceptInactiveInferredRelationshipMap.getOrDefault(conceptId, Collections.emptySet());
+	/**
+	 * Returns the id of the latest inactive inferred relationship matching the given values, so that the id can be reused
+	 * when the same relationship is inferred again.
+	 * @return the relationship id or -1 if there is no matching inactive relationship.
+	 */
+	public long getInactiveInferredRelationshipId(long conceptId, long typeId, long destinationId, int group) {
+		int slot = inactiveInferredRelationshipIds.find(conceptId, typeId, destinationId, group);
+		if (base != null) {
+			int baseSlot = base.inactiveInferredRelationshipIds.find(conceptId, typeId, destinationId, group);
+			if (baseSlot != InactiveRelationshipIndex.NOT_FOUND
+					&& (slot == InactiveRelationshipIndex.NOT_FOUND
+					|| base.inactiveInferredRelationshipIds.getEffectiveTime(baseSlot) > inactiveInferredRelationshipIds.getEffectiveTime(slot))) {
+				return base.inactiveInferredRelationshipIds.getRelationshipId(baseSlot);
+			}
+		}
+		return slot != InactiveRelationshipIndex.NOT_FOUND ? inactiveInferredRelationshipIds.getRelationshipId(slot) : -1;
 	}
 
 	public void addOrModifyRelationship(boolean stated, long conceptId, Relationship relationship) {
-		// Have we seen this relationship before ie we need to modify it?
-		Relationship existingRelationship = stated ? statedRelationshipsById.get(relationship.getRelationshipId())
-				: inferredRelationshipsById.get(relationship.getRelationshipId());
+		checkNotFrozen();
+		LayeredRelationshipStore relationships = stated ? statedRelationships : inferredRelationships;
 
-		if (existingRelationship != null) {
+		// Have we seen this relationship before ie we need to modify it?
+		long existingSourceId = relationships.getSourceId(relationship.getRelationshipId());
+		if (existingSourceId != -1) {
 			// Only effectiveTime and groupId are mutable
-			existingRelationship.setEffectiveTime(relationship.getEffectiveTime());
-			existingRelationship.setGroup(relationship.getGroup());
+			RelationshipStore store = relationships.getWritableStore(existingSourceId);
+			store.setEffectiveTimeAndGroup(store.getRow(relationship.getRelationshipId()), relationship.getEffectiveTime(), relationship.getGroup());
 		} else {
 			// add relationship
-			if (stated) {
-				conceptStatedRelationshipMap.computeIfAbsent(conceptId, k -> new HashSet<>()).add(relationship);
-				if (relationship.getTypeId() == Concepts.IS_A_LONG) {
-					statedSubTypesMap.computeIfAbsent(relationship.getDestinationId(), k -> new HashSet<>()).add(conceptId);
-				}
-				statedRelationshipsById.put(relationship.getRelationshipId(), relationship);
-			} else {
-				conceptInferredRelationshipMap.computeIfAbsent(conceptId, k -> new HashSet<>()).add(relationship);
-				inferredRelationshipsById.put(relationship.getRelationshipId(), relationship);
+			relationships.getWritableStore(conceptId).add(conceptId, relationship);
+			if (stated && relationship.getTypeId() == Concepts.IS_A_LONG) {
+				getWritableSubTypes(relationship.getDestinationId()).add(conceptId);
+				statedHierarchyIndex = null;
 			}
 		}
 	}
 
 	public void addInactiveInferredRelationship(long conceptId, Relationship relationship) {
-		conceptInactiveInferredRelationshipMap.computeIfAbsent(conceptId, k -> new HashSet<>()).add(relationship);
+		checkNotFrozen();
+		inactiveInferredRelationshipIds.put(conceptId, relationship.getTypeId(), relationship.getDestinationId(), relationship.getGroup(),
+				relationship.getRelationshipId(), relationship.getEffectiveTime());
 	}
 
+	/**
+	 * Returns the active concepts which are stated descendants of the given concept.
+	 * @param ancestor the ID of the SNOMED&nbsp;CT concept.
+	 * @return a new mutable set of descendant concept ids, not including the given concept.
+	 */
 	public Set<Long> getDescendants(Long ancestor) {
-		Set<Long> descendants = new HashSet<>();
-		for (Long conceptId : allConceptIds) {
-			if (conceptHasAncestor(conceptId, ancestor)) {
-				descendants.add(conceptId);
-			}
-		}
-		return descendants;
+		return retainActive(getStatedHierarchyIndex().getDescendants(ancestor));
 	}
 
-	private boolean conceptHasAncestor(long conceptId, long ancestor) {
-		return conceptHasAncestor(conceptId, ancestor, 0);
+	/**
+	 * Returns the active concepts which are stated ancestors of the given concept.
+	 * @param conceptId the ID of the SNOMED&nbsp;CT concept.
+	 * @return a new mutable set of ancestor concept ids, not including the given concept.
+	 */
+	public Set<Long> getAncestors(Long conceptId) {
+		return retainActive(getStatedHierarchyIndex().getAncestors(conceptId));
 	}
 
-	private boolean conceptHasAncestor(long conceptId, long ancestor, long depth) {
-		if (conceptId == Concepts.ROOT_LONG) {
-			return false;
+	private Set<Long> retainActive(LongOpenHashSet conceptIds) {
+		for (LongIterator iterator = conceptIds.iterator(); iterator.hasNext(); ) {
+			if (!allConceptIds.contains(iterator.nextLong())) {
+				iterator.remove();
+			}
 		}
-		
-		//TODO Temporary code to find out why we're seeing a recursive hierarchy
-		if (depth > 30) {
-			throw new RuntimeException("Depth limit exceeded searching for potential ancestor " + ancestor + " of concept " + conceptId ); 
+		return conceptIds;
+	}
+
+	private StatedHierarchyIndex getStatedHierarchyIndex() {
+		StatedHierarchyIndex index = statedHierarchyIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = statedHierarchyIndex;
+				if (index == null) {
+					if (base == null) {
+						index = new StatedHierarchyIndex(statedSubTypesMap);
+					} else if (statedSubTypesMap.isEmpty()) {
+						// The stated hierarchy is unchanged
+						index = base.getStatedHierarchyIndex();
+					} else {
+						index = new StatedHierarchyIndex(new OverlayMap<>(base.statedSubTypesMap, statedSubTypesMap));
+					}
+					statedHierarchyIndex = index;
+				}
+			}
 		}
+		return index;
+	}
 
-		// Check all ancestors for the attribute concept
-		for (Relationship relationship : conceptStatedRelationshipMap.getOrDefault(conceptId, Collections.emptySet())) {
-			if (relationship.getTypeId() == Concepts.IS_A_LONG) {
-				return relationship.getDestinationId() == ancestor || conceptHasAncestor(relationship.getDestinationId(), ancestor, ++depth);
+	/**
+	 * Returns a dictionary giving the concepts of this taxonomy dense ordinals, in ascending id order.
+	 * The dictionary is built on first use, or when the taxonomy is frozen, and is not updated by later changes.
+	 * Overlays share the dictionary of their base, structures which need ordinals for new concepts should layer
+	 * their own dictionary over this one.
+	 * @return read only concept dictionary.
+	 */
+	public ConceptDictionary getConceptDictionary() {
+		if (base != null) {
+			return base.getConceptDictionary();
+		}
+		ConceptDictionary dictionary = conceptDictionary;
+		if (dictionary == null) {
+			synchronized (this) {
+				dictionary = conceptDictionary;
+				if (dictionary == null) {
+					dictionary = ConceptDictionary.of(allConceptIds.toLongArray());
+					conceptDictionary = dictionary;
+				}
 			}
 		}
-		return false;
+		return dictionary;
 	}
 
 	public Set<Long> getSuperTypeIds(long conceptId) {
@@ -145,23 +291,44 @@ public class SnomedTaxonomy {
 		}
 
 		Set<Long> superTypes = new HashSet<>();
-		for (Relationship relationship : conceptStatedRelationshipMap.get(conceptId)) {
-			if (relationship.getTypeId() == Concepts.IS_A_LONG) {
-				superTypes.add(relationship.getDestinationId());
+		RelationshipStore store = statedRelationships.getStore(conceptId);
+		for (IntIterator rows = store.getRows(conceptId); rows.hasNext(); ) {
+			int row = rows.nextInt();
+			if (store.getTypeId(row) == Concepts.IS_A_LONG) {
+				superTypes.add(store.getDestinationId(row));
 			}
 		}
 		return superTypes;
 	}
 
 	public Collection<Relationship> getNonIsAStatements(Long conceptId) {
-		return conceptStatedRelationshipMap.getOrDefault(conceptId, Collections.emptySet()).stream().filter(f -> f.getTypeId() != Concepts.IS_A_LONG).collect(Collectors.toList());
+		List<Relationship> nonIsAStatements = new ArrayList<>();
+		RelationshipStore store = statedRelationships.getStore(conceptId);
+		for (IntIterator rows = store.getRows(conceptId); rows.hasNext(); ) {
+			int row = rows.nextInt();
+			if (store.getTypeId(row) != Concepts.IS_A_LONG) {
+				nonIsAStatements.add(store.getRelationship(row));
+			}
+		}
+		return nonIsAStatements;
 	}
 
 	public Set<Long> getSubTypeIds(long conceptId) {
 		Set<Long> longs = statedSubTypesMap.get(conceptId);
+		if (longs == null && base != null) {
+			longs = base.statedSubTypesMap.get(conceptId);
+		}
 		return longs != null ? longs : Collections.emptySet();
 	}
 
+	private Set<Long> getWritableSubTypes(long conceptId) {
+		return statedSubTypesMap.computeIfAbsent(conceptId, id -> copyOfBase(base != null ? base.statedSubTypesMap.get(id) : null));
+	}
+
+	private static <T> Set<T> copyOfBase(Set<T> baseSet) {
+		return baseSet != null ? new HashSet<>(baseSet) : new HashSet<>();
+	}
+
 	public boolean isExhaustive(long conceptId) {
 		// TODO: is this always false?
 		return false;
@@ -180,25 +347,46 @@ public class SnomedTaxonomy {
 	}
 
 	public Collection<Relationship> getInferredRelationships(long conceptId) {
-		return conceptInferredRelationshipMap.getOrDefault(conceptId, Collections.emptySet());
+		return inferredRelationships.getRelationships(conceptId);
 	}
 
 	public void removeRelationship(boolean stated, String sourceId, String relationshipIdStr) {
-		long relationshipId = parseLong(relationshipIdStr);
-		if (stated) {
-			getStatedRelationships(parseLong(sourceId)).removeIf(relationship -> relationshipId == relationship.getRelationshipId());
-			statedRelationshipsById.remove(relationshipId);
-		} else {
-			getInferredRelationships(parseLong(sourceId)).removeIf(relationship -> relationshipId == relationship.getRelationshipId());
-			inferredRelationshipsById.remove(relationshipId);
+		removeRelationship(stated, parseLong(sourceId), parseLong(relationshipIdStr));
+	}
+
+	public void removeRelationship(boolean stated, long conceptId, long relationshipId) {
+		checkNotFrozen();
+		LayeredRelationshipStore relationships = stated ? statedRelationships : inferredRelationships;
+		long existingSourceId = relationships.getSourceId(relationshipId);
+		if (existingSourceId == -1) {
+			return;
+		}
+		RelationshipStore store = relationships.getWritableStore(existingSourceId);
+		int removedRow = store.remove(relationshipId);
+		if (stated && store.getTypeId(removedRow) == Concepts.IS_A_LONG) {
+			long destinationId = store.getDestinationId(removedRow);
+			// The relationship is removed from the concept it is held against, which may not be the source given by the delta row
+			for (IntIterator rows = store.getRows(existingSourceId); rows.hasNext(); ) {
+				int row = rows.nextInt();
+				if (store.getTypeId(row) == Concepts.IS_A_LONG && store.getDestinationId(row) == destinationId) {
+					// Another active is-a to the same parent remains
+					return;
+				}
+			}
+			if (!getSubTypeIds(destinationId).isEmpty()) {
+				getWritableSubTypes(destinationId).remove(existingSourceId);
+			}
+			statedHierarchyIndex = null;
 		}
 	}
 
 	public void addOntologyNamespace(String id, String namespace) {
+		checkNotFrozen();
 		ontologyNamespaces.put(id, namespace);
 	}
 
 	public void removeOntologyNamespace(String id) {
+		checkNotFrozen();
 		ontologyNamespaces.remove(id);
 	}
 
@@ -207,10 +395,12 @@ public class SnomedTaxonomy {
 	}
 
 	public void addOntologyHeader(String id, String namespace) {
+		checkNotFrozen();
 		ontologyHeader.put(id, namespace);
 	}
 
 	public void removeOntologyHeader(String id) {
+		checkNotFrozen();
 		ontologyHeader.remove(id);
 	}
 
@@ -219,38 +409,65 @@ public class SnomedTaxonomy {
 	}
 
 	public void addAxiom(String referencedComponentId, String axiomId, OWLAxiom owlAxiom) {
+		checkNotFrozen();
 		// Manually remove any existing axiom by axiomId.
 		// We can't use the natural behaviour of a Java Set because the OWLAxiom does not use the axiomId in the equals method.
-		OWLAxiom existingAxiomVersion = axiomsById.get(axiomId);
-		Set<OWLAxiom> conceptAxioms = conceptAxiomMap.computeIfAbsent(parseLong(referencedComponentId), id -> new HashSet<>());
+		OWLAxiom existingAxiomVersion = getAxiom(axiomId);
+		Set<OWLAxiom> conceptAxioms = getWritableConceptAxioms(parseLong(referencedComponentId));
 		if (existingAxiomVersion != null) {
 			conceptAxioms.remove(existingAxiomVersion);
 		}
 		conceptAxioms.add(owlAxiom);
 		axiomsById.put(axiomId, owlAxiom);
+		removedBaseAxiomIds.remove(axiomId);
 	}
 
 	public void removeAxiom(String referencedComponentId, String id) {
+		checkNotFrozen();
 		// Find the previously loaded axiom by id so that it can be removed from the set of axioms on the concept
-		OWLAxiom owlAxiomToRemove = axiomsById.remove(id);
+		OWLAxiom owlAxiomToRemove = getAxiom(id);
 		if (owlAxiomToRemove != null) {
-			conceptAxiomMap.get(parseLong(referencedComponentId)).remove(owlAxiomToRemove);
+			axiomsById.remove(id);
+			if (base != null && base.axiomsById.containsKey(id)) {
+				removedBaseAxiomIds.add(id);
+			}
+			getWritableConceptAxioms(parseLong(referencedComponentId)).remove(owlAxiomToRemove);
 		}
 	}
 
+	private OWLAxiom getAxiom(String axiomId) {
+		OWLAxiom axiom = axiomsById.get(axiomId);
+		if (axiom == null && base != null && !removedBaseAxiomIds.contains(axiomId)) {
+			axiom = base.axiomsById.get(axiomId);
+		}
+		return axiom;
+	}
+
+	private Set<OWLAxiom> getWritableConceptAxioms(long conceptId) {
+		return conceptAxiomMap.computeIfAbsent(conceptId, id -> copyOfBase(base != null ? base.conceptAxiomMap.get(id) : null));
+	}
+
 	public void addFsn(String conceptId, String term) {
-		conceptFsnTermMap.put(parseLong(conceptId), term);
+		addFsn(parseLong(conceptId), term);
+	}
+
+	public void addFsn(long conceptId, String term) {
+		checkNotFrozen();
+		conceptFsnTermMap.put(conceptId, term);
 	}
 
 	public String getConceptFsnTerm(Long conceptId) {
-		return conceptFsnTermMap.get(conceptId);
+		String term = conceptFsnTermMap.get(conceptId);
+		return term == null && base != null ? base.getConceptFsnTerm(conceptId) : term;
 	}
 
 	public void addUngroupedRole(Long contentType, Long attributeId) {
+		checkNotFrozen();
 		ungroupedRolesByContentType.computeIfAbsent(contentType, type -> new HashSet<>()).add(attributeId);
 	}
 
 	public void removeUngroupedRole(Long contentType, Long attributeId) {
+		checkNotFrozen();
 		Set<Long> ungrouped = ungroupedRolesByContentType.get(contentType);
 		if (ungrouped != null) {
 			ungrouped.remove(attributeId);
@@ -279,20 +496,48 @@ public class SnomedTaxonomy {
 	}
 
 	public Map<Long, Set<OWLAxiom>> getConceptAxiomMap() {
-		return conceptAxiomMap;
+		return base == null ? conceptAxiomMap : new OverlayMap<>(base.conceptAxiomMap, conceptAxiomMap);
 	}
 
 	public Set<Long> getInactivatedConcepts() {
 		return inactivatedConcepts;
 	}
 
+	// The getters below expose the complete content so are not available on an overlay.
+
+	RelationshipStore getStatedRelationshipStore() {
+		checkNotOverlay();
+		return statedRelationships.getLayer();
+	}
+
+	RelationshipStore getInferredRelationshipStore() {
+		checkNotOverlay();
+		return inferredRelationships.getLayer();
+	}
+
+	InactiveRelationshipIndex getInactiveInferredRelationshipIndex() {
+		checkNotOverlay();
+		return inactiveInferredRelationshipIds;
+	}
+
+	Map<Long, String> getConceptFsnTerms() {
+		checkNotOverlay();
+		return conceptFsnTermMap;
+	}
+
+	private void checkNotOverlay() {
+		if (base != null) {
+			throw new IllegalStateException("Not supported on an overlay taxonomy.");
+		}
+	}
+
 	public Map<Long, Relationship> getStatedRelationships() {
-		return statedRelationshipsById;
+		return statedRelationships.getRelationshipsById();
 	}
 
 	public Long getAxiomCount() {
 		AtomicLong axiomCount = new AtomicLong();
-		conceptAxiomMap.values().forEach(axioms -> axiomCount.addAndGet(axioms.size()));
+		getConceptAxiomMap().values().forEach(axioms -> axiomCount.addAndGet(axioms.size()));
 		return axiomCount.get();
 	}
 }
@@ -19,12 +19,16 @@ import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.ihtsdo.otf.snomedboot.ReleaseImporter;
 import org.ihtsdo.otf.snomedboot.factory.ComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.owltoolkit.util.InputStreamSet;
 import org.springframework.util.StopWatch;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Set;
 
 import static org.snomed.otf.owltoolkit.constants.Concepts.*;
 
@@ -53,6 +57,20 @@ public class SnomedTaxonomyBuilder {
 			.withInactiveRelationships()
 			.withInactiveRefsetMembers();
 
+	private final int loadingThreads;
+
+	public SnomedTaxonomyBuilder() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param loadingThreads the number of threads used to read snapshot archives and deserialise OWL axioms while loading.
+	 *                       When more than one snapshot archive is given each archive is read on its own thread.
+	 */
+	public SnomedTaxonomyBuilder(int loadingThreads) {
+		this.loadingThreads = loadingThreads;
+	}
+
 	public SnomedTaxonomy build(InputStreamSet snomedRf2SnapshotArchives, boolean includeFSNs) throws ReleaseImportException {
 		return build(snomedRf2SnapshotArchives, null, includeFSNs);
 	}
@@ -75,24 +93,145 @@ public class SnomedTaxonomyBuilder {
 		StopWatch stopWatch = new StopWatch();
 		stopWatch.start();
 
-		SnomedTaxonomyLoader snomedTaxonomyLoader = new SnomedTaxonomyLoader(snapshotComponentFactoryTap, deltaComponentFactoryTap);
+		SnomedTaxonomyLoader snomedTaxonomyLoader = new SnomedTaxonomyLoader(snapshotComponentFactoryTap, deltaComponentFactoryTap, loadingThreads);
+		loadSnapshot(snomedRf2SnapshotArchives, snomedTaxonomyLoader, includeFSNs);
+		return loadDelta(currentReleaseRf2DeltaArchive, snomedTaxonomyLoader, includeFSNs, stopWatch);
+	}
 
-		ReleaseImporter releaseImporter = new ReleaseImporter();
-		releaseImporter.loadEffectiveSnapshotReleaseFileStreams(
-				snomedRf2SnapshotArchives.getFileInputStreams(),
-				includeFSNs ? SNAPSHOT_LOADING_PROFILE.withFullDescriptionObjects() : SNAPSHOT_LOADING_PROFILE,
-				snomedTaxonomyLoader);
+	/**
+	 * Builds a taxonomy using a cached copy of the snapshot if one exists for the content of these archives.
+	 * If not the snapshot is loaded and written to the cache before the delta is applied.
+	 */
+	public SnomedTaxonomy build(
+			Set<File> snomedRf2SnapshotArchiveFiles,
+			InputStream currentReleaseRf2DeltaArchive,
+			SnomedTaxonomyCache snapshotCache,
+			boolean includeFSNs) throws ReleaseImportException {
+
+		StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+
+		SnomedTaxonomyLoader snomedTaxonomyLoader = loadSnapshot(snomedRf2SnapshotArchiveFiles, snapshotCache, includeFSNs);
+		return loadDelta(currentReleaseRf2DeltaArchive, snomedTaxonomyLoader, includeFSNs, stopWatch);
+	}
+
+	/**
+	 * Builds a frozen taxonomy of the snapshot to be used as the base of overlays, see {@link #buildOverlay(SnomedTaxonomy, InputStream, boolean)}.
+	 */
+	public SnomedTaxonomy buildBase(InputStreamSet snomedRf2SnapshotArchives, boolean includeFSNs) throws ReleaseImportException {
+		SnomedTaxonomy snomedTaxonomy = build(snomedRf2SnapshotArchives, includeFSNs);
+		snomedTaxonomy.freeze();
+		return snomedTaxonomy;
+	}
+
+	/**
+	 * Builds a frozen taxonomy of the snapshot to be used as the base of overlays, see {@link #buildOverlay(SnomedTaxonomy, InputStream, boolean)}.
+	 * @param snapshotCache the cache to read the snapshot from or write it to, may be null.
+	 */
+	public SnomedTaxonomy buildBase(Set<File> snomedRf2SnapshotArchiveFiles, SnomedTaxonomyCache snapshotCache, boolean includeFSNs) throws ReleaseImportException {
+		SnomedTaxonomy snomedTaxonomy;
+		if (snapshotCache != null) {
+			snomedTaxonomy = build(snomedRf2SnapshotArchiveFiles, null, snapshotCache, includeFSNs);
+		} else {
+			try (InputStreamSet snomedRf2SnapshotArchives = new InputStreamSet(snomedRf2SnapshotArchiveFiles)) {
+				snomedTaxonomy = build(snomedRf2SnapshotArchives, includeFSNs);
+			} catch (IOException e) {
+				throw new ReleaseImportException("Failed to read RF2 snapshot archives.", e);
+			}
+		}
+		snomedTaxonomy.freeze();
+		return snomedTaxonomy;
+	}
+
+	/**
+	 * Builds an overlay of a frozen base taxonomy with the delta applied. Only the content touched by the delta is copied
+	 * so this is much faster than loading the snapshot again. The base is not modified.
+	 * @param baseTaxonomy a frozen taxonomy, see {@link #buildBase(Set, SnomedTaxonomyCache, boolean)}.
+	 * @param currentReleaseRf2DeltaArchive the delta to apply, may be null.
+	 */
+	public SnomedTaxonomy buildOverlay(SnomedTaxonomy baseTaxonomy, InputStream currentReleaseRf2DeltaArchive, boolean includeFSNs) throws ReleaseImportException {
+		StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+
+		SnomedTaxonomyLoader snomedTaxonomyLoader = new SnomedTaxonomyLoader(baseTaxonomy.createOverlay(), loadingThreads);
+		return loadDelta(currentReleaseRf2DeltaArchive, snomedTaxonomyLoader, includeFSNs, stopWatch);
+	}
+
+	private SnomedTaxonomyLoader loadSnapshot(Set<File> snomedRf2SnapshotArchiveFiles, SnomedTaxonomyCache snapshotCache, boolean includeFSNs)
+			throws ReleaseImportException {
+
+		String cacheKey;
+		try {
+			cacheKey = snapshotCache.getKey(snomedRf2SnapshotArchiveFiles, includeFSNs);
+		} catch (IOException e) {
+			throw new ReleaseImportException("Failed to read RF2 snapshot archives.", e);
+		}
+
+		SnomedTaxonomyLoader snomedTaxonomyLoader = new SnomedTaxonomyLoader(loadingThreads);
+		boolean readFromCache = false;
+		try {
+			readFromCache = snapshotCache.read(cacheKey, snomedTaxonomyLoader);
+			snomedTaxonomyLoader.reportErrors();
+		} catch (IOException | OWLOntologyCreationException | ReleaseImportException e) {
+			logger.warn("Failed to read snapshot cache file {}, loading snapshot archives instead.", snapshotCache.getFile(cacheKey), e);
+			snomedTaxonomyLoader.close();
+			snomedTaxonomyLoader = new SnomedTaxonomyLoader(loadingThreads);
+			readFromCache = false;
+		} catch (RuntimeException e) {
+			snomedTaxonomyLoader.close();
+			throw e;
+		}
+
+		if (readFromCache) {
+			logger.info("Loaded release snapshot from cache");
+		} else {
+			snomedTaxonomyLoader.recordAxiomExpressions();
+			try (InputStreamSet snomedRf2SnapshotArchives = new InputStreamSet(snomedRf2SnapshotArchiveFiles)) {
+				loadSnapshot(snomedRf2SnapshotArchives, snomedTaxonomyLoader, includeFSNs);
+			} catch (IOException e) {
+				throw new ReleaseImportException("Failed to read RF2 snapshot archives.", e);
+			}
+			try {
+				snapshotCache.write(cacheKey, snomedTaxonomyLoader);
+			} catch (IOException e) {
+				logger.warn("Failed to write snapshot cache file {}.", snapshotCache.getFile(cacheKey), e);
+			}
+		}
+		return snomedTaxonomyLoader;
+	}
+
+	private void loadSnapshot(InputStreamSet snomedRf2SnapshotArchives, SnomedTaxonomyLoader snomedTaxonomyLoader, boolean includeFSNs) throws ReleaseImportException {
+		Set<InputStream> archives = snomedRf2SnapshotArchives.getFileInputStreams();
+		if (snomedTaxonomyLoader.hasComponentFactoryTap()) {
+			// The tap is given every component state as strings so snomed-boot is used
+			new ReleaseImporter().loadEffectiveSnapshotReleaseFileStreams(
+					archives,
+					includeFSNs ? SNAPSHOT_LOADING_PROFILE.withFullDescriptionObjects() : SNAPSHOT_LOADING_PROFILE,
+					snomedTaxonomyLoader);
+		} else {
+			// Also used for a single archive because it keeps the latest state of components with several rows
+			logger.info("Reading {} snapshot archives using {} threads", archives.size(), Math.max(1, Math.min(archives.size(), loadingThreads)));
+			new ParallelSnapshotLoader(new Rf2ArchiveReader(includeFSNs), loadingThreads).load(archives, snomedTaxonomyLoader);
+		}
 		snomedTaxonomyLoader.reportErrors();
 		logger.info("Loaded release snapshot");
 		logger.info("Time taken deserialising axioms {}s", (snomedTaxonomyLoader.getTimeTakenDeserialisingAxioms() / 1000));
+	}
+
+	private SnomedTaxonomy loadDelta(InputStream currentReleaseRf2DeltaArchive, SnomedTaxonomyLoader snomedTaxonomyLoader, boolean includeFSNs,
+			StopWatch stopWatch) throws ReleaseImportException {
 
 		if (currentReleaseRf2DeltaArchive != null) {
 			snomedTaxonomyLoader.startLoadingDelta();
 
-			releaseImporter.loadDeltaReleaseFiles(
-					currentReleaseRf2DeltaArchive,
-					includeFSNs ? DELTA_LOADING_PROFILE.withFullDescriptionObjects() : DELTA_LOADING_PROFILE,
-					snomedTaxonomyLoader);
+			if (snomedTaxonomyLoader.hasComponentFactoryTap()) {
+				new ReleaseImporter().loadDeltaReleaseFiles(
+						currentReleaseRf2DeltaArchive,
+						includeFSNs ? DELTA_LOADING_PROFILE.withFullDescriptionObjects() : DELTA_LOADING_PROFILE,
+						snomedTaxonomyLoader);
+			} else {
+				new Rf2ArchiveReader(includeFSNs).readDelta(currentReleaseRf2DeltaArchive, snomedTaxonomyLoader);
+			}
 			snomedTaxonomyLoader.reportErrors();
 			logger.info("Loaded delta");
 			logger.info("Time taken deserialising axioms {}s", (snomedTaxonomyLoader.getTimeTakenDeserialisingAxioms() / 1000));
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Directory of binary files, each holding the state of a SnomedTaxonomy loaded from a set of RF2 snapshot archives.
+ * Files are named using a SHA-256 hash of the archive content so a cached taxonomy is only used when the snapshot is unchanged.
+ *
+ * The file holds concepts, definition status, relationships, raw OWL axiom expressions, MRCM never grouped roles,
+ * ontology header and namespaces and, if loaded, FSN terms. It is read back through a memory mapped buffer.
+ * Axiom expressions are deserialised again during the read.
+ */
+public class SnomedTaxonomyCache {
+
+	private static final int MAGIC_NUMBER = 0x534E5458;
+	private static final int FORMAT_VERSION = 2;
+	private static final String FILE_PREFIX = "snomed-taxonomy-";
+	private static final String FILE_EXTENSION = ".bin";
+
+	private final File directory;
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public SnomedTaxonomyCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return a key for the content of the archives, independent of their order.
+	 */
+	public String getKey(Set<File> snapshotArchives, boolean includeFSNs) throws IOException {
+		List<String> archiveHashes = new ArrayList<>();
+		for (File snapshotArchive : snapshotArchives) {
+			MessageDigest digest = newDigest();
+			try (InputStream inputStream = new DigestInputStream(new BufferedInputStream(new FileInputStream(snapshotArchive)), digest)) {
+				byte[] buffer = new byte[64 * 1024];
+				while (inputStream.read(buffer) != -1) {
+					// Digest updated by stream
+				}
+			}
+			archiveHashes.add(toHex(digest.digest()));
+		}
+		Collections.sort(archiveHashes);
+		MessageDigest digest = newDigest();
+		digest.update(("v" + FORMAT_VERSION + (includeFSNs ? "-fsn" : "")).getBytes(StandardCharsets.UTF_8));
+		for (String archiveHash : archiveHashes) {
+			digest.update(archiveHash.getBytes(StandardCharsets.UTF_8));
+		}
+		return toHex(digest.digest());
+	}
+
+	File getFile(String key) {
+		return new File(directory, FILE_PREFIX + key + FILE_EXTENSION);
+	}
+
+	/**
+	 * Writes the state of the loader's taxonomy. The loader must have recorded axiom expressions and not yet loaded a delta.
+	 */
+	void write(String key, SnomedTaxonomyLoader loader) throws IOException {
+		SnomedTaxonomy snomedTaxonomy = loader.getSnomedTaxonomy();
+		Map<String, String[]> axiomExpressions = loader.getAxiomExpressions();
+		if (axiomExpressions == null) {
+			throw new IllegalStateException("Axiom expressions were not recorded.");
+		}
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create snapshot cache directory " + directory.getAbsolutePath());
+		}
+		File file = getFile(key);
+		File tempFile = File.createTempFile(FILE_PREFIX, ".tmp", directory);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+			out.writeInt(MAGIC_NUMBER);
+			out.writeInt(FORMAT_VERSION);
+
+			writeLongs(out, snomedTaxonomy.getAllConceptIds());
+			writeLongs(out, snomedTaxonomy.getFullyDefinedConceptIds());
+			writeLongs(out, snomedTaxonomy.getInactivatedConcepts());
+
+			writeRelationships(out, snomedTaxonomy.getStatedRelationshipStore());
+			writeRelationships(out, snomedTaxonomy.getInferredRelationshipStore());
+			writeInactiveRelationshipIndex(out, snomedTaxonomy.getInactiveInferredRelationshipIndex());
+
+			out.writeInt(axiomExpressions.size());
+			for (Map.Entry<String, String[]> entry : axiomExpressions.entrySet()) {
+				writeString(out, entry.getKey());
+				writeString(out, entry.getValue()[0]);
+				writeString(out, entry.getValue()[1]);
+			}
+
+			Map<Long, Set<Long>> ungroupedRoles = snomedTaxonomy.getUngroupedRolesByContentType();
+			out.writeInt(ungroupedRoles.size());
+			for (Map.Entry<Long, Set<Long>> entry : ungroupedRoles.entrySet()) {
+				out.writeLong(entry.getKey());
+				writeLongs(out, entry.getValue());
+			}
+
+			writeStrings(out, snomedTaxonomy.getOntologyNamespaces());
+			writeStrings(out, snomedTaxonomy.getOntologyHeader());
+
+			Map<Long, String> fsnTerms = snomedTaxonomy.getConceptFsnTerms();
+			out.writeInt(fsnTerms.size());
+			for (Map.Entry<Long, String> entry : fsnTerms.entrySet()) {
+				out.writeLong(entry.getKey());
+				writeString(out, entry.getValue());
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tempFile.toPath());
+			throw e;
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		logger.info("Snapshot taxonomy written to cache file {}", file.getAbsolutePath());
+	}
+
+	/**
+	 * Reads a cached taxonomy into an empty loader.
+	 * @return false if there is no cache file for the key.
+	 */
+	boolean read(String key, SnomedTaxonomyLoader loader) throws IOException, OWLOntologyCreationException {
+		File file = getFile(key);
+		if (!file.isFile()) {
+			return false;
+		}
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.getInt() != MAGIC_NUMBER || buffer.getInt() != FORMAT_VERSION) {
+			throw new IOException("Unrecognised snapshot cache file format " + file.getAbsolutePath());
+		}
+
+		SnomedTaxonomy snomedTaxonomy = loader.getSnomedTaxonomy();
+		readLongs(buffer, snomedTaxonomy.getAllConceptIds());
+		readLongs(buffer, snomedTaxonomy.getFullyDefinedConceptIds());
+		readLongs(buffer, snomedTaxonomy.getInactivatedConcepts());
+
+		for (int count = buffer.getInt(); count > 0; count--) {
+			snomedTaxonomy.addOrModifyRelationship(true, buffer.getLong(), readRelationship(buffer));
+		}
+		for (int count = buffer.getInt(); count > 0; count--) {
+			snomedTaxonomy.addOrModifyRelationship(false, buffer.getLong(), readRelationship(buffer));
+		}
+		InactiveRelationshipIndex inactiveInferredRelationshipIndex = snomedTaxonomy.getInactiveInferredRelationshipIndex();
+		for (int count = buffer.getInt(); count > 0; count--) {
+			inactiveInferredRelationshipIndex.put(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getLong(), buffer.getInt());
+		}
+
+		for (int count = buffer.getInt(); count > 0; count--) {
+			String id = readString(buffer);
+			String referencedComponentId = readString(buffer);
+			loader.addActiveAxiom(id, referencedComponentId, readString(buffer));
+		}
+
+		for (int count = buffer.getInt(); count > 0; count--) {
+			long contentTypeId = buffer.getLong();
+			for (int roles = buffer.getInt(); roles > 0; roles--) {
+				snomedTaxonomy.addUngroupedRole(contentTypeId, buffer.getLong());
+			}
+		}
+
+		for (int count = buffer.getInt(); count > 0; count--) {
+			snomedTaxonomy.addOntologyNamespace(readString(buffer), readString(buffer));
+		}
+		for (int count = buffer.getInt(); count > 0; count--) {
+			snomedTaxonomy.addOntologyHeader(readString(buffer), readString(buffer));
+		}
+
+		for (int count = buffer.getInt(); count > 0; count--) {
+			long conceptId = buffer.getLong();
+			snomedTaxonomy.addFsn(conceptId, readString(buffer));
+		}
+		logger.info("Snapshot taxonomy read from cache file {}", file.getAbsolutePath());
+		return true;
+	}
+
+	private void writeRelationships(DataOutputStream out, RelationshipStore store) throws IOException {
+		out.writeInt(store.size());
+		for (IntIterator rows = store.getAllRows(); rows.hasNext(); ) {
+			int row = rows.nextInt();
+			Relationship relationship = store.getRelationship(row);
+			out.writeLong(store.getSourceId(row));
+			out.writeLong(relationship.getRelationshipId());
+			out.writeInt(relationship.getEffectiveTime());
+			out.writeLong(relationship.getModuleId());
+			out.writeLong(relationship.getTypeId());
+			out.writeLong(relationship.getDestinationId());
+			out.writeBoolean(relationship.isDestinationNegated());
+			out.writeInt(relationship.getGroup());
+			out.writeInt(relationship.getUnionGroup());
+			out.writeBoolean(relationship.isUniversal());
+			out.writeLong(relationship.getCharacteristicTypeId());
+		}
+	}
+
+	private void writeInactiveRelationshipIndex(DataOutputStream out, InactiveRelationshipIndex index) throws IOException {
+		out.writeInt(index.size());
+		try {
+			index.forEach((sourceId, typeId, destinationId, group, relationshipId, effectiveTime) -> {
+				try {
+					out.writeLong(sourceId);
+					out.writeLong(typeId);
+					out.writeLong(destinationId);
+					out.writeInt(group);
+					out.writeLong(relationshipId);
+					out.writeInt(effectiveTime);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Relationship readRelationship(MappedByteBuffer buffer) {
+		return new Relationship(
+				buffer.getLong(),
+				buffer.getInt(),
+				buffer.getLong(),
+				buffer.getLong(),
+				buffer.getLong(),
+				buffer.get() != 0,
+				buffer.getInt(),
+				buffer.getInt(),
+				buffer.get() != 0,
+				buffer.getLong());
+	}
+
+	private void writeLongs(DataOutputStream out, Collection<Long> values) throws IOException {
+		out.writeInt(values.size());
+		for (Long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	private void readLongs(MappedByteBuffer buffer, Collection<Long> values) {
+		for (int count = buffer.getInt(); count > 0; count--) {
+			values.add(buffer.getLong());
+		}
+	}
+
+	private void writeStrings(DataOutputStream out, Map<String, String> values) throws IOException {
+		out.writeInt(values.size());
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private String readString(MappedByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 should be available in every JVM.", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
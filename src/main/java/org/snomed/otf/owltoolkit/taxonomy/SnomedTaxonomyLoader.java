@@ -30,12 +30,21 @@ import org.snomed.otf.owltoolkit.domain.Relationship;
 import org.snomed.otf.owltoolkit.ontology.OntologyService;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static java.lang.Long.parseLong;
 import static org.snomed.otf.owltoolkit.constants.Concepts.*;
 
-public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
+public class SnomedTaxonomyLoader extends ImpotentComponentFactory implements PrimitiveComponentFactory {
 
 	private SnomedTaxonomy snomedTaxonomy = new SnomedTaxonomy();
 	private static final String ACTIVE = "1";
@@ -48,29 +57,73 @@ public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
 	private final AxiomDeserialiser axiomDeserialiser;
 	private ComponentFactory deltaComponentFactoryTap;
 	private ComponentFactory snapshotComponentFactoryTap;
+
+	// Parallel axiom deserialisation
+	private final int axiomDeserialisationThreads;
+	private ExecutorService axiomDeserialisationExecutor;
+	private final List<AxiomDeserialiser> workerAxiomDeserialisers = Collections.synchronizedList(new ArrayList<>());
+	private final ThreadLocal<AxiomDeserialiser> workerAxiomDeserialiser = ThreadLocal.withInitial(() -> {
+		AxiomDeserialiser deserialiser = new AxiomDeserialiser();
+		workerAxiomDeserialisers.add(deserialiser);
+		return deserialiser;
+	});
+	private final List<PendingAxiomChange> pendingAxiomChanges = new ArrayList<>();
+
+	// Raw axiom expressions by member id, only recorded when the snapshot is to be cached
+	private Map<String, String[]> axiomExpressions;
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(SnomedTaxonomyLoader.class);
 
 	public SnomedTaxonomyLoader() {
+		this(1);
+	}
+
+	/**
+	 * @param axiomDeserialisationThreads the number of threads used to deserialise OWL axioms.
+	 *                                    With more than one thread axioms are deserialised in the background and added
+	 *                                    to the taxonomy in member order when the current load completes.
+	 */
+	public SnomedTaxonomyLoader(int axiomDeserialisationThreads) {
 		axiomDeserialiser = new AxiomDeserialiser();
+		this.axiomDeserialisationThreads = axiomDeserialisationThreads;
 	}
 
 	/**
 	 * New component states are copied to componentFactoryTap.
 	 * @param snapshotComponentFactoryTap the component factory to copy snapshot states to.
 	 * @param deltaComponentFactoryTap the component factory to copy delta states to.
+	 * @param axiomDeserialisationThreads the number of threads used to deserialise OWL axioms.
 	 */
-	SnomedTaxonomyLoader(ComponentFactory snapshotComponentFactoryTap, ComponentFactory deltaComponentFactoryTap) {
-		this();
+	SnomedTaxonomyLoader(ComponentFactory snapshotComponentFactoryTap, ComponentFactory deltaComponentFactoryTap, int axiomDeserialisationThreads) {
+		this(axiomDeserialisationThreads);
 		this.snapshotComponentFactoryTap = snapshotComponentFactoryTap;
 		this.deltaComponentFactoryTap = deltaComponentFactoryTap;
 	}
 
+	/**
+	 * Loads into an existing taxonomy, for example an overlay of a frozen base.
+	 * @param snomedTaxonomy the taxonomy to load into.
+	 * @param axiomDeserialisationThreads the number of threads used to deserialise OWL axioms.
+	 */
+	SnomedTaxonomyLoader(SnomedTaxonomy snomedTaxonomy, int axiomDeserialisationThreads) {
+		this(axiomDeserialisationThreads);
+		this.snomedTaxonomy = snomedTaxonomy;
+	}
+
 	@Override
 	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
-		if (ACTIVE.equals(active)) {
-			long id = parseLong(conceptId);
+		newConceptState(parseLong(conceptId), parseEffectiveTime(effectiveTime), ACTIVE.equals(active), parseOptionalId(moduleId), parseOptionalId(definitionStatusId));
+		ComponentFactory componentFactoryTap = getComponentFactoryTap();
+		if (componentFactoryTap != null) {
+			componentFactoryTap.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+		}
+	}
+
+	@Override
+	public void newConceptState(long id, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+		if (active) {
 			snomedTaxonomy.getAllConceptIds().add(id);
-			if (Concepts.FULLY_DEFINED.equals(definitionStatusId)) {
+			if (definitionStatusId == FULLY_DEFINED_LONG) {
 				snomedTaxonomy.getFullyDefinedConceptIds().add(id);
 			} else {
 				snomedTaxonomy.getFullyDefinedConceptIds().remove(id);
@@ -80,7 +133,6 @@ public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
 				snomedTaxonomy.getInactivatedConcepts().remove(id);
 			}
 		} else {
-			long id = parseLong(conceptId);
 			// This will take inactive concepts from both snapshot and delta
 			snomedTaxonomy.getInactivatedConcepts().add(id);
 			if (loadingDelta) {
@@ -89,74 +141,96 @@ public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
 				snomedTaxonomy.getFullyDefinedConceptIds().remove(id);
 			}
 		}
+	}
+
+	@Override
+	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
+		newRelationshipState(parseLong(id), parseEffectiveTime(effectiveTime), ACTIVE.equals(active), parseLong(moduleId), parseLong(sourceId),
+				parseLong(destinationId), Integer.parseInt(relationshipGroup), parseLong(typeId), parseLong(characteristicTypeId), parseOptionalId(modifierId));
 		ComponentFactory componentFactoryTap = getComponentFactoryTap();
 		if (componentFactoryTap != null) {
-			componentFactoryTap.newConceptState(conceptId, effectiveTime, active, moduleId, definitionStatusId);
+			componentFactoryTap.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
 		}
 	}
 
 	@Override
-	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId, String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
-		boolean stated = STATED_RELATIONSHIP.equals(characteristicTypeId);
+	public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId, int relationshipGroup,
+			long typeId, long characteristicTypeId, long modifierId) {
 
-		if (ACTIVE.equals(active) && !ADDITIONAL_RELATIONSHIP.equals(characteristicTypeId)) {// Ignore additional relationships
+		boolean stated = characteristicTypeId == STATED_RELATIONSHIP_LONG;
+		int effectiveTimeInt = effectiveTime != UNPUBLISHED ? effectiveTime : effectiveTimeNow;
 
-			boolean universal = UNIVERSAL_RESTRICTION_MODIFIER.equals(modifierId);
+		if (active && characteristicTypeId != ADDITIONAL_RELATIONSHIP_LONG) {// Ignore additional relationships
+
+			boolean universal = modifierId == UNIVERSAL_RESTRICTION_MODIFIER_LONG;
 			int unionGroup = 0;
 
 			// TODO: is this correct? Is there a better way?
 			// From Snow Owl import logic:
 			// Universal "has active ingredient" relationships should be put into a union group
-			if (Concepts.HAS_ACTIVE_INGREDIENT.equals(typeId) && universal) {
+			if (typeId == HAS_ACTIVE_INGREDIENT_LONG && universal) {
 				unionGroup = 1;
 			}
 
-			int effectiveTimeInt = !Strings.isNullOrEmpty(effectiveTime) ? Integer.parseInt(effectiveTime) : effectiveTimeNow;
 			snomedTaxonomy.addOrModifyRelationship(
 					stated,
-					parseLong(sourceId),
+					sourceId,
 					new Relationship(
-							parseLong(id),
+							id,
 							effectiveTimeInt,
-							parseLong(moduleId),
-							parseLong(typeId),
-							parseLong(destinationId),
+							moduleId,
+							typeId,
+							destinationId,
 							false,// Destination negated is always false
-							Integer.parseInt(relationshipGroup),
+							relationshipGroup,
 							unionGroup,
 							universal,
-							parseLong(characteristicTypeId)
+							characteristicTypeId
 					)
 			);
-		} else if (loadingDelta || (!stated && !ACTIVE.equals(active))) {
+		} else if (loadingDelta || (!stated && !active)) {
 			// Inactive relationships in the delta should be removed from the snapshot view
 			snomedTaxonomy.removeRelationship(stated, sourceId, id);
-			int effectiveTimeInt = !Strings.isNullOrEmpty(effectiveTime) ? Integer.parseInt(effectiveTime) : effectiveTimeNow;
-			boolean universal = UNIVERSAL_RESTRICTION_MODIFIER.equals(modifierId);
-			snomedTaxonomy.addInactiveInferredRelationship(parseLong(sourceId), new Relationship(
-					parseLong(id),
+			boolean universal = modifierId == UNIVERSAL_RESTRICTION_MODIFIER_LONG;
+			snomedTaxonomy.addInactiveInferredRelationship(sourceId, new Relationship(
+					id,
 					effectiveTimeInt,
-					parseLong(moduleId),
-					parseLong(typeId),
-					parseLong(destinationId),
+					moduleId,
+					typeId,
+					destinationId,
 					false,
-					Integer.parseInt(relationshipGroup),
+					relationshipGroup,
 					0,
 					universal,
-					parseLong(characteristicTypeId)));
+					characteristicTypeId));
+		}
+	}
+
+	@Override
+	public void newReferenceSetMemberState(String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId, String referencedComponentId, String... otherValues) {
+		if (refsetId.equals(Concepts.OWL_AXIOM_REFERENCE_SET) || refsetId.equals(Concepts.OWL_ONTOLOGY_REFERENCE_SET)
+				|| refsetId.equals(Concepts.MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL_REFERENCE_SET)) {
+			newReferenceSetMemberState(id, parseEffectiveTime(effectiveTime), ACTIVE.equals(active), parseOptionalId(moduleId), parseLong(refsetId),
+					parseLong(referencedComponentId), otherValues);
 		}
 		ComponentFactory componentFactoryTap = getComponentFactoryTap();
 		if (componentFactoryTap != null) {
-			componentFactoryTap.newRelationshipState(id, effectiveTime, active, moduleId, sourceId, destinationId, relationshipGroup, typeId, characteristicTypeId, modifierId);
+			componentFactoryTap.newReferenceSetMemberState(fieldNames, id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues);
 		}
 	}
 
 	@Override
-	public void newReferenceSetMemberState(String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId, String referencedComponentId, String... otherValues) {
-		if (refsetId.equals(Concepts.OWL_AXIOM_REFERENCE_SET) && owlParsingExceptionThrown == null) {
-			if (ACTIVE.equals(active)) {
+	public void newReferenceSetMemberState(String id, int effectiveTime, boolean active, long moduleId, long refsetId, long referencedComponentId,
+			String[] otherValues) {
+
+		if (refsetId == OWL_AXIOM_REFERENCE_SET_LONG && owlParsingExceptionThrown == null) {
+			String referencedComponent = Long.toString(referencedComponentId);
+			if (active) {
+				if (axiomExpressions != null) {
+					axiomExpressions.put(id, new String[]{referencedComponent, otherValues[0]});
+				}
 				try {
-					addActiveAxiom(id, referencedComponentId, otherValues[0]);
+					addActiveAxiom(id, referencedComponent, otherValues[0]);
 				} catch (OWLException | OWLRuntimeException | IllegalArgumentException e) {
 					owlParsingExceptionThrown = e;
 					owlParsingExceptionMemberId = id;
@@ -164,17 +238,20 @@ public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
 			} else {
 				// Remove the axiom from our active set
 				// Match by id rather than a deserialised representation because the equals method may fail.
-				snomedTaxonomy.removeAxiom(referencedComponentId, id);
+				removeAxiom(referencedComponent, id);
+				if (axiomExpressions != null) {
+					axiomExpressions.remove(id);
+				}
 			}
-		} else if (refsetId.equals(Concepts.OWL_ONTOLOGY_REFERENCE_SET)) {
-			if (Concepts.OWL_ONTOLOGY_NAMESPACE.equals(referencedComponentId)) {
-				if (ACTIVE.equals(active)) {
+		} else if (refsetId == OWL_ONTOLOGY_REFERENCE_SET_LONG) {
+			if (referencedComponentId == OWL_ONTOLOGY_NAMESPACE_LONG) {
+				if (active) {
 					snomedTaxonomy.addOntologyNamespace(id, otherValues[0]);
 				} else {
 					snomedTaxonomy.removeOntologyNamespace(id);
 				}
-			} else if (Concepts.OWL_ONTOLOGY_HEADER.equals(referencedComponentId)) {
-				if (ACTIVE.equals(active)) {
+			} else if (referencedComponentId == OWL_ONTOLOGY_HEADER_LONG) {
+				if (active) {
 					snomedTaxonomy.addOntologyHeader(id, otherValues[0]);
 				} else {
 					snomedTaxonomy.removeOntologyHeader(id);
@@ -183,20 +260,15 @@ public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
 				LOGGER.warn("Unrecognised referencedComponentId '{}' in OWL Ontology reference set file. Only {} or {} are expected. Ignoring entry.",
 						referencedComponentId, Concepts.OWL_ONTOLOGY_NAMESPACE, Concepts.OWL_ONTOLOGY_HEADER);
 			}
-		} else if (refsetId.equals(Concepts.MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL_REFERENCE_SET)) {
-			long attributeId = parseLong(referencedComponentId);
+		} else if (refsetId == MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL_REFERENCE_SET_LONG) {
 			boolean ungrouped = otherValues[1].equals("0");
 			Long contentTypeId = parseLong(otherValues[5]);
-			if (ACTIVE.equals(active) && ungrouped) {
-				snomedTaxonomy.addUngroupedRole(contentTypeId, attributeId);
+			if (active && ungrouped) {
+				snomedTaxonomy.addUngroupedRole(contentTypeId, referencedComponentId);
 			} else {
-				snomedTaxonomy.removeUngroupedRole(contentTypeId, attributeId);
+				snomedTaxonomy.removeUngroupedRole(contentTypeId, referencedComponentId);
 			}
 		}
-		ComponentFactory componentFactoryTap = getComponentFactoryTap();
-		if (componentFactoryTap != null) {
-			componentFactoryTap.newReferenceSetMemberState(fieldNames, id, effectiveTime, active, moduleId, refsetId, referencedComponentId, otherValues);
-		}
 	}
 
 	public void addActiveAxiom(String id, String referencedComponentId, String owlExpression) throws OWLOntologyCreationException {
@@ -204,8 +276,85 @@ public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
 				// Replace any remaining outdated role group constants
 				.replace(OntologyService.ROLE_GROUP_OUTDATED_CONSTANT, OntologyService.ROLE_GROUP_SCTID);
 
-		OWLAxiom owlAxiom = axiomDeserialiser.deserialiseAxiom(owlExpressionString, id);
-		snomedTaxonomy.addAxiom(referencedComponentId, id, owlAxiom);
+		if (axiomDeserialisationThreads > 1) {
+			Future<OWLAxiom> future = getAxiomDeserialisationExecutor().submit(() -> workerAxiomDeserialiser.get().deserialiseAxiom(owlExpressionString, id));
+			synchronized (pendingAxiomChanges) {
+				pendingAxiomChanges.add(new PendingAxiomChange(id, referencedComponentId, future));
+			}
+		} else {
+			OWLAxiom owlAxiom = axiomDeserialiser.deserialiseAxiom(owlExpressionString, id);
+			snomedTaxonomy.addAxiom(referencedComponentId, id, owlAxiom);
+		}
+	}
+
+	private void removeAxiom(String referencedComponentId, String id) {
+		if (axiomDeserialisationThreads > 1) {
+			// Queue the removal so that it is applied in member order with any axioms still being deserialised
+			synchronized (pendingAxiomChanges) {
+				pendingAxiomChanges.add(new PendingAxiomChange(id, referencedComponentId, null));
+			}
+		} else {
+			snomedTaxonomy.removeAxiom(referencedComponentId, id);
+		}
+	}
+
+	private synchronized ExecutorService getAxiomDeserialisationExecutor() {
+		if (axiomDeserialisationExecutor == null) {
+			axiomDeserialisationExecutor = Executors.newFixedThreadPool(axiomDeserialisationThreads, runnable -> {
+				Thread thread = new Thread(runnable, "axiom-deserialiser");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return axiomDeserialisationExecutor;
+	}
+
+	/**
+	 * Waits for any axioms being deserialised in the background and adds them to the taxonomy in member order.
+	 */
+	void completeAxiomDeserialisation() {
+		List<PendingAxiomChange> changes;
+		synchronized (pendingAxiomChanges) {
+			changes = new ArrayList<>(pendingAxiomChanges);
+			pendingAxiomChanges.clear();
+		}
+		for (PendingAxiomChange change : changes) {
+			if (change.axiomFuture == null) {
+				snomedTaxonomy.removeAxiom(change.referencedComponentId, change.id);
+			} else if (owlParsingExceptionThrown == null) {
+				try {
+					snomedTaxonomy.addAxiom(change.referencedComponentId, change.id, change.axiomFuture.get());
+				} catch (ExecutionException e) {
+					owlParsingExceptionThrown = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					owlParsingExceptionMemberId = change.id;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					owlParsingExceptionThrown = e;
+					owlParsingExceptionMemberId = change.id;
+				}
+			}
+		}
+		synchronized (this) {
+			if (axiomDeserialisationExecutor != null) {
+				axiomDeserialisationExecutor.shutdown();
+				axiomDeserialisationExecutor = null;
+			}
+		}
+	}
+
+	/**
+	 * Abandons any axioms still being deserialised and stops the deserialisation threads, for a loader which will not be used.
+	 */
+	void close() {
+		synchronized (pendingAxiomChanges) {
+			pendingAxiomChanges.clear();
+		}
+		synchronized (this) {
+			if (axiomDeserialisationExecutor != null) {
+				axiomDeserialisationExecutor.shutdownNow();
+				axiomDeserialisationExecutor = null;
+			}
+		}
 	}
 
 	@Override
@@ -219,11 +368,35 @@ public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
 		}
 	}
 
+	@Override
+	public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, long typeId, String term) {
+		if (active && typeId == FSN_LONG) {
+			snomedTaxonomy.addFsn(conceptId, term);
+		}
+	}
+
+	private int parseEffectiveTime(String effectiveTime) {
+		return !Strings.isNullOrEmpty(effectiveTime) ? Integer.parseInt(effectiveTime) : UNPUBLISHED;
+	}
+
+	// Identifiers which are not used to build the taxonomy may be left blank
+	private long parseOptionalId(String id) {
+		return !Strings.isNullOrEmpty(id) ? parseLong(id) : 0;
+	}
+
 	private ComponentFactory getComponentFactoryTap() {
 		return loadingDelta ? deltaComponentFactoryTap : snapshotComponentFactoryTap;
 	}
 
+	/**
+	 * @return true if the component states currently being loaded are copied to a component factory tap.
+	 */
+	boolean hasComponentFactoryTap() {
+		return getComponentFactoryTap() != null;
+	}
+
 	void reportErrors() throws ReleaseImportException {
+		completeAxiomDeserialisation();
 		if (owlParsingExceptionThrown != null) {
 			throw new ReleaseImportException("Failed to parse OWL Axiom in reference set member '" + owlParsingExceptionMemberId + "'",
 					owlParsingExceptionThrown);
@@ -235,15 +408,53 @@ public class SnomedTaxonomyLoader extends ImpotentComponentFactory {
 	}
 
 	public SnomedTaxonomy getSnomedTaxonomy() {
+		completeAxiomDeserialisation();
 		return snomedTaxonomy;
 	}
 
+	/**
+	 * Keep the raw expression of each active axiom loaded from now until the delta so that they can be written to a snapshot cache.
+	 */
+	void recordAxiomExpressions() {
+		axiomExpressions = new LinkedHashMap<>();
+	}
+
+	/**
+	 * @return map of axiom member id to referencedComponentId and owlExpression, or null if not recorded.
+	 */
+	Map<String, String[]> getAxiomExpressions() {
+		return axiomExpressions;
+	}
+
 	void startLoadingDelta() {
 		loadingDelta = true;
+		axiomExpressions = null;
 		axiomDeserialiser.clearCounters();
+		synchronized (workerAxiomDeserialisers) {
+			workerAxiomDeserialisers.forEach(AxiomDeserialiser::clearCounters);
+		}
 	}
 
 	long getTimeTakenDeserialisingAxioms() {
-		return axiomDeserialiser.getTimeTakenDeserialisingAxioms();
+		long timeTaken = axiomDeserialiser.getTimeTakenDeserialisingAxioms();
+		synchronized (workerAxiomDeserialisers) {
+			for (AxiomDeserialiser workerDeserialiser : workerAxiomDeserialisers) {
+				timeTaken += workerDeserialiser.getTimeTakenDeserialisingAxioms();
+			}
+		}
+		return timeTaken;
+	}
+
+	private static final class PendingAxiomChange {
+
+		private final String id;
+		private final String referencedComponentId;
+		private final Future<OWLAxiom> axiomFuture;
+
+		private PendingAxiomChange(String id, String referencedComponentId, Future<OWLAxiom> axiomFuture) {
+			this.id = id;
+			this.referencedComponentId = referencedComponentId;
+			this.axiomFuture = axiomFuture;
+		}
 	}
 }
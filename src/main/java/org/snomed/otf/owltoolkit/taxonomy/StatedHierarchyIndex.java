@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read only index over the stated is-a hierarchy.
+ * Concepts are given dense ordinals and the child and parent edges are held in compressed sparse row arrays
+ * so that descendant and ancestor queries only visit the concepts which are part of the answer.
+ * All parents of a concept are followed and cycles in the stated hierarchy are tolerated.
+ */
+class StatedHierarchyIndex {
+
+	private final ConceptDictionary dictionary;
+	private final int[] childOffsets;
+	private final int[] children;
+	private final int[] parentOffsets;
+	private final int[] parents;
+
+	/**
+	 * @param subTypesMap map of concept id to the ids of its direct stated sub-types
+	 */
+	StatedHierarchyIndex(Map<Long, Set<Long>> subTypesMap) {
+		dictionary = new ConceptDictionary();
+
+		// Assign ordinals and count edges
+		int edgeCount = 0;
+		for (Map.Entry<Long, Set<Long>> entry : subTypesMap.entrySet()) {
+			dictionary.getOrCreateOrdinal(entry.getKey());
+			for (Long subTypeId : entry.getValue()) {
+				dictionary.getOrCreateOrdinal(subTypeId);
+				edgeCount++;
+			}
+		}
+		int conceptCount = dictionary.size();
+
+		// Fill child and parent rows
+		childOffsets = new int[conceptCount + 1];
+		parentOffsets = new int[conceptCount + 1];
+		for (Map.Entry<Long, Set<Long>> entry : subTypesMap.entrySet()) {
+			childOffsets[dictionary.getOrdinal(entry.getKey()) + 1] += entry.getValue().size();
+			for (Long subTypeId : entry.getValue()) {
+				parentOffsets[dictionary.getOrdinal(subTypeId) + 1]++;
+			}
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			childOffsets[i + 1] += childOffsets[i];
+			parentOffsets[i + 1] += parentOffsets[i];
+		}
+		children = new int[edgeCount];
+		parents = new int[edgeCount];
+		int[] childFill = new int[conceptCount];
+		int[] parentFill = new int[conceptCount];
+		for (Map.Entry<Long, Set<Long>> entry : subTypesMap.entrySet()) {
+			int parent = dictionary.getOrdinal(entry.getKey());
+			for (Long subTypeId : entry.getValue()) {
+				int child = dictionary.getOrdinal(subTypeId);
+				children[childOffsets[parent] + childFill[parent]++] = child;
+				parents[parentOffsets[child] + parentFill[child]++] = parent;
+			}
+		}
+	}
+
+	/**
+	 * @return a new mutable set of the transitive stated sub-types of the concept, not including the concept itself.
+	 */
+	LongOpenHashSet getDescendants(long conceptId) {
+		return walk(conceptId, childOffsets, children);
+	}
+
+	/**
+	 * @return a new mutable set of the transitive stated super-types of the concept, not including the concept itself.
+	 */
+	LongOpenHashSet getAncestors(long conceptId) {
+		return walk(conceptId, parentOffsets, parents);
+	}
+
+	private LongOpenHashSet walk(long conceptId, int[] offsets, int[] edges) {
+		LongOpenHashSet result = new LongOpenHashSet();
+		int start = dictionary.getOrdinal(conceptId);
+		if (start == ConceptDictionary.NOT_FOUND) {
+			return result;
+		}
+		IntArrayList stack = new IntArrayList();
+		stack.push(start);
+		while (!stack.isEmpty()) {
+			int current = stack.popInt();
+			for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+				int next = edges[i];
+				if (result.add(dictionary.getConceptId(next))) {
+					stack.push(next);
+				}
+			}
+		}
+		// A cycle can lead back to the starting concept
+		result.remove(conceptId);
+		return result;
+	}
+}
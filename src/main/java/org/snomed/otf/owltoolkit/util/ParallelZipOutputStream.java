@@ -0,0 +1,353 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Zip output stream which deflates entries in blocks on several threads, in the same way as pigz.
+ * Each block is compressed as raw deflate data ending with a sync flush, primed with the last 32KB of the previous block,
+ * so the concatenated blocks form a single deflate stream which any zip reader can inflate.
+ * Entries are written with a data descriptor so the archive can be streamed. ZIP64 is not supported.
+ */
+public class ParallelZipOutputStream extends OutputStream {
+
+	static final int BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final long MAX_SIZE = 0xFFFFFFFFL;
+	private static final int VERSION = 20;
+	// Data descriptor follows the data, names are UTF-8
+	private static final int FLAGS = 0x0808;
+	private static final int DEFLATED = 8;
+
+	private final OutputStream out;
+	private final int threads;
+	private final ExecutorService executorService;
+	private final ArrayDeque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+	private final List<EntryRecord> entries = new ArrayList<>();
+	private final CRC32 crc = new CRC32();
+	private final byte[] singleByte = new byte[1];
+	private long written;
+	private EntryRecord entry;
+	private byte[] block;
+	private byte[] previousBlock;
+	private int blockLength;
+	private boolean finished;
+	private boolean closed;
+
+	/**
+	 * @param out stream to write the archive to.
+	 * @param threads number of threads used to deflate entry data, with one thread blocks are deflated on the calling thread.
+	 */
+	public ParallelZipOutputStream(OutputStream out, int threads) {
+		this.out = out;
+		this.threads = Math.max(1, threads);
+		if (this.threads > 1) {
+			executorService = Executors.newFixedThreadPool(this.threads, runnable -> {
+				Thread thread = new Thread(runnable, "zip-deflater");
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			executorService = null;
+		}
+	}
+
+	public void putNextEntry(String name) throws IOException {
+		ensureOpen();
+		closeEntry();
+		entry = new EntryRecord(name.getBytes(StandardCharsets.UTF_8), toDosTime(LocalDateTime.now()), written);
+		ByteArrayOutputStream header = new ByteArrayOutputStream(30 + entry.name.length);
+		writeInt(header, 0x04034b50);
+		writeShort(header, VERSION);
+		writeShort(header, FLAGS);
+		writeShort(header, DEFLATED);
+		writeInt(header, entry.dosTime);
+		// CRC and sizes are in the data descriptor
+		writeInt(header, 0);
+		writeInt(header, 0);
+		writeInt(header, 0);
+		writeShort(header, entry.name.length);
+		writeShort(header, 0);
+		header.write(entry.name);
+		writeRaw(header.toByteArray());
+		crc.reset();
+		block = new byte[BLOCK_SIZE];
+		blockLength = 0;
+		previousBlock = null;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		singleByte[0] = (byte) b;
+		write(singleByte, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		ensureOpen();
+		if (entry == null) {
+			throw new ZipException("No current zip entry.");
+		}
+		crc.update(bytes, offset, length);
+		entry.size += length;
+		while (length > 0) {
+			if (blockLength == BLOCK_SIZE) {
+				submitBlock(false);
+			}
+			int count = Math.min(length, BLOCK_SIZE - blockLength);
+			System.arraycopy(bytes, offset, block, blockLength, count);
+			blockLength += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	public void closeEntry() throws IOException {
+		ensureOpen();
+		if (entry == null) {
+			return;
+		}
+		submitBlock(true);
+		while (!pendingBlocks.isEmpty()) {
+			writeNextBlock();
+		}
+		entry.crc = (int) crc.getValue();
+		entry.compressedSize = written - entry.localHeaderOffset - 30 - entry.name.length;
+		if (entry.size > MAX_SIZE || entry.compressedSize > MAX_SIZE) {
+			throw new ZipException("Zip entry too large, ZIP64 is not supported.");
+		}
+		ByteArrayOutputStream descriptor = new ByteArrayOutputStream(16);
+		writeInt(descriptor, 0x08074b50);
+		writeInt(descriptor, entry.crc);
+		writeInt(descriptor, (int) entry.compressedSize);
+		writeInt(descriptor, (int) entry.size);
+		writeRaw(descriptor.toByteArray());
+		entries.add(entry);
+		entry = null;
+		block = null;
+		previousBlock = null;
+	}
+
+	/**
+	 * Completes the current entry and writes the central directory without closing the underlying stream.
+	 */
+	public void finish() throws IOException {
+		ensureOpen();
+		try {
+			closeEntry();
+			if (entries.size() > 0xFFFF || written > MAX_SIZE) {
+				throw new ZipException("Zip archive too large, ZIP64 is not supported.");
+			}
+			long centralDirectoryOffset = written;
+			ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+			for (EntryRecord record : entries) {
+				writeInt(centralDirectory, 0x02014b50);
+				writeShort(centralDirectory, VERSION);
+				writeShort(centralDirectory, VERSION);
+				writeShort(centralDirectory, FLAGS);
+				writeShort(centralDirectory, DEFLATED);
+				writeInt(centralDirectory, record.dosTime);
+				writeInt(centralDirectory, record.crc);
+				writeInt(centralDirectory, (int) record.compressedSize);
+				writeInt(centralDirectory, (int) record.size);
+				writeShort(centralDirectory, record.name.length);
+				// Extra field, comment, disk number, internal and external attributes
+				writeShort(centralDirectory, 0);
+				writeShort(centralDirectory, 0);
+				writeShort(centralDirectory, 0);
+				writeShort(centralDirectory, 0);
+				writeInt(centralDirectory, 0);
+				writeInt(centralDirectory, (int) record.localHeaderOffset);
+				centralDirectory.write(record.name);
+			}
+			int centralDirectorySize = centralDirectory.size();
+			writeInt(centralDirectory, 0x06054b50);
+			writeShort(centralDirectory, 0);
+			writeShort(centralDirectory, 0);
+			writeShort(centralDirectory, entries.size());
+			writeShort(centralDirectory, entries.size());
+			writeInt(centralDirectory, centralDirectorySize);
+			writeInt(centralDirectory, (int) centralDirectoryOffset);
+			writeShort(centralDirectory, 0);
+			writeRaw(centralDirectory.toByteArray());
+			out.flush();
+		} finally {
+			finished = true;
+			shutdownExecutor();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (!finished) {
+				finish();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Closes the underlying stream without completing the archive. The central directory is not written
+	 * so the partial archive is not mistaken for a complete one.
+	 */
+	public void abort() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		finished = true;
+		try {
+			shutdownExecutor();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void submitBlock(boolean last) throws IOException {
+		byte[] data = block;
+		int length = blockLength;
+		byte[] dictionary = previousBlock;
+		if (executorService == null) {
+			writeRaw(deflate(data, length, dictionary, last));
+		} else {
+			pendingBlocks.add(executorService.submit(() -> deflate(data, length, dictionary, last)));
+			// Limit the number of blocks held in memory
+			while (pendingBlocks.size() > threads * 2) {
+				writeNextBlock();
+			}
+		}
+		if (!last) {
+			previousBlock = data;
+			block = new byte[BLOCK_SIZE];
+			blockLength = 0;
+		}
+	}
+
+	private void writeNextBlock() throws IOException {
+		try {
+			writeRaw(pendingBlocks.removeFirst().get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing zip entry.");
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to compress zip entry.", e.getCause());
+		}
+	}
+
+	private static byte[] deflate(byte[] data, int length, byte[] dictionary, boolean last) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			if (dictionary != null) {
+				deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+			}
+			deflater.setInput(data, 0, length);
+			if (last) {
+				deflater.finish();
+			}
+			byte[] output = new byte[length + (length >> 3) + 64];
+			int outputLength = 0;
+			while (true) {
+				outputLength += deflater.deflate(output, outputLength, output.length - outputLength, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				if (last ? deflater.finished() : outputLength < output.length) {
+					return Arrays.copyOf(output, outputLength);
+				}
+				if (outputLength == output.length) {
+					output = Arrays.copyOf(output, output.length * 2);
+				}
+			}
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private void writeRaw(byte[] bytes) throws IOException {
+		out.write(bytes);
+		written += bytes.length;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (finished) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private void shutdownExecutor() {
+		pendingBlocks.forEach(future -> future.cancel(true));
+		pendingBlocks.clear();
+		if (executorService != null) {
+			executorService.shutdownNow();
+		}
+	}
+
+	private static int toDosTime(LocalDateTime time) {
+		if (time.getYear() < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+				| time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		writeShort(out, value);
+		writeShort(out, value >>> 16);
+	}
+
+	private static final class EntryRecord {
+
+		private final byte[] name;
+		private final int dosTime;
+		private final long localHeaderOffset;
+		private long size;
+		private long compressedSize;
+		private int crc;
+
+		private EntryRecord(byte[] name, int dosTime, long localHeaderOffset) {
+			this.name = name;
+			this.dosTime = dosTime;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+}
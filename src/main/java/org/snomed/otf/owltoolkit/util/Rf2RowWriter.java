@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.util;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Writes tab separated RF2 rows to an output stream.
+ * Fields are encoded straight into a reusable byte buffer, identifiers are formatted as digits without creating strings.
+ * The underlying stream is not closed by this writer so other zip entries can follow.
+ */
+public class Rf2RowWriter implements Flushable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte TAB = '\t';
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	private final OutputStream outputStream;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private boolean rowStarted;
+
+	public Rf2RowWriter(OutputStream outputStream) {
+		this.outputStream = outputStream;
+	}
+
+	public Rf2RowWriter field(long value) throws IOException {
+		startField();
+		if (value == Long.MIN_VALUE) {
+			writeAscii(Long.toString(value));
+			return this;
+		}
+		ensureCapacity(20);
+		if (value < 0) {
+			buffer[position++] = '-';
+			value = -value;
+		}
+		int length = digitCount(value);
+		int index = position + length;
+		do {
+			buffer[--index] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		position += length;
+		return this;
+	}
+
+	public Rf2RowWriter field(String value) throws IOException {
+		startField();
+		writeText(value);
+		return this;
+	}
+
+	public Rf2RowWriter field(UUID value) throws IOException {
+		startField();
+		ensureCapacity(36);
+		long mostSignificantBits = value.getMostSignificantBits();
+		long leastSignificantBits = value.getLeastSignificantBits();
+		writeHex(mostSignificantBits >>> 32, 8);
+		buffer[position++] = '-';
+		writeHex(mostSignificantBits >>> 16, 4);
+		buffer[position++] = '-';
+		writeHex(mostSignificantBits, 4);
+		buffer[position++] = '-';
+		writeHex(leastSignificantBits >>> 48, 4);
+		buffer[position++] = '-';
+		writeHex(leastSignificantBits, 12);
+		return this;
+	}
+
+	/**
+	 * Adds a field which is already encoded as UTF-8.
+	 */
+	public Rf2RowWriter field(byte[] value) throws IOException {
+		startField();
+		writeBytes(value);
+		return this;
+	}
+
+	/**
+	 * Adds a field with no value, for example a blank effectiveTime.
+	 */
+	public Rf2RowWriter emptyField() throws IOException {
+		startField();
+		return this;
+	}
+
+	/**
+	 * Writes a complete line, used for file headers.
+	 */
+	public void line(String line) throws IOException {
+		writeText(line);
+		endRow();
+	}
+
+	public void endRow() throws IOException {
+		ensureCapacity(LINE_SEPARATOR.length);
+		for (byte b : LINE_SEPARATOR) {
+			buffer[position++] = b;
+		}
+		rowStarted = false;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		outputStream.flush();
+	}
+
+	private void startField() throws IOException {
+		if (rowStarted) {
+			ensureCapacity(1);
+			buffer[position++] = TAB;
+		}
+		rowStarted = true;
+	}
+
+	private void writeText(String value) throws IOException {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			if (value.charAt(i) >= 0x80) {
+				writeBytes(value.getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+		}
+		writeAscii(value);
+	}
+
+	private void writeAscii(String value) throws IOException {
+		int length = value.length();
+		int offset = 0;
+		while (offset < length) {
+			if (position == buffer.length) {
+				flushBuffer();
+			}
+			int count = Math.min(length - offset, buffer.length - position);
+			for (int i = 0; i < count; i++) {
+				buffer[position++] = (byte) value.charAt(offset++);
+			}
+		}
+	}
+
+	private void writeBytes(byte[] bytes) throws IOException {
+		if (bytes.length > buffer.length - position) {
+			flushBuffer();
+			if (bytes.length > buffer.length) {
+				outputStream.write(bytes);
+				return;
+			}
+		}
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	private void writeHex(long value, int digits) {
+		for (int i = digits - 1; i >= 0; i--) {
+			buffer[position + i] = HEX_DIGITS[(int) (value & 0xF)];
+			value >>>= 4;
+		}
+		position += digits;
+	}
+
+	private void ensureCapacity(int length) throws IOException {
+		if (buffer.length - position < length) {
+			flushBuffer();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (position > 0) {
+			outputStream.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	private static int digitCount(long value) {
+		int count = 1;
+		long limit = 10;
+		while (count < 19 && value >= limit) {
+			count++;
+			limit *= 10;
+		}
+		return count;
+	}
+}
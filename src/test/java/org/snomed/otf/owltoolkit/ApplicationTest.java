@@ -24,6 +24,9 @@ public class ApplicationTest {
 			" -classify                              Run classification process.\n" +
 			"                                        Results are written to an RF2 delta archive.\n" +
 			"\n" +
+			" -server                                Run a local classification server with the Snapshot archives loaded.\n" +
+			"                                        Delta archives are posted to /classifications and classified in a job queue.\n" +
+			"\n" +
 			" -rf2-to-owl                            (Default mode) Convert RF2 to OWL Functional Syntax.\n" +
 			"                                        Results are written to an .owl file.\n" +
 			"\n" +
@@ -40,6 +43,16 @@ public class ApplicationTest {
 			" -rf2-authoring-delta-archive <path>    (Optional) Path to a zip file containing RF2 Delta files to be applied on top \n" +
 			"                                        of the Snapshots. This is helpful during an authoring cycle.\n" +
 			"\n" +
+			" -snapshot-cache <path>                 (Optional) Directory used to cache the loaded Snapshot archives. \n" +
+			"                                        Later runs with the same Snapshot archives load from the cache. \n" +
+			"\n" +
+			" -port <port>                           (Optional) Server mode port, default 8080.\n" +
+			"\n" +
+			" -workers <count>                       (Optional) Server mode number of classifications to run at the same time, default 1.\n" +
+			"\n" +
+			" -heap-budget <megabytes>               (Optional) Server mode heap available to running classifications. \n" +
+			"                                        Defaults to the heap free after loading the Snapshot archives.\n" +
+			"\n" +
 			" -debug                                 Additional output for debugging.\n" +
 			"\n" +
 			"\n" +
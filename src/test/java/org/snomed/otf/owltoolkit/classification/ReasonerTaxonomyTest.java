@@ -0,0 +1,61 @@
+package org.snomed.otf.owltoolkit.classification;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.snomed.otf.owltoolkit.taxonomy.ConceptDictionary;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ReasonerTaxonomyTest {
+
+	@Test
+	public void testAncestors() {
+		ReasonerTaxonomy taxonomy = new ReasonerTaxonomy();
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(100, Collections.emptySet()));
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(200, Sets.newHashSet(100L)));
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(300, Sets.newHashSet(100L)));
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(400, Sets.newHashSet(200L, 300L)));
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(500, Sets.newHashSet(400L, 100L)));
+
+		assertEquals(Sets.newHashSet(100L, 200L, 300L, 400L), taxonomy.getAncestors(500));
+		assertEquals(4, taxonomy.getAncestors(500).size());
+		assertEquals(Sets.newHashSet(400L, 100L), taxonomy.getParents(500));
+		assertTrue(taxonomy.getAncestors(100).isEmpty());
+		assertTrue(taxonomy.getAncestors(999).isEmpty());
+
+		assertTrue(taxonomy.hasAncestor(500, 100));
+		assertTrue(taxonomy.hasAncestor(400, 300));
+		assertFalse(taxonomy.hasAncestor(300, 200));
+		assertFalse(taxonomy.hasAncestor(500, 500));
+		assertFalse(taxonomy.hasAncestor(500, 999));
+		assertFalse(taxonomy.hasAncestor(999, 100));
+		assertTrue(taxonomy.isSameOrDescendant(500, 500));
+		assertTrue(taxonomy.isSameOrDescendant(500, 200));
+		assertFalse(taxonomy.isSameOrDescendant(200, 500));
+		assertTrue(taxonomy.isSameOrDescendant(999, 999));
+		assertTrue(taxonomy.getAncestors(400).contains(100L));
+		assertFalse(taxonomy.getAncestors(400).contains(500L));
+
+		// A second entry for the same concept adds to its ancestors
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(600, Collections.emptySet()));
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(300, Sets.newHashSet(600L)));
+		assertEquals(Sets.newHashSet(100L, 600L), taxonomy.getAncestors(300));
+	}
+
+	@Test
+	public void testSharedConceptDictionary() {
+		ConceptDictionary snomedConcepts = ConceptDictionary.of(new long[] {100, 200, 300});
+		ReasonerTaxonomy taxonomy = new ReasonerTaxonomy(snomedConcepts);
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(300, Collections.emptySet()));
+		taxonomy.addEntry(new ReasonerTaxonomyEntry(900, Sets.newHashSet(300L)));
+
+		assertEquals(2, taxonomy.getOrdinal(300));
+		assertEquals(3, taxonomy.getOrdinal(900));
+		assertEquals(Collections.singleton(300L), taxonomy.getAncestors(900));
+		assertEquals(Collections.singleton(300L), taxonomy.getParents(900));
+		assertTrue(taxonomy.getParents(100).isEmpty());
+		assertFalse(snomedConcepts.contains(900));
+	}
+}
@@ -0,0 +1,123 @@
+package org.snomed.otf.owltoolkit.classification;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.semanticweb.elk.reasoner.Reasoner;
+import org.semanticweb.elk.reasoner.ReasonerFactory;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+import org.snomed.otf.owltoolkit.ontology.OntologyService;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
+import org.snomed.otf.owltoolkit.util.InputStreamSet;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ReasonerTaxonomyWalkerTest {
+
+	@Test
+	public void testConcurrentWalkMatchesSequentialWalk() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File deltaZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Equivalence_delta");
+
+		SnomedTaxonomy snomedTaxonomy;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(Sets.newHashSet(baseRF2SnapshotZip));
+			 FileInputStream deltaStream = new FileInputStream(deltaZip)) {
+			snomedTaxonomy = new SnomedTaxonomyBuilder().build(snapshotStreams, deltaStream, false);
+		}
+		OWLOntology ontology = new OntologyService(SnomedTaxonomy.DEFAULT_NEVER_GROUPED_ROLE_IDS).createOntology(snomedTaxonomy);
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(ontology);
+		reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+
+		ReasonerTaxonomy sequential = new ReasonerTaxonomyWalker(reasoner, new ReasonerTaxonomy()).walk();
+		ReasonerTaxonomy concurrent = new ReasonerTaxonomyWalker(reasoner, new ReasonerTaxonomy(), 4).walk();
+		reasoner.dispose();
+
+		assertFalse(sequential.getEquivalentConceptIds().isEmpty());
+		assertEquals(new HashSet<>(sequential.getEquivalentConceptIds()), new HashSet<>(concurrent.getEquivalentConceptIds()));
+		assertEquals(sequential.getUnsatisfiableConceptIds(), concurrent.getUnsatisfiableConceptIds());
+		assertEquals(sequential.getAttributeIds(), concurrent.getAttributeIds());
+
+		List<Long> conceptIds = concurrent.getConceptIds();
+		assertEquals(sequential.getConceptIds().size(), conceptIds.size());
+		assertEquals(new HashSet<>(sequential.getConceptIds()), new HashSet<>(conceptIds));
+
+		Set<Long> added = new HashSet<>();
+		for (Long conceptId : conceptIds) {
+			assertEquals(sequential.getParents(conceptId), concurrent.getParents(conceptId));
+			assertEquals(sequential.getAncestors(conceptId), concurrent.getAncestors(conceptId));
+			assertTrue("Parents added before child " + conceptId, added.containsAll(concurrent.getParents(conceptId)));
+			added.add(conceptId);
+		}
+	}
+
+	@Test
+	public void testElkTaxonomyWalkMatchesOwlReasonerWalk() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File deltaZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Equivalence_delta");
+
+		SnomedTaxonomy snomedTaxonomy;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(Sets.newHashSet(baseRF2SnapshotZip));
+			 FileInputStream deltaStream = new FileInputStream(deltaZip)) {
+			snomedTaxonomy = new SnomedTaxonomyBuilder().build(snapshotStreams, deltaStream, false);
+		}
+		OntologyService ontologyService = new OntologyService(SnomedTaxonomy.DEFAULT_NEVER_GROUPED_ROLE_IDS);
+		OWLReasoner owlReasoner = new ElkReasonerFactory().createReasoner(ontologyService.createOntology(snomedTaxonomy));
+		owlReasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+		ReasonerTaxonomy expected = new ReasonerTaxonomyWalker(owlReasoner, new ReasonerTaxonomy()).walk();
+		owlReasoner.dispose();
+
+		Reasoner elkReasoner = new ReasonerFactory().createReasoner(new ElkAxiomLoader(ontologyService.createAxiomList(snomedTaxonomy)));
+		ReasonerTaxonomy actual = new ReasonerTaxonomyWalker(elkReasoner.getTaxonomy(), ontologyService.createPropertyOntology(snomedTaxonomy),
+				new ReasonerTaxonomy(snomedTaxonomy.getConceptDictionary())).walk();
+		elkReasoner.shutdown();
+
+		assertFalse(expected.getEquivalentConceptIds().isEmpty());
+		assertEquals(new HashSet<>(expected.getEquivalentConceptIds()), new HashSet<>(actual.getEquivalentConceptIds()));
+		assertEquals(expected.getUnsatisfiableConceptIds(), actual.getUnsatisfiableConceptIds());
+		assertEquals(expected.getAttributeIds(), actual.getAttributeIds());
+		assertEquals(new HashSet<>(expected.getConceptIds()), new HashSet<>(actual.getConceptIds()));
+
+		Set<Long> added = new HashSet<>();
+		for (Long conceptId : actual.getConceptIds()) {
+			assertEquals(expected.getParents(conceptId), actual.getParents(conceptId));
+			assertEquals(expected.getAncestors(conceptId), actual.getAncestors(conceptId));
+			assertTrue("Parents added before child " + conceptId, added.containsAll(actual.getParents(conceptId)));
+			added.add(conceptId);
+		}
+	}
+
+	@Test
+	public void testElkTaxonomyWalkSkipsNodesWithoutConcepts() throws Exception {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory factory = manager.getOWLDataFactory();
+		OWLClass root = factory.getOWLClass(IRI.create(OntologyService.SNOMED_CORE_COMPONENTS_URI + "138875005"));
+		OWLClass other = factory.getOWLClass(IRI.create("http://example.org/other"));
+		OWLClass concept = factory.getOWLClass(IRI.create(OntologyService.SNOMED_CORE_COMPONENTS_URI + "100"));
+		OWLClass child = factory.getOWLClass(IRI.create(OntologyService.SNOMED_CORE_COMPONENTS_URI + "200"));
+		List<OWLAxiom> axioms = Arrays.asList(
+				factory.getOWLSubClassOfAxiom(other, root),
+				factory.getOWLSubClassOfAxiom(concept, other),
+				factory.getOWLSubClassOfAxiom(child, concept));
+
+		OWLOntology propertyOntology = manager.createOntology(Collections.singleton(factory.getOWLDeclarationAxiom(
+				factory.getOWLObjectProperty(IRI.create(OntologyService.SNOMED_CORE_COMPONENTS_URI + Concepts.CONCEPT_MODEL_OBJECT_ATTRIBUTE)))));
+
+		Reasoner elkReasoner = new ReasonerFactory().createReasoner(new ElkAxiomLoader(axioms));
+		ReasonerTaxonomy taxonomy = new ReasonerTaxonomyWalker(elkReasoner.getTaxonomy(), propertyOntology, new ReasonerTaxonomy()).walk();
+		elkReasoner.shutdown();
+
+		assertTrue(taxonomy.getConceptIds().containsAll(Arrays.asList(138875005L, 100L, 200L)));
+		assertTrue(taxonomy.getParents(100L).isEmpty());
+		assertEquals(Collections.singleton(100L), taxonomy.getParents(200L));
+	}
+}
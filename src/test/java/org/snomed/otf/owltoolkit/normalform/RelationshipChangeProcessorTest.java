@@ -0,0 +1,159 @@
+package org.snomed.otf.owltoolkit.normalform;
+
+import org.junit.Test;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RelationshipChangeProcessorTest {
+
+	@Test
+	public void testGroupZeroRelationshipMovedToOwnGroupIsUpdated() {
+		Relationship existing = new Relationship(10, 20180731, 1, 363698007, 200, false, 0, 0, false, -1);
+		Relationship isA = new Relationship(11, 20180731, 1, Concepts.IS_A_LONG, 300, false, 0, 0, false, -1);
+		List<List<Relationship>> changes = new ArrayList<>();
+		RelationshipChangeProcessor processor = new RelationshipChangeProcessor((conceptId, added, removed) -> {
+			changes.add(new ArrayList<>(added));
+			changes.add(new ArrayList<>(removed));
+		});
+
+		processor.apply(100, Arrays.asList(existing, isA), Arrays.asList(new Relationship(1, 363698007, 200), new Relationship(Concepts.IS_A_LONG, 300)));
+
+		assertEquals(Collections.singletonList(existing), changes.get(0));
+		assertEquals(1, existing.getGroup());
+		assertEquals(10, existing.getRelationshipId());
+		assertTrue(changes.get(1).isEmpty());
+		assertEquals(1, (long) processor.getUpdatedCount());
+		assertEquals(0, (long) processor.getAddedCount());
+		assertEquals(100L, (long) processor.getChangedConceptIds().iterator().next());
+	}
+
+	@Test
+	public void testSameDecisionsAsComparatorDiff() {
+		Random random = new Random(42);
+		RelationshipChangeProcessor processor = new RelationshipChangeProcessor();
+		for (int concept = 1; concept <= 2000; concept++) {
+			List<Relationship> existing = randomRelationships(random, true);
+			List<Relationship> generated = randomRelationships(random, false);
+
+			ComparatorDiff expected = new ComparatorDiff(copy(existing), copy(generated));
+
+			List<Relationship> existingCopy = copy(existing);
+			List<Relationship> generatedCopy = copy(generated);
+			processor.apply(concept, existingCopy, generatedCopy);
+
+			assertEquals("Concept " + concept, expected.redundant, asSet(processor.getRemovedStatements().get((long) concept)));
+			assertEquals("Concept " + concept, expected.addedOrChanged, asSet(processor.getAddedStatements().get((long) concept)));
+		}
+	}
+
+	private Set<Relationship> asSet(Set<Relationship> relationships) {
+		return relationships != null ? relationships : Collections.emptySet();
+	}
+
+	private List<Relationship> randomRelationships(Random random, boolean existing) {
+		List<Relationship> relationships = new ArrayList<>();
+		int count = random.nextInt(8);
+		for (int i = 0; i < count; i++) {
+			long typeId = random.nextInt(4) == 0 ? Concepts.IS_A_LONG : 1000 + random.nextInt(3);
+			relationships.add(new Relationship(
+					existing ? 5000 + i : -1,
+					20180731,
+					existing ? 1 + random.nextInt(2) : -1,
+					typeId,
+					2000 + random.nextInt(3),
+					false,
+					random.nextInt(3),
+					random.nextInt(10) == 0 ? 1 : 0,
+					random.nextInt(10) == 0,
+					existing && random.nextInt(10) == 0 ? Concepts.ADDITIONAL_RELATIONSHIP_LONG : -1));
+		}
+		return relationships;
+	}
+
+	private List<Relationship> copy(List<Relationship> relationships) {
+		List<Relationship> copies = new ArrayList<>();
+		for (Relationship r : relationships) {
+			copies.add(new Relationship(r.getRelationshipId(), r.getEffectiveTime(), r.getModuleId(), r.getTypeId(), r.getDestinationId(),
+					r.isDestinationNegated(), r.getGroup(), r.getUnionGroup(), r.isUniversal(), r.getCharacteristicTypeId()));
+		}
+		return copies;
+	}
+
+	/**
+	 * The comparator based diff the processor used before relationships were packed into primitive keys.
+	 */
+	private static final class ComparatorDiff {
+
+		private static final Comparator<Relationship> ALL_FIELDS = Comparator
+				.comparing(Relationship::getTypeId)
+				.thenComparing(Relationship::getDestinationId)
+				.thenComparing(Relationship::getGroup)
+				.thenComparing(Relationship::getUnionGroup)
+				.thenComparing(Relationship::isUniversal)
+				.thenComparing(Relationship::isDestinationNegated);
+
+		private static final Comparator<Relationship> WITH_MODULE_ID = ALL_FIELDS
+				.thenComparing(Relationship::getModuleId, Comparator.reverseOrder());
+
+		private static final Comparator<Relationship> WITHOUT_GROUP = Comparator
+				.comparing(Relationship::getTypeId)
+				.thenComparing(Relationship::getDestinationId)
+				.thenComparing(Relationship::getUnionGroup)
+				.thenComparing(Relationship::isUniversal)
+				.thenComparing(Relationship::isDestinationNegated);
+
+		private final Set<Relationship> redundant = new HashSet<>();
+		private final Set<Relationship> addedOrChanged = new HashSet<>();
+
+		private ComparatorDiff(List<Relationship> existingRelationships, List<Relationship> newRelationships) {
+			List<Relationship> sortedOld = sorted(existingRelationships, ALL_FIELDS);
+			List<Relationship> sortedNew = sorted(newRelationships, ALL_FIELDS);
+			Map<Relationship, Relationship> updatedNewOld = new HashMap<>();
+			Set<Integer> uniqueIndex = new HashSet<>();
+			for (Relationship oldSubject : sorted(existingRelationships, WITH_MODULE_ID)) {
+				int i = Collections.binarySearch(sortedNew, oldSubject, ALL_FIELDS);
+				if (i < 0) {
+					if (oldSubject.getGroup() == 0 && oldSubject.getTypeId() != Concepts.IS_A_LONG) {
+						int y = Collections.binarySearch(sortedNew, oldSubject, WITHOUT_GROUP);
+						if (y >= 0) {
+							int newGroup = sortedNew.get(y).getGroup();
+							if (sortedNew.stream().filter(r -> r.getGroup() == newGroup).count() == 1) {
+								updatedNewOld.put(sortedNew.get(y), oldSubject);
+								continue;
+							}
+						}
+					}
+					removed(oldSubject);
+				} else if (!uniqueIndex.add(i)) {
+					removed(oldSubject);
+				}
+			}
+			for (Relationship newMini : sortedNew) {
+				if (updatedNewOld.containsKey(newMini)) {
+					Relationship existing = updatedNewOld.get(newMini);
+					existing.setGroup(newMini.getGroup());
+					addedOrChanged.add(existing);
+				} else if (Collections.binarySearch(sortedOld, newMini, ALL_FIELDS) < 0) {
+					newMini.clearId();
+					addedOrChanged.add(newMini);
+				}
+			}
+		}
+
+		private void removed(Relationship relationship) {
+			if (relationship.getCharacteristicTypeId() != Concepts.ADDITIONAL_RELATIONSHIP_LONG) {
+				redundant.add(relationship);
+			}
+		}
+
+		private static List<Relationship> sorted(List<Relationship> relationships, Comparator<Relationship> comparator) {
+			List<Relationship> sorted = new ArrayList<>(relationships);
+			sorted.sort(comparator);
+			return sorted;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package org.snomed.otf.owltoolkit.normalform.transitive;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NodeGraphTest {
+
+	@Test
+	public void testClosureInvalidatedWhenParentAdded() {
+		NodeGraph graph = new NodeGraph();
+		graph.addParent(100, 200);
+		graph.addParent(200, 300);
+		assertEquals(Sets.newHashSet(200L, 300L), graph.getAncestors(100));
+		assertTrue(graph.contains(300, 100));
+		assertFalse(graph.contains(100, 300));
+		assertFalse(graph.contains(400, 100));
+
+		// Adding a parent high in the graph changes the cached closures of descendants
+		graph.addParent(300, 400);
+		assertEquals(Sets.newHashSet(200L, 300L, 400L), graph.getAncestors(100));
+		assertTrue(graph.contains(400, 100));
+		assertTrue(graph.getAncestors(999).isEmpty());
+	}
+
+	@Test
+	public void testCycle() {
+		NodeGraph graph = new NodeGraph();
+		graph.addParent(100, 200);
+		graph.addParent(200, 300);
+		graph.addParent(300, 100);
+		graph.addParent(100, 100);
+		assertEquals(Sets.newHashSet(200L, 300L), graph.getAncestors(100));
+		assertEquals(Sets.newHashSet(100L, 300L), graph.getAncestors(200));
+		assertFalse(graph.contains(100, 100));
+		assertTrue(graph.contains(100, 300));
+	}
+
+	@Test
+	public void testAnySelfOrAncestorMatches() {
+		NodeGraph graph = new NodeGraph();
+		graph.addParent(100, 200);
+		graph.addParent(200, 300);
+		assertTrue(graph.anySelfOrAncestorMatches(100, id -> id == 300));
+		assertTrue(graph.anySelfOrAncestorMatches(100, id -> id == 100));
+		assertFalse(graph.anySelfOrAncestorMatches(200, id -> id == 100));
+		assertTrue(graph.anySelfOrAncestorMatches(999, id -> id == 999));
+	}
+
+	@Test
+	public void testFreeze() {
+		NodeGraph graph = new NodeGraph();
+		graph.addParent(100, 200);
+		graph.addParent(200, 300);
+		graph.freeze();
+		assertEquals(Sets.newHashSet(200L, 300L), graph.getAncestors(100));
+		assertTrue(graph.contains(300, 100));
+		try {
+			graph.addParent(300, 400);
+			fail("Frozen graph should not change.");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		assertFalse(graph.contains(400, 100));
+	}
+}
@@ -1,20 +1,31 @@
 package org.snomed.otf.owltoolkit.ontology;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.snomed.otf.owltoolkit.constants.Concepts;
 import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
 import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyLoader;
+import org.snomed.otf.owltoolkit.testutil.SyntheticReleaseGenerator;
+import org.snomed.otf.owltoolkit.util.InputStreamSet;
 
+import java.io.File;
 import java.util.*;
 
 import static org.junit.Assert.*;
 
 public class OntologyServiceTest {
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	private OntologyService ontologyService;
 
 	@Before
@@ -48,6 +59,36 @@ public class OntologyServiceTest {
 		assertEquals("PropertyChain{sourceType=400, destinationType=400, inferredType=400}", chains.get(1).toString());
 	}
 
+	@Test
+	public void createOntologyConcurrently() throws Exception {
+		File snapshot = temporaryFolder.newFile("snapshot.zip");
+		new SyntheticReleaseGenerator().setConceptCount(10000).generate(snapshot, temporaryFolder.newFile("delta.zip"));
+		SnomedTaxonomy snomedTaxonomy;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(Sets.newHashSet(snapshot))) {
+			snomedTaxonomy = new SnomedTaxonomyBuilder().build(snapshotStreams, true);
+		}
+		// Add stated relationships to concepts without axioms
+		SnomedTaxonomyLoader snomedTaxonomyLoader = new SnomedTaxonomyLoader();
+		for (int i = 0; i < 5000; i++) {
+			String conceptId = (1000000 + i * 1000) + "101";
+			snomedTaxonomyLoader.newConceptState(conceptId, "", "1", Concepts.SNOMED_CT_CORE_MODULE, Concepts.PRIMITIVE);
+			snomedTaxonomyLoader.newRelationshipState(i + "1000", "", "1", Concepts.SNOMED_CT_CORE_MODULE, conceptId, Concepts.ROOT, "0", Concepts.IS_A, Concepts.STATED_RELATIONSHIP, Concepts.EXISTENTIAL_RESTRICTION_MODIFIER);
+		}
+		SnomedTaxonomy statedTaxonomy = snomedTaxonomyLoader.getSnomedTaxonomy();
+
+		ontologyService.setThreads(1);
+		Set<OWLAxiom> sequentialAxioms = ontologyService.createAxioms(snomedTaxonomy);
+		Map<Long, Set<OWLAxiom>> sequentialStatedAxioms = ontologyService.createAxiomsFromStatedRelationships(statedTaxonomy);
+
+		ontologyService.setThreads(4);
+		assertEquals(sequentialAxioms, ontologyService.createAxioms(snomedTaxonomy));
+		assertEquals(5000, sequentialStatedAxioms.size());
+		assertEquals(sequentialStatedAxioms, ontologyService.createAxiomsFromStatedRelationships(statedTaxonomy));
+
+		OWLOntology ontology = ontologyService.createOntology(snomedTaxonomy);
+		assertEquals(sequentialAxioms, ontology.getAxioms());
+	}
+
 	private void addAttribute(String attribute, SnomedTaxonomyLoader snomedTaxonomyLoader) {
 		snomedTaxonomyLoader.newConceptState(attribute, "", "1", Concepts.SNOMED_CT_CORE_MODULE, "");
 		snomedTaxonomyLoader.newRelationshipState("101", "", "1", Concepts.SNOMED_CT_CORE_MODULE, attribute, Concepts.CONCEPT_MODEL_ATTRIBUTE, "0", Concepts.IS_A, Concepts.INFERRED_RELATIONSHIP, "");
@@ -0,0 +1,164 @@
+package org.snomed.otf.owltoolkit.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snomed.otf.owltoolkit.service.SnomedReasonerService;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+import static org.snomed.otf.owltoolkit.service.classification.TestFileUtil.readInferredRelationshipLinesTrim;
+
+public class ClassificationServerTest {
+
+	private static final Pattern JOB_ID_PATTERN = Pattern.compile("\"id\":\"([^\"]+)\"");
+	private static final Pattern STATUS_PATTERN = Pattern.compile("\"status\":\"([A-Z]+)\"");
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File baseRF2SnapshotZip;
+	private ClassificationServer server;
+	private String url;
+
+	@Before
+	public void setup() throws Exception {
+		baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		server = new ClassificationServer(temporaryFolder.newFolder(), temporaryFolder.newFolder(), 2);
+		server.addBase(ClassificationServer.DEFAULT_BASE, Collections.singleton(baseRF2SnapshotZip));
+		url = "http://localhost:" + server.start(0);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void testConcurrentJobsMatchDirectClassification() throws Exception {
+		assertEquals("[\"default\"]", request("GET", "/bases", null).body);
+
+		List<File> deltas = Arrays.asList(
+				ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Add_Diabetes_delta"),
+				ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Anatomy_Transitive_Reflexive_delta"),
+				ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Active_Ingredient_Property_Chain_delta"));
+
+		Map<String, File> jobDeltas = new LinkedHashMap<>();
+		for (File delta : deltas) {
+			Response response = request("POST", "/classifications", Files.readAllBytes(delta.toPath()));
+			assertEquals(response.body, 202, response.status);
+			Matcher matcher = JOB_ID_PATTERN.matcher(response.body);
+			assertTrue(matcher.find());
+			jobDeltas.put(matcher.group(1), delta);
+		}
+
+		for (Map.Entry<String, File> jobDelta : jobDeltas.entrySet()) {
+			String jobPath = "/classifications/" + jobDelta.getKey();
+			assertEquals("COMPLETED", awaitFinished(jobPath));
+
+			File serverResults = temporaryFolder.newFile();
+			Response results = request("GET", jobPath + "/results", null);
+			assertEquals(200, results.status);
+			Files.write(serverResults.toPath(), results.bytes);
+
+			File directResults = temporaryFolder.newFile();
+			new SnomedReasonerService().classify("", baseRF2SnapshotZip, jobDelta.getValue(), directResults, SnomedReasonerService.ELK_REASONER_FACTORY, false);
+			assertEquals(readSorted(directResults), readSorted(serverResults));
+
+			assertEquals(204, request("DELETE", jobPath, null).status);
+			assertEquals(404, request("GET", jobPath, null).status);
+		}
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		assertEquals(404, request("POST", "/classifications?base=unknown", new byte[0]).status);
+		assertEquals(404, request("GET", "/classifications/unknown", null).status);
+
+		assertEquals(400, request("POST", "/classifications", "not a zip".getBytes(StandardCharsets.UTF_8)).status);
+
+		ByteArrayOutputStream invalidAxiomDelta = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(invalidAxiomDelta)) {
+			zipOutputStream.putNextEntry(new ZipEntry("SnomedCT/Delta/Terminology/sct2_sRefset_OWLExpressionDelta_INT_20190731.txt"));
+			zipOutputStream.write(("id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId\towlExpression\r\n" +
+					"5d2d8e1c-8c5e-4a8e-9d3b-2f0b6c8a1e11\t\t1\t900000000000207008\t733073007\t362969004\tSubClassOf(:362969004\r\n")
+					.getBytes(StandardCharsets.UTF_8));
+		}
+		Response response = request("POST", "/classifications", invalidAxiomDelta.toByteArray());
+		assertEquals(202, response.status);
+		Matcher matcher = JOB_ID_PATTERN.matcher(response.body);
+		assertTrue(matcher.find());
+		String jobPath = "/classifications/" + matcher.group(1);
+		assertEquals("FAILED", awaitFinished(jobPath));
+		assertTrue(request("GET", jobPath, null).body.contains("errorMessage"));
+		assertEquals(409, request("GET", jobPath + "/results", null).status);
+	}
+
+	private String awaitFinished(String jobPath) throws Exception {
+		for (int i = 0; i < 600; i++) {
+			Response response = request("GET", jobPath, null);
+			assertEquals(200, response.status);
+			Matcher matcher = STATUS_PATTERN.matcher(response.body);
+			assertTrue(matcher.find());
+			String status = matcher.group(1);
+			if (status.equals("COMPLETED") || status.equals("FAILED")) {
+				return status;
+			}
+			Thread.sleep(100);
+		}
+		fail("Job did not finish " + jobPath);
+		return null;
+	}
+
+	private Response request(String method, String path, byte[] body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+		connection.setRequestMethod(method);
+		if (body != null) {
+			connection.setDoOutput(true);
+			try (OutputStream outputStream = connection.getOutputStream()) {
+				outputStream.write(body);
+			}
+		}
+		Response response = new Response();
+		response.status = connection.getResponseCode();
+		InputStream inputStream = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if (inputStream != null) {
+			try (InputStream in = inputStream) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					bytes.write(buffer, 0, read);
+				}
+			}
+		}
+		response.bytes = bytes.toByteArray();
+		response.body = new String(response.bytes, StandardCharsets.UTF_8);
+		return response;
+	}
+
+	private List<String> readSorted(File results) throws IOException {
+		List<String> lines = new ArrayList<>(readInferredRelationshipLinesTrim(results));
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private static final class Response {
+		private int status;
+		private byte[] bytes;
+		private String body;
+	}
+}
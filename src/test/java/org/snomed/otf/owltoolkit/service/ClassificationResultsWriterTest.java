@@ -0,0 +1,143 @@
+package org.snomed.otf.owltoolkit.service;
+
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.normalform.RelationshipChangeProcessor;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+public class ClassificationResultsWriterTest {
+
+	private static final int CONCEPTS = 5000;
+	private static final String RELATIONSHIPS_HEADER = "id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId";
+	private static final String EQUIVALENT_REFSET_HEADER = "id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId\tmapTarget";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final ClassificationResultsWriter writer = new ClassificationResultsWriter();
+
+	@Test
+	public void testStreamedArchiveMatchesCollectedChanges() throws Exception {
+		List<Set<Long>> equivalentConceptIds = Collections.singletonList(Sets.newHashSet(100L, 200L));
+		Date startDate = new Date();
+
+		RelationshipChangeProcessor collector = new RelationshipChangeProcessor();
+		applyChanges(collector);
+		List<String> expectedLines = new ArrayList<>();
+		expectedLines.add(RELATIONSHIPS_HEADER);
+		collector.getAddedStatements().forEach((sourceId, relationships) -> relationships.forEach(relationship ->
+				expectedLines.add(relationshipRow(relationship.getRelationshipId() == -1 ? "" : "" + relationship.getRelationshipId(), 1, sourceId, relationship))));
+		collector.getRemovedStatements().forEach((sourceId, relationships) -> relationships.forEach(relationship ->
+				expectedLines.add(relationshipRow("" + relationship.getRelationshipId(), 0, sourceId, relationship))));
+
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		RelationshipChangeProcessor streamingCollector;
+		try (ClassificationResultsWriter.StreamingResultsArchive archive = writer.startResultsRf2Archive(streamed, startDate)) {
+			streamingCollector = new RelationshipChangeProcessor(archive);
+			applyChanges(streamingCollector);
+			archive.finish(equivalentConceptIds);
+		}
+
+		assertTrue(streamingCollector.getAddedStatements().isEmpty());
+		assertTrue(streamingCollector.getRemovedStatements().isEmpty());
+		assertEquals(collector.getAddedCount(), streamingCollector.getAddedCount());
+		assertEquals(collector.getRedundantCount(), streamingCollector.getRedundantCount());
+		assertEquals(CONCEPTS, streamingCollector.getChangedConceptIds().size());
+
+		String formattedDate = new SimpleDateFormat("yyyyMMdd").format(startDate);
+		Map<String, List<String>> actual = readEntries(streamed.toByteArray());
+		assertEquals(Sets.newHashSet(
+				"RF2/sct2_Relationship_Delta_Classification_" + formattedDate + ".txt",
+				"RF2/der2_sRefset_EquivalentConceptSimpleMapDelta_Classification_" + formattedDate + ".txt"), actual.keySet());
+
+		List<String> actualLines = actual.get("RF2/sct2_Relationship_Delta_Classification_" + formattedDate + ".txt");
+		assertEquals(2 * CONCEPTS + 1, actualLines.size());
+		assertEquals(RELATIONSHIPS_HEADER, actualLines.get(0));
+		Collections.sort(expectedLines);
+		Collections.sort(actualLines);
+		assertEquals(expectedLines, actualLines);
+
+		// Refset member ids and map targets are random
+		List<String> equivalentLines = actual.get("RF2/der2_sRefset_EquivalentConceptSimpleMapDelta_Classification_" + formattedDate + ".txt");
+		assertEquals(3, equivalentLines.size());
+		assertEquals(EQUIVALENT_REFSET_HEADER, equivalentLines.get(0));
+		Set<String> referencedComponentIds = new HashSet<>();
+		Set<String> mapTargets = new HashSet<>();
+		for (String line : equivalentLines.subList(1, equivalentLines.size())) {
+			String[] fields = line.split("\t", -1);
+			referencedComponentIds.add(fields[5]);
+			mapTargets.add(fields[6]);
+		}
+		assertEquals(Sets.newHashSet("100", "200"), referencedComponentIds);
+		assertEquals(1, mapTargets.size());
+	}
+
+	@Test
+	public void testFailedArchiveIsNotCompleted() throws Exception {
+		File results = temporaryFolder.newFile("results.zip");
+		try (OutputStream out = new FileOutputStream(results);
+			 ClassificationResultsWriter.StreamingResultsArchive archive = writer.startResultsRf2Archive(out, new Date())) {
+			RelationshipChangeProcessor processor = new RelationshipChangeProcessor((conceptId, addedOrChangedRelationships, removedRelationships) -> {
+				if (conceptId == CONCEPTS / 2) {
+					throw new IllegalStateException("Normal form generation failed.");
+				}
+				archive.relationshipsChanged(conceptId, addedOrChangedRelationships, removedRelationships);
+			});
+			applyChanges(processor);
+			archive.finish(Collections.emptyList());
+			fail("Listener should have thrown.");
+		} catch (IllegalStateException e) {
+			assertEquals("Normal form generation failed.", e.getMessage());
+		}
+
+		assertTrue(results.length() > 0);
+		try (ZipFile zipFile = new ZipFile(results)) {
+			fail("Partial archive should not have a central directory, found " + zipFile.size() + " entries.");
+		} catch (ZipException e) {
+			// Expected
+		}
+	}
+
+	private void applyChanges(RelationshipChangeProcessor processor) {
+		for (long conceptId = 1; conceptId <= CONCEPTS; conceptId++) {
+			Relationship existing = new Relationship(conceptId * 10, -1, -1, 116680003L, 138875005L, false, 0, 0, false, -1);
+			Relationship inferred = new Relationship(116680003L, 404684003L);
+			processor.apply(conceptId, Collections.singleton(existing), Collections.singleton(inferred));
+		}
+	}
+
+	private String relationshipRow(String relationshipId, int active, long sourceId, Relationship relationship) {
+		return String.join("\t", relationshipId, "", "" + active, "", "" + sourceId, "" + relationship.getDestinationId(), "" + relationship.getGroup(),
+				"" + relationship.getTypeId(), Concepts.INFERRED_RELATIONSHIP, Concepts.EXISTENTIAL_RESTRICTION_MODIFIER);
+	}
+
+	private Map<String, List<String>> readEntries(byte[] archive) throws IOException {
+		Map<String, List<String>> entries = new HashMap<>();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				List<String> lines = new ArrayList<>();
+				BufferedReader reader = new BufferedReader(new InputStreamReader(zipInputStream));
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lines.add(line);
+				}
+				entries.put(entry.getName(), lines);
+			}
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,63 @@
+package org.snomed.otf.owltoolkit.service.classification;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snomed.otf.owltoolkit.service.SnomedReasonerService;
+import org.snomed.otf.owltoolkit.testutil.SyntheticReleaseGenerator;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.snomed.otf.owltoolkit.service.SnomedReasonerService.ELK_REASONER_FACTORY;
+import static org.snomed.otf.owltoolkit.service.classification.TestFileUtil.readInferredRelationshipLinesTrim;
+
+public class ConcurrentClassificationIntegrationTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testConcurrentClassificationMatchesSingleThreaded() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		for (String delta : new String[] {
+				"SnomedCT_MiniRF2_Active_Ingredient_Property_Chain_delta",
+				"SnomedCT_MiniRF2_Anatomy_Transitive_Reflexive_delta",
+				"SnomedCT_MiniRF2_Add_Diabetes_delta"}) {
+
+			File deltaZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/" + delta);
+			List<String> singleThreaded = classify(baseRF2SnapshotZip, deltaZip, 1);
+			List<String> concurrent = classify(baseRF2SnapshotZip, deltaZip, 4);
+			assertFalse(singleThreaded.isEmpty());
+			assertEquals(delta, singleThreaded, concurrent);
+		}
+	}
+
+	@Test
+	public void testConcurrentClassificationMatchesSingleThreadedWithPropertyChains() throws Exception {
+		File snapshot = temporaryFolder.newFile("snapshot.zip");
+		File delta = temporaryFolder.newFile("delta.zip");
+		new SyntheticReleaseGenerator().setConceptCount(3000).setPropertyChainCount(3).setRelationshipsPerConcept(3).generate(snapshot, delta);
+
+		List<String> singleThreaded = classify(snapshot, delta, 1);
+		assertFalse(singleThreaded.isEmpty());
+		for (int run = 0; run < 3; run++) {
+			assertEquals(singleThreaded, classify(snapshot, delta, 4));
+		}
+	}
+
+	private List<String> classify(File baseRF2SnapshotZip, File deltaZip, int threads) throws Exception {
+		SnomedReasonerService snomedReasonerService = new SnomedReasonerService();
+		snomedReasonerService.setThreads(threads);
+		File results = TestFileUtil.newTemporaryFile();
+		snomedReasonerService.classify("", baseRF2SnapshotZip, deltaZip, results, ELK_REASONER_FACTORY, false);
+		List<String> lines = new ArrayList<>(readInferredRelationshipLinesTrim(results));
+		Collections.sort(lines);
+		return lines;
+	}
+}
@@ -0,0 +1,75 @@
+package org.snomed.otf.owltoolkit.service.classification;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snomed.otf.owltoolkit.service.SnomedReasonerService;
+import org.snomed.otf.owltoolkit.testutil.SyntheticReleaseGenerator;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.snomed.otf.owltoolkit.service.SnomedReasonerService.ELK_REASONER_FACTORY;
+import static org.snomed.otf.owltoolkit.service.classification.TestFileUtil.readInferredRelationshipLinesTrim;
+
+public class IncrementalClassificationIntegrationTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testIncrementalClassificationMatchesFullClassification() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		for (String delta : new String[] {
+				"SnomedCT_MiniRF2_Active_Ingredient_Property_Chain_delta",
+				"SnomedCT_MiniRF2_Anatomy_Transitive_Reflexive_delta",
+				"SnomedCT_MiniRF2_Add_Diabetes_delta",
+				"SnomedCT_MiniRF2_Secondary_Diabetes_GCI_delta"}) {
+
+			File deltaZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/" + delta);
+			assertIncrementalMatchesFull(delta, baseRF2SnapshotZip, deltaZip, 1);
+		}
+	}
+
+	@Test
+	public void testIncrementalClassificationOfSyntheticRelease() throws Exception {
+		File snapshot = temporaryFolder.newFile();
+		File delta = temporaryFolder.newFile();
+		new SyntheticReleaseGenerator()
+				.setConceptCount(3000)
+				.setGciCount(30)
+				.setDeltaChurn(0.02)
+				.generate(snapshot, delta);
+
+		assertIncrementalMatchesFull("synthetic", snapshot, delta, 1);
+		assertIncrementalMatchesFull("synthetic concurrent", snapshot, delta, 4);
+	}
+
+	private void assertIncrementalMatchesFull(String message, File snapshot, File delta, int threads) throws Exception {
+		List<String> full = classify(snapshot, delta, null, threads);
+		assertFalse(message, full.isEmpty());
+
+		// Record the state of the snapshot then classify the delta incrementally, twice
+		// because changes which have not been imported must be reported again
+		File stateFile = new File(temporaryFolder.newFolder(), "normal-form-state.bin");
+		classify(snapshot, null, stateFile, threads);
+		assertTrue(message, stateFile.isFile());
+		assertEquals(message, full, classify(snapshot, delta, stateFile, threads));
+		assertEquals(message, full, classify(snapshot, delta, stateFile, threads));
+	}
+
+	private List<String> classify(File snapshot, File delta, File stateFile, int threads) throws Exception {
+		SnomedReasonerService snomedReasonerService = new SnomedReasonerService();
+		snomedReasonerService.setThreads(threads);
+		snomedReasonerService.setNormalFormStateFile(stateFile);
+		File results = temporaryFolder.newFile();
+		snomedReasonerService.classify("", snapshot, delta, results, ELK_REASONER_FACTORY, false);
+		List<String> lines = new ArrayList<>(readInferredRelationshipLinesTrim(results));
+		Collections.sort(lines);
+		return lines;
+	}
+}
@@ -0,0 +1,78 @@
+package org.snomed.otf.owltoolkit.service.classification;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snomed.otf.owltoolkit.service.ReasonerSession;
+import org.snomed.otf.owltoolkit.service.SnomedReasonerService;
+import org.snomed.otf.owltoolkit.testutil.SyntheticReleaseGenerator;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.snomed.otf.owltoolkit.service.SnomedReasonerService.ELK_REASONER_FACTORY;
+import static org.snomed.otf.owltoolkit.service.classification.TestFileUtil.readInferredRelationshipLinesTrim;
+
+public class ReasonerSessionIntegrationTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testSessionMatchesFullClassificationForEachDelta() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File propertyChainDelta = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Active_Ingredient_Property_Chain_delta");
+		File transitiveDelta = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Anatomy_Transitive_Reflexive_delta");
+		File diabetesDelta = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Add_Diabetes_delta");
+		File gciDelta = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Secondary_Diabetes_GCI_delta");
+
+		// Deltas are classified in turn, each one replacing the changes of the previous one
+		assertSessionMatchesFull(baseRF2SnapshotZip, propertyChainDelta, transitiveDelta, propertyChainDelta, null, diabetesDelta, gciDelta, gciDelta);
+	}
+
+	@Test
+	public void testSessionWithSyntheticRelease() throws Exception {
+		File snapshot = temporaryFolder.newFile();
+		File delta = temporaryFolder.newFile();
+		new SyntheticReleaseGenerator()
+				.setConceptCount(3000)
+				.setGciCount(30)
+				.setDeltaChurn(0.02)
+				.generate(snapshot, delta);
+
+		assertSessionMatchesFull(snapshot, delta, null, delta);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClosedSession() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		ReasonerSession session = new SnomedReasonerService().openSession(Collections.singleton(baseRF2SnapshotZip), ELK_REASONER_FACTORY);
+		session.close();
+		session.classify("", (File) null, temporaryFolder.newFile());
+	}
+
+	private void assertSessionMatchesFull(File snapshot, File... deltas) throws Exception {
+		SnomedReasonerService snomedReasonerService = new SnomedReasonerService();
+		try (ReasonerSession session = snomedReasonerService.openSession(Collections.singleton(snapshot), ELK_REASONER_FACTORY)) {
+			for (File delta : deltas) {
+				File fullResults = temporaryFolder.newFile();
+				snomedReasonerService.classify("", snapshot, delta, fullResults, ELK_REASONER_FACTORY, false);
+
+				File sessionResults = temporaryFolder.newFile();
+				session.classify("", delta, sessionResults);
+
+				assertEquals(delta == null ? "snapshot" : delta.getName(), readSorted(fullResults), readSorted(sessionResults));
+			}
+		}
+	}
+
+	private List<String> readSorted(File results) throws Exception {
+		List<String> lines = new ArrayList<>(readInferredRelationshipLinesTrim(results));
+		Collections.sort(lines);
+		return lines;
+	}
+}
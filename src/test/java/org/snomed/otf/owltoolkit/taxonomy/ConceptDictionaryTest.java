@@ -0,0 +1,41 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConceptDictionaryTest {
+
+	@Test
+	public void testOrdinalsAreDenseAndInIdOrder() {
+		ConceptDictionary dictionary = ConceptDictionary.of(new long[] {300L, 100L, 200L, 100L});
+
+		assertEquals(3, dictionary.size());
+		assertEquals(0, dictionary.getOrdinal(100L));
+		assertEquals(1, dictionary.getOrdinal(200L));
+		assertEquals(2, dictionary.getOrdinal(300L));
+		assertEquals(300L, dictionary.getConceptId(2));
+		assertEquals(ConceptDictionary.NOT_FOUND, dictionary.getOrdinal(400L));
+		assertEquals(3, dictionary.getOrCreateOrdinal(400L));
+		assertEquals(3, dictionary.getOrCreateOrdinal(400L));
+	}
+
+	@Test
+	public void testLayerKeepsBaseOrdinals() {
+		ConceptDictionary base = ConceptDictionary.of(new long[] {100L, 200L});
+		ConceptDictionary layer = new ConceptDictionary(base);
+
+		assertEquals(1, layer.getOrCreateOrdinal(200L));
+		assertEquals(2, layer.getOrCreateOrdinal(500L));
+		assertEquals(500L, layer.getConceptId(2));
+		assertEquals(100L, layer.getConceptId(0));
+		assertEquals(3, layer.size());
+
+		// The base is not changed by the layer and ids added to the base later are not visible
+		assertFalse(base.contains(500L));
+		base.getOrCreateOrdinal(600L);
+		assertFalse(layer.contains(600L));
+		assertEquals(3, layer.getOrCreateOrdinal(600L));
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InactiveRelationshipIndexTest {
+
+	@Test
+	public void testLatestRelationshipIdKept() {
+		InactiveRelationshipIndex index = new InactiveRelationshipIndex();
+		index.put(100, 116680003, 200, 0, 1, 20180131);
+		index.put(100, 116680003, 200, 0, 2, 20190131);
+		// Older relationship does not replace the latest
+		index.put(100, 116680003, 200, 0, 3, 20170131);
+		// Equal effective time, the last added is kept
+		index.put(100, 363698007, 300, 1, 4, 20180131);
+		index.put(100, 363698007, 300, 1, 5, 20180131);
+
+		assertEquals(2, getRelationshipId(index, 100, 116680003, 200, 0));
+		assertEquals(5, getRelationshipId(index, 100, 363698007, 300, 1));
+		assertEquals(-1, getRelationshipId(index, 100, 363698007, 300, 2));
+		assertEquals(-1, getRelationshipId(index, 101, 116680003, 200, 0));
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	public void testGrowth() {
+		InactiveRelationshipIndex index = new InactiveRelationshipIndex();
+		for (int i = 0; i < 10_000; i++) {
+			index.put(10 + i % 7, 116680003, i, i % 3, 1000 + i, 20180731);
+		}
+		assertEquals(10_000, index.size());
+		for (int i = 0; i < 10_000; i++) {
+			assertEquals(1000 + i, getRelationshipId(index, 10 + i % 7, 116680003, i, i % 3));
+		}
+
+		InactiveRelationshipIndex copy = new InactiveRelationshipIndex();
+		index.forEach(copy::put);
+		assertEquals(index, copy);
+	}
+
+	private long getRelationshipId(InactiveRelationshipIndex index, long sourceId, long typeId, long destinationId, int group) {
+		int slot = index.find(sourceId, typeId, destinationId, group);
+		return slot != InactiveRelationshipIndex.NOT_FOUND ? index.getRelationshipId(slot) : -1;
+	}
+}
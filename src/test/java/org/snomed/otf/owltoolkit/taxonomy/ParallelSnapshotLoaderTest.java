@@ -0,0 +1,144 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.junit.Test;
+import org.snomed.otf.owltoolkit.util.InputStreamSet;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ParallelSnapshotLoaderTest {
+
+	private static final String CONCEPT_HEADER = "id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId";
+	private static final String RELATIONSHIP_HEADER = "id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId";
+	private static final String OWL_AXIOM_HEADER = "id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId\towlExpression";
+
+	@Test
+	public void testExtensionMatchesSingleImport() throws Exception {
+		File baseZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File extensionZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Extension_snapshot");
+		assertBuildsMatch(baseZip, extensionZip);
+	}
+
+	@Test
+	public void testLatestEffectiveTimeWins() throws Exception {
+		File international = createArchive(
+				Arrays.asList(
+						"100\t20180131\t1\t900000000000207008\t900000000000074008",
+						"200\t20180131\t1\t900000000000207008\t900000000000074008",
+						"300\t20180131\t1\t900000000000207008\t900000000000074008"),
+				Arrays.asList(
+						"1001\t20180131\t1\t900000000000207008\t200\t100\t0\t116680003\t900000000000010007\t900000000000451002",
+						"1002\t20180131\t1\t900000000000207008\t300\t100\t0\t116680003\t900000000000010007\t900000000000451002"),
+				Arrays.asList(
+						"2001\t20180131\t1\t900000000000207008\t200\t100\t0\t116680003\t900000000000011006\t900000000000451002",
+						"2002\t20180131\t0\t900000000000207008\t300\t100\t0\t116680003\t900000000000011006\t900000000000451002"),
+				Arrays.asList(
+						"a8b8c1a4-0b22-4a3a-9f54-2b8f4b1c5d01\t20180131\t1\t900000000000207008\t733073007\t300\tSubClassOf(:300 :100)"));
+		File extension = createArchive(
+				Arrays.asList(
+						// Inactivated in the extension
+						"200\t20180731\t0\t900101001\t900000000000074008",
+						// Older state of the international concept
+						"300\t20170131\t0\t900101001\t900000000000074008"),
+				Arrays.asList(
+						"1001\t20180731\t0\t900101001\t200\t100\t0\t116680003\t900000000000010007\t900000000000451002"),
+				Arrays.asList(
+						// Reactivated in the extension
+						"2002\t20180731\t1\t900101001\t300\t100\t0\t116680003\t900000000000011006\t900000000000451002"),
+				Arrays.asList(
+						"a8b8c1a4-0b22-4a3a-9f54-2b8f4b1c5d01\t20180731\t0\t900101001\t733073007\t300\tSubClassOf(:300 :100)"));
+
+		SnomedTaxonomy taxonomy = assertBuildsMatch(international, extension);
+		assertFalse(taxonomy.getAllConceptIds().contains(200L));
+		assertTrue(taxonomy.getInactivatedConcepts().contains(200L));
+		assertTrue(taxonomy.getAllConceptIds().contains(300L));
+		assertFalse(taxonomy.getStatedRelationships().containsKey(1001L));
+		assertTrue(taxonomy.getStatedRelationships().containsKey(1002L));
+		assertEquals(1, taxonomy.getInferredRelationships(300L).size());
+		assertEquals(0L, (long) taxonomy.getAxiomCount());
+	}
+
+	@Test
+	public void testLatestEffectiveTimeWinsWithinArchive() throws Exception {
+		File archive = createArchive(
+				Arrays.asList(
+						"100\t20180131\t1\t900000000000207008\t900000000000074008",
+						"200\t20180731\t1\t900000000000207008\t900000000000074008",
+						// Older history row after the current state
+						"200\t20170131\t0\t900000000000207008\t900000000000074008",
+						"300\t20170131\t1\t900000000000207008\t900000000000074008",
+						"300\t20180731\t0\t900000000000207008\t900000000000074008"),
+				Arrays.asList(
+						"1001\t20180731\t1\t900000000000207008\t200\t100\t0\t116680003\t900000000000010007\t900000000000451002",
+						"1001\t20170131\t0\t900000000000207008\t200\t100\t0\t116680003\t900000000000010007\t900000000000451002"),
+				Arrays.asList(
+						"2001\t20170131\t1\t900000000000207008\t200\t100\t0\t116680003\t900000000000011006\t900000000000451002",
+						"2001\t20180731\t0\t900000000000207008\t200\t100\t0\t116680003\t900000000000011006\t900000000000451002"),
+				Arrays.asList(
+						"a8b8c1a4-0b22-4a3a-9f54-2b8f4b1c5d01\t20180731\t0\t900000000000207008\t733073007\t200\tSubClassOf(:200 :100)",
+						"a8b8c1a4-0b22-4a3a-9f54-2b8f4b1c5d01\t20170131\t1\t900000000000207008\t733073007\t200\tSubClassOf(:200 :100)"));
+
+		for (int threads : new int[] {1, 4}) {
+			SnomedTaxonomy taxonomy;
+			try (InputStreamSet snapshotStreams = new InputStreamSet(archive)) {
+				taxonomy = new SnomedTaxonomyBuilder(threads).build(snapshotStreams, true);
+			}
+			assertTrue(taxonomy.getAllConceptIds().contains(200L));
+			assertFalse(taxonomy.getInactivatedConcepts().contains(200L));
+			assertFalse(taxonomy.getAllConceptIds().contains(300L));
+			assertTrue(taxonomy.getInactivatedConcepts().contains(300L));
+			assertTrue(taxonomy.getStatedRelationships().containsKey(1001L));
+			assertTrue(taxonomy.getInferredRelationships(200L).isEmpty());
+			assertEquals(0L, (long) taxonomy.getAxiomCount());
+		}
+	}
+
+	private SnomedTaxonomy assertBuildsMatch(File... archives) throws Exception {
+		SnomedTaxonomy expected;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(archives)) {
+			expected = new SnomedTaxonomyBuilder(1).build(snapshotStreams, true);
+		}
+		SnomedTaxonomy actual;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(archives)) {
+			actual = new SnomedTaxonomyBuilder(4).build(snapshotStreams, true);
+		}
+		assertEquals(expected.getAllConceptIds(), actual.getAllConceptIds());
+		assertEquals(expected.getFullyDefinedConceptIds(), actual.getFullyDefinedConceptIds());
+		assertEquals(expected.getInactivatedConcepts(), actual.getInactivatedConcepts());
+		assertEquals(expected.getStatedRelationships(), actual.getStatedRelationships());
+		assertEquals(expected.getConceptAxiomMap(), actual.getConceptAxiomMap());
+		assertEquals(expected.getUngroupedRolesByContentType(), actual.getUngroupedRolesByContentType());
+		assertEquals(expected.getOntologyNamespaces(), actual.getOntologyNamespaces());
+		assertEquals(expected.getOntologyHeader(), actual.getOntologyHeader());
+		assertEquals(expected.getInactiveInferredRelationshipIndex(), actual.getInactiveInferredRelationshipIndex());
+		for (Long conceptId : expected.getAllConceptIds()) {
+			assertEquals(expected.getConceptFsnTerm(conceptId), actual.getConceptFsnTerm(conceptId));
+			assertEquals(expected.getInferredRelationships(conceptId), actual.getInferredRelationships(conceptId));
+		}
+		return actual;
+	}
+
+	private File createArchive(Iterable<String> concepts, Iterable<String> statedRelationships, Iterable<String> inferredRelationships,
+			Iterable<String> axioms) throws IOException {
+
+		Path directory = Files.createTempDirectory("rf2-snapshot");
+		Path terminology = Files.createDirectories(directory.resolve("Snapshot/Terminology"));
+		write(terminology.resolve("sct2_Concept_Snapshot_INT_20180731.txt"), CONCEPT_HEADER, concepts);
+		write(terminology.resolve("sct2_StatedRelationship_Snapshot_INT_20180731.txt"), RELATIONSHIP_HEADER, statedRelationships);
+		write(terminology.resolve("sct2_Relationship_Snapshot_INT_20180731.txt"), RELATIONSHIP_HEADER, inferredRelationships);
+		write(terminology.resolve("sct2_sRefset_OWLAxiomSnapshot_INT_20180731.txt"), OWL_AXIOM_HEADER, axioms);
+		return ZipUtil.zipDirectoryRemovingCommentsAndBlankLines(directory.toString());
+	}
+
+	private void write(Path file, String header, Iterable<String> rows) throws IOException {
+		StringBuilder builder = new StringBuilder(header).append('\n');
+		rows.forEach(row -> builder.append(row).append('\n'));
+		Files.write(file, builder.toString().getBytes("UTF-8"));
+	}
+}
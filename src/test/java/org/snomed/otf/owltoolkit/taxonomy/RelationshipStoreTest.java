@@ -0,0 +1,113 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.junit.Test;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RelationshipStoreTest {
+
+	@Test
+	public void testViewsAcrossIndexRebuilds() {
+		RelationshipStore store = new RelationshipStore();
+		Relationship first = relationship(1, 116680003, 200, 0);
+		Relationship second = relationship(2, 363698007, 300, 1);
+		store.add(100, first);
+		store.add(100, second);
+		store.add(101, relationship(3, 116680003, 100, 0));
+		assertEquals(Sets.newHashSet(first, second), store.getRelationships(100));
+
+		// Rows added after the index is built are found through the overflow chain
+		Relationship third = relationship(4, 246075003, 400, 2);
+		store.add(100, third);
+		assertEquals(Sets.newHashSet(first, second, third), store.getRelationships(100));
+
+		store.remove(2);
+		assertEquals(Sets.newHashSet(first, third), store.getRelationships(100));
+		assertEquals(2, store.getRelationships(100).size());
+		assertNull(store.getRelationshipsById().get(2L));
+		assertEquals(3, store.getRelationshipsById().size());
+
+		store.setEffectiveTimeAndGroup(store.getRow(4), 20190131, 3);
+		Relationship modified = store.getRelationshipsById().get(4L);
+		assertEquals(20190131, modified.getEffectiveTime());
+		assertEquals(3, modified.getGroup());
+		assertTrue(store.getRelationships(999).isEmpty());
+	}
+
+	@Test
+	public void testManyRowsTriggerRebuild() {
+		RelationshipStore store = new RelationshipStore();
+		store.add(1, relationship(1, 116680003, 2, 0));
+		assertEquals(1, store.getRelationships(1).size());
+		Set<Relationship> expected = new HashSet<>();
+		for (int i = 0; i < 10_000; i++) {
+			Relationship relationship = relationship(1000 + i, 116680003, i, 0);
+			store.add(10 + i % 7, relationship);
+			if (i % 7 == 3) {
+				expected.add(relationship);
+			}
+			if (i % 500 == 0) {
+				// Interleave reads with writes
+				assertFalse(store.getRelationships(10).isEmpty());
+			}
+		}
+		assertEquals(expected, store.getRelationships(13));
+		assertEquals(10_001, store.size());
+	}
+
+	@Test
+	public void testViewsReturnCopies() {
+		RelationshipStore store = new RelationshipStore();
+		store.add(100, relationship(1, 116680003, 200, 0));
+		store.add(100, relationship(2, 363698007, 300, 1));
+		store.add(101, relationship(3, 116680003, 100, 0));
+
+		Set<Relationship> relationships = store.getRelationships(100);
+		assertEquals(2, relationships.size());
+		assertTrue(relationships.contains(relationship(1, 116680003, 200, 0)));
+		assertFalse(relationships.contains(relationship(1, 116680003, 201, 0)));
+		assertFalse(relationships.contains(relationship(3, 116680003, 100, 0)));
+
+		// Changes to a relationship read from the store are not written back
+		Relationship read = store.getRelationshipsById().get(2L);
+		read.setGroup(5);
+		assertEquals(1, store.getRelationshipsById().get(2L).getGroup());
+		assertTrue(relationships.contains(relationship(2, 363698007, 300, 1)));
+
+		store.remove(1);
+		assertEquals(1, relationships.size());
+		store.remove(2);
+		assertTrue(relationships.isEmpty());
+		assertEquals(1, store.getRelationships(101).size());
+	}
+
+	@Test
+	public void testAllRowsInInsertionOrder() {
+		RelationshipStore store = new RelationshipStore();
+		for (int i = 0; i < 100; i++) {
+			store.add(100 + i, relationship(1000 - i, 116680003, 200, 0));
+		}
+		store.remove(1000);
+		store.remove(950);
+		List<Long> ids = new ArrayList<>();
+		for (IntIterator rows = store.getAllRows(); rows.hasNext(); ) {
+			ids.add(store.getRelationship(rows.nextInt()).getRelationshipId());
+		}
+		assertEquals(98, ids.size());
+		assertEquals(999L, (long) ids.get(0));
+		assertEquals(901L, (long) ids.get(97));
+		assertFalse(ids.contains(950L));
+	}
+
+	private Relationship relationship(long id, long typeId, long destinationId, int group) {
+		return new Relationship(id, 20180731, 900000000000207008L, typeId, destinationId, false, group, 0, false, 900000000000011006L);
+	}
+}
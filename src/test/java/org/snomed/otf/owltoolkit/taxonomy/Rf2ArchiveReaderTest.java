@@ -0,0 +1,145 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class Rf2ArchiveReaderTest {
+
+	private static final String CONCEPT_HEADER = "id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId";
+	private static final String RELATIONSHIP_HEADER = "id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId";
+	private static final String DESCRIPTION_HEADER = "id\teffectiveTime\tactive\tmoduleId\tconceptId\tlanguageCode\ttypeId\tterm\tcaseSignificanceId";
+	private static final String OWL_AXIOM_HEADER = "id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId\towlExpression";
+
+	@Test
+	public void testReadSnapshot() throws Exception {
+		StringBuilder longExpression = new StringBuilder("SubClassOf(:100 ObjectIntersectionOf(:138875005");
+		while (longExpression.length() < 200000) {
+			longExpression.append(" :138875005");
+		}
+		longExpression.append("))");
+
+		byte[] archive = createArchive(
+				"SnomedCT/Snapshot/Terminology/sct2_Concept_Snapshot_INT_20180731.txt", file(CONCEPT_HEADER,
+						"100\t20180731\t1\t900000000000207008\t900000000000073002",
+						"",
+						"200\t\t0\t900000000000207008\t900000000000074008"),
+				// Other release types are skipped
+				"SnomedCT/Full/Terminology/sct2_Concept_Full_INT_20180731.txt", file(CONCEPT_HEADER,
+						"300\t20170131\t1\t900000000000207008\t900000000000074008"),
+				"SnomedCT/Snapshot/Terminology/sct2_StatedRelationship_Snapshot_INT_20180731.txt", file(RELATIONSHIP_HEADER,
+						"1001\t20180731\t1\t900000000000207008\t100\t138875005\t2\t116680003\t900000000000010007\t900000000000451002"),
+				"SnomedCT/Snapshot/Terminology/sct2_Description_Snapshot-en_INT_20180731.txt", file(DESCRIPTION_HEADER,
+						"11\t20180731\t1\t900000000000207008\t100\ten\t900000000000013009\tSynonym\t900000000000448009",
+						"12\t20180731\t1\t900000000000207008\t100\ten\t900000000000003001\tCafé (disorder)\t900000000000448009"),
+				"SnomedCT/Snapshot/Refset/Content/der2_cRefset_AssociationSnapshot_INT_20180731.txt", file(OWL_AXIOM_HEADER,
+						"not-read\t20180731\t1\t900000000000207008\t900000000000527005\t100\t200"),
+				"SnomedCT/Snapshot/Terminology/sct2_sRefset_OWLAxiomSnapshot_INT_20180731.txt", file(OWL_AXIOM_HEADER,
+						"a8b8c1a4-0b22-4a3a-9f54-2b8f4b1c5d01\t20180731\t1\t900000000000207008\t733073007\t100\t" + longExpression));
+
+		List<String> states = new ArrayList<>();
+		new Rf2ArchiveReader(true).readSnapshot(new ByteArrayInputStream(archive), new RecordingComponentFactory(states));
+
+		assertEquals(Arrays.asList(
+				"concept 100 20180731 true 900000000000207008 900000000000073002",
+				"concept 200 " + PrimitiveComponentFactory.UNPUBLISHED + " false 900000000000207008 900000000000074008",
+				"relationship 1001 20180731 true 900000000000207008 100 138875005 2 116680003 900000000000010007 900000000000451002",
+				"description 12 20180731 true 900000000000207008 100 900000000000003001 Café (disorder)",
+				"member a8b8c1a4-0b22-4a3a-9f54-2b8f4b1c5d01 20180731 true 900000000000207008 733073007 100 [" + longExpression + "]"), states);
+	}
+
+	@Test
+	public void testDescriptionsSkippedWithoutFSNs() throws Exception {
+		byte[] archive = createArchive(
+				"sct2_Description_Snapshot-en_INT_20180731.txt", file(DESCRIPTION_HEADER,
+						"12\t20180731\t1\t900000000000207008\t100\ten\t900000000000003001\tTerm\t900000000000448009"));
+		List<String> states = new ArrayList<>();
+		new Rf2ArchiveReader(false).readSnapshot(new ByteArrayInputStream(archive), new RecordingComponentFactory(states));
+		assertTrue(states.isEmpty());
+	}
+
+	@Test
+	public void testReadDeltaOnlyReadsDeltaFiles() throws Exception {
+		byte[] archive = createArchive(
+				"sct2_Concept_Snapshot_INT_20180731.txt", file(CONCEPT_HEADER, "100\t20180731\t1\t900000000000207008\t900000000000073002"),
+				"sct2_Concept_Delta_INT_20180731.txt", file(CONCEPT_HEADER, "200\t\t1\t900000000000207008\t900000000000074008"));
+		List<String> states = new ArrayList<>();
+		new Rf2ArchiveReader(false).readDelta(new ByteArrayInputStream(archive), new RecordingComponentFactory(states));
+		assertEquals(1, states.size());
+		assertTrue(states.get(0).startsWith("concept 200 "));
+	}
+
+	@Test
+	public void testInvalidIdentifier() throws Exception {
+		byte[] archive = createArchive(
+				"sct2_Concept_Snapshot_INT_20180731.txt", file(CONCEPT_HEADER,
+						"100\t20180731\t1\t900000000000207008\t900000000000073002",
+						"10x\t20180731\t1\t900000000000207008\t900000000000073002"));
+		try {
+			new Rf2ArchiveReader(false).readSnapshot(new ByteArrayInputStream(archive), new RecordingComponentFactory(new ArrayList<>()));
+			fail("Expected ReleaseImportException");
+		} catch (ReleaseImportException e) {
+			assertEquals("Failed to read line 3 of RF2 file sct2_Concept_Snapshot_INT_20180731.txt.", e.getMessage());
+		}
+	}
+
+	private String file(String header, String... rows) {
+		// Release files use CRLF line endings
+		return header + "\r\n" + String.join("\r\n", rows) + "\r\n";
+	}
+
+	private byte[] createArchive(String... namesAndContent) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+			for (int i = 0; i < namesAndContent.length; i += 2) {
+				zipOutputStream.putNextEntry(new ZipEntry(namesAndContent[i]));
+				zipOutputStream.write(namesAndContent[i + 1].getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return outputStream.toByteArray();
+	}
+
+	private static final class RecordingComponentFactory implements PrimitiveComponentFactory {
+
+		private final List<String> states;
+
+		private RecordingComponentFactory(List<String> states) {
+			this.states = states;
+		}
+
+		@Override
+		public void newConceptState(long conceptId, int effectiveTime, boolean active, long moduleId, long definitionStatusId) {
+			states.add(String.join(" ", "concept", "" + conceptId, "" + effectiveTime, "" + active, "" + moduleId, "" + definitionStatusId));
+		}
+
+		@Override
+		public void newRelationshipState(long id, int effectiveTime, boolean active, long moduleId, long sourceId, long destinationId,
+				int relationshipGroup, long typeId, long characteristicTypeId, long modifierId) {
+			states.add(String.join(" ", "relationship", "" + id, "" + effectiveTime, "" + active, "" + moduleId, "" + sourceId, "" + destinationId,
+					"" + relationshipGroup, "" + typeId, "" + characteristicTypeId, "" + modifierId));
+		}
+
+		@Override
+		public void newDescriptionState(long id, int effectiveTime, boolean active, long moduleId, long conceptId, long typeId, String term) {
+			states.add(String.join(" ", "description", "" + id, "" + effectiveTime, "" + active, "" + moduleId, "" + conceptId, "" + typeId, term));
+		}
+
+		@Override
+		public void newReferenceSetMemberState(String id, int effectiveTime, boolean active, long moduleId, long refsetId, long referencedComponentId,
+				String[] otherValues) {
+			states.add(String.join(" ", "member", id, "" + effectiveTime, "" + active, "" + moduleId, "" + refsetId, "" + referencedComponentId,
+					Arrays.toString(otherValues)));
+		}
+	}
+}
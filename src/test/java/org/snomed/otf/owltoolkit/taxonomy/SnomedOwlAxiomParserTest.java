@@ -0,0 +1,96 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.snomed.otf.owltoolkit.ontology.OntologyService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SnomedOwlAxiomParserTest {
+
+	private final SnomedOwlAxiomParser parser = new SnomedOwlAxiomParser();
+
+	@Test
+	public void testFixtureAxiomsMatchOwlApiParser() throws IOException, OWLOntologyCreationException {
+		List<String> axioms = readFixtureAxioms();
+		assertFalse(axioms.isEmpty());
+		for (String axiom : axioms) {
+			assertSameAsOwlApi(axiom);
+		}
+	}
+
+	@Test
+	public void testOtherSupportedForms() throws OWLOntologyCreationException {
+		for (String axiom : Arrays.asList(
+				"SubClassOf(:118956008 :123037004)",
+				"SubObjectPropertyOf(:363698007 :762705008)",
+				"SubDataPropertyOf(:99001001 :762706009)",
+				"SubObjectPropertyOf(ObjectPropertyChain(:100 :200 :300) :300)",
+				"EquivalentClasses(:100 :200 :300)",
+				"SubClassOf(:322236009 ObjectIntersectionOf(:763158003 ObjectSomeValuesFrom(:609096000 DataHasValue(:3264475007 \"1\"^^xsd:integer))))",
+				"SubClassOf(:322236009 ObjectIntersectionOf(:763158003 DataHasValue(:3264475007 \"0.5\"^^xsd:decimal) DataHasValue(:3264476008 \"Tablet\"^^xsd:string)))",
+				"EquivalentClasses(\n\t:100\n\tObjectIntersectionOf( :200  ObjectSomeValuesFrom( :300 :400 ) )\n)")) {
+			assertSameAsOwlApi(axiom);
+		}
+	}
+
+	@Test
+	public void testUnsupportedSyntaxNotParsed() {
+		assertNull(parser.parse("SubClassOf(Annotation(rdfs:comment \"x\") :100 :200)"));
+		assertNull(parser.parse("SubClassOf(<http://snomed.info/id/100> :200)"));
+		assertNull(parser.parse("SubClassOf(:100 ObjectUnionOf(:200 :300))"));
+		assertNull(parser.parse("SubClassOf(:100 :200) SubClassOf(:200 :300)"));
+		assertNull(parser.parse("SubClassOf(:100"));
+		assertNull(parser.parse("SubClassOf(:100 DataHasValue(:200 \"a\\\"b\"^^xsd:string))"));
+	}
+
+	private void assertSameAsOwlApi(String axiom) throws OWLOntologyCreationException {
+		OWLAxiom expected = parseWithOwlApi(axiom);
+		OWLAxiom actual = parser.parse(axiom);
+		assertNotNull("Axiom should be parsed " + axiom, actual);
+		assertEquals(axiom, expected, actual);
+		assertEquals(axiom, expected.hashCode(), actual.hashCode());
+		assertEquals(axiom, expected.toString(), actual.toString());
+	}
+
+	private OWLAxiom parseWithOwlApi(String axiom) throws OWLOntologyCreationException {
+		OWLOntology ontology = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(
+				new StringDocumentSource("Prefix(:=<http://snomed.info/id/>) Ontology(" + axiom + ")"));
+		Set<OWLAxiom> axioms = ontology.getAxioms();
+		assertEquals(1, axioms.size());
+		return axioms.iterator().next();
+	}
+
+	private List<String> readFixtureAxioms() throws IOException {
+		List<String> axioms = new ArrayList<>();
+		List<Path> axiomFiles;
+		try (Stream<Path> paths = Files.walk(Paths.get("src/test/resources"))) {
+			axiomFiles = paths.filter(path -> path.getFileName().toString().contains("_sRefset_OWLAxiom")).collect(Collectors.toList());
+		}
+		for (Path axiomFile : axiomFiles) {
+			for (String line : Files.readAllLines(axiomFile)) {
+				String[] columns = line.split("\t");
+				if (line.startsWith("#") || line.startsWith("id\t") || columns.length < 7) {
+					continue;
+				}
+				axioms.add(columns[6].replace(OntologyService.ROLE_GROUP_OUTDATED_CONSTANT, OntologyService.ROLE_GROUP_SCTID));
+			}
+		}
+		return axioms;
+	}
+}
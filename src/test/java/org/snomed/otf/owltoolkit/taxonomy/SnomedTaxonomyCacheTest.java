@@ -0,0 +1,66 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snomed.otf.owltoolkit.util.InputStreamSet;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SnomedTaxonomyCacheTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testCachedSnapshotMatchesImport() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		File deltaZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Equivalence_delta");
+		Set<File> snapshotFiles = Sets.newHashSet(baseRF2SnapshotZip);
+
+		SnomedTaxonomy imported;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(snapshotFiles);
+			 FileInputStream deltaStream = new FileInputStream(deltaZip)) {
+			imported = new SnomedTaxonomyBuilder().build(snapshotStreams, deltaStream, true);
+		}
+
+		SnomedTaxonomyCache cache = new SnomedTaxonomyCache(temporaryFolder.getRoot());
+		String key = cache.getKey(snapshotFiles, true);
+		assertFalse(cache.getFile(key).exists());
+
+		SnomedTaxonomy firstRun;
+		try (FileInputStream deltaStream = new FileInputStream(deltaZip)) {
+			firstRun = new SnomedTaxonomyBuilder().build(snapshotFiles, deltaStream, cache, true);
+		}
+		assertTrue("Cache file written", cache.getFile(key).isFile());
+		assertNotEquals("Key depends on options", key, cache.getKey(snapshotFiles, false));
+
+		SnomedTaxonomy cachedRun;
+		try (FileInputStream deltaStream = new FileInputStream(deltaZip)) {
+			cachedRun = new SnomedTaxonomyBuilder().build(snapshotFiles, deltaStream, cache, true);
+		}
+
+		for (SnomedTaxonomy snomedTaxonomy : new SnomedTaxonomy[]{firstRun, cachedRun}) {
+			assertEquals(imported.getAllConceptIds(), snomedTaxonomy.getAllConceptIds());
+			assertEquals(imported.getFullyDefinedConceptIds(), snomedTaxonomy.getFullyDefinedConceptIds());
+			assertEquals(imported.getInactivatedConcepts(), snomedTaxonomy.getInactivatedConcepts());
+			assertEquals(imported.getStatedRelationships(), snomedTaxonomy.getStatedRelationships());
+			assertEquals(imported.getConceptAxiomMap(), snomedTaxonomy.getConceptAxiomMap());
+			assertEquals(imported.getUngroupedRolesByContentType(), snomedTaxonomy.getUngroupedRolesByContentType());
+			assertEquals(imported.getOntologyNamespaces(), snomedTaxonomy.getOntologyNamespaces());
+			assertEquals(imported.getOntologyHeader(), snomedTaxonomy.getOntologyHeader());
+			assertEquals(imported.getConceptFsnTerms(), snomedTaxonomy.getConceptFsnTerms());
+			assertEquals(imported.getInactiveInferredRelationshipIndex(), snomedTaxonomy.getInactiveInferredRelationshipIndex());
+			for (Long conceptId : imported.getAllConceptIds()) {
+				assertEquals(imported.getInferredRelationships(conceptId), snomedTaxonomy.getInferredRelationships(conceptId));
+				assertEquals(imported.getDescendants(conceptId), snomedTaxonomy.getDescendants(conceptId));
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SnomedTaxonomyLoaderTest {
+
+	private static final String[] AXIOM_FIELD_NAMES = {"id", "effectiveTime", "active", "moduleId", "refsetId", "referencedComponentId", "owlExpression"};
+
+	@Test
+	public void testParallelDeserialisationMatchesSequential() throws ReleaseImportException {
+		SnomedTaxonomyLoader sequentialLoader = new SnomedTaxonomyLoader();
+		SnomedTaxonomyLoader parallelLoader = new SnomedTaxonomyLoader(null, null, 4);
+		for (SnomedTaxonomyLoader loader : new SnomedTaxonomyLoader[]{sequentialLoader, parallelLoader}) {
+			for (int i = 1; i <= 200; i++) {
+				addAxiom(loader, "a" + i, "1", String.valueOf(1000 + i), "SubClassOf(:" + (1000 + i) + " :138875005)");
+			}
+			// Replace and remove axioms within the same load
+			addAxiom(loader, "a5", "1", "1005", "SubClassOf(:1005 :1001)");
+			addAxiom(loader, "a6", "0", "1006", "SubClassOf(:1006 :138875005)");
+			loader.reportErrors();
+
+			loader.startLoadingDelta();
+			addAxiom(loader, "a7", "0", "1007", "SubClassOf(:1007 :138875005)");
+			addAxiom(loader, "a8", "1", "1008", "SubClassOf(:1008 :1002)");
+			loader.reportErrors();
+		}
+
+		Map<Long, Set<OWLAxiom>> expected = sequentialLoader.getSnomedTaxonomy().getConceptAxiomMap();
+		Map<Long, Set<OWLAxiom>> actual = parallelLoader.getSnomedTaxonomy().getConceptAxiomMap();
+		assertEquals(expected, actual);
+		assertEquals(198L, (long) parallelLoader.getSnomedTaxonomy().getAxiomCount());
+		assertTrue(actual.get(1006L).isEmpty());
+		assertEquals(1, actual.get(1005L).size());
+	}
+
+	@Test
+	public void testParallelDeserialisationReportsFirstFailingMember() {
+		SnomedTaxonomyLoader loader = new SnomedTaxonomyLoader(null, null, 4);
+		addAxiom(loader, "a1", "1", "1001", "SubClassOf(:1001 :138875005)");
+		addAxiom(loader, "a2", "1", "1002", "SubClassOf(:1002");
+		addAxiom(loader, "a3", "1", "1003", "SubClassOf(:1003");
+		try {
+			loader.reportErrors();
+			fail("Expected ReleaseImportException");
+		} catch (ReleaseImportException e) {
+			assertEquals("Failed to parse OWL Axiom in reference set member 'a2'", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testCloseStopsDeserialisationThreads() throws InterruptedException {
+		SnomedTaxonomyLoader loader = new SnomedTaxonomyLoader(null, null, 4);
+		for (int i = 0; i < 100; i++) {
+			addAxiom(loader, "a" + i, "1", "" + (1000 + i), "SubClassOf(:" + (1000 + i) + " :138875005)");
+		}
+		assertTrue(countDeserialisationThreads() > 0);
+		loader.close();
+
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (countDeserialisationThreads() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, countDeserialisationThreads());
+		assertTrue("Abandoned axioms are not added", loader.getSnomedTaxonomy().getConceptAxiomMap().isEmpty());
+	}
+
+	private long countDeserialisationThreads() {
+		return Thread.getAllStackTraces().keySet().stream()
+				.filter(thread -> thread.isAlive() && thread.getName().equals("axiom-deserialiser"))
+				.count();
+	}
+
+	private void addAxiom(SnomedTaxonomyLoader loader, String id, String active, String conceptId, String owlExpression) {
+		loader.newReferenceSetMemberState(AXIOM_FIELD_NAMES, id, "", active, Concepts.SNOMED_CT_CORE_MODULE, Concepts.OWL_AXIOM_REFERENCE_SET, conceptId, owlExpression);
+	}
+}
@@ -0,0 +1,152 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+import org.snomed.otf.owltoolkit.util.InputStreamSet;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SnomedTaxonomyOverlayTest {
+
+	private static final String[] DELTAS = {
+			"SnomedCT_MiniRF2_Equivalence_delta",
+			"SnomedCT_MiniRF2_Add_Diabetes_delta",
+			"SnomedCT_MiniRF2_Change_Axiom_Parents_delta",
+			"SnomedCT_MiniRF2_Concept_Inactivation_delta",
+			"SnomedCT_MiniRF2_Inactivate_Attribute_delta",
+			"SnomedCT_MiniRF2_Anatomy_Transitive_Reflexive_delta"
+	};
+
+	@Test
+	public void testOverlayMatchesImport() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		Set<File> snapshotFiles = Sets.newHashSet(baseRF2SnapshotZip);
+
+		SnomedTaxonomy base = new SnomedTaxonomyBuilder().buildBase(snapshotFiles, null, true);
+		assertTrue(base.isFrozen());
+
+		for (String delta : DELTAS) {
+			File deltaZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/" + delta);
+
+			SnomedTaxonomy imported;
+			try (InputStreamSet snapshotStreams = new InputStreamSet(snapshotFiles);
+				 FileInputStream deltaStream = new FileInputStream(deltaZip)) {
+				imported = new SnomedTaxonomyBuilder().build(snapshotStreams, deltaStream, true);
+			}
+
+			SnomedTaxonomy overlay;
+			try (FileInputStream deltaStream = new FileInputStream(deltaZip)) {
+				overlay = new SnomedTaxonomyBuilder().buildOverlay(base, deltaStream, true);
+			}
+			assertTrue(overlay.isOverlay());
+			assertTaxonomiesEqual(delta, imported, overlay);
+		}
+
+		// The base is not changed by the overlays
+		SnomedTaxonomy snapshot;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(snapshotFiles)) {
+			snapshot = new SnomedTaxonomyBuilder().build(snapshotStreams, true);
+		}
+		assertTaxonomiesEqual("base", snapshot, base);
+	}
+
+	@Test
+	public void testOverlayChanges() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		SnomedTaxonomy base = new SnomedTaxonomyBuilder().buildBase(Sets.newHashSet(baseRF2SnapshotZip), null, false);
+		SnomedTaxonomy overlay = base.createOverlay();
+
+		long conceptId = base.getAllConceptIds().iterator().next();
+		Relationship isA = base.getStatedRelationships().values().stream()
+				.filter(relationship -> relationship.getTypeId() == 116680003L)
+				.findFirst().orElseThrow(AssertionError::new);
+		long childId = findSource(base, isA.getRelationshipId());
+
+		overlay.getAllConceptIds().remove(conceptId);
+		overlay.getAllConceptIds().add(123L);
+		overlay.removeRelationship(true, Long.toString(childId), Long.toString(isA.getRelationshipId()));
+
+		assertFalse(overlay.getAllConceptIds().contains(conceptId));
+		assertTrue(overlay.getAllConceptIds().contains(123L));
+		assertEquals(base.getAllConceptIds().size(), overlay.getAllConceptIds().size());
+		assertFalse(overlay.getStatedRelationships().containsKey(isA.getRelationshipId()));
+		assertEquals(base.getStatedRelationships().size() - 1, overlay.getStatedRelationships().size());
+		assertEquals(base.getStatedRelationships().size() - 1, overlay.getStatedRelationships().entrySet().size());
+		assertFalse(overlay.getSubTypeIds(isA.getDestinationId()).contains(childId));
+
+		assertTrue(base.getAllConceptIds().contains(conceptId));
+		assertFalse(base.getAllConceptIds().contains(123L));
+		assertTrue(base.getStatedRelationships().containsKey(isA.getRelationshipId()));
+		assertTrue(base.getSubTypeIds(isA.getDestinationId()).contains(childId));
+	}
+
+	@Test
+	public void testFrozenTaxonomyIsReadOnly() throws Exception {
+		File baseRF2SnapshotZip = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/SnomedCT_MiniRF2_Base_snapshot");
+		SnomedTaxonomy base = new SnomedTaxonomyBuilder().buildBase(Sets.newHashSet(baseRF2SnapshotZip), null, false);
+
+		try {
+			base.addFsn("123", "Term");
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		try {
+			base.getAllConceptIds().add(123L);
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+		try {
+			new SnomedTaxonomy().createOverlay();
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		try {
+			base.createOverlay().getStatedRelationshipStore();
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	private long findSource(SnomedTaxonomy taxonomy, long relationshipId) {
+		for (Long conceptId : taxonomy.getAllConceptIds()) {
+			for (Relationship relationship : taxonomy.getStatedRelationships(conceptId)) {
+				if (relationship.getRelationshipId() == relationshipId) {
+					return conceptId;
+				}
+			}
+		}
+		throw new AssertionError("Relationship " + relationshipId + " not found.");
+	}
+
+	private void assertTaxonomiesEqual(String message, SnomedTaxonomy expected, SnomedTaxonomy actual) {
+		assertEquals(message, expected.getAllConceptIds(), actual.getAllConceptIds());
+		assertEquals(message, expected.getFullyDefinedConceptIds(), actual.getFullyDefinedConceptIds());
+		assertEquals(message, expected.getInactivatedConcepts(), actual.getInactivatedConcepts());
+		assertEquals(message, expected.getStatedRelationships(), actual.getStatedRelationships());
+		assertEquals(message, expected.getConceptAxiomMap(), actual.getConceptAxiomMap());
+		assertEquals(message, expected.getAxiomCount(), actual.getAxiomCount());
+		assertEquals(message, expected.getUngroupedRolesByContentType(), actual.getUngroupedRolesByContentType());
+		assertEquals(message, expected.getOntologyNamespaces(), actual.getOntologyNamespaces());
+		assertEquals(message, expected.getOntologyHeader(), actual.getOntologyHeader());
+		expected.getInactiveInferredRelationshipIndex().forEach((sourceId, typeId, destinationId, group, relationshipId, effectiveTime) ->
+				assertEquals(message, relationshipId, actual.getInactiveInferredRelationshipId(sourceId, typeId, destinationId, group)));
+		for (Long conceptId : expected.getAllConceptIds()) {
+			assertEquals(message, expected.getConceptFsnTerm(conceptId), actual.getConceptFsnTerm(conceptId));
+			assertEquals(message, expected.getInferredRelationships(conceptId), actual.getInferredRelationships(conceptId));
+			assertEquals(message, expected.getSuperTypeIds(conceptId), actual.getSuperTypeIds(conceptId));
+			assertEquals(message, expected.getSubTypeIds(conceptId), actual.getSubTypeIds(conceptId));
+			assertEquals(message, expected.getDescendants(conceptId), actual.getDescendants(conceptId));
+			assertEquals(message, expected.getAncestors(conceptId), actual.getAncestors(conceptId));
+		}
+	}
+}
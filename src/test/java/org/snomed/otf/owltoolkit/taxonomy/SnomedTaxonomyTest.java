@@ -0,0 +1,80 @@
+package org.snomed.otf.owltoolkit.taxonomy;
+
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+
+import static org.junit.Assert.assertEquals;
+
+public class SnomedTaxonomyTest {
+
+	private SnomedTaxonomyLoader snomedTaxonomyLoader;
+
+	@Before
+	public void setup() {
+		snomedTaxonomyLoader = new SnomedTaxonomyLoader();
+		addConcept("138875005");
+		addConcept("100", "1001", "138875005");
+		addConcept("200", "2001", "138875005");
+		addConcept("300", "3001", "100");
+		// Second parent
+		addConcept("400", "4001", "300");
+		addIsA("4002", "400", "200");
+	}
+
+	@Test
+	public void testDescendantsFollowAllParents() {
+		SnomedTaxonomy snomedTaxonomy = snomedTaxonomyLoader.getSnomedTaxonomy();
+		assertEquals(Sets.newHashSet(100L, 200L, 300L, 400L), snomedTaxonomy.getDescendants(138875005L));
+		assertEquals(Sets.newHashSet(300L, 400L), snomedTaxonomy.getDescendants(100L));
+		assertEquals(Sets.newHashSet(400L), snomedTaxonomy.getDescendants(200L));
+		assertEquals(Sets.newHashSet(), snomedTaxonomy.getDescendants(400L));
+		assertEquals(Sets.newHashSet(100L, 138875005L, 200L, 300L), snomedTaxonomy.getAncestors(400L));
+	}
+
+	@Test
+	public void testIndexRefreshedAfterHierarchyChange() {
+		SnomedTaxonomy snomedTaxonomy = snomedTaxonomyLoader.getSnomedTaxonomy();
+		assertEquals(Sets.newHashSet(400L), snomedTaxonomy.getDescendants(200L));
+
+		snomedTaxonomyLoader.startLoadingDelta();
+		snomedTaxonomyLoader.newRelationshipState("4002", "", "0", Concepts.SNOMED_CT_CORE_MODULE, "400", "200", "0", Concepts.IS_A, Concepts.STATED_RELATIONSHIP, "");
+		addConcept("500", "5001", "200");
+
+		assertEquals(Sets.newHashSet(500L), snomedTaxonomy.getDescendants(200L));
+		assertEquals(Sets.newHashSet(100L, 138875005L, 300L), snomedTaxonomy.getAncestors(400L));
+	}
+
+	@Test
+	public void testRemovedIsAUsesSourceOfExistingRelationship() {
+		SnomedTaxonomy snomedTaxonomy = snomedTaxonomyLoader.getSnomedTaxonomy();
+		snomedTaxonomyLoader.startLoadingDelta();
+		// The delta row names a different source concept to the one the relationship is held against
+		snomedTaxonomyLoader.newRelationshipState("4002", "", "0", Concepts.SNOMED_CT_CORE_MODULE, "300", "200", "0", Concepts.IS_A, Concepts.STATED_RELATIONSHIP, "");
+
+		assertEquals(Sets.newHashSet(), snomedTaxonomy.getSubTypeIds(200L));
+		assertEquals(Sets.newHashSet(), snomedTaxonomy.getDescendants(200L));
+		assertEquals(Sets.newHashSet(400L), snomedTaxonomy.getSubTypeIds(300L));
+	}
+
+	@Test
+	public void testInactiveConceptsExcluded() {
+		snomedTaxonomyLoader.startLoadingDelta();
+		snomedTaxonomyLoader.newConceptState("300", "", "0", Concepts.SNOMED_CT_CORE_MODULE, "");
+		assertEquals(Sets.newHashSet(400L), snomedTaxonomyLoader.getSnomedTaxonomy().getDescendants(100L));
+	}
+
+	private void addConcept(String conceptId) {
+		snomedTaxonomyLoader.newConceptState(conceptId, "", "1", Concepts.SNOMED_CT_CORE_MODULE, "");
+	}
+
+	private void addConcept(String conceptId, String relationshipId, String parentId) {
+		addConcept(conceptId);
+		addIsA(relationshipId, conceptId, parentId);
+	}
+
+	private void addIsA(String relationshipId, String conceptId, String parentId) {
+		snomedTaxonomyLoader.newRelationshipState(relationshipId, "", "1", Concepts.SNOMED_CT_CORE_MODULE, conceptId, parentId, "0", Concepts.IS_A, Concepts.STATED_RELATIONSHIP, "");
+	}
+}
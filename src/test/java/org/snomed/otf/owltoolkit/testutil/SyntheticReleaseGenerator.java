@@ -0,0 +1,716 @@
+/*
+ * Copyright 2019 SNOMED International, http://snomed.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.snomed.otf.owltoolkit.testutil;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a synthetic RF2 release for load testing: a snapshot archive and an authoring delta archive
+ * which can be loaded by SnomedTaxonomyBuilder and classified by SnomedReasonerService.
+ *
+ * Content concepts form a hierarchy with the given fan-out and maximum depth, some concepts have a second parent.
+ * Concepts are defined using OWL axioms which restate the relationships of their parents and add new attribute
+ * relationships pointing at earlier concepts. Relationships of attributes which are not never grouped are in role groups,
+ * shared according to the role group density. Some attributes are never grouped and some are transitive with a property chain.
+ * Metadata and attribute concepts use stated relationships, like the MiniRF2 test releases.
+ * Inferred relationships in the snapshot are a copy of the stated form so the first classification also reports
+ * redundant relationships and any new subsumptions introduced by the random definitions.
+ *
+ * The delta changes a fraction of the concepts: changing a parent, adding an attribute, inactivating unreferenced
+ * concepts and adding new child concepts. The same seed and parameters always produce the same archives.
+ *
+ * Usage: SyntheticReleaseGenerator outputDirectory [parameter=value ...]
+ * where the parameters are seed, conceptCount, fanOut, maxDepth, multipleParentRate, attributeCount,
+ * neverGroupedAttributeCount, relationshipsPerConcept, roleGroupDensity, fullyDefinedRate, propertyChainCount,
+ * gciCount, deltaChurn and releaseDate.
+ */
+public class SyntheticReleaseGenerator {
+
+	private static final String DEFINED = "900000000000073002";
+	private static final String PRIMITIVE = "900000000000074008";
+	private static final String EXISTENTIAL = "900000000000451002";
+	private static final String CASE_INSENSITIVE = "900000000000448009";
+	private static final String ENGLISH = "en";
+	private static final String MRCM_DOMAIN = Concepts.ROOT;
+	private static final String MRCM_RULE_STRENGTH_MANDATORY = "723597001";
+	private static final String ROLE_GROUP = ":609096000";
+
+	private static final String CONCEPT_PARTITION = "00";
+	private static final String DESCRIPTION_PARTITION = "01";
+	private static final String RELATIONSHIP_PARTITION = "02";
+	private static final int ROOT_PARENT = -1;
+
+	private static final String[][] METADATA_HIERARCHY = {
+			{"900000000000441003", Concepts.ROOT, "SNOMED CT Model Component (metadata)"},
+			{"410662002", "900000000000441003", "Concept model attribute (attribute)"},
+			{Concepts.CONCEPT_MODEL_OBJECT_ATTRIBUTE, "410662002", "Concept model object attribute (attribute)"},
+			{Concepts.CONCEPT_MODEL_DATA_ATTRIBUTE, "410662002", "Concept model data attribute (attribute)"},
+			{Concepts.IS_A, "900000000000441003", "Is a (attribute)"}
+	};
+
+	private static final String[][] ONTOLOGY_NAMESPACES = {
+			{"owl", "http://www.w3.org/2002/07/owl#"},
+			{"rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#"},
+			{"rdfs", "http://www.w3.org/2000/01/rdf-schema#"},
+			{"xml", "http://www.w3.org/XML/1998/namespace"},
+			{"xsd", "http://www.w3.org/2001/XMLSchema#"},
+			{"", "http://snomed.info/id/"}
+	};
+
+	private static final int[][] VERHOEFF_D = {
+			{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, {1, 2, 3, 4, 0, 6, 7, 8, 9, 5}, {2, 3, 4, 0, 1, 7, 8, 9, 5, 6},
+			{3, 4, 0, 1, 2, 8, 9, 5, 6, 7}, {4, 0, 1, 2, 3, 9, 5, 6, 7, 8}, {5, 9, 8, 7, 6, 0, 4, 3, 2, 1},
+			{6, 5, 9, 8, 7, 1, 0, 4, 3, 2}, {7, 6, 5, 9, 8, 2, 1, 0, 4, 3}, {8, 7, 6, 5, 9, 3, 2, 1, 0, 4},
+			{9, 8, 7, 6, 5, 4, 3, 2, 1, 0}};
+	private static final int[][] VERHOEFF_P = {
+			{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, {1, 5, 7, 6, 2, 8, 3, 0, 9, 4}, {5, 8, 0, 3, 7, 9, 6, 1, 4, 2},
+			{8, 9, 1, 6, 0, 4, 3, 5, 2, 7}, {9, 4, 5, 3, 1, 2, 7, 6, 8, 0}, {4, 2, 8, 6, 5, 7, 3, 9, 1, 0},
+			{2, 7, 9, 3, 8, 0, 6, 4, 1, 5}, {7, 0, 4, 6, 9, 1, 3, 2, 5, 8}};
+	private static final int[] VERHOEFF_INV = {0, 4, 3, 2, 1, 5, 6, 7, 8, 9};
+
+	private long seed = 1;
+	private int conceptCount = 10_000;
+	private int fanOut = 6;
+	private int maxDepth = 20;
+	private double multipleParentRate = 0.15;
+	private int attributeCount = 50;
+	private int neverGroupedAttributeCount = 4;
+	private double relationshipsPerConcept = 0.5;
+	private double roleGroupDensity = 0.8;
+	private double fullyDefinedRate = 0.3;
+	private int propertyChainCount = 2;
+	private int gciCount = 100;
+	private double deltaChurn = 0.01;
+	private String releaseDate = "20190131";
+
+	private Random random;
+	private long nextItemId;
+	private String[] attributeIds;
+	private List<Concept> concepts;
+	private List<Gci> gcis;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: SyntheticReleaseGenerator outputDirectory [parameter=value ...]");
+			System.exit(1);
+		}
+		SyntheticReleaseGenerator generator = new SyntheticReleaseGenerator();
+		for (int i = 1; i < args.length; i++) {
+			String[] parameter = args[i].split("=", 2);
+			if (parameter.length != 2) {
+				throw new IllegalArgumentException("Parameters should be of the form name=value, got " + args[i]);
+			}
+			generator.setParameter(parameter[0], parameter[1]);
+		}
+		File outputDirectory = new File(args[0]);
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Failed to create output directory " + outputDirectory.getAbsolutePath());
+		}
+		generator.generate(new File(outputDirectory, "synthetic-snapshot.zip"), new File(outputDirectory, "synthetic-delta.zip"));
+	}
+
+	/**
+	 * Generates the content and writes the two archives.
+	 */
+	public void generate(File snapshotArchive, File deltaArchive) throws IOException {
+		if (fanOut < 1 || maxDepth < 2) {
+			throw new IllegalArgumentException("Fan-out must be at least 1 and maximum depth at least 2.");
+		}
+		if (propertyChainCount * 2 > attributeCount || neverGroupedAttributeCount > attributeCount) {
+			throw new IllegalArgumentException("Not enough attributes for the property chains and never grouped attributes.");
+		}
+		random = new Random(seed);
+		// Item identifiers start above those of the metadata concepts so generated ids never clash
+		nextItemId = 10_000_000;
+
+		createAttributes();
+		createConcepts();
+		createGcis();
+		writeSnapshot(snapshotArchive);
+
+		List<Concept> changedConcepts = applyChurn();
+		writeDelta(deltaArchive, changedConcepts);
+		logger.info("Synthetic release written, {} concepts, {} attributes, {} GCIs, {} concepts changed in the delta.",
+				conceptCount, attributeCount, gcis.size(), changedConcepts.size());
+	}
+
+	private void createAttributes() {
+		attributeIds = new String[attributeCount];
+		for (int a = 0; a < attributeCount; a++) {
+			attributeIds[a] = newId(CONCEPT_PARTITION);
+		}
+	}
+
+	private void createConcepts() {
+		concepts = new ArrayList<>(conceptCount);
+		for (int i = 0; i < conceptCount; i++) {
+			Concept concept = new Concept(newId(CONCEPT_PARTITION), newUuid());
+			if (i < fanOut) {
+				concept.parents = new int[] {ROOT_PARENT};
+				concept.depth = 1;
+			} else {
+				int parent = chooseParent(i);
+				int secondParent = random.nextDouble() < multipleParentRate ? random.nextInt(i) : parent;
+				if (secondParent != parent && concepts.get(secondParent).depth < maxDepth) {
+					concept.parents = new int[] {parent, secondParent};
+				} else {
+					concept.parents = new int[] {parent};
+				}
+				for (int p : concept.parents) {
+					Concept parentConcept = concepts.get(p);
+					parentConcept.referenced = true;
+					concept.depth = Math.max(concept.depth, parentConcept.depth + 1);
+				}
+			}
+
+			// Restate the relationships of the parents, like authors do when refining a concept
+			IntArrayList attributes = new IntArrayList();
+			LongSet inherited = new LongOpenHashSet();
+			int maxGroup = 0;
+			for (int p = 0; p < concept.parents.length && concept.parents[p] != ROOT_PARENT; p++) {
+				int[] parentAttributes = concepts.get(concept.parents[p]).attributes;
+				int groupOffset = maxGroup;
+				for (int r = 0; r < parentAttributes.length; r += 3) {
+					if (inherited.add(((long) parentAttributes[r] << 32) | parentAttributes[r + 1])) {
+						int group = parentAttributes[r + 2] == 0 ? 0 : parentAttributes[r + 2] + groupOffset;
+						attributes.add(parentAttributes[r]);
+						attributes.add(parentAttributes[r + 1]);
+						attributes.add(group);
+						maxGroup = Math.max(maxGroup, group);
+					}
+				}
+			}
+
+			int newRelationships = i == 0 ? 0 : (int) Math.round(random.nextDouble() * 2 * relationshipsPerConcept);
+			int sharedGroup = ++maxGroup;
+			for (int r = 0; r < newRelationships; r++) {
+				int attribute = random.nextInt(attributeCount);
+				int destination = random.nextInt(i);
+				concepts.get(destination).referenced = true;
+				attributes.add(attribute);
+				attributes.add(destination);
+				if (isNeverGrouped(attribute)) {
+					attributes.add(0);
+				} else {
+					attributes.add(random.nextDouble() < roleGroupDensity ? sharedGroup : ++maxGroup);
+				}
+			}
+			concept.attributes = attributes.toIntArray();
+			concept.fullyDefined = newRelationships > 0 && random.nextDouble() < fullyDefinedRate;
+			concepts.add(concept);
+		}
+	}
+
+	private int chooseParent(int index) {
+		int parent = Math.max(0, index / fanOut - 1 - random.nextInt(fanOut));
+		for (int attempt = 0; concepts.get(parent).depth >= maxDepth; attempt++) {
+			// Fall back to a top level concept if the random choices keep hitting the depth limit
+			parent = attempt < 10 ? random.nextInt(index) : random.nextInt(Math.min(index, fanOut));
+		}
+		return parent;
+	}
+
+	private void createGcis() {
+		gcis = new ArrayList<>(gciCount);
+		int groupedAttributes = attributeCount - neverGroupedAttributeCount;
+		if (conceptCount <= fanOut || groupedAttributes == 0) {
+			return;
+		}
+		while (gcis.size() < gciCount) {
+			int conceptIndex = fanOut + random.nextInt(conceptCount - fanOut);
+			Concept concept = concepts.get(conceptIndex);
+			if (concept.fullyDefined) {
+				// GCI axioms are only authored on primitive concepts
+				continue;
+			}
+			int destination = random.nextInt(conceptCount);
+			concept.referenced = true;
+			concepts.get(destination).referenced = true;
+			gcis.add(new Gci(conceptIndex, concept.parents[0], random.nextInt(groupedAttributes), destination, newUuid()));
+		}
+	}
+
+	private List<Concept> applyChurn() {
+		int originalSize = concepts.size();
+		int changes = (int) Math.round(originalSize * deltaChurn);
+		List<Concept> changedConcepts = new ArrayList<>();
+		for (int attempt = 0; changedConcepts.size() < changes && attempt < changes * 10; attempt++) {
+			int index = random.nextInt(originalSize);
+			Concept concept = concepts.get(index);
+			if (concept.changed) {
+				continue;
+			}
+			int action = random.nextInt(10);
+			if (action < 4 && index >= fanOut) {
+				// Change the first parent
+				concept.parents[0] = chooseParent(index);
+			} else if (action == 8) {
+				if (concept.referenced) {
+					// Only inactivate concepts which are not used as a parent, destination or in a GCI
+					continue;
+				}
+				concept.active = false;
+			} else if (action == 9) {
+				Concept child = new Concept(newId(CONCEPT_PARTITION), newUuid());
+				child.parents = new int[] {index};
+				child.depth = concept.depth + 1;
+				child.attributes = new int[0];
+				child.changed = true;
+				concept.referenced = true;
+				concepts.add(child);
+				changedConcepts.add(child);
+			} else {
+				// Add an attribute relationship
+				int destination = random.nextInt(originalSize - 1);
+				if (destination >= index) {
+					destination++;
+				}
+				int attribute = random.nextInt(attributeCount);
+				int maxGroup = 0;
+				for (int r = 2; r < concept.attributes.length; r += 3) {
+					maxGroup = Math.max(maxGroup, concept.attributes[r]);
+				}
+				concept.attributes = Arrays.copyOf(concept.attributes, concept.attributes.length + 3);
+				concept.attributes[concept.attributes.length - 3] = attribute;
+				concept.attributes[concept.attributes.length - 2] = destination;
+				concept.attributes[concept.attributes.length - 1] = isNeverGrouped(attribute) ? 0 : maxGroup + 1;
+				concepts.get(destination).referenced = true;
+			}
+			concept.changed = true;
+			changedConcepts.add(concept);
+		}
+		return changedConcepts;
+	}
+
+	private void writeSnapshot(File archive) throws IOException {
+		String effectiveTime = releaseDate;
+		try (Rf2ArchiveWriter writer = new Rf2ArchiveWriter(archive, "SnomedCT_SyntheticRF2_" + releaseDate + "/Snapshot/")) {
+			writer.newFile("Terminology/sct2_Concept_Snapshot_INT_" + releaseDate + ".txt",
+					"id", "effectiveTime", "active", "moduleId", "definitionStatusId");
+			writer.row(Concepts.ROOT, effectiveTime, "1", Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, PRIMITIVE);
+			for (String[] metadata : METADATA_HIERARCHY) {
+				writer.row(metadata[0], effectiveTime, "1", Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, PRIMITIVE);
+			}
+			for (String attributeId : attributeIds) {
+				writer.row(attributeId, effectiveTime, "1", Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, PRIMITIVE);
+			}
+			for (Concept concept : concepts) {
+				writeConcept(writer, effectiveTime, concept);
+			}
+
+			writer.newFile("Terminology/sct2_Description_Snapshot-en_INT_" + releaseDate + ".txt",
+					"id", "effectiveTime", "active", "moduleId", "conceptId", "languageCode", "typeId", "term", "caseSignificanceId");
+			writeDescription(writer, effectiveTime, Concepts.ROOT, Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, "SNOMED CT Concept (SNOMED RT+CTV3)");
+			for (String[] metadata : METADATA_HIERARCHY) {
+				writeDescription(writer, effectiveTime, metadata[0], Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, metadata[2]);
+			}
+			for (int a = 0; a < attributeCount; a++) {
+				writeDescription(writer, effectiveTime, attributeIds[a], Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, "Synthetic attribute " + a + " (attribute)");
+			}
+			for (Concept concept : concepts) {
+				writeDescription(writer, effectiveTime, concept.id, Concepts.SNOMED_CT_CORE_MODULE, "Synthetic concept " + concept.id + " (finding)");
+			}
+
+			writer.newFile("Terminology/sct2_StatedRelationship_Snapshot_INT_" + releaseDate + ".txt", relationshipHeader());
+			writeMetadataRelationships(writer, effectiveTime, Concepts.STATED_RELATIONSHIP);
+
+			writer.newFile("Terminology/sct2_Relationship_Snapshot_INT_" + releaseDate + ".txt", relationshipHeader());
+			writeMetadataRelationships(writer, effectiveTime, Concepts.INFERRED_RELATIONSHIP);
+			for (Concept concept : concepts) {
+				for (int parent : concept.parents) {
+					writeRelationship(writer, effectiveTime, Concepts.SNOMED_CT_CORE_MODULE, concept.id, conceptId(parent), 0, Concepts.IS_A,
+							Concepts.INFERRED_RELATIONSHIP);
+				}
+				for (int r = 0; r < concept.attributes.length; r += 3) {
+					writeRelationship(writer, effectiveTime, Concepts.SNOMED_CT_CORE_MODULE, concept.id, conceptId(concept.attributes[r + 1]),
+							concept.attributes[r + 2], attributeIds[concept.attributes[r]], Concepts.INFERRED_RELATIONSHIP);
+				}
+			}
+
+			writer.newFile("Terminology/sct2_sRefset_OWLAxiomSnapshot_INT_" + releaseDate + ".txt", owlRefsetHeader());
+			for (int k = 0; k < propertyChainCount; k++) {
+				String attribute = attributeIds[k];
+				String transitiveAttribute = attributeIds[attributeCount - 1 - k];
+				writeAxiom(writer, effectiveTime, "1", Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, newUuid(), transitiveAttribute,
+						"TransitiveObjectProperty(:" + transitiveAttribute + ")");
+				writeAxiom(writer, effectiveTime, "1", Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, newUuid(), attribute,
+						"SubObjectPropertyOf(ObjectPropertyChain(:" + attribute + " :" + transitiveAttribute + ") :" + attribute + ")");
+			}
+			for (Concept concept : concepts) {
+				writeAxiom(writer, effectiveTime, "1", Concepts.SNOMED_CT_CORE_MODULE, concept.axiomId, concept.id, createAxiomExpression(concept));
+			}
+			for (Gci gci : gcis) {
+				writeAxiom(writer, effectiveTime, "1", Concepts.SNOMED_CT_CORE_MODULE, gci.axiomId, conceptId(gci.concept), createAxiomExpression(gci));
+			}
+
+			writer.newFile("Terminology/sct2_sRefset_OWLOntologySnapshot_INT_" + releaseDate + ".txt", owlRefsetHeader());
+			for (String[] namespace : ONTOLOGY_NAMESPACES) {
+				writer.row(newUuid(), effectiveTime, "1", Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, Concepts.OWL_ONTOLOGY_REFERENCE_SET,
+						Concepts.OWL_ONTOLOGY_NAMESPACE, "Prefix(" + namespace[0] + ":=<" + namespace[1] + ">)");
+			}
+			writer.row(newUuid(), effectiveTime, "1", Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, Concepts.OWL_ONTOLOGY_REFERENCE_SET,
+					Concepts.OWL_ONTOLOGY_HEADER, "Ontology(<http://snomed.info/sct/" + Concepts.SNOMED_CT_CORE_MODULE + ">)");
+
+			writer.newFile("Refset/Metadata/der2_cissccRefset_MRCMAttributeDomainSnapshot_INT_" + releaseDate + ".txt",
+					"id", "effectiveTime", "active", "moduleId", "refsetId", "referencedComponentId", "domainId", "grouped",
+					"attributeCardinality", "attributeInGroupCardinality", "ruleStrengthId", "contentTypeId");
+			for (int a = 0; a < attributeCount; a++) {
+				boolean grouped = !isNeverGrouped(a);
+				writer.row(newUuid(), effectiveTime, "1", Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, Concepts.MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL_REFERENCE_SET,
+						attributeIds[a], MRCM_DOMAIN, grouped ? "1" : "0", "0..*", grouped ? "0..1" : "0..0", MRCM_RULE_STRENGTH_MANDATORY,
+						Concepts.ALL_PRECOORDINATED_CONTENT);
+			}
+		}
+	}
+
+	private void writeDelta(File archive, List<Concept> changedConcepts) throws IOException {
+		// Authoring deltas have no effective time
+		String effectiveTime = "";
+		try (Rf2ArchiveWriter writer = new Rf2ArchiveWriter(archive, "SnomedCT_SyntheticRF2_" + releaseDate + "/Delta/")) {
+			writer.newFile("Terminology/sct2_Concept_Delta_INT_" + releaseDate + ".txt",
+					"id", "effectiveTime", "active", "moduleId", "definitionStatusId");
+			for (Concept concept : changedConcepts) {
+				writeConcept(writer, effectiveTime, concept);
+			}
+
+			writer.newFile("Terminology/sct2_Description_Delta-en_INT_" + releaseDate + ".txt",
+					"id", "effectiveTime", "active", "moduleId", "conceptId", "languageCode", "typeId", "term", "caseSignificanceId");
+			for (int i = conceptCount; i < concepts.size(); i++) {
+				Concept concept = concepts.get(i);
+				writeDescription(writer, effectiveTime, concept.id, Concepts.SNOMED_CT_CORE_MODULE, "Synthetic concept " + concept.id + " (finding)");
+			}
+
+			writer.newFile("Terminology/sct2_sRefset_OWLAxiomDelta_INT_" + releaseDate + ".txt", owlRefsetHeader());
+			for (Concept concept : changedConcepts) {
+				writeAxiom(writer, effectiveTime, concept.active ? "1" : "0", Concepts.SNOMED_CT_CORE_MODULE, concept.axiomId, concept.id,
+						createAxiomExpression(concept));
+			}
+		}
+	}
+
+	private void writeConcept(Rf2ArchiveWriter writer, String effectiveTime, Concept concept) throws IOException {
+		writer.row(concept.id, effectiveTime, concept.active ? "1" : "0", Concepts.SNOMED_CT_CORE_MODULE, concept.fullyDefined ? DEFINED : PRIMITIVE);
+	}
+
+	private void writeDescription(Rf2ArchiveWriter writer, String effectiveTime, String conceptId, String moduleId, String term) throws IOException {
+		writer.row(newId(DESCRIPTION_PARTITION), effectiveTime, "1", moduleId, conceptId, ENGLISH, Concepts.FSN, term, CASE_INSENSITIVE);
+	}
+
+	private void writeMetadataRelationships(Rf2ArchiveWriter writer, String effectiveTime, String characteristicTypeId) throws IOException {
+		for (String[] metadata : METADATA_HIERARCHY) {
+			writeRelationship(writer, effectiveTime, Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, metadata[0], metadata[1], 0, Concepts.IS_A,
+					characteristicTypeId);
+		}
+		for (String attributeId : attributeIds) {
+			writeRelationship(writer, effectiveTime, Concepts.SNOMED_CT_MODEL_COMPONENT_MODULE, attributeId, Concepts.CONCEPT_MODEL_OBJECT_ATTRIBUTE, 0,
+					Concepts.IS_A, characteristicTypeId);
+		}
+	}
+
+	private void writeRelationship(Rf2ArchiveWriter writer, String effectiveTime, String moduleId, String sourceId, String destinationId, int group,
+			String typeId, String characteristicTypeId) throws IOException {
+		writer.row(newId(RELATIONSHIP_PARTITION), effectiveTime, "1", moduleId, sourceId, destinationId, Integer.toString(group), typeId,
+				characteristicTypeId, EXISTENTIAL);
+	}
+
+	private void writeAxiom(Rf2ArchiveWriter writer, String effectiveTime, String active, String moduleId, String id, String referencedComponentId,
+			String owlExpression) throws IOException {
+		writer.row(id, effectiveTime, active, moduleId, Concepts.OWL_AXIOM_REFERENCE_SET, referencedComponentId, owlExpression);
+	}
+
+	private String createAxiomExpression(Concept concept) {
+		List<String> conjuncts = new ArrayList<>();
+		for (int parent : concept.parents) {
+			conjuncts.add(":" + conceptId(parent));
+		}
+		Map<Integer, List<String>> groups = new TreeMap<>();
+		for (int r = 0; r < concept.attributes.length; r += 3) {
+			int attribute = concept.attributes[r];
+			String someValues = someValuesFrom(attributeIds[attribute], conceptId(concept.attributes[r + 1]));
+			int group = concept.attributes[r + 2];
+			if (group == 0) {
+				conjuncts.add(someValues);
+			} else {
+				groups.computeIfAbsent(group, g -> new ArrayList<>()).add(someValues);
+			}
+		}
+		for (List<String> group : groups.values()) {
+			conjuncts.add("ObjectSomeValuesFrom(" + ROLE_GROUP + " " + intersection(group) + ")");
+		}
+		return (concept.fullyDefined ? "EquivalentClasses(:" : "SubClassOf(:") + concept.id + " " + intersection(conjuncts) + ")";
+	}
+
+	private String createAxiomExpression(Gci gci) {
+		return "SubClassOf(ObjectIntersectionOf(:" + conceptId(gci.parent) + " ObjectSomeValuesFrom(" + ROLE_GROUP + " "
+				+ someValuesFrom(attributeIds[gci.attribute], conceptId(gci.destination)) + ")) :" + conceptId(gci.concept) + ")";
+	}
+
+	private static String someValuesFrom(String attributeId, String destinationId) {
+		return "ObjectSomeValuesFrom(:" + attributeId + " :" + destinationId + ")";
+	}
+
+	private static String intersection(List<String> operands) {
+		return operands.size() == 1 ? operands.get(0) : "ObjectIntersectionOf(" + String.join(" ", operands) + ")";
+	}
+
+	private boolean isNeverGrouped(int attribute) {
+		return attribute >= attributeCount - neverGroupedAttributeCount;
+	}
+
+	private String conceptId(int index) {
+		return index == ROOT_PARENT ? Concepts.ROOT : concepts.get(index).id;
+	}
+
+	private static String[] relationshipHeader() {
+		return new String[] {"id", "effectiveTime", "active", "moduleId", "sourceId", "destinationId", "relationshipGroup", "typeId",
+				"characteristicTypeId", "modifierId"};
+	}
+
+	private static String[] owlRefsetHeader() {
+		return new String[] {"id", "effectiveTime", "active", "moduleId", "refsetId", "referencedComponentId", "owlExpression"};
+	}
+
+	/**
+	 * @return a short format SCTID with a Verhoeff check digit.
+	 */
+	private String newId(String partition) {
+		String withoutCheckDigit = nextItemId++ + partition;
+		int check = 0;
+		for (int i = 0; i < withoutCheckDigit.length(); i++) {
+			int digit = withoutCheckDigit.charAt(withoutCheckDigit.length() - 1 - i) - '0';
+			check = VERHOEFF_D[check][VERHOEFF_P[(i + 1) % 8][digit]];
+		}
+		return withoutCheckDigit + VERHOEFF_INV[check];
+	}
+
+	private String newUuid() {
+		long mostSignificantBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+		long leastSignificantBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return new UUID(mostSignificantBits, leastSignificantBits).toString();
+	}
+
+	private void setParameter(String name, String value) {
+		switch (name) {
+			case "seed": setSeed(Long.parseLong(value)); break;
+			case "conceptCount": setConceptCount(Integer.parseInt(value)); break;
+			case "fanOut": setFanOut(Integer.parseInt(value)); break;
+			case "maxDepth": setMaxDepth(Integer.parseInt(value)); break;
+			case "multipleParentRate": setMultipleParentRate(Double.parseDouble(value)); break;
+			case "attributeCount": setAttributeCount(Integer.parseInt(value)); break;
+			case "neverGroupedAttributeCount": setNeverGroupedAttributeCount(Integer.parseInt(value)); break;
+			case "relationshipsPerConcept": setRelationshipsPerConcept(Double.parseDouble(value)); break;
+			case "roleGroupDensity": setRoleGroupDensity(Double.parseDouble(value)); break;
+			case "fullyDefinedRate": setFullyDefinedRate(Double.parseDouble(value)); break;
+			case "propertyChainCount": setPropertyChainCount(Integer.parseInt(value)); break;
+			case "gciCount": setGciCount(Integer.parseInt(value)); break;
+			case "deltaChurn": setDeltaChurn(Double.parseDouble(value)); break;
+			case "releaseDate": setReleaseDate(value); break;
+			default: throw new IllegalArgumentException("Unknown parameter " + name);
+		}
+	}
+
+	public SyntheticReleaseGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public SyntheticReleaseGenerator setConceptCount(int conceptCount) {
+		this.conceptCount = conceptCount;
+		return this;
+	}
+
+	/**
+	 * @param fanOut average number of children of each concept, also the number of top level concepts.
+	 */
+	public SyntheticReleaseGenerator setFanOut(int fanOut) {
+		this.fanOut = fanOut;
+		return this;
+	}
+
+	public SyntheticReleaseGenerator setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * @param multipleParentRate fraction of concepts with a second parent.
+	 */
+	public SyntheticReleaseGenerator setMultipleParentRate(double multipleParentRate) {
+		this.multipleParentRate = multipleParentRate;
+		return this;
+	}
+
+	public SyntheticReleaseGenerator setAttributeCount(int attributeCount) {
+		this.attributeCount = attributeCount;
+		return this;
+	}
+
+	public SyntheticReleaseGenerator setNeverGroupedAttributeCount(int neverGroupedAttributeCount) {
+		this.neverGroupedAttributeCount = neverGroupedAttributeCount;
+		return this;
+	}
+
+	/**
+	 * @param relationshipsPerConcept average number of new attribute relationships on each concept,
+	 * in addition to the relationships restated from the parents.
+	 */
+	public SyntheticReleaseGenerator setRelationshipsPerConcept(double relationshipsPerConcept) {
+		this.relationshipsPerConcept = relationshipsPerConcept;
+		return this;
+	}
+
+	/**
+	 * @param roleGroupDensity fraction of the new relationships of grouped attributes which share a role group,
+	 * the others are in a role group of their own.
+	 */
+	public SyntheticReleaseGenerator setRoleGroupDensity(double roleGroupDensity) {
+		this.roleGroupDensity = roleGroupDensity;
+		return this;
+	}
+
+	/**
+	 * @param fullyDefinedRate fraction of concepts with new attributes which are fully defined.
+	 */
+	public SyntheticReleaseGenerator setFullyDefinedRate(double fullyDefinedRate) {
+		this.fullyDefinedRate = fullyDefinedRate;
+		return this;
+	}
+
+	/**
+	 * @param propertyChainCount number of transitive attributes, each with a property chain on another attribute.
+	 */
+	public SyntheticReleaseGenerator setPropertyChainCount(int propertyChainCount) {
+		this.propertyChainCount = propertyChainCount;
+		return this;
+	}
+
+	public SyntheticReleaseGenerator setGciCount(int gciCount) {
+		this.gciCount = gciCount;
+		return this;
+	}
+
+	/**
+	 * @param deltaChurn fraction of the concepts changed by the delta.
+	 */
+	public SyntheticReleaseGenerator setDeltaChurn(double deltaChurn) {
+		this.deltaChurn = deltaChurn;
+		return this;
+	}
+
+	public SyntheticReleaseGenerator setReleaseDate(String releaseDate) {
+		this.releaseDate = releaseDate;
+		return this;
+	}
+
+	private static final class Concept {
+
+		private final String id;
+		private final String axiomId;
+		private int[] parents;
+		// Attribute index, destination index and group for each relationship
+		private int[] attributes;
+		private int depth;
+		private boolean fullyDefined;
+		private boolean active = true;
+		private boolean referenced;
+		private boolean changed;
+
+		private Concept(String id, String axiomId) {
+			this.id = id;
+			this.axiomId = axiomId;
+		}
+	}
+
+	private static final class Gci {
+
+		private final int concept;
+		private final int parent;
+		private final int attribute;
+		private final int destination;
+		private final String axiomId;
+
+		private Gci(int concept, int parent, int attribute, int destination, String axiomId) {
+			this.concept = concept;
+			this.parent = parent;
+			this.attribute = attribute;
+			this.destination = destination;
+			this.axiomId = axiomId;
+		}
+	}
+
+	/**
+	 * Writes tab separated RF2 files into a zip archive. Entries have a fixed timestamp so archives are reproducible.
+	 */
+	private static final class Rf2ArchiveWriter implements Closeable {
+
+		private final ZipOutputStream zipOutputStream;
+		private final Writer writer;
+		private final String pathPrefix;
+		private boolean entryOpen;
+
+		private Rf2ArchiveWriter(File archive, String pathPrefix) throws IOException {
+			zipOutputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive), 64 * 1024));
+			writer = new BufferedWriter(new OutputStreamWriter(zipOutputStream, StandardCharsets.UTF_8), 64 * 1024);
+			this.pathPrefix = pathPrefix;
+		}
+
+		private void newFile(String path, String... header) throws IOException {
+			closeEntry();
+			ZipEntry entry = new ZipEntry(pathPrefix + path);
+			entry.setTime(0);
+			zipOutputStream.putNextEntry(entry);
+			entryOpen = true;
+			row(header);
+		}
+
+		private void row(String... values) throws IOException {
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					writer.write('\t');
+				}
+				writer.write(values[i]);
+			}
+			writer.write("\r\n");
+		}
+
+		private void closeEntry() throws IOException {
+			if (entryOpen) {
+				writer.flush();
+				zipOutputStream.closeEntry();
+				entryOpen = false;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			closeEntry();
+			zipOutputStream.close();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.snomed.otf.owltoolkit.testutil;
+
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snomed.otf.owltoolkit.constants.Concepts;
+import org.snomed.otf.owltoolkit.service.SnomedReasonerService;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomy;
+import org.snomed.otf.owltoolkit.taxonomy.SnomedTaxonomyBuilder;
+import org.snomed.otf.owltoolkit.util.InputStreamSet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.snomed.otf.owltoolkit.service.SnomedReasonerService.ELK_REASONER_FACTORY;
+import static org.snomed.otf.owltoolkit.service.classification.TestFileUtil.readInferredRelationshipLinesTrim;
+
+public class SyntheticReleaseGeneratorTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testGeneratedReleaseLoadsAndClassifies() throws Exception {
+		File snapshot = temporaryFolder.newFile("snapshot.zip");
+		File delta = temporaryFolder.newFile("delta.zip");
+		new SyntheticReleaseGenerator()
+				.setConceptCount(2000)
+				.setGciCount(20)
+				.setDeltaChurn(0.05)
+				.generate(snapshot, delta);
+
+		SnomedTaxonomy snomedTaxonomy;
+		try (InputStreamSet snapshotStreams = new InputStreamSet(Sets.newHashSet(snapshot));
+			 FileInputStream deltaStream = new FileInputStream(delta)) {
+			snomedTaxonomy = new SnomedTaxonomyBuilder().build(snapshotStreams, deltaStream, true);
+		}
+		assertTrue(snomedTaxonomy.getAllConceptIds().size() > 2000);
+		assertTrue(snomedTaxonomy.getConceptAxiomMap().size() > 1900);
+		assertFalse(snomedTaxonomy.getFullyDefinedConceptIds().isEmpty());
+		assertFalse(snomedTaxonomy.getInactivatedConcepts().isEmpty());
+		assertFalse(snomedTaxonomy.getUngroupedRolesByContentType().get(Long.parseLong(Concepts.ALL_PRECOORDINATED_CONTENT)).isEmpty());
+		assertEquals("SNOMED CT Concept (SNOMED RT+CTV3)", snomedTaxonomy.getConceptFsnTerm(Concepts.ROOT_LONG));
+
+		File results = temporaryFolder.newFile("results.zip");
+		new SnomedReasonerService().classify("", snapshot, delta, results, ELK_REASONER_FACTORY, false);
+		List<String> inferredLines = readInferredRelationshipLinesTrim(results);
+		assertFalse(inferredLines.isEmpty());
+	}
+
+	@Test
+	public void testSameSeedGivesSameRelease() throws Exception {
+		File[] archives = new File[4];
+		for (int i = 0; i < archives.length; i++) {
+			archives[i] = temporaryFolder.newFile();
+		}
+		new SyntheticReleaseGenerator().setSeed(7).setConceptCount(500).generate(archives[0], archives[1]);
+		new SyntheticReleaseGenerator().setSeed(7).setConceptCount(500).generate(archives[2], archives[3]);
+		assertArrayEquals(Files.readAllBytes(archives[0].toPath()), Files.readAllBytes(archives[2].toPath()));
+		assertArrayEquals(Files.readAllBytes(archives[1].toPath()), Files.readAllBytes(archives[3].toPath()));
+	}
+}
@@ -0,0 +1,129 @@
+package org.snomed.otf.owltoolkit.util;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+public class ParallelZipOutputStreamTest {
+
+	@Test
+	public void testEntriesReadableWithZipInputStream() throws IOException {
+		Map<String, byte[]> entries = createEntries();
+		for (int threads : new int[] {1, 4}) {
+			ByteArrayOutputStream archive = new ByteArrayOutputStream();
+			writeArchive(archive, entries, threads);
+
+			Map<String, byte[]> actual = new LinkedHashMap<>();
+			try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+				ZipEntry entry;
+				while ((entry = zipInputStream.getNextEntry()) != null) {
+					actual.put(entry.getName(), readFully(zipInputStream));
+				}
+			}
+			assertEntriesEqual(entries, actual);
+		}
+	}
+
+	@Test
+	public void testEntriesReadableWithZipFile() throws IOException {
+		Map<String, byte[]> entries = createEntries();
+		File file = Files.createTempFile("parallel-zip", ".zip").toFile();
+		try {
+			try (FileOutputStream outputStream = new FileOutputStream(file)) {
+				writeArchive(outputStream, entries, 3);
+			}
+			Map<String, byte[]> actual = new LinkedHashMap<>();
+			try (ZipFile zipFile = new ZipFile(file)) {
+				for (Enumeration<? extends ZipEntry> zipEntries = zipFile.entries(); zipEntries.hasMoreElements(); ) {
+					ZipEntry entry = zipEntries.nextElement();
+					assertEquals(entries.get(entry.getName()).length, entry.getSize());
+					try (InputStream inputStream = zipFile.getInputStream(entry)) {
+						actual.put(entry.getName(), readFully(inputStream));
+					}
+				}
+			}
+			assertEntriesEqual(entries, actual);
+		} finally {
+			assertTrue(file.delete());
+		}
+	}
+
+	@Test
+	public void testBlocksAreCompressed() throws IOException {
+		byte[] rows = createRows(20000);
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		writeArchive(archive, Collections.singletonMap("rows.txt", rows), 4);
+		assertTrue(rows.length > ParallelZipOutputStream.BLOCK_SIZE * 4);
+		assertTrue(archive.size() < rows.length / 4);
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteWithoutEntry() throws IOException {
+		try (ParallelZipOutputStream zipOutputStream = new ParallelZipOutputStream(new ByteArrayOutputStream(), 1)) {
+			zipOutputStream.write(1);
+		}
+	}
+
+	private Map<String, byte[]> createEntries() {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("RF2/empty.txt", new byte[0]);
+		entries.put("RF2/small.txt", "id\teffectiveTime\tactive\r\n".getBytes());
+		entries.put("RF2/rows.txt", createRows(30000));
+		byte[] random = new byte[ParallelZipOutputStream.BLOCK_SIZE * 3];
+		new Random(1).nextBytes(random);
+		entries.put("RF2/random-exact-blocks.bin", random);
+		entries.put("RF2/unicode-é.txt", "Unicode é".getBytes());
+		return entries;
+	}
+
+	private byte[] createRows(int count) {
+		StringBuilder builder = new StringBuilder();
+		Random random = new Random(2);
+		for (int i = 0; i < count; i++) {
+			builder.append(i).append("\t\t1\t\t").append(100000000 + random.nextInt(1000)).append("\t116680003\t0\r\n");
+		}
+		return builder.toString().getBytes();
+	}
+
+	private void writeArchive(OutputStream outputStream, Map<String, byte[]> entries, int threads) throws IOException {
+		try (ParallelZipOutputStream zipOutputStream = new ParallelZipOutputStream(outputStream, threads)) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				zipOutputStream.putNextEntry(entry.getKey());
+				byte[] data = entry.getValue();
+				// Uneven writes to cross block boundaries
+				int offset = 0;
+				int length = 1;
+				while (offset < data.length) {
+					int count = Math.min(length, data.length - offset);
+					zipOutputStream.write(data, offset, count);
+					offset += count;
+					length = length * 3 + 1;
+				}
+			}
+		}
+	}
+
+	private void assertEntriesEqual(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+		assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+		for (String name : expected.keySet()) {
+			assertArrayEquals(name, expected.get(name), actual.get(name));
+		}
+	}
+
+	private byte[] readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, read);
+		}
+		return outputStream.toByteArray();
+	}
+}
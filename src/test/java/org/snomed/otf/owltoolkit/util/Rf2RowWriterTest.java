@@ -0,0 +1,65 @@
+package org.snomed.otf.owltoolkit.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class Rf2RowWriterTest {
+
+	private static final String NEW_LINE = System.lineSeparator();
+
+	@Test
+	public void testRows() throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		Rf2RowWriter writer = new Rf2RowWriter(outputStream);
+		UUID uuid = UUID.fromString("0a1b2c3d-4e5f-4a6b-8c7d-8e9fa0b1c2d3");
+		writer.line("id\teffectiveTime");
+		writer.field(0).field(-12).field(Long.MAX_VALUE).field(Long.MIN_VALUE).endRow();
+		writer.emptyField().field("a").emptyField().endRow();
+		writer.field(uuid).field("Café").field("x".getBytes(StandardCharsets.UTF_8)).endRow();
+		writer.flush();
+
+		assertEquals("id\teffectiveTime" + NEW_LINE +
+				"0\t-12\t" + Long.MAX_VALUE + "\t" + Long.MIN_VALUE + NEW_LINE +
+				"\ta\t" + NEW_LINE +
+				uuid + "\tCafé\tx" + NEW_LINE, new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testRowsLargerThanBuffer() throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		Rf2RowWriter writer = new Rf2RowWriter(outputStream);
+		StringBuilder expected = new StringBuilder();
+		StringBuilder longValue = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			longValue.append((char) ('a' + i % 26));
+		}
+		for (long i = 0; i < 2000; i++) {
+			long id = i * 1000000007L;
+			writer.field(id).field(i % 3 == 0 ? longValue.toString() : "v").endRow();
+			expected.append(id).append('\t').append(i % 3 == 0 ? longValue : "v").append(NEW_LINE);
+		}
+		writer.flush();
+		assertEquals(expected.toString(), new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testRandomUuids() {
+		RandomUuidGenerator generator = new RandomUuidGenerator();
+		Set<UUID> uuids = new HashSet<>();
+		for (int i = 0; i < 100000; i++) {
+			UUID uuid = generator.next();
+			assertEquals(4, uuid.version());
+			assertEquals(2, uuid.variant());
+			assertEquals(uuid, UUID.fromString(uuid.toString()));
+			assertTrue(uuids.add(uuid));
+		}
+	}
+}